@@ -16,8 +16,17 @@ android {
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
     }
 
+    buildFeatures {
+        buildConfig = true
+    }
+
     buildTypes {
+        debug {
+            buildConfigField("boolean", "PERF_METRICS", "true")
+        }
         release {
+            // Off unless profiling a release build with -PperfMetrics
+            buildConfigField("boolean", "PERF_METRICS", project.hasProperty("perfMetrics").toString())
             isMinifyEnabled = false
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
@@ -29,6 +38,14 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        // Rows are inflated from the real layouts in the Robolectric scroll test
+        unitTests.isIncludeAndroidResources = true
+        unitTests.all {
+            // Throughput comparisons are skipped unless run with -Pbenchmarks
+            it.systemProperty("benchmarks", project.hasProperty("benchmarks").toString())
+        }
+    }
 }
 
 dependencies {
@@ -39,6 +56,7 @@ dependencies {
     implementation(libs.activity)
     implementation(libs.constraintlayout)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -0,0 +1,420 @@
+package com.example.whatdoidonow;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary, column-oriented task file read through a {@link MappedByteBuffer}.
+ *
+ * Layout, all integers big-endian:
+ * <pre>
+ *   header      magic, version, generation, row count, block size, section offsets
+ *   createdAt   per block: absolute first value + offset into a stream of zigzag varint deltas
+ *   completedAt same encoding as createdAt
+ *   completed   bitset, one bit per row
+ *   text heap   per row: varint (byte length + 1, 0 for null) followed by UTF-8 bytes
+ *   text index  per row: int offset into the text heap
+ *   id          per row: long id (since version 2; version 1 files read as id 0)
+ *   dueAt       same encoding as createdAt (since version 3; older files read as 0)
+ *   repeat      same encoding as createdAt (since version 3; older files read as 0)
+ * </pre>
+ *
+ * Rows are only decoded when asked for, so reading a window of rows touches
+ * the header plus a handful of pages per column no matter how large the file is.
+ */
+public final class ColumnarTaskFile implements Closeable, TaskPageSource {
+    private static final int MAGIC = 0x57445443; // "WDTC"
+    private static final int VERSION = 3;
+    private static final int VERSION_WITHOUT_SCHEDULES = 2;
+    private static final int VERSION_WITHOUT_IDS = 1;
+    private static final int BLOCK_SIZE = 128;
+    private static final int BLOCK_INDEX_ENTRY = 12; // long base + int offset
+
+    private static final int HEADER_SIZE = 120;
+    private static final int HEADER_SIZE_WITHOUT_SCHEDULES = 88;
+    private static final int HEADER_SIZE_WITHOUT_IDS = 80;
+    private static final int OFFSET_GENERATION = 8;
+    private static final int OFFSET_COUNT = 16;
+    private static final int OFFSET_BLOCK_SIZE = 20;
+    private static final int OFFSET_SECTIONS = 24;
+
+    private final ByteBuffer buffer;
+    private final long generation;
+    private final int count;
+    private final int blockSize;
+    private final int createdAtIndex;
+    private final int createdAtData;
+    private final int completedAtIndex;
+    private final int completedAtData;
+    private final int completedBits;
+    private final int textHeap;
+    private final int textIndex;
+    private final int ids; // -1 if the file predates ids
+    // All -1 if the file predates schedules
+    private final int dueAtIndex;
+    private final int dueAtData;
+    private final int repeatIndex;
+    private final int repeatData;
+    private final int headerSize;
+
+    private ColumnarTaskFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE_WITHOUT_IDS || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a columnar task file");
+        }
+        int version = buffer.getInt(4);
+        if (version == VERSION && buffer.capacity() >= HEADER_SIZE) {
+            headerSize = HEADER_SIZE;
+        } else if (version == VERSION_WITHOUT_SCHEDULES && buffer.capacity() >= HEADER_SIZE_WITHOUT_SCHEDULES) {
+            headerSize = HEADER_SIZE_WITHOUT_SCHEDULES;
+        } else if (version == VERSION_WITHOUT_IDS) {
+            headerSize = HEADER_SIZE_WITHOUT_IDS;
+        } else {
+            throw new IOException("Unsupported columnar task file version " + version);
+        }
+        generation = buffer.getLong(OFFSET_GENERATION);
+        count = buffer.getInt(OFFSET_COUNT);
+        blockSize = buffer.getInt(OFFSET_BLOCK_SIZE);
+        createdAtIndex = section(0);
+        createdAtData = section(1);
+        completedAtIndex = section(2);
+        completedAtData = section(3);
+        completedBits = section(4);
+        textHeap = section(5);
+        textIndex = section(6);
+        ids = headerSize >= HEADER_SIZE_WITHOUT_SCHEDULES ? section(7) : -1;
+        boolean schedules = headerSize == HEADER_SIZE;
+        dueAtIndex = schedules ? section(8) : -1;
+        dueAtData = schedules ? section(9) : -1;
+        repeatIndex = schedules ? section(10) : -1;
+        repeatData = schedules ? section(11) : -1;
+    }
+
+    private int section(int i) throws IOException {
+        long offset = buffer.getLong(OFFSET_SECTIONS + i * 8);
+        if (offset < headerSize || offset > buffer.capacity()) {
+            throw new IOException("Corrupt columnar task file");
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Map an existing file. Nothing beyond the header is read until rows are accessed.
+     */
+    public static ColumnarTaskFile open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ColumnarTaskFile(mapped);
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    public Task get(int row) {
+        checkRow(row);
+        Task task = new Task(getId(row), getText(row), isCompleted(row), getCreatedAt(row), getCompletedAt(row));
+        task.setDueAt(getDueAt(row));
+        task.setRepeatMillis(getRepeatMillis(row));
+        return task;
+    }
+
+    @Override
+    public long getId(int row) {
+        checkRow(row);
+        return ids < 0 ? 0 : buffer.getLong(ids + row * 8);
+    }
+
+    public String getText(int row) {
+        checkRow(row);
+        return readText(textHeap + buffer.getInt(textIndex + row * 4));
+    }
+
+    public boolean isCompleted(int row) {
+        checkRow(row);
+        return (buffer.get(completedBits + (row >>> 3)) & (1 << (row & 7))) != 0;
+    }
+
+    public long getCreatedAt(int row) {
+        checkRow(row);
+        return readDelta(createdAtIndex, createdAtData, row);
+    }
+
+    public long getCompletedAt(int row) {
+        checkRow(row);
+        return readDelta(completedAtIndex, completedAtData, row);
+    }
+
+    public long getDueAt(int row) {
+        checkRow(row);
+        return dueAtIndex < 0 ? 0 : readDelta(dueAtIndex, dueAtData, row);
+    }
+
+    public long getRepeatMillis(int row) {
+        checkRow(row);
+        return repeatIndex < 0 ? 0 : readDelta(repeatIndex, repeatData, row);
+    }
+
+    /**
+     * Decode every row in order, walking each column once
+     */
+    public void forEach(TaskCodec.TaskConsumer consumer) throws IOException {
+        decode(0, count, consumer);
+    }
+
+    /**
+     * Decode rows {@code [from, to)}, starting from the block holding {@code from}
+     */
+    @Override
+    public List<Task> load(int from, int to) throws IOException {
+        if (from < 0 || to > count || from > to) {
+            throw new IndexOutOfBoundsException("Rows " + from + ".." + to + " of " + count);
+        }
+        final List<Task> tasks = new ArrayList<>(to - from);
+        decode(from, to, tasks::add);
+        return tasks;
+    }
+
+    private void decode(int from, int to, TaskCodec.TaskConsumer consumer) throws IOException {
+        int[] createdCursor = new int[1];
+        int[] completedCursor = new int[1];
+        int[] dueCursor = new int[1];
+        int[] repeatCursor = new int[1];
+        long createdAt = 0;
+        long completedAt = 0;
+        long dueAt = 0;
+        long repeatMillis = 0;
+        int textCursor = from < count ? textHeap + buffer.getInt(textIndex + from * 4) : textHeap;
+        for (int row = from - from % blockSize; row < to; row++) {
+            if (row % blockSize == 0) {
+                int entry = (row / blockSize) * BLOCK_INDEX_ENTRY;
+                createdAt = buffer.getLong(createdAtIndex + entry);
+                createdCursor[0] = createdAtData + buffer.getInt(createdAtIndex + entry + 8);
+                completedAt = buffer.getLong(completedAtIndex + entry);
+                completedCursor[0] = completedAtData + buffer.getInt(completedAtIndex + entry + 8);
+                if (dueAtIndex >= 0) {
+                    dueAt = buffer.getLong(dueAtIndex + entry);
+                    dueCursor[0] = dueAtData + buffer.getInt(dueAtIndex + entry + 8);
+                    repeatMillis = buffer.getLong(repeatIndex + entry);
+                    repeatCursor[0] = repeatData + buffer.getInt(repeatIndex + entry + 8);
+                }
+            } else {
+                createdAt += zigzagDecode(readVarLong(createdCursor));
+                completedAt += zigzagDecode(readVarLong(completedCursor));
+                if (dueAtIndex >= 0) {
+                    dueAt += zigzagDecode(readVarLong(dueCursor));
+                    repeatMillis += zigzagDecode(readVarLong(repeatCursor));
+                }
+            }
+            if (row < from) {
+                // Only the timestamp deltas are needed to reach the first row
+                continue;
+            }
+            String text = readText(textCursor);
+            textCursor = skipText(textCursor);
+            long id = ids < 0 ? 0 : buffer.getLong(ids + row * 8);
+            Task task = new Task(id, text, isCompleted(row), createdAt, completedAt);
+            task.setDueAt(dueAt);
+            task.setRepeatMillis(repeatMillis);
+            consumer.accept(task);
+        }
+    }
+
+    public List<Task> readAll() throws IOException {
+        final List<Task> tasks = new ArrayList<>(count);
+        forEach(tasks::add);
+        return tasks;
+    }
+
+    @Override
+    public void close() {
+        // Mapped buffers are released by the garbage collector
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + count);
+        }
+    }
+
+    private long readDelta(int indexOffset, int dataOffset, int row) {
+        int entry = (row / blockSize) * BLOCK_INDEX_ENTRY;
+        long value = buffer.getLong(indexOffset + entry);
+        int[] cursor = {dataOffset + buffer.getInt(indexOffset + entry + 8)};
+        for (int i = row % blockSize; i > 0; i--) {
+            value += zigzagDecode(readVarLong(cursor));
+        }
+        return value;
+    }
+
+    private String readText(int offset) {
+        int[] cursor = {offset};
+        int length = (int) readVarLong(cursor) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(cursor[0] + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int skipText(int offset) {
+        int[] cursor = {offset};
+        int length = (int) readVarLong(cursor) - 1;
+        return cursor[0] + Math.max(length, 0);
+    }
+
+    private long readVarLong(int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(cursor[0]++);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // ---- writing ----
+
+    /**
+     * Write the tasks, in the given order, to a new columnar file
+     */
+    public static void write(File file, List<Task> tasks, long generation) throws IOException {
+        int count = tasks.size();
+        long[] createdAt = new long[count];
+        long[] completedAt = new long[count];
+        long[] dueAt = new long[count];
+        long[] repeatMillis = new long[count];
+        for (int i = 0; i < count; i++) {
+            createdAt[i] = tasks.get(i).getCreatedAt();
+            completedAt[i] = tasks.get(i).getCompletedAt();
+            dueAt[i] = tasks.get(i).getDueAt();
+            repeatMillis[i] = tasks.get(i).getRepeatMillis();
+        }
+
+        try (FileOutputStream fileOut = new FileOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            long[] sections = new long[12];
+            out.write(new byte[HEADER_SIZE]);
+
+            sections[0] = out.size();
+            sections[1] = writeDeltaColumn(out, createdAt);
+            sections[2] = out.size();
+            sections[3] = writeDeltaColumn(out, completedAt);
+
+            sections[4] = out.size();
+            byte[] bits = new byte[(count + 7) / 8];
+            for (int i = 0; i < count; i++) {
+                if (tasks.get(i).isCompleted()) {
+                    bits[i >>> 3] |= 1 << (i & 7);
+                }
+            }
+            out.write(bits);
+
+            sections[5] = out.size();
+            int[] textOffsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                textOffsets[i] = (int) (out.size() - sections[5]);
+                String text = tasks.get(i).getTaskText();
+                if (text == null) {
+                    writeVarLong(out, 0);
+                } else {
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, bytes.length + 1);
+                    out.write(bytes);
+                }
+                if (out.size() == Integer.MAX_VALUE) {
+                    throw new IOException("Task file too large");
+                }
+            }
+
+            sections[6] = out.size();
+            for (int offset : textOffsets) {
+                out.writeInt(offset);
+            }
+
+            sections[7] = out.size();
+            for (Task task : tasks) {
+                out.writeLong(task.getId());
+            }
+
+            // Mostly zeros, which cost a byte per row
+            sections[8] = out.size();
+            sections[9] = writeDeltaColumn(out, dueAt);
+            sections[10] = out.size();
+            sections[11] = writeDeltaColumn(out, repeatMillis);
+            out.flush();
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Task file too large");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(count).putInt(BLOCK_SIZE);
+            for (long section : sections) {
+                header.putLong(section);
+            }
+            header.flip();
+            FileChannel channel = fileOut.getChannel();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes the block index followed by the delta stream it points into.
+     * Returns the offset of the delta stream.
+     */
+    private static long writeDeltaColumn(DataOutputStream out, long[] values) throws IOException {
+        ByteArrayOutputStream deltas = new ByteArrayOutputStream();
+        DataOutputStream deltaOut = new DataOutputStream(deltas);
+        for (int i = 0; i < values.length; i += BLOCK_SIZE) {
+            out.writeLong(values[i]);
+            out.writeInt(deltaOut.size());
+            int end = Math.min(i + BLOCK_SIZE, values.length);
+            for (int j = i + 1; j < end; j++) {
+                long delta = values[j] - values[j - 1];
+                writeVarLong(deltaOut, (delta << 1) ^ (delta >> 63));
+            }
+        }
+        long dataOffset = out.size();
+        deltas.writeTo(out);
+        return dataOffset;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.whatdoidonow;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.material.button.MaterialButton;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Completed tasks moved out of the main list by age, see {@link TaskArchive}.
+ * The archive is read a page at a time, so opening it costs the same
+ * however much history there is.
+ *
+ * The button cycles the age after which completed tasks are archived; the
+ * new setting applies the next time the app loads its tasks.
+ *
+ * Shows the archive of the list named by {@link #EXTRA_LIST_ID}, the first list if none is.
+ */
+public class HistoryActivity extends AppCompatActivity {
+    public static final String EXTRA_LIST_ID = "listId";
+    private static final int[] ARCHIVE_AGES_DAYS = {7, TaskManager.DEFAULT_ARCHIVE_AFTER_DAYS, 90, 365, 0};
+
+    private MaterialButton archiveAgeBtn;
+    private PagedTaskList archivedTasks;
+    private ExecutorService pageExecutor;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_history);
+
+        String listId = getIntent().getStringExtra(EXTRA_LIST_ID);
+        File listDir = new TaskLists(getFilesDir()).dirOf(listId != null ? listId : TaskLists.DEFAULT_ID);
+        archiveAgeBtn = findViewById(R.id.archiveAgeBtn);
+        TextView countTextView = findViewById(R.id.historyCountTextView);
+        TextView emptyTextView = findViewById(R.id.emptyHistoryTextView);
+        RecyclerView recyclerView = findViewById(R.id.historyRecyclerView);
+
+        // Lists segment files only, no task is decoded until its row is shown
+        TaskArchive.Segments archive = TaskManager.openArchive(listDir);
+        pageExecutor = Executors.newSingleThreadExecutor();
+        archivedTasks = new PagedTaskList(archive, pageExecutor, this::runOnUiThread);
+        final HistoryAdapter adapter = new HistoryAdapter(archivedTasks, new TaskLabelCache());
+        archivedTasks.setListener(new PagedTaskList.Listener() {
+            @Override
+            public void onPageLoaded(int from, int count) {
+                adapter.notifyItemRangeChanged(from, count);
+            }
+
+            @Override
+            public void onPageLoadFailed(IOException error) {
+                Log.w("HistoryActivity", "Failed to read archived tasks", error);
+                Toast.makeText(HistoryActivity.this, "Could not read archived tasks", Toast.LENGTH_SHORT).show();
+            }
+        });
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(adapter);
+
+        countTextView.setText(archive.size() + " archived tasks");
+        emptyTextView.setVisibility(archive.size() == 0 ? View.VISIBLE : View.GONE);
+
+        archiveAgeBtn.setOnClickListener(v -> cycleArchiveAge());
+        showArchiveAge();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        archivedTasks.close();
+        pageExecutor.shutdown();
+    }
+
+    private void cycleArchiveAge() {
+        int current = TaskManager.getArchiveAfterDays(this);
+        int next = ARCHIVE_AGES_DAYS[0];
+        for (int i = 0; i < ARCHIVE_AGES_DAYS.length; i++) {
+            if (ARCHIVE_AGES_DAYS[i] == current) {
+                next = ARCHIVE_AGES_DAYS[(i + 1) % ARCHIVE_AGES_DAYS.length];
+            }
+        }
+        TaskManager.setArchiveAfterDays(this, next);
+        showArchiveAge();
+    }
+
+    private void showArchiveAge() {
+        int days = TaskManager.getArchiveAfterDays(this);
+        archiveAgeBtn.setText(days > 0 ? "Archive after " + days + " days" : "Never archive");
+    }
+}
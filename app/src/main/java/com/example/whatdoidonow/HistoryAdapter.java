@@ -0,0 +1,60 @@
+package com.example.whatdoidonow;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Read-only rows for archived tasks. Rows of a {@link PagedTaskList} that
+ * are still loading are null and shown blank until their page arrives.
+ */
+public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHolder> {
+    private final List<Task> tasks;
+    private final TaskLabelCache labelCache;
+
+    public HistoryAdapter(List<Task> tasks, TaskLabelCache labelCache) {
+        this.tasks = tasks;
+        this.labelCache = labelCache;
+    }
+
+    @NonNull
+    @Override
+    public HistoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.history_item, parent, false);
+        return new HistoryViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
+        Task task = tasks.get(position);
+        if (task == null) {
+            holder.taskTextView.setText("");
+            holder.taskDescriptionView.setText("");
+            return;
+        }
+        holder.taskTextView.setText(task.getTaskText());
+        holder.taskDescriptionView.setText(labelCache.get(task));
+    }
+
+    @Override
+    public int getItemCount() {
+        return tasks.size();
+    }
+
+    static class HistoryViewHolder extends RecyclerView.ViewHolder {
+        TextView taskTextView;
+        TextView taskDescriptionView;
+
+        HistoryViewHolder(@NonNull View itemView) {
+            super(itemView);
+            taskTextView = itemView.findViewById(R.id.taskTextView);
+            taskDescriptionView = itemView.findViewById(R.id.taskDescriptionView);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.whatdoidonow;
+
+/**
+ * Log-linear buckets over non-negative longs: eight linear sub-buckets per
+ * power of two. A value is known to within about 12% from its bucket alone,
+ * at any scale, and the whole range of long fits in under 500 buckets.
+ */
+final class LogBuckets {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int COUNT = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private LogBuckets() {
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+}
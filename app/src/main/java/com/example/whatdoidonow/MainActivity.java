@@ -1,12 +1,30 @@
 package com.example.whatdoidonow;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -14,51 +32,168 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.textfield.TextInputEditText;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-
-public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskItemClickListener {
-
-    private TextInputEditText taskInputEditText;
-    private MaterialButton addTaskBtn, generateTaskBtn, completeTaskBtn;
-    private TextView selectedTaskTextView, emptyTasksTextView;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+public class MainActivity extends AppCompatActivity
+        implements TaskAdapter.TaskItemClickListener, TaskRepository.Listener {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // Choices in the schedule dialog, by radio button
+    private static final int[] REPEAT_BUTTONS = {R.id.repeatNone, R.id.repeatHourly, R.id.repeatEvery4Hours,
+            R.id.repeatEvery8Hours, R.id.repeatDaily, R.id.repeatWeekly};
+    private static final long[] REPEAT_MILLIS = {0, HOUR, 4 * HOUR, 8 * HOUR, DAY, 7 * DAY};
+    private static final int[] REMIND_BUTTONS = {R.id.remindNone, R.id.remindIn15Minutes, R.id.remindIn1Hour,
+            R.id.remindIn4Hours, R.id.remindTomorrow};
+    private static final long[] REMIND_IN_MILLIS = {0, 15 * MINUTE, HOUR, 4 * HOUR, DAY};
+    private static final String REMINDER_CHANNEL = "reminders";
+    // More reminders at once are summed up in one notification
+    private static final int MAX_REMINDER_NOTIFICATIONS = 3;
+    // Lists kept in memory, the one on screen and those used just before it
+    private static final int MAX_OPEN_LISTS = 3;
+
+    private TextInputEditText taskInputEditText, searchEditText;
+    private MaterialButton listBtn, addTaskBtn, scheduleBtn, generateTaskBtn, completeTaskBtn, undoBtn, redoBtn;
+    private TextView selectedTaskTextView, emptyTasksTextView, selectionCountTextView;
+    private View selectionBar;
     private RecyclerView tasksRecyclerView;
     private TaskAdapter taskAdapter;
-    private List<Task> tasksList = new ArrayList<>();
-    private Task currentSelectedTask = null;
-
+    // The latest version published by the repository, read-only
+    private TaskIndex tasksList = new TaskIndex().snapshot();
+    // Pending tasks to pick from, kept in step with tasksList
+    private TaskPicker taskPicker = new TaskPicker();
+    private boolean weightedPicking;
+    // Word index over tasksList, queried off the UI thread while the user types
+    private final TaskSearch taskSearch = new TaskSearch();
+    private String searchQuery = "";
+    // The unfiltered snapshot last handed to the adapter, null while filtering
+    private List<Task> shownTasks;
+    // Tasks decoded while loading, stored as columns and materialized as rows are shown
+    private final TaskTable loadingPreview = new TaskTable(TaskLoader.BATCH_SIZE);
+    // Or, for columnar stores, the stored snapshot read a page at a time
+    private PagedTaskList pagedPreview;
+    private ExecutorService pageExecutor;
+    // Moves old completed tasks to the archive after loading, and writes out lists that were closed
+    private final ExecutorService archiveExecutor = Executors.newSingleThreadExecutor();
+    // Tasks are replaced by copies when they change, so the selection is held by id
+    private long currentSelectedTaskId = 0;
+
+    // Names and counts of every list; only the open ones are in memory
+    private TaskLists taskLists;
+    // Least recently shown first. Switching back to one of these shows it without loading.
+    private final LinkedHashMap<String, ListSession> openLists =
+            new LinkedHashMap<String, ListSession>(MAX_OPEN_LISTS + 1, 1f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ListSession> eldest) {
+                    if (size() <= MAX_OPEN_LISTS) {
+                        return false;
+                    }
+                    eldest.getValue().close();
+                    return true;
+                }
+            };
+    // The list on screen, with its store and repository
+    private ListSession session;
     private TaskManager taskManager;
+    // Applies and saves every change on its own thread, see onTasksChanged
+    private TaskRepository repository;
+    private boolean tasksLoaded = false;
+    private TaskLabelCache labelCache;
+    // Wakes the schedulers of the open lists, one pending callback each for whatever is due next
+    private final Handler schedulerHandler = new Handler(Looper.getMainLooper());
+    // Applied to the next task added, see showScheduleDialog
+    private long nextRepeatMillis;
+    private long nextRemindInMillis;
+    private ActivityResultLauncher<String> notificationPermission;
+    // Imports and exports, one at a time, off the UI thread
+    private final ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+    private volatile TaskImporter runningImport;
+    private volatile TaskExporter runningExport;
+    private ActivityResultLauncher<String[]> importDocument;
+    private final EnumMap<TaskFileFormat, ActivityResultLauncher<String>> exportDocuments =
+            new EnumMap<>(TaskFileFormat.class);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize task manager for persistence
-        taskManager = new TaskManager(this);
-
-        // Load saved tasks
-        tasksList = taskManager.loadTasks();
+        // A few hundred bytes, read before any list so only the active one is loaded
+        taskLists = new TaskLists(getFilesDir());
+        if (!taskLists.load()) {
+            Log.w("MainActivity", "Rebuilt the unreadable list of task lists");
+        }
+        notificationPermission = registerForActivityResult(new ActivityResultContracts.RequestPermission(),
+                granted -> {
+                    if (!granted) {
+                        Toast.makeText(this, "Due times will only show in the list", Toast.LENGTH_SHORT).show();
+                    }
+                });
 
-        // Sort tasks using our enhanced sorting logic
-        sortTasks();
+        // Files to import from and export to, chosen by the user
+        importDocument = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                importTasks(uri);
+            }
+        });
+        for (final TaskFileFormat format : TaskFileFormat.values()) {
+            exportDocuments.put(format, registerForActivityResult(
+                    new ActivityResultContracts.CreateDocument(format.getMimeType()), uri -> {
+                        if (uri != null) {
+                            exportTasks(uri, format);
+                        }
+                    }));
+        }
 
         // Initialize UI components
+        listBtn = findViewById(R.id.listBtn);
         taskInputEditText = findViewById(R.id.taskInputEditText);
+        searchEditText = findViewById(R.id.searchEditText);
         addTaskBtn = findViewById(R.id.addTaskBtn);
+        scheduleBtn = findViewById(R.id.scheduleBtn);
         generateTaskBtn = findViewById(R.id.generateTaskBtn);
         completeTaskBtn = findViewById(R.id.completeTaskBtn);
         selectedTaskTextView = findViewById(R.id.selectedTaskTextView);
         emptyTasksTextView = findViewById(R.id.emptyTasksTextView);
         tasksRecyclerView = findViewById(R.id.tasksRecyclerView);
-
-        // Set up RecyclerView
-        taskAdapter = new TaskAdapter(tasksList, this);
+        undoBtn = findViewById(R.id.undoBtn);
+        redoBtn = findViewById(R.id.redoBtn);
+        selectionBar = findViewById(R.id.selectionBar);
+        selectionCountTextView = findViewById(R.id.selectionCountTextView);
+
+        // Set up RecyclerView, sharing rendered timestamp labels with the loader
+        labelCache = new TaskLabelCache();
+        taskAdapter = new TaskAdapter(loadingPreview.asList(), this, labelCache);
         tasksRecyclerView.setLayoutManager(new LinearLayoutManager(this));
-        tasksRecyclerView.setAdapter(taskAdapter);
+        // Rows are inflated ahead on the transfer thread, idle at startup
+        taskAdapter.attachTo(tasksRecyclerView, transferExecutor);
+
+        // Switch lists, or rename or delete the one shown
+        listBtn.setOnClickListener(v -> showListsDialog());
+        listBtn.setOnLongClickListener(v -> {
+            showListOptionsDialog();
+            return true;
+        });
 
         // Add task button click listener
         addTaskBtn.setOnClickListener(new View.OnClickListener() {
@@ -68,6 +203,9 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
             }
         });
 
+        // Repeat and reminder for the next task added
+        scheduleBtn.setOnClickListener(v -> showScheduleDialog());
+
         // Generate random task button click listener
         generateTaskBtn.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -84,6 +222,26 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
             }
         });
 
+        // Long press on the picked task switches between uniform and age-weighted picks
+        selectedTaskTextView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                toggleWeightedPicking();
+                return true;
+            }
+        });
+
+        // Hidden debug screen with latency histograms, in builds that record them
+        if (PerfMetrics.ENABLED) {
+            findViewById(R.id.heading).setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    startActivity(new Intent(MainActivity.this, MetricsActivity.class));
+                    return true;
+                }
+            });
+        }
+
         // Add long press to clear all tasks (with confirmation)
         generateTaskBtn.setOnLongClickListener(new View.OnLongClickListener() {
             @Override
@@ -93,38 +251,535 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
             }
         });
 
-        // Update UI based on initial state
-        updateEmptyState();
+        // Completion statistics, read from running counters
+        findViewById(R.id.statsBtn).setOnClickListener(v -> showStatsDialog());
+
+        // Archived tasks are browsed on their own screen
+        findViewById(R.id.historyBtn).setOnClickListener(
+                v -> startActivity(new Intent(MainActivity.this, HistoryActivity.class)
+                        .putExtra(HistoryActivity.EXTRA_LIST_ID, session.id)));
+
+        // Step back and forth through earlier versions of the list
+        undoBtn.setOnClickListener(v -> restoreVersion(true));
+        redoBtn.setOnClickListener(v -> restoreVersion(false));
+
+        // Batch actions on the rows selected by long-pressing
+        MaterialButton selectAllBtn = findViewById(R.id.selectAllBtn);
+        selectAllBtn.setOnClickListener(v -> taskAdapter.selectAll(false));
+        selectAllBtn.setOnLongClickListener(v -> {
+            taskAdapter.selectAll(true);
+            return true;
+        });
+        findViewById(R.id.completeSelectedBtn).setOnClickListener(v -> setSelectedCompleted(true));
+        findViewById(R.id.reopenSelectedBtn).setOnClickListener(v -> setSelectedCompleted(false));
+        findViewById(R.id.deleteSelectedBtn).setOnClickListener(v -> showDeleteSelectedDialog());
+        findViewById(R.id.cancelSelectionBtn).setOnClickListener(v -> taskAdapter.clearSelection());
+
+        // Filter the list as the user types
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchQuery = s.toString().trim();
+                showTasks();
+            }
+        });
+
+        showList(taskLists.getActiveId());
+        // Shared by every list
+        weightedPicking = taskManager.isWeightedPicking();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Handler delays stop while the device sleeps, catch up on anything due meanwhile
+        for (ListSession open : openLists.values()) {
+            open.scheduler.advance();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Don't wait for the batching window, the process may not come back
+        for (ListSession open : openLists.values()) {
+            open.repository.requestFlush();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Once stopped the process can be killed without further callbacks,
+        // so make sure queued and batched changes are on disk. This is a small append.
+        for (ListSession open : openLists.values()) {
+            open.repository.flush();
+            taskLists.setRemindedUntil(open.id, open.scheduler.getRemindedUntil());
+        }
+        // Counts were brought up to date by the flushes
+        saveTaskLists();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        for (ListSession open : openLists.values()) {
+            open.close();
+        }
+        openLists.clear();
+        closePagedPreview();
+        taskAdapter.shutdown();
+        taskSearch.shutdown();
+        // Chunks already imported stay, and are written out with their list
+        TaskImporter importer = runningImport;
+        if (importer != null) {
+            importer.cancel();
+        }
+        TaskExporter exporter = runningExport;
+        if (exporter != null) {
+            exporter.cancel();
+        }
+        transferExecutor.shutdown();
+        // Lists just closed are still written out
+        archiveExecutor.shutdown();
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (taskAdapter.isSelecting()) {
+            taskAdapter.clearSelection();
+            return;
+        }
+        super.onBackPressed();
+    }
+
+    /**
+     * Show another list: at once if it is still open, otherwise loaded from
+     * its store the way the app starts, closing the least recently shown list
+     * if too many are open
+     */
+    private void showList(String id) {
+        if (session != null) {
+            if (session.id.equals(id)) {
+                return;
+            }
+            session.repository.removeListener(session.display);
+            if (!session.loaded) {
+                // Not worth keeping half loaded, it loads from the start next time
+                openLists.remove(session.id);
+                session.close();
+            }
+        }
+        taskAdapter.clearSelection();
+        taskAdapter.setSelectionEnabled(false);
+        currentSelectedTaskId = 0;
+        selectedTaskTextView.setText("Your random task will appear here");
+        completeTaskBtn.setEnabled(false);
+        undoBtn.setEnabled(false);
+        redoBtn.setEnabled(false);
+        // Mutating buttons stay disabled until the whole list is in memory
+        tasksLoaded = false;
+        addTaskBtn.setEnabled(false);
+        generateTaskBtn.setEnabled(false);
+
+        taskLists.setActive(id);
+        ListSession open = openLists.get(id);
+        if (open != null) {
+            session = open;
+        } else {
+            session = new ListSession(id);
+            openLists.put(id, session);
+        }
+        taskManager = session.store;
+        repository = session.repository;
+        updateListButton();
+        if (open != null) {
+            // Republished as a load, which shows it like a freshly loaded list
+            repository.attach(session.display, this::runOnUiThread);
+        } else {
+            repository.addListener(session.display, this::runOnUiThread);
+            loadList(session);
+        }
     }
 
     /**
-     * Sort tasks with enhanced logic:
-     * 1. Incomplete tasks at the top (sorted by creation date, newest first)
-     * 2. Completed tasks at the bottom (sorted by completion date, newest first)
+     * Load the list's tasks in the background, painting the first screenful early
      */
-    private void sortTasks() {
-        Collections.sort(tasksList, new Comparator<Task>() {
+    private void loadList(final ListSession loading) {
+        loadingPreview.clear();
+        closePagedPreview();
+        taskAdapter.setTasks(loadingPreview.asList());
+        updateEmptyState();
+
+        loading.loader = new TaskLoader(loading.store, labelCache);
+        loading.loader.load(new TaskLoader.Listener() {
             @Override
-            public int compare(Task task1, Task task2) {
-                // First, separate completed and incomplete tasks
-                if (task1.isCompleted() && !task2.isCompleted()) {
-                    return 1; // task1 (completed) goes after task2 (not completed)
-                } else if (!task1.isCompleted() && task2.isCompleted()) {
-                    return -1; // task1 (not completed) goes before task2 (completed)
-                }
+            public void onTasksDecoded(List<Task> tasks) {
+                int start = loadingPreview.size();
+                loadingPreview.addAll(tasks);
+                taskAdapter.notifyItemRangeInserted(start, tasks.size());
+                updateEmptyState();
+            }
 
-                // For tasks with the same completion status
-                if (task1.isCompleted() && task2.isCompleted()) {
-                    // Sort completed tasks by completion date (most recently completed first)
-                    return Long.compare(task2.getCompletedAt(), task1.getCompletedAt());
-                } else {
-                    // Sort incomplete tasks by creation date (newest first)
-                    return Long.compare(task2.getCreatedAt(), task1.getCreatedAt());
-                }
+            @Override
+            public void onSnapshotOpened(TaskPageSource snapshot) {
+                // Scrollable end to end at once, holding only the pages around what is visible
+                pageExecutor = Executors.newSingleThreadExecutor();
+                pagedPreview = new PagedTaskList(snapshot, pageExecutor, MainActivity.this::runOnUiThread);
+                pagedPreview.setListener(new PagedTaskList.Listener() {
+                    @Override
+                    public void onPageLoaded(int from, int count) {
+                        taskAdapter.notifyItemRangeChanged(from, count);
+                    }
+
+                    @Override
+                    public void onPageLoadFailed(IOException error) {
+                        Log.w("MainActivity", "Failed to read stored tasks", error);
+                    }
+                });
+                taskAdapter.setTasks(pagedPreview);
+                updateEmptyState();
+            }
+
+            @Override
+            public void onTasksLoaded(TaskIndex tasks, TaskPicker picker) {
+                // Indexed in display order by the loader; shown once the repository publishes them
+                loading.loaded = true;
+                loading.loadedPicker = picker;
+                loading.repository.load(tasks);
+            }
+
+            @Override
+            public void onLoadFailed(Exception error) {
+                // Left half loaded, so showing the list again reads it from the start
+                Log.e("MainActivity", "Failed to load tasks", error);
+                Toast.makeText(MainActivity.this, "Could not read this list's tasks",
+                        Toast.LENGTH_LONG).show();
+                updateEmptyState();
             }
         });
     }
 
+    private void updateListButton() {
+        listBtn.setText(taskLists.get(session.id).getName().toUpperCase(Locale.getDefault()) + " ▾");
+    }
+
+    /**
+     * Choose a list to show, from the counts in the manifest, or create one
+     */
+    private void showListsDialog() {
+        final List<TaskLists.Entry> lists = taskLists.getLists();
+        DateTimeFormatter dayFormat = DateTimeFormatter.ofPattern("d MMM", Locale.getDefault());
+        String[] labels = new String[lists.size()];
+        for (int i = 0; i < labels.length; i++) {
+            TaskLists.Entry entry = lists.get(i);
+            StringBuilder label = new StringBuilder(entry.getName());
+            if (entry.getTaskCount() >= 0) {
+                label.append("\n").append(entry.getPendingCount()).append(" pending, ")
+                        .append(entry.getCompletedCount()).append(" done");
+            }
+            if (entry.getModifiedAt() > 0) {
+                label.append(", changed ").append(Instant.ofEpochMilli(entry.getModifiedAt())
+                        .atZone(ZoneId.systemDefault()).toLocalDate().format(dayFormat));
+            }
+            labels[i] = label.toString();
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Lists")
+                .setItems(labels, (dialog, which) -> showList(lists.get(which).getId()))
+                .setPositiveButton("New list", (dialog, which) -> showListNameDialog(null))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Import into or export the list shown, rename it, or delete it unless it is the first list
+     */
+    private void showListOptionsDialog() {
+        final String id = session.id;
+        final List<String> options = new ArrayList<>();
+        options.add("Import tasks");
+        options.add("Export tasks");
+        options.add("Sync");
+        options.add("Sync server");
+        options.add("Rename");
+        if (!TaskLists.DEFAULT_ID.equals(id)) {
+            options.add("Delete");
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(taskLists.get(id).getName())
+                .setItems(options.toArray(new String[0]), (dialog, which) -> {
+                    switch (options.get(which)) {
+                        case "Import tasks":
+                            // Plain text and CSV are both text/*
+                            importDocument.launch(new String[]{"text/*", TaskFileFormat.JSON.getMimeType()});
+                            break;
+                        case "Export tasks":
+                            showExportDialog();
+                            break;
+                        case "Sync":
+                            if (taskManager.getSyncState().getServer() == null) {
+                                showSyncServerDialog();
+                            } else {
+                                syncTasks();
+                            }
+                            break;
+                        case "Sync server":
+                            showSyncServerDialog();
+                            break;
+                        case "Rename":
+                            showListNameDialog(id);
+                            break;
+                        default:
+                            showDeleteListDialog(id);
+                            break;
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showExportDialog() {
+        final TaskFileFormat[] formats = TaskFileFormat.values();
+        final String name = taskLists.get(session.id).getName();
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Export As")
+                .setItems(new String[]{"Plain text", "CSV", "JSON"}, (dialog, which) ->
+                        exportDocuments.get(formats[which]).launch(name + formats[which].getExtension()))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Add the tasks of a text, CSV or JSON file to the list shown. The file is
+     * read in the background and stored a chunk at a time, skipping tasks
+     * already in the list.
+     */
+    private void importTasks(final Uri uri) {
+        if (!tasksLoaded || runningImport != null) {
+            Toast.makeText(this, "Try again in a moment", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final TaskRepository target = repository;
+        final TaskIndex existing = tasksList;
+        final TaskFileFormat format = TaskFileFormat.detect(uri.getLastPathSegment(),
+                getContentResolver().getType(uri));
+        selectedTaskTextView.setText("Importing\u2026");
+        transferExecutor.execute(() -> {
+            // Chunks wait for the repository, so however large the file only one is held
+            TaskImporter importer = new TaskImporter(existing, System.currentTimeMillis(),
+                    chunk -> await(target.addAll(chunk)));
+            importer.setProgressListener((bytesRead, imported, skipped) -> runOnUiThread(
+                    () -> selectedTaskTextView.setText("Importing\u2026 " + imported + " tasks added")));
+            runningImport = importer;
+            String message;
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                TaskImporter.Result result = importer.importFrom(in, format);
+                target.requestFlush();
+                int skipped = result.getDuplicates() + result.getInvalid();
+                message = "Imported " + result.getImported() + " tasks"
+                        + (skipped > 0 ? ", skipped " + skipped : "");
+            } catch (InterruptedIOException | RejectedExecutionException e) {
+                // Closing, or the list was closed
+                message = "Import stopped";
+            } catch (IOException e) {
+                Log.w("MainActivity", "Failed to import tasks", e);
+                message = "Could not import the file";
+            } finally {
+                runningImport = null;
+            }
+            showTransferResult(message);
+        });
+    }
+
+    /**
+     * Write the list shown, as it is now, to a file in the given format
+     */
+    private void exportTasks(final Uri uri, final TaskFileFormat format) {
+        if (!tasksLoaded) {
+            Toast.makeText(this, "Try again in a moment", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Read-only, so the list can change while it is written
+        final TaskIndex snapshot = tasksList;
+        selectedTaskTextView.setText("Exporting\u2026");
+        transferExecutor.execute(() -> {
+            TaskExporter exporter = new TaskExporter();
+            exporter.setProgressListener(exported -> runOnUiThread(
+                    () -> selectedTaskTextView.setText("Exporting\u2026 " + exported + " tasks")));
+            runningExport = exporter;
+            String message;
+            try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+                message = "Exported " + exporter.export(snapshot, format, out) + " tasks";
+            } catch (InterruptedIOException e) {
+                message = "Export stopped";
+            } catch (IOException e) {
+                Log.w("MainActivity", "Failed to export tasks", e);
+                message = "Could not write the file";
+            } finally {
+                runningExport = null;
+            }
+            showTransferResult(message);
+        });
+    }
+
+    /**
+     * Ask for the address the list shown syncs with, then sync it
+     */
+    private void showSyncServerDialog() {
+        final TaskSyncState syncState = taskManager.getSyncState();
+        final EditText input = new EditText(this);
+        input.setSingleLine(true);
+        input.setHint("https://");
+        if (syncState.getServer() != null) {
+            input.setText(syncState.getServer());
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Sync Server")
+                .setView(input)
+                .setPositiveButton("Sync", (dialog, which) -> {
+                    String server = input.getText().toString().trim();
+                    // Tasks are sent in the clear over plain http, so only https is accepted
+                    if (!server.startsWith("https://")) {
+                        Toast.makeText(this, "Please enter an https address", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    // A different server starts over with the whole list
+                    syncState.setServer(server);
+                    syncTasks();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Exchange the changes of the list shown with its server, in the background
+     */
+    private void syncTasks() {
+        if (!tasksLoaded) {
+            Toast.makeText(this, "Try again in a moment", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final TaskSync sync = new TaskSync(repository, taskManager.getSyncState());
+        selectedTaskTextView.setText("Syncing\u2026");
+        transferExecutor.execute(() -> {
+            String message;
+            try {
+                TaskSync.Result result = sync.sync();
+                Log.d("MainActivity", "Synced in " + result.getRequests() + " requests, "
+                        + result.getBytesSent() + " bytes sent, " + result.getBytesReceived() + " received");
+                message = "Synced: sent " + result.getSent() + ", received " + result.getReceived();
+            } catch (RejectedExecutionException e) {
+                // The list was closed
+                message = "Sync stopped";
+            } catch (IOException e) {
+                Log.w("MainActivity", "Failed to sync tasks", e);
+                message = "Could not sync";
+            }
+            showTransferResult(message);
+        });
+    }
+
+    private void showTransferResult(final String message) {
+        runOnUiThread(() -> {
+            if (isDestroyed()) {
+                return;
+            }
+            currentSelectedTaskId = 0;
+            completeTaskBtn.setEnabled(false);
+            selectedTaskTextView.setText(message);
+            Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    /**
+     * Wait for a change to be stored, for blocking callers such as the importer
+     */
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while storing tasks");
+        } catch (ExecutionException e) {
+            throw new IOException("Storing tasks failed", e.getCause());
+        }
+    }
+
+    /**
+     * Ask for a name, for a new list if {@code renameId} is null
+     */
+    private void showListNameDialog(final String renameId) {
+        final EditText input = new EditText(this);
+        input.setSingleLine(true);
+        if (renameId != null) {
+            input.setText(taskLists.get(renameId).getName());
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(renameId == null ? "New List" : "Rename List")
+                .setView(input)
+                .setPositiveButton(renameId == null ? "Create" : "Rename", (dialog, which) -> {
+                    String name = input.getText().toString().trim();
+                    if (name.isEmpty()) {
+                        Toast.makeText(this, "Please enter a name", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    if (renameId == null) {
+                        showList(taskLists.create(name).getId());
+                    } else {
+                        taskLists.rename(renameId, name);
+                        updateListButton();
+                    }
+                    archiveExecutor.execute(this::saveTaskLists);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showDeleteListDialog(final String id) {
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Delete List")
+                .setMessage("Are you sure you want to delete \"" + taskLists.get(id).getName()
+                        + "\" and all of its tasks? This cannot be undone.")
+                .setPositiveButton("Delete", (dialog, which) -> {
+                    showList(TaskLists.DEFAULT_ID);
+                    ListSession deleted = openLists.remove(id);
+                    if (deleted != null) {
+                        deleted.close();
+                    }
+                    // After the closed list's last writes, on the same thread
+                    archiveExecutor.execute(() -> {
+                        try {
+                            taskLists.delete(id);
+                        } catch (IOException e) {
+                            Log.w("MainActivity", "Failed to delete task list " + id, e);
+                        }
+                    });
+                    Toast.makeText(this, "List deleted", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Write the manifest if it changed. Blocks on disk I/O.
+     */
+    private void saveTaskLists() {
+        try {
+            taskLists.save();
+        } catch (IOException e) {
+            Log.w("MainActivity", "Failed to save the list of task lists", e);
+        }
+    }
+
     private void addNewTask() {
         String taskText = taskInputEditText.getText().toString().trim();
 
@@ -135,48 +790,141 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
 
         // Create new task - it will automatically get the current timestamp
         Task newTask = new Task(taskText, false);
+        newTask.setRepeatMillis(nextRepeatMillis);
+        if (nextRemindInMillis > 0) {
+            newTask.setDueAt(newTask.getCreatedAt() + nextRemindInMillis);
+        }
 
-        // Add to list and sort
-        tasksList.add(newTask);
-        sortTasks();
+        // Insert at its ordered position and append it to persistent storage
+        repository.add(newTask);
 
-        // Notify adapter of data change
-        taskAdapter.notifyDataSetChanged();
+        // Clear input field and schedule
+        taskInputEditText.setText("");
+        nextRepeatMillis = 0;
+        nextRemindInMillis = 0;
+        updateScheduleButton();
 
-        // Save tasks to persistent storage
-        taskManager.saveTasks(tasksList);
+        Toast.makeText(this, "Task added", Toast.LENGTH_SHORT).show();
+    }
 
-        // Clear input field
-        taskInputEditText.setText("");
+    /**
+     * Choose how the next task added repeats and when it is due
+     */
+    private void showScheduleDialog() {
+        View view = LayoutInflater.from(this).inflate(R.layout.dialog_schedule, null);
+        final RadioGroup repeatGroup = view.findViewById(R.id.repeatGroup);
+        final RadioGroup remindGroup = view.findViewById(R.id.remindGroup);
+        repeatGroup.check(REPEAT_BUTTONS[indexOf(REPEAT_MILLIS, nextRepeatMillis)]);
+        remindGroup.check(REMIND_BUTTONS[indexOf(REMIND_IN_MILLIS, nextRemindInMillis)]);
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Schedule")
+                .setView(view)
+                .setPositiveButton("Set", (dialog, which) -> {
+                    nextRepeatMillis = REPEAT_MILLIS[indexOf(REPEAT_BUTTONS, repeatGroup.getCheckedRadioButtonId())];
+                    nextRemindInMillis = REMIND_IN_MILLIS[indexOf(REMIND_BUTTONS, remindGroup.getCheckedRadioButtonId())];
+                    if (nextRemindInMillis > 0) {
+                        requestNotificationPermission();
+                    }
+                    updateScheduleButton();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
-        // Update UI
-        updateEmptyState();
+    private void updateScheduleButton() {
+        String text = nextRepeatMillis > 0
+                ? TaskLabelCache.describeRepeat(nextRepeatMillis).toUpperCase(Locale.getDefault()) : "NO REPEAT";
+        scheduleBtn.setText(nextRemindInMillis > 0 ? text + " + REMINDER" : text);
+    }
 
-        Toast.makeText(this, "Task added", Toast.LENGTH_SHORT).show();
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            notificationPermission.launch(Manifest.permission.POST_NOTIFICATIONS);
+        }
     }
 
-    private void generateRandomTask() {
-        List<Task> pendingTasks = new ArrayList<>();
+    /**
+     * Position of the value in the array, or 0, the "none" choice
+     */
+    private static int indexOf(long[] values, long value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return 0;
+    }
 
-        // Filter for pending tasks
-        for (Task task : tasksList) {
-            if (!task.isCompleted()) {
-                pendingTasks.add(task);
+    /**
+     * Post a notification for each task now due, or one for all of them
+     */
+    private void showReminders(List<Task> tasks) {
+        NotificationManager notifications = getSystemService(NotificationManager.class);
+        // Creating a channel that exists does nothing
+        notifications.createNotificationChannel(
+                new NotificationChannel(REMINDER_CHANNEL, "Reminders", NotificationManager.IMPORTANCE_DEFAULT));
+        PendingIntent open = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class),
+                PendingIntent.FLAG_IMMUTABLE);
+        if (tasks.size() > MAX_REMINDER_NOTIFICATIONS) {
+            StringBuilder text = new StringBuilder();
+            for (Task task : tasks) {
+                text.append(task.getTaskText()).append('\n');
             }
+            notifications.notify(0, new Notification.Builder(this, REMINDER_CHANNEL)
+                    .setSmallIcon(R.drawable.ic_launcher_foreground)
+                    .setContentTitle(tasks.size() + " tasks are due")
+                    .setContentText(tasks.get(0).getTaskText() + " and " + (tasks.size() - 1) + " more")
+                    .setStyle(new Notification.BigTextStyle().bigText(text))
+                    .setContentIntent(open)
+                    .setAutoCancel(true)
+                    .build());
+            return;
         }
+        for (Task task : tasks) {
+            // One notification per task, replaced when its next occurrence is due
+            notifications.notify(Long.hashCode(task.getId()), new Notification.Builder(this, REMINDER_CHANNEL)
+                    .setSmallIcon(R.drawable.ic_launcher_foreground)
+                    .setContentTitle("Task due")
+                    .setContentText(task.getTaskText())
+                    .setContentIntent(open)
+                    .setAutoCancel(true)
+                    .build());
+        }
+    }
 
-        if (pendingTasks.isEmpty()) {
+    private void generateRandomTask() {
+        long started = PerfMetrics.GENERATE_RANDOM_TASK.start();
+        try {
+            pickRandomTask();
+        } finally {
+            PerfMetrics.GENERATE_RANDOM_TASK.stop(started);
+        }
+    }
+
+    private void pickRandomTask() {
+        if (taskPicker.isEmpty()) {
             Toast.makeText(this, "No pending tasks to choose from", Toast.LENGTH_SHORT).show();
             selectedTaskTextView.setText("Add some tasks to get started");
-            currentSelectedTask = null;
+            currentSelectedTaskId = 0;
             completeTaskBtn.setEnabled(false);
             return;
         }
 
-        // Generate random task
-        Random random = new Random();
-        int randomIndex = random.nextInt(pendingTasks.size());
-        currentSelectedTask = pendingTasks.get(randomIndex);
+        // Pick a random pending task, optionally favouring older ones
+        final Task selectedTask = weightedPicking
+                ? taskPicker.pickWeighted(System.currentTimeMillis())
+                : taskPicker.pickUniform();
+        currentSelectedTaskId = selectedTask.getId();
 
         // Update UI with animation
         selectedTaskTextView.animate()
@@ -185,7 +933,7 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
                 .withEndAction(new Runnable() {
                     @Override
                     public void run() {
-                        selectedTaskTextView.setText(currentSelectedTask.getTaskText());
+                        selectedTaskTextView.setText(selectedTask.getTaskText());
                         selectedTaskTextView.animate()
                                 .alpha(1f)
                                 .setDuration(150)
@@ -198,39 +946,251 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
     }
 
     private void markTaskAsCompleted() {
-        if (currentSelectedTask == null) {
+        // Look up the current version, it may have been deleted or changed since it was picked
+        Task selectedTask = tasksList.getById(currentSelectedTaskId);
+        if (selectedTask == null) {
             return;
         }
 
-        // Find the task in the list
-        for (int i = 0; i < tasksList.size(); i++) {
-            if (tasksList.get(i).equals(currentSelectedTask)) {
-                // Mark as completed - this will automatically set the completion timestamp
-                tasksList.get(i).setCompleted(true);
+        // A completed copy is swapped in, moving it to the completed partition, and stored
+        repository.setCompleted(new long[]{selectedTask.getId()}, true);
+
+        // Reset selected task
+        currentSelectedTaskId = 0;
+        selectedTaskTextView.setText("Task completed! Generate another one");
+        completeTaskBtn.setEnabled(false);
+
+        Toast.makeText(this, "Task marked as completed", Toast.LENGTH_SHORT).show();
+    }
+
+    private void toggleWeightedPicking() {
+        weightedPicking = !weightedPicking;
+        taskManager.setWeightedPicking(weightedPicking);
+        Toast.makeText(this, weightedPicking ? "Older tasks are now picked more often"
+                : "All tasks are now picked equally often", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Show the whole list, or the tasks matching the search box
+     */
+    private void showTasks() {
+        if (!tasksLoaded) {
+            // The preview is unfiltered; the query is applied once loading finishes
+            return;
+        }
+        if (searchQuery.isEmpty()) {
+            taskSearch.cancel();
+            shownTasks = tasksList;
+            taskAdapter.submitList(shownTasks);
+            return;
+        }
+        shownTasks = null;
+        taskSearch.search(searchQuery, tasksList, new TaskSearch.Listener() {
+            @Override
+            public void onSearchResults(String query, List<Task> results) {
+                taskAdapter.submitList(results);
+            }
+        });
+    }
+
+    /**
+     * Complete or reopen every selected task, saved as one write
+     */
+    private void setSelectedCompleted(boolean completed) {
+        long[] ids = taskAdapter.getSelectedIds();
+        int count = 0;
+        for (long id : ids) {
+            Task task = tasksList.getById(id);
+            if (task != null && task.isCompleted() != completed) {
+                count++;
+            }
+        }
+        taskAdapter.clearSelection();
+        if (count == 0) {
+            return;
+        }
+        // One transaction however many tasks changed
+        repository.setCompleted(ids, completed);
+
+        Toast.makeText(this, count + (completed ? " tasks marked as completed" : " tasks reopened"),
+                Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Show one confirmation dialog for deleting every selected task
+     */
+    private void showDeleteSelectedDialog() {
+        final long[] ids = taskAdapter.getSelectedIds();
+        if (ids.length == 0) {
+            return;
+        }
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Delete Tasks")
+                .setMessage("Are you sure you want to delete " + ids.length + " tasks?")
+                .setPositiveButton("Delete", (dialog, which) -> {
+                    deleteTasks(ids);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void deleteTasks(long[] ids) {
+        // Ids that went away while the dialog was open are skipped
+        int count = 0;
+        for (long id : ids) {
+            if (tasksList.getById(id) != null) {
+                count++;
+            }
+        }
+        taskAdapter.clearSelection();
+        if (count == 0) {
+            return;
+        }
+        // One transaction however many tasks were removed
+        repository.delete(ids);
+
+        Toast.makeText(this, count + " tasks deleted", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Undo the last change, or redo the last undone one, in the list and in storage
+     */
+    private void restoreVersion(boolean undo) {
+        taskAdapter.clearSelection();
+        if (undo) {
+            repository.undo();
+        } else {
+            repository.redo();
+        }
+    }
+
+    /**
+     * Follow a new version of the list: keep the picker and search index in
+     * step with it and show it. Called on the UI thread for every version the
+     * repository publishes, in order.
+     */
+    @Override
+    public void onTasksChanged(TaskRepository.Snapshot snapshot) {
+        if (isDestroyed()) {
+            return;
+        }
+        List<Task> oldList = shownTasks;
+        tasksList = snapshot.getTasks();
+        TaskBatch change = snapshot.getChange();
+        if (change == null) {
+            showLoadedTasks();
+        } else {
+            if (change.replacesWholeList()) {
+                taskPicker = new TaskPicker(tasksList);
+                taskSearch.reset(tasksList);
+            } else {
+                // A task whose status changed is both removed and added
+                for (Task task : change.getRemoved()) {
+                    taskPicker.remove(task.getId());
+                }
+                for (Task task : change.getAdded()) {
+                    taskPicker.update(task);
+                }
+                taskSearch.removeAll(change.getRemoved());
+                taskSearch.updateAll(change.getAdded());
+            }
+            showChange(oldList, change);
+        }
+        undoBtn.setEnabled(snapshot.canUndo());
+        redoBtn.setEnabled(snapshot.canRedo());
+    }
 
-                // Sort tasks to move this one to the appropriate position
-                sortTasks();
+    /**
+     * Swap the loading preview, or the list shown before, for the loaded list
+     */
+    private void showLoadedTasks() {
+        // Built by the loader the first time a list is shown, rebuilt when it is shown again
+        taskPicker = session.loadedPicker != null ? session.loadedPicker : new TaskPicker(tasksList);
+        session.loadedPicker = null;
+        taskSearch.reset(tasksList);
+        shownTasks = tasksList;
+        taskAdapter.setTasks(shownTasks);
+        taskAdapter.setSelectionEnabled(true);
+        loadingPreview.clear();
+        closePagedPreview();
+
+        tasksLoaded = true;
+        if (!searchQuery.isEmpty()) {
+            // Apply whatever was typed while loading
+            showTasks();
+        }
+        addTaskBtn.setEnabled(true);
+        generateTaskBtn.setEnabled(true);
+        updateEmptyState();
+        updateBackgroundForTaskStatus();
+        archiveExpiredTasks();
+    }
 
-                // Notify adapter of potential position changes
-                taskAdapter.notifyDataSetChanged();
+    /**
+     * Show the list after a change. Batches are shown with range
+     * notifications rather than a diff when the whole list is on screen; a
+     * single task is diffed, so a row changing partition animates as a move.
+     */
+    private void showChange(List<Task> oldList, TaskBatch change) {
+        boolean singleTask = change.getRemoved().size() <= 1 && change.getAdded().size() <= 1;
+        if (searchQuery.isEmpty() && oldList != null && !singleTask) {
+            shownTasks = tasksList;
+            taskAdapter.applyBatch(oldList, shownTasks, change);
+        } else {
+            showTasks();
+        }
 
-                // Save tasks to persistent storage
-                taskManager.saveTasks(tasksList);
+        // The picked task may have been completed or deleted
+        Task current = tasksList.getById(currentSelectedTaskId);
+        if (currentSelectedTaskId != 0 && (current == null || current.isCompleted())) {
+            currentSelectedTaskId = 0;
+            selectedTaskTextView.setText("Your random task will appear here");
+            completeTaskBtn.setEnabled(false);
+        }
 
-                // Reset selected task
-                currentSelectedTask = null;
-                selectedTaskTextView.setText("Task completed! Generate another one");
-                completeTaskBtn.setEnabled(false);
-                updateBackgroundForTaskStatus();
+        updateEmptyState();
+        updateBackgroundForTaskStatus();
+    }
 
-                Toast.makeText(this, "Task marked as completed", Toast.LENGTH_SHORT).show();
-                break;
+    /**
+     * Move completed tasks older than the configured age out of the list and
+     * into the archive, in the background
+     */
+    private void archiveExpiredTasks() {
+        final TaskIndex snapshot = tasksList;
+        final TaskManager store = taskManager;
+        final TaskRepository list = repository;
+        archiveExecutor.execute(() -> {
+            try {
+                List<Task> archived = store.archiveExpiredTasks(snapshot, System.currentTimeMillis());
+                if (archived.isEmpty()) {
+                    return;
+                }
+                // Tasks changed since they were archived stay in the list
+                list.removeArchived(archived).get();
+                store.confirmArchived();
+            } catch (IOException | ExecutionException e) {
+                Log.w("MainActivity", "Failed to archive tasks", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                // Closing; the archived tasks are removed from the list on the next launch
+                Log.d("MainActivity", "Archiving interrupted by shutdown");
             }
+        });
+    }
+
+    private void closePagedPreview() {
+        if (pagedPreview != null) {
+            pagedPreview.close();
+            pagedPreview = null;
+            pageExecutor.shutdown();
         }
     }
 
     private void updateEmptyState() {
-        if (tasksList.isEmpty()) {
+        boolean isEmpty = tasksLoaded ? tasksList.isEmpty() : taskAdapter.getItemCount() == 0;
+        if (isEmpty) {
             emptyTasksTextView.setVisibility(View.VISIBLE);
             tasksRecyclerView.setVisibility(View.GONE);
         } else {
@@ -240,15 +1200,8 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
     }
 
     private void updateBackgroundForTaskStatus() {
-        boolean hasCompletedTasks = false;
-
-        // Check if there are any completed tasks
-        for (Task task : tasksList) {
-            if (task.isCompleted()) {
-                hasCompletedTasks = true;
-                break;
-            }
-        }
+        // The completed partition is non-empty if there are any completed tasks
+        boolean hasCompletedTasks = tasksList.completedCount() > 0;
 
         // Use direct color setting with the content view
         View rootView = findViewById(android.R.id.content).getRootView();
@@ -264,29 +1217,86 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
         }
     }
 
+    /**
+     * Show completions per day and week, the current streak and how long tasks
+     * take, all from the counters in {@link TaskStats}
+     */
+    private void showStatsDialog() {
+        TaskStats stats = taskManager.getStats();
+        long today = stats.dayOf(System.currentTimeMillis());
+        DateTimeFormatter dayFormat = DateTimeFormatter.ofPattern("EEE d MMM", Locale.getDefault());
+        StringBuilder text = new StringBuilder();
+        text.append("Completed: ").append(stats.getCompletions()).append(" tasks\n");
+        int streak = stats.currentStreak(today);
+        text.append("Current streak: ").append(streak).append(streak == 1 ? " day\n" : " days\n");
+        long median = stats.timeToCompleteQuantile(0.5);
+        if (median >= 0) {
+            text.append("Median time to complete: ").append(formatDuration(median)).append('\n');
+            text.append("90% completed within: ").append(formatDuration(stats.timeToCompleteQuantile(0.9))).append('\n');
+        }
+
+        int[] perDay = stats.completionsPerDay(today - 6, 7);
+        text.append("\nLast 7 days\n");
+        for (int i = 0; i < perDay.length; i++) {
+            appendBar(text, LocalDate.ofEpochDay(today - 6 + i).format(dayFormat), perDay[i], perDay);
+        }
+        long thisWeek = TaskStats.weekOf(today);
+        int[] perWeek = stats.completionsPerWeek(thisWeek - 7, 8);
+        text.append("\nLast 8 weeks\n");
+        for (int i = 0; i < perWeek.length; i++) {
+            appendBar(text, LocalDate.ofEpochDay(TaskStats.firstDayOf(thisWeek - 7 + i)).format(dayFormat),
+                    perWeek[i], perWeek);
+        }
+
+        View view = LayoutInflater.from(this).inflate(R.layout.dialog_stats, null);
+        ((TextView) view.findViewById(R.id.statsTextView)).setText(text);
+        new MaterialAlertDialogBuilder(this)
+                .setTitle("Statistics")
+                .setView(view)
+                .setPositiveButton("Close", null)
+                .show();
+    }
+
+    private static void appendBar(StringBuilder text, String label, int count, int[] all) {
+        int max = 1;
+        for (int value : all) {
+            max = Math.max(max, value);
+        }
+        text.append(String.format(Locale.getDefault(), "%-11s", label));
+        for (int i = 0, length = count * 16 / max; i < length; i++) {
+            text.append('\u2588');
+        }
+        text.append(' ').append(count).append('\n');
+    }
+
+    private static String formatDuration(long millis) {
+        long minutes = millis / 60_000;
+        if (minutes < 60) {
+            return minutes < 1 ? "under a minute" : minutes + " min";
+        }
+        if (minutes < 48 * 60) {
+            return String.format(Locale.getDefault(), "%.1f hours", minutes / 60.0);
+        }
+        return String.format(Locale.getDefault(), "%.1f days", minutes / (24 * 60.0));
+    }
+
     /**
      * Show a confirmation dialog for clearing all tasks
      */
     private void showClearAllTasksDialog() {
         new MaterialAlertDialogBuilder(this)
                 .setTitle("Clear All Tasks")
-                .setMessage("Are you sure you want to delete all tasks? This action cannot be undone.")
+                .setMessage("Are you sure you want to delete all tasks? You can bring them back with UNDO.")
                 .setPositiveButton("Clear All", (dialog, which) -> {
-                    // Clear all tasks
-                    tasksList.clear();
-                    taskAdapter.notifyDataSetChanged();
-
-                    // Clear tasks from storage
-                    taskManager.clearTasks();
+                    // Clear all tasks in the list and in storage, keeping the old version for undo
+                    taskAdapter.clearSelection();
+                    repository.clear();
 
                     // Reset selected task
-                    currentSelectedTask = null;
+                    currentSelectedTaskId = 0;
                     selectedTaskTextView.setText("Your random task will appear here");
                     completeTaskBtn.setEnabled(false);
 
-                    // Update UI
-                    updateEmptyState();
-
                     Toast.makeText(MainActivity.this, "All tasks cleared", Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("Cancel", null)
@@ -296,71 +1306,170 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.TaskI
     /**
      * Show confirmation dialog for deleting a single task
      */
-    private void showDeleteTaskDialog(int position) {
-        Task taskToDelete = tasksList.get(position);
-
+    private void showDeleteTaskDialog(Task taskToDelete) {
         new MaterialAlertDialogBuilder(this)
                 .setTitle("Delete Task")
                 .setMessage("Are you sure you want to delete this task?")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    deleteTask(position);
+                    deleteTask(taskToDelete);
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
     /**
-     * Delete a task at the specified position
+     * Delete the given task
      */
-    private void deleteTask(int position) {
+    private void deleteTask(Task rowTask) {
+        // Look up the current version, it may be gone or have changed while the dialog was open
+        Task task = tasksList.getById(rowTask.getId());
+        if (task == null) {
+            return;
+        }
+        // Remove it from the list and from persistent storage
+        repository.delete(new long[]{task.getId()});
+
         // Check if it's the currently selected task
-        if (currentSelectedTask != null && currentSelectedTask.equals(tasksList.get(position))) {
-            currentSelectedTask = null;
+        if (task.getId() == currentSelectedTaskId) {
+            currentSelectedTaskId = 0;
             selectedTaskTextView.setText("Your random task will appear here");
             completeTaskBtn.setEnabled(false);
         }
 
-        // Remove from list
-        tasksList.remove(position);
-        taskAdapter.notifyItemRemoved(position);
-
-        // Save updated list
-        taskManager.saveTasks(tasksList);
-
-        // Update UI
-        updateEmptyState();
-
         Toast.makeText(this, "Task deleted", Toast.LENGTH_SHORT).show();
     }
 
     @Override
-    public void onTaskCheckChanged(int position, boolean isChecked) {
-        // Update completion status - this will set the completion timestamp automatically
-        tasksList.get(position).setCompleted(isChecked);
-
-        // Sort tasks after completion status changes
-        sortTasks();
+    public void onTaskCheckChanged(Task rowTask, boolean isChecked) {
+        if (!tasksLoaded) {
+            // Only a preview is on screen, undo the tap instead of losing it on reload.
+            // Preview rows may not have ids yet; rebinding them all only touches what is visible.
+            taskAdapter.notifyItemRangeChanged(0, taskAdapter.getItemCount());
+            return;
+        }
 
-        // Notify adapter of potential position changes
-        taskAdapter.notifyDataSetChanged();
+        // The row may be stale if the task changed again before the adapter caught up
+        Task oldTask = tasksList.getById(rowTask.getId());
+        if (oldTask == null || oldTask.isCompleted() == isChecked) {
+            return;
+        }
 
-        // Save tasks to persistent storage
-        taskManager.saveTasks(tasksList);
+        // Swap in an updated copy, moving it to its new partition, and store the status change
+        repository.setCompleted(new long[]{oldTask.getId()}, isChecked);
 
         // If this is the currently selected task, reset selection
-        if (currentSelectedTask != null && currentSelectedTask.equals(tasksList.get(position))) {
-            currentSelectedTask = null;
+        if (oldTask.getId() == currentSelectedTaskId) {
+            currentSelectedTaskId = 0;
             selectedTaskTextView.setText("Task completed! Generate another one");
             completeTaskBtn.setEnabled(false);
         }
+    }
 
-        updateBackgroundForTaskStatus();
+    @Override
+    public void onSelectionChanged(int selectedCount) {
+        selectionBar.setVisibility(selectedCount > 0 ? View.VISIBLE : View.GONE);
+        selectionCountTextView.setText(selectedCount + " selected");
+        if (selectedCount == 0) {
+            // Deselecting the last row leaves selection mode
+            taskAdapter.clearSelection();
+        }
     }
 
     @Override
-    public void onDeleteTask(int position) {
+    public void onDeleteTask(Task task) {
+        if (!tasksLoaded) {
+            return;
+        }
+
         // Show confirmation dialog before deleting
-        showDeleteTaskDialog(position);
+        showDeleteTaskDialog(task);
         updateBackgroundForTaskStatus();
     }
-}
\ No newline at end of file
+
+    /**
+     * An open list: its store, its repository and the scheduler following it.
+     * Recurrences and reminders keep running while another list is shown; the
+     * screen only listens to the list it shows.
+     */
+    private final class ListSession implements TaskScheduler.Callback {
+        final String id;
+        final TaskManager store;
+        final TaskRepository repository;
+        final TaskScheduler scheduler;
+        final Runnable wake;
+        // Passes versions on to the screen, unless another list was shown meanwhile
+        final TaskRepository.Listener display;
+        TaskLoader loader;
+        // Whether the repository has been handed the loaded list
+        boolean loaded;
+        // Built by the loader with the list, used the first time it is shown
+        TaskPicker loadedPicker;
+
+        ListSession(String id) {
+            this.id = id;
+            // Columnar snapshots can be paged from disk
+            store = new TaskManager(MainActivity.this, taskLists.dirOf(id), TaskJournal.SnapshotFormat.COLUMNAR);
+            repository = new TaskRepository(store);
+            // Counted on the writer thread as changes are made, saved with the tasks
+            repository.addListener(store.getStats(), Runnable::run);
+            // Counts for the manifest, saved when the activity stops
+            repository.addListener(taskLists.countsOf(id), Runnable::run);
+            // What the next sync sends, on the writer thread so it follows the list exactly
+            repository.addListener(store.getSyncState(), Runnable::run);
+            // Follows the list on the UI thread, where it is also woken
+            scheduler = new TaskScheduler(Clock.systemUTC(), taskLists.get(id).getRemindedUntil(), this);
+            repository.addListener(scheduler, MainActivity.this::runOnUiThread);
+            wake = scheduler::advance;
+            display = snapshot -> {
+                if (session == this) {
+                    onTasksChanged(snapshot);
+                }
+            };
+        }
+
+        /**
+         * Stop loading and scheduling. Queued changes are written in the
+         * background, without holding up the UI thread, and then the list's
+         * threads are stopped.
+         */
+        void close() {
+            final TaskLoader stopping = loader;
+            if (stopping != null) {
+                stopping.cancel();
+            }
+            schedulerHandler.removeCallbacks(wake);
+            repository.removeListener(scheduler);
+            repository.removeListener(display);
+            taskLists.setRemindedUntil(id, scheduler.getRemindedUntil());
+            archiveExecutor.execute(() -> {
+                repository.flush();
+                repository.shutdown();
+                // A load under way still reads the store
+                if (stopping != null) {
+                    stopping.awaitStopped();
+                }
+                store.close();
+                saveTaskLists();
+            });
+        }
+
+        @Override
+        public void onOccurrencesDue(long[] ids, long now) {
+            // Completed recurring tasks re-enter the pending list
+            repository.recur(ids, now);
+        }
+
+        @Override
+        public void onRemindersDue(List<Task> tasks) {
+            showReminders(tasks);
+        }
+
+        @Override
+        public void onWakeTimeChanged(long wakeAt) {
+            schedulerHandler.removeCallbacks(wake);
+            if (wakeAt != Long.MAX_VALUE) {
+                schedulerHandler.postDelayed(wake, Math.max(wakeAt - System.currentTimeMillis(), 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.whatdoidonow;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.material.button.MaterialButton;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Hidden debug screen listing {@link PerfMetrics}. Opened by long-pressing
+ * the heading in builds with metrics switched on.
+ *
+ * "Dump" writes the same numbers as JSON to {@code metrics.json} in the
+ * app's external files directory and to logcat under the tag PerfMetrics:
+ * {@code adb pull /sdcard/Android/data/com.example.whatdoidonow/files/metrics.json}.
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final String TAG = "PerfMetrics";
+    private static final String DUMP_FILE = "metrics.json";
+
+    private TextView metricsTextView;
+    private MaterialButton allocationsBtn;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        metricsTextView = findViewById(R.id.metricsTextView);
+        allocationsBtn = findViewById(R.id.allocationsBtn);
+        MaterialButton refreshBtn = findViewById(R.id.refreshMetricsBtn);
+        MaterialButton resetBtn = findViewById(R.id.resetMetricsBtn);
+        MaterialButton dumpBtn = findViewById(R.id.dumpMetricsBtn);
+
+        refreshBtn.setOnClickListener(v -> showMetrics());
+        resetBtn.setOnClickListener(v -> {
+            PerfMetrics.reset();
+            showMetrics();
+        });
+        dumpBtn.setOnClickListener(v -> dumpMetrics());
+        allocationsBtn.setOnClickListener(v -> toggleAllocationCounting());
+
+        showMetrics();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        StringBuilder text = new StringBuilder();
+        if (!PerfMetrics.ENABLED) {
+            text.append("Metrics are switched off in this build.\n\n");
+        }
+        text.append(String.format(Locale.US, "%-18s %7s %8s %8s %8s %8s %7s%n",
+                "", "calls", "p50 us", "p90 us", "p99 us", "max us", "allocs"));
+        for (PerfMetrics.Summary summary : PerfMetrics.summaries()) {
+            long allocations = summary.allocationsPerCall();
+            text.append(String.format(Locale.US, "%-18s %7d %8d %8d %8d %8d %7s%n",
+                    summary.name, summary.count, summary.p50Nanos / 1000, summary.p90Nanos / 1000,
+                    summary.p99Nanos / 1000, summary.maxNanos / 1000,
+                    allocations < 0 ? "-" : Long.toString(allocations)));
+        }
+        metricsTextView.setText(text);
+        allocationsBtn.setText(PerfMetrics.isCountingAllocations() ? "Stop counting allocations" : "Count allocations");
+    }
+
+    /**
+     * Allocation counting slows every allocation down, so it only runs on request
+     */
+    @SuppressWarnings("deprecation")
+    private void toggleAllocationCounting() {
+        if (PerfMetrics.isCountingAllocations()) {
+            PerfMetrics.setAllocationProbe(null);
+            Debug.stopAllocCounting();
+        } else {
+            Debug.startAllocCounting();
+            PerfMetrics.setAllocationProbe(Debug::getThreadAllocCount);
+        }
+        showMetrics();
+    }
+
+    private void dumpMetrics() {
+        try {
+            StringWriter json = new StringWriter();
+            PerfMetrics.writeJson(json, System.currentTimeMillis());
+
+            File dir = getExternalFilesDir(null);
+            File file = new File(dir != null ? dir : getFilesDir(), DUMP_FILE);
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                out.write(json.toString());
+            }
+            Log.i(TAG, json.toString());
+            Toast.makeText(this, "Metrics written to " + file.getPath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write metrics", e);
+            Toast.makeText(this, "Failed to write metrics", Toast.LENGTH_SHORT).show();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.whatdoidonow;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A list over a {@link TaskPageSource} that keeps only a few pages of tasks
+ * in memory.
+ *
+ * Reading a position loads its page and the pages next to it in the
+ * background; until a page has arrived its positions read as null. Pages are
+ * evicted least recently read first, so however long the source is, at most
+ * {@code maxPages * pageSize} tasks are held. Loads for pages the reader has
+ * since scrolled away from are skipped.
+ *
+ * Confined to the thread the callbacks are delivered on, usually the main
+ * thread; only {@link TaskPageSource#load} runs elsewhere.
+ */
+public class PagedTaskList extends AbstractList<Task> implements RandomAccess {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MAX_PAGES = 8;
+    // Pages loaded ahead on each side of the one being read
+    public static final int DEFAULT_PREFETCH_PAGES = 1;
+
+    public interface Listener {
+        /**
+         * Positions {@code [from, from + count)} can now be read
+         */
+        void onPageLoaded(int from, int count);
+
+        /**
+         * A page could not be loaded; reading it again retries
+         */
+        void onPageLoadFailed(IOException error);
+    }
+
+    private final TaskPageSource source;
+    private final int size;
+    private final int pageSize;
+    private final int maxPages;
+    private final int prefetchPages;
+    private final Executor loadExecutor;
+    private final Executor callbackExecutor;
+    private final Map<Integer, List<Task>> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    private Listener listener;
+    // Written on the callback thread, read by pending loads to skip stale pages
+    private volatile int lastReadPage;
+    private volatile boolean closed;
+    private int loadCount;
+
+    public PagedTaskList(TaskPageSource source, Executor loadExecutor, Executor callbackExecutor) {
+        this(source, loadExecutor, callbackExecutor, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, DEFAULT_PREFETCH_PAGES);
+    }
+
+    public PagedTaskList(TaskPageSource source, Executor loadExecutor, Executor callbackExecutor,
+                         int pageSize, final int maxPages, int prefetchPages) {
+        if (maxPages < 2 * prefetchPages + 1) {
+            throw new IllegalArgumentException("maxPages must hold the prefetch window");
+        }
+        this.source = source;
+        this.size = source.size();
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.prefetchPages = prefetchPages;
+        this.loadExecutor = loadExecutor;
+        this.callbackExecutor = callbackExecutor;
+        // Access order, so the eldest entry is the least recently read page
+        this.pages = new LinkedHashMap<Integer, List<Task>>(maxPages + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Task>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * The task at the position, or null while its page is being loaded
+     */
+    @Override
+    public Task get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Position " + index + " of " + size);
+        }
+        int page = index / pageSize;
+        lastReadPage = page;
+        List<Task> tasks = pages.get(page);
+        // Nearest pages first, so the one being read is requested before its neighbours
+        request(page);
+        for (int distance = 1; distance <= prefetchPages; distance++) {
+            request(page + distance);
+            request(page - distance);
+        }
+        return tasks == null ? null : tasks.get(index - page * pageSize);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The id of the task at the position without loading its page, see
+     * {@link TaskPageSource#getId}
+     */
+    public long getId(int index) {
+        return source.getId(index);
+    }
+
+    /**
+     * Whether the position can be read without waiting
+     */
+    public boolean isLoaded(int index) {
+        return pages.containsKey(index / pageSize);
+    }
+
+    /**
+     * Pages currently held in memory
+     */
+    public int getResidentPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Pages read from the source so far, including evicted ones
+     */
+    public int getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Drop every page and ignore loads still in flight
+     */
+    public void close() {
+        closed = true;
+        pages.clear();
+    }
+
+    private void request(final int page) {
+        final int from = page * pageSize;
+        if (page < 0 || from >= size || closed || pages.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+        final int to = Math.min(from + pageSize, size);
+        loadExecutor.execute(() -> {
+            if (closed || Math.abs(page - lastReadPage) > maxPages / 2) {
+                // Scrolled past before the load started
+                callbackExecutor.execute(() -> loading.remove(page));
+                return;
+            }
+            List<Task> tasks;
+            try {
+                tasks = source.load(from, to);
+            } catch (final IOException e) {
+                callbackExecutor.execute(() -> {
+                    loading.remove(page);
+                    if (!closed && listener != null) {
+                        listener.onPageLoadFailed(e);
+                    }
+                });
+                return;
+            }
+            final List<Task> loaded = tasks;
+            callbackExecutor.execute(() -> {
+                loading.remove(page);
+                if (closed) {
+                    return;
+                }
+                loadCount++;
+                // Putting it makes it the most recent page, evicting the eldest if full
+                pages.put(page, loaded);
+                if (listener != null) {
+                    listener.onPageLoaded(from, to - from);
+                }
+            });
+        });
+    }
+}
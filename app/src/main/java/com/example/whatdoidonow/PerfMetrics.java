@@ -0,0 +1,269 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Latency histograms, call counts and optional allocation counts for the
+ * app's hot paths.
+ *
+ * A timed section is {@code long started = TIMER.start(); ...; TIMER.stop(started);}.
+ * Both calls test {@link #ENABLED} first, a compile-time constant, so with
+ * metrics switched off (release builds unless built with
+ * {@code -PperfMetrics}) they do nothing and are removed by the compiler.
+ *
+ * Latencies go into log-linear buckets, eight per power of two, so
+ * percentiles are accurate to about 12% at any scale without storing
+ * samples. Recording takes an uncontended lock per call.
+ */
+public final class PerfMetrics {
+    public static final boolean ENABLED = BuildConfig.PERF_METRICS;
+
+    private static final List<Timer> TIMERS = new ArrayList<>();
+
+    public static final Timer LOAD_TASKS = register("loadTasks");
+    public static final Timer SAVE_TASKS = register("saveTasks");
+    public static final Timer FLUSH_WRITES = register("flushWrites");
+    // Ordering the loaded tasks for display, what sortTasks used to do
+    public static final Timer BUILD_INDEX = register("buildIndex");
+    public static final Timer DIFF_LIST = register("diffList");
+    public static final Timer GENERATE_RANDOM_TASK = register("generateRandomTask");
+    public static final Timer BIND_ROW = register("onBindViewHolder");
+    // Task rows inflated on the UI thread because none inflated ahead was ready
+    public static final Timer INFLATE_ROW = register("inflateRow");
+    public static final Timer SEARCH = register("search");
+    public static final Timer SYNC = register("sync");
+
+    /**
+     * Objects allocated so far by the calling thread
+     */
+    public interface AllocationProbe {
+        long threadAllocations();
+    }
+
+    private static volatile AllocationProbe allocationProbe;
+
+    private PerfMetrics() {
+    }
+
+    private static Timer register(String name) {
+        Timer timer = new Timer(name);
+        TIMERS.add(timer);
+        return timer;
+    }
+
+    /**
+     * Count allocations of timed sections with the given probe, or stop counting with null
+     */
+    public static void setAllocationProbe(AllocationProbe probe) {
+        allocationProbe = probe;
+    }
+
+    public static boolean isCountingAllocations() {
+        return allocationProbe != null;
+    }
+
+    public static List<Timer> timers() {
+        return Collections.unmodifiableList(TIMERS);
+    }
+
+    public static List<Summary> summaries() {
+        List<Summary> summaries = new ArrayList<>(TIMERS.size());
+        for (Timer timer : TIMERS) {
+            summaries.add(timer.summary());
+        }
+        return summaries;
+    }
+
+    public static void reset() {
+        for (Timer timer : TIMERS) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * Write every timer's summary as one JSON object
+     */
+    public static void writeJson(Writer out, long timestampMillis) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setIndent("  ");
+        writer.beginObject();
+        writer.name("enabled").value(ENABLED);
+        writer.name("timestamp").value(timestampMillis);
+        writer.name("timers");
+        writer.beginArray();
+        for (Summary summary : summaries()) {
+            writer.beginObject();
+            writer.name("name").value(summary.name);
+            writer.name("count").value(summary.count);
+            writer.name("totalMicros").value(summary.totalNanos / 1000);
+            writer.name("meanMicros").value(summary.meanNanos() / 1000);
+            writer.name("p50Micros").value(summary.p50Nanos / 1000);
+            writer.name("p90Micros").value(summary.p90Nanos / 1000);
+            writer.name("p99Micros").value(summary.p99Nanos / 1000);
+            writer.name("maxMicros").value(summary.maxNanos / 1000);
+            if (summary.allocationSamples > 0) {
+                writer.name("allocationsPerCall").value(summary.allocationsPerCall());
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    public static final class Timer {
+        private static final int BUCKETS = LogBuckets.COUNT;
+
+        private final String name;
+        // Only touched while an allocation probe is set
+        private final ThreadLocal<long[]> allocationsAtStart = new ThreadLocal<>();
+
+        // Guarded by this
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long allocations;
+        private long allocationSamples;
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long start() {
+            if (!ENABLED) {
+                return 0;
+            }
+            AllocationProbe probe = allocationProbe;
+            if (probe != null) {
+                long[] start = allocationsAtStart.get();
+                if (start == null) {
+                    start = new long[1];
+                    allocationsAtStart.set(start);
+                }
+                start[0] = probe.threadAllocations();
+            }
+            return System.nanoTime();
+        }
+
+        public void stop(long startNanos) {
+            if (!ENABLED) {
+                return;
+            }
+            long elapsed = System.nanoTime() - startNanos;
+            AllocationProbe probe = allocationProbe;
+            long allocated = -1;
+            long[] start = probe != null ? allocationsAtStart.get() : null;
+            // Negative if the probe was set after this section started
+            if (start != null && start[0] >= 0) {
+                allocated = probe.threadAllocations() - start[0];
+                start[0] = -1;
+            }
+            record(elapsed, allocated);
+        }
+
+        /**
+         * Record one call; {@code allocated} is -1 if it was not counted
+         */
+        synchronized void record(long nanos, long allocated) {
+            buckets[bucketOf(Math.max(nanos, 0))]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (allocated >= 0) {
+                allocations += allocated;
+                allocationSamples++;
+            }
+        }
+
+        synchronized void reset() {
+            Arrays.fill(buckets, 0);
+            count = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+            allocations = 0;
+            allocationSamples = 0;
+        }
+
+        public synchronized Summary summary() {
+            return new Summary(name, count, totalNanos, maxNanos,
+                    percentile(0.50), percentile(0.90), percentile(0.99), allocations, allocationSamples);
+        }
+
+        /**
+         * Upper bound of the bucket holding the given fraction of calls, capped at the maximum
+         */
+        private long percentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return i + 1 < BUCKETS ? Math.min(lowerBound(i + 1) - 1, maxNanos) : maxNanos;
+                }
+            }
+            return maxNanos;
+        }
+
+        static int bucketOf(long value) {
+            return LogBuckets.bucketOf(value);
+        }
+
+        static long lowerBound(int bucket) {
+            return LogBuckets.lowerBound(bucket);
+        }
+    }
+
+    /**
+     * A timer's state at one point in time
+     */
+    public static final class Summary {
+        public final String name;
+        public final long count;
+        public final long totalNanos;
+        public final long maxNanos;
+        public final long p50Nanos;
+        public final long p90Nanos;
+        public final long p99Nanos;
+        final long allocations;
+        final long allocationSamples;
+
+        Summary(String name, long count, long totalNanos, long maxNanos, long p50Nanos, long p90Nanos,
+                long p99Nanos, long allocations, long allocationSamples) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.allocations = allocations;
+            this.allocationSamples = allocationSamples;
+        }
+
+        public long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Mean objects allocated per counted call, or -1 if none were counted
+         */
+        public long allocationsPerCall() {
+            return allocationSamples == 0 ? -1 : allocations / allocationSamples;
+        }
+    }
+}
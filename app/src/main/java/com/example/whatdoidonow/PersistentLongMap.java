@@ -0,0 +1,399 @@
+package com.example.whatdoidonow;
+
+/**
+ * Immutable hash map from primitive long keys to objects, a hash array
+ * mapped trie.
+ *
+ * Each level of the trie consumes six bits of the key's hash and stores only
+ * its occupied children, found with a 64-bit bitmap. Updates copy the path
+ * from the root to the changed entry, at most eleven small arrays, and
+ * return a new map that shares everything else with the old one. Keeping
+ * many versions alive therefore costs memory in proportion to what changed
+ * between them, and {@link #diff} finds those changes without visiting the
+ * shared parts.
+ *
+ * The hash is a bijection of the key, so two keys never collide on the full
+ * hash and no collision buckets are needed.
+ */
+public final class PersistentLongMap<V> {
+    private static final int BITS = 6;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentLongMap<Object> EMPTY = new PersistentLongMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return (PersistentLongMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) lookup(root, key);
+    }
+
+    private static Object lookup(Node root, long key) {
+        long hash = hash(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            long bit = 1L << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.children[node.index(bit)];
+            if (child instanceof Entry) {
+                Entry entry = (Entry) child;
+                return entry.key == key ? entry.value : null;
+            }
+            node = (Node) child;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * A map with the key mapped to the value, or this map if it already is
+     */
+    public PersistentLongMap<V> put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        V previous = get(key);
+        if (previous == value) {
+            return this;
+        }
+        Entry entry = new Entry(key, hash(key), value);
+        Node newRoot = root == null ? Node.of(entry, null) : root.put(entry, null);
+        return new PersistentLongMap<>(newRoot, previous == null ? size + 1 : size);
+    }
+
+    /**
+     * A map without the key, or this map if it has no such key
+     */
+    public PersistentLongMap<V> remove(long key) {
+        if (get(key) == null) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        Object newRoot = root.remove(key, hash(key));
+        // The root stays a node even when a single entry is left in it
+        return new PersistentLongMap<>(newRoot instanceof Entry ? Node.of((Entry) newRoot, null) : (Node) newRoot, size - 1);
+    }
+
+    /**
+     * A builder starting from this map's contents
+     */
+    public Builder<V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    /**
+     * Visit every entry, in no particular order
+     */
+    public void forEach(LongObjectMap.Visitor<? super V> visitor) {
+        visitAll(root, visitor);
+    }
+
+    public interface DiffVisitor<V> {
+        /**
+         * A key whose value differs; {@code oldValue} is null if the key was
+         * added and {@code newValue} is null if it was removed
+         */
+        void visit(long key, V oldValue, V newValue);
+    }
+
+    /**
+     * Report every key whose value differs between this map and {@code other},
+     * skipping subtrees the two share. Costs O(changes) paths when one map was
+     * derived from the other.
+     */
+    public void diff(PersistentLongMap<V> other, DiffVisitor<? super V> visitor) {
+        diff(root, other.root, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void diff(Object from, Object to, DiffVisitor<? super V> visitor) {
+        if (from == to) {
+            return;
+        }
+        if (from == null) {
+            visitAll(to, (key, value) -> visitor.visit(key, null, (V) value));
+            return;
+        }
+        if (to == null) {
+            visitAll(from, (key, value) -> visitor.visit(key, (V) value, null));
+            return;
+        }
+        if (from instanceof Node && to instanceof Node) {
+            Node fromNode = (Node) from;
+            Node toNode = (Node) to;
+            long bits = fromNode.bitmap | toNode.bitmap;
+            while (bits != 0) {
+                long bit = Long.lowestOneBit(bits);
+                bits &= ~bit;
+                diff(fromNode.child(bit), toNode.child(bit), visitor);
+            }
+            return;
+        }
+        if (from instanceof Entry && to instanceof Entry && ((Entry) from).key == ((Entry) to).key) {
+            visitor.visit(((Entry) from).key, (V) ((Entry) from).value, (V) ((Entry) to).value);
+            return;
+        }
+        // Shapes differ, at most one side is a subtree: compare it entry by entry with the other side
+        if (from instanceof Entry) {
+            final Entry entry = (Entry) from;
+            V newValue = (V) find(to, entry);
+            if (newValue != entry.value) {
+                visitor.visit(entry.key, (V) entry.value, newValue);
+            }
+            visitAll(to, (key, value) -> {
+                if (key != entry.key) {
+                    visitor.visit(key, null, (V) value);
+                }
+            });
+        } else {
+            final Entry entry = (Entry) to;
+            V oldValue = (V) find(from, entry);
+            if (oldValue != entry.value) {
+                visitor.visit(entry.key, oldValue, (V) entry.value);
+            }
+            visitAll(from, (key, value) -> {
+                if (key != entry.key) {
+                    visitor.visit(key, (V) value, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * The value stored under the entry's key somewhere inside {@code subtree}, or null
+     */
+    private static Object find(Object subtree, Entry entry) {
+        if (subtree instanceof Entry) {
+            return ((Entry) subtree).key == entry.key ? ((Entry) subtree).value : null;
+        }
+        if (subtree == null) {
+            return null;
+        }
+        Node node = (Node) subtree;
+        return find(node.child(1L << ((entry.hash >>> node.shift) & MASK)), entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void visitAll(Object subtree, LongObjectMap.Visitor<? super V> visitor) {
+        if (subtree instanceof Entry) {
+            visitor.visit(((Entry) subtree).key, (V) ((Entry) subtree).value);
+        } else if (subtree != null) {
+            for (Object child : ((Node) subtree).children) {
+                visitAll(child, visitor);
+            }
+        }
+    }
+
+    /**
+     * Murmur3's 64-bit finalizer: invertible, and spreads sequential ids across the trie
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Collects many entries at once. Nodes the builder created itself are
+     * updated in place instead of being copied on every put, which makes
+     * building a large map several times cheaper than a chain of
+     * {@link PersistentLongMap#put} calls. Confined to one thread.
+     */
+    public static final class Builder<V> {
+        private Node root;
+        private int size;
+        // Marks the nodes this builder may still change; replaced on build so the built map stays immutable
+        private Owner owner = new Owner();
+
+        public Builder() {
+            this(null, 0);
+        }
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        public Builder<V> put(long key, V value) {
+            if (value == null) {
+                throw new NullPointerException("Null values are not supported");
+            }
+            Entry entry = new Entry(key, hash(key), value);
+            if (root == null) {
+                root = Node.of(entry, owner);
+                size = 1;
+                return this;
+            }
+            owner.replaced = false;
+            root = root.put(entry, owner);
+            if (!owner.replaced) {
+                size++;
+            }
+            return this;
+        }
+
+        public PersistentLongMap<V> build() {
+            owner = new Owner();
+            return size == 0 ? PersistentLongMap.<V>empty() : new PersistentLongMap<V>(root, size);
+        }
+    }
+
+    /**
+     * Identifies a builder's nodes, and tells it whether its last put replaced an entry
+     */
+    private static final class Owner {
+        boolean replaced;
+    }
+
+    private static final class Entry {
+        final long key;
+        final long hash;
+        final Object value;
+
+        Entry(long key, long hash, Object value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private static final class Node {
+        // Hash bits this node consumes start at shift
+        final int shift;
+        // Only ever changed in place by the builder that owns the node, before it is published
+        long bitmap;
+        // One Entry or Node per set bit, in bit order
+        Object[] children;
+        final Owner owner;
+
+        Node(int shift, long bitmap, Object[] children, Owner owner) {
+            this.shift = shift;
+            this.bitmap = bitmap;
+            this.children = children;
+            this.owner = owner;
+        }
+
+        static Node of(Entry entry, Owner owner) {
+            return new Node(0, 1L << (entry.hash & MASK), new Object[]{entry}, owner);
+        }
+
+        int index(long bit) {
+            return Long.bitCount(bitmap & (bit - 1));
+        }
+
+        Object child(long bit) {
+            return (bitmap & bit) == 0 ? null : children[index(bit)];
+        }
+
+        /**
+         * This subtree with the entry added or replaced. Nodes owned by
+         * {@code owner}, if not null, are updated in place rather than copied.
+         */
+        Node put(Entry entry, Owner owner) {
+            long bit = 1L << ((entry.hash >>> shift) & MASK);
+            int index = index(bit);
+            Object[] updated;
+            if ((bitmap & bit) == 0) {
+                updated = new Object[children.length + 1];
+                System.arraycopy(children, 0, updated, 0, index);
+                updated[index] = entry;
+                System.arraycopy(children, index, updated, index + 1, children.length - index);
+            } else {
+                Object child = children[index];
+                Object replacement;
+                if (child instanceof Node) {
+                    replacement = ((Node) child).put(entry, owner);
+                } else if (((Entry) child).key == entry.key) {
+                    replacement = entry;
+                    if (owner != null) {
+                        owner.replaced = true;
+                    }
+                } else {
+                    replacement = pair((Entry) child, entry, shift + BITS, owner);
+                }
+                if (replacement == child) {
+                    return this;
+                }
+                updated = owner != null && this.owner == owner ? children : children.clone();
+                updated[index] = replacement;
+            }
+            if (owner != null && this.owner == owner) {
+                bitmap |= bit;
+                children = updated;
+                return this;
+            }
+            return new Node(shift, bitmap | bit, updated, owner);
+        }
+
+        /**
+         * The subtree without the key: a node, a lone entry to be pulled up
+         * into the parent, or null if nothing is left
+         */
+        Object remove(long key, long hash) {
+            long bit = 1L << ((hash >>> shift) & MASK);
+            int index = index(bit);
+            Object child = children[index];
+            Object replacement = child instanceof Node ? ((Node) child).remove(key, hash) : null;
+            if (replacement == null) {
+                if (children.length == 1) {
+                    return null;
+                }
+                if (children.length == 2 && children[1 - index] instanceof Entry) {
+                    return children[1 - index];
+                }
+                Object[] shrunk = new Object[children.length - 1];
+                System.arraycopy(children, 0, shrunk, 0, index);
+                System.arraycopy(children, index + 1, shrunk, index, shrunk.length - index);
+                return new Node(shift, bitmap & ~bit, shrunk, null);
+            }
+            if (replacement instanceof Entry && children.length == 1) {
+                return replacement;
+            }
+            Object[] copy = children.clone();
+            copy[index] = replacement;
+            return new Node(shift, bitmap, copy, null);
+        }
+
+        /**
+         * The smallest subtree at {@code shift} holding two entries with different keys
+         */
+        private static Node pair(Entry a, Entry b, int shift, Owner owner) {
+            int slotA = (int) (a.hash >>> shift) & MASK;
+            int slotB = (int) (b.hash >>> shift) & MASK;
+            if (slotA == slotB) {
+                return new Node(shift, 1L << slotA, new Object[]{pair(a, b, shift + BITS, owner)}, owner);
+            }
+            Object[] children = slotA < slotB ? new Object[]{a, b} : new Object[]{b, a};
+            return new Node(shift, (1L << slotA) | (1L << slotB), children, owner);
+        }
+    }
+}
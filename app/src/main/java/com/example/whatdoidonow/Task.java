@@ -1,14 +1,20 @@
 package com.example.whatdoidonow;
 
-import java.util.Objects;
+import java.security.SecureRandom;
 
 public class Task {
+    private static final SecureRandom ID_SOURCE = new SecureRandom();
+
+    private long id;             // Unique, stable identity; 0 until assigned for tasks stored before ids existed
     private String taskText;
     private boolean completed;
     private long createdAt;      // Timestamp when task was created
     private long completedAt;    // Timestamp when task was marked as completed (0 if not completed)
+    private long dueAt;          // When a reminder is due, and for recurring tasks when each occurrence starts (0 if none)
+    private long repeatMillis;   // Time between occurrences of a recurring task (0 if it does not repeat)
 
     public Task(String taskText, boolean completed) {
+        this.id = newId();
         this.taskText = taskText;
         this.completed = completed;
         this.createdAt = System.currentTimeMillis();
@@ -17,12 +23,48 @@ public class Task {
 
     // Constructor with timestamp support for deserialization from storage
     public Task(String taskText, boolean completed, long createdAt, long completedAt) {
+        this(0, taskText, completed, createdAt, completedAt);
+    }
+
+    // Constructor with id support for deserialization from storage
+    public Task(long id, String taskText, boolean completed, long createdAt, long completedAt) {
+        this.id = id;
         this.taskText = taskText;
         this.completed = completed;
         this.createdAt = createdAt;
         this.completedAt = completedAt;
     }
 
+    // Copy constructor, used to update a task without touching the instance other lists still hold
+    public Task(Task other) {
+        this.id = other.id;
+        this.taskText = other.taskText;
+        this.completed = other.completed;
+        this.createdAt = other.createdAt;
+        this.completedAt = other.completedAt;
+        this.dueAt = other.dueAt;
+        this.repeatMillis = other.repeatMillis;
+    }
+
+    /**
+     * A random non-zero 64-bit id, unique for all practical purposes
+     */
+    public static long newId() {
+        long id;
+        do {
+            id = ID_SOURCE.nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getTaskText() {
         return taskText;
     }
@@ -62,16 +104,77 @@ public class Task {
         this.completedAt = completedAt;
     }
 
+    public long getDueAt() {
+        return dueAt;
+    }
+
+    public void setDueAt(long dueAt) {
+        this.dueAt = dueAt;
+    }
+
+    public long getRepeatMillis() {
+        return repeatMillis;
+    }
+
+    public void setRepeatMillis(long repeatMillis) {
+        this.repeatMillis = repeatMillis;
+    }
+
+    public boolean isRecurring() {
+        return repeatMillis > 0;
+    }
+
+    /**
+     * When a completed recurring task comes back, or 0 if it does not. The
+     * next occurrence is the first one after the completion, counted from the
+     * due time, or from the completion itself for tasks without one.
+     */
+    public long getNextOccurrence() {
+        if (!completed || repeatMillis <= 0) {
+            return 0;
+        }
+        if (dueAt == 0) {
+            return completedAt + repeatMillis;
+        }
+        // Completing early covers the occurrence that was coming up
+        long periods = Math.max(Math.floorDiv(completedAt - dueAt, repeatMillis) + 1, 1);
+        return dueAt + periods * repeatMillis;
+    }
+
+    /**
+     * The latest occurrence that has started by {@code now}, as a new pending
+     * task with the same id. Occurrences missed since the completion are
+     * skipped. The copy is created at the occurrence, which keeps it apart
+     * from a plain reopen, see {@link TaskStats}.
+     *
+     * @return null if the task is not a completed recurring task due by then
+     */
+    public Task nextOccurrence(long now) {
+        long next = getNextOccurrence();
+        if (next == 0 || next > now) {
+            return null;
+        }
+        long occurrence = next + (now - next) / repeatMillis * repeatMillis;
+        Task task = new Task(this);
+        task.setCompleted(false);
+        task.createdAt = occurrence;
+        if (dueAt != 0) {
+            task.dueAt = occurrence;
+        }
+        return task;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Task task = (Task) o;
-        return Objects.equals(taskText, task.taskText);
+        // Copies made to update a task stay equal to it
+        return id == task.id;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(taskText);
+        return Long.hashCode(id);
     }
 }
\ No newline at end of file
@@ -1,109 +1,521 @@
 package com.example.whatdoidonow;
 
+import android.content.Context;
+import android.content.res.ColorStateList;
 import android.graphics.Paint;
-import android.view.LayoutInflater;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CheckBox;
-import android.widget.CompoundButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.chip.Chip;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Shows immutable snapshots of the task list. A new snapshot is diffed against
+ * the one on screen on a background thread and only the resulting inserts,
+ * removes, moves and changes are dispatched. A change that only flips
+ * completion is rebound partially, see {@link #PAYLOAD_COMPLETION}.
+ *
+ * Long-pressing a row starts selecting rows for batch operations, see
+ * {@link #applyBatch}; while selecting, tapping a row toggles it.
+ *
+ * Binding allocates nothing in the steady state: listeners are attached once
+ * per view holder, colours are resolved once, and timestamp labels come from a
+ * {@link TaskLabelCache} that is filled ahead of the scroll position on the
+ * background thread.
+ *
+ * Rows have stable ids, the tasks' own, so a list shown again or changed
+ * without a diff rebinds the rows it already has instead of recycling them
+ * all. {@link #attachTo} inflates the first rows ahead on a background thread
+ * and sizes the list's caches so a fling reuses rows rather than inflating.
+ */
 public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder> {
 
+    // Completion status changed, nothing else: rebind checkbox, chip, card colour and timestamps only
+    static final Object PAYLOAD_COMPLETION = new Object();
+    // Selection state changed: rebind the card's checked state only
+    static final Object PAYLOAD_SELECTION = new Object();
+
+    // Labels are rendered in the background for this many rows past the one being bound
+    private static final int PREFETCH_WINDOW = 64;
+    // Rows are at least this tall, which bounds how many fit on a screen
+    private static final int ROW_MIN_HEIGHT_DP = 72;
+    // Rows just scrolled off that are kept bound, for scrolling back without rebinding
+    private static final int CACHED_ROWS = 4;
+
+    static final DiffUtil.ItemCallback<Task> DIFF_CALLBACK = new DiffUtil.ItemCallback<Task>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Task oldTask, @NonNull Task newTask) {
+            // Updated tasks are copies carrying the same id
+            return oldTask.getId() == newTask.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Task oldTask, @NonNull Task newTask) {
+            return oldTask.isCompleted() == newTask.isCompleted()
+                    && oldTask.getCompletedAt() == newTask.getCompletedAt()
+                    && sameDetails(oldTask, newTask);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Task oldTask, @NonNull Task newTask) {
+            // Anything else, such as a text edited on another device, rebinds the whole row
+            return sameDetails(oldTask, newTask) ? PAYLOAD_COMPLETION : null;
+        }
+
+        /**
+         * Whether everything shown but the completion status is the same
+         */
+        private boolean sameDetails(Task oldTask, Task newTask) {
+            return Objects.equals(oldTask.getTaskText(), newTask.getTaskText())
+                    && oldTask.getCreatedAt() == newTask.getCreatedAt()
+                    && oldTask.getDueAt() == newTask.getDueAt()
+                    && oldTask.getRepeatMillis() == newTask.getRepeatMillis();
+        }
+    };
+
     private List<Task> taskList;
     private TaskItemClickListener listener;
-    private SimpleDateFormat dateFormat;
+    private final TaskLabelCache labelCache;
+    private final TaskRowInflater rowInflater = new TaskRowInflater();
+
+    // Resolved once, on the first view holder
+    private boolean resourcesResolved;
+    private ColorStateList completedChipColor;
+    private ColorStateList pendingChipColor;
+    private int completedCardColor;
+    private int pendingCardColor;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService diffExecutor = Executors.newSingleThreadExecutor();
+    // Bumped for every submitted list so that stale diff results are dropped
+    private int listGeneration;
+    // End of the row range whose labels are being rendered in the background
+    private int prefetchedUntil;
+
+    private boolean selectionEnabled;
+    private boolean selecting;
+    // Ids of the selected tasks, values are unused
+    private final LongObjectMap<Boolean> selectedIds = new LongObjectMap<>();
 
     public interface TaskItemClickListener {
-        void onTaskCheckChanged(int position, boolean isChecked);
-        void onDeleteTask(int position);
+        void onTaskCheckChanged(Task task, boolean isChecked);
+        void onDeleteTask(Task task);
+        void onSelectionChanged(int selectedCount);
     }
 
-    public TaskAdapter(List<Task> taskList, TaskItemClickListener listener) {
+    public TaskAdapter(List<Task> taskList, TaskItemClickListener listener, TaskLabelCache labelCache) {
         this.taskList = taskList;
         this.listener = listener;
-        this.dateFormat = new SimpleDateFormat("MMM d, yyyy 'at' h:mm a", Locale.getDefault());
+        this.labelCache = labelCache;
+        setHasStableIds(true);
     }
 
-    @NonNull
-    @Override
-    public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.task_item, parent, false);
-        return new TaskViewHolder(view);
+    /**
+     * Show the rows in {@code list}, whose layout manager is already set, and
+     * tune it for scrolling. A screenful of rows plus those cached behind it
+     * is inflated ahead on the executor. The pool of unbound rows holds a
+     * screenful, enough to refill the list after a search or a shorter list
+     * without inflating again.
+     */
+    public void attachTo(RecyclerView list, Executor executor) {
+        DisplayMetrics display = list.getResources().getDisplayMetrics();
+        // Plus one for the rows partly shown at the top and bottom
+        int rowsPerScreen = (int) Math.ceil(display.heightPixels / (ROW_MIN_HEIGHT_DP * display.density)) + 1;
+        // On by default: the next row is bound in the idle time between frames, not in the frame showing it
+        list.getLayoutManager().setItemPrefetchEnabled(true);
+        // The rows change, the list's own size does not
+        list.setHasFixedSize(true);
+        list.setItemViewCacheSize(CACHED_ROWS);
+        list.getRecycledViewPool().setMaxRecycledViews(0, rowsPerScreen);
+        list.setAdapter(this);
+        rowInflater.inflateAhead(list, rowsPerScreen + CACHED_ROWS, executor);
     }
 
-    @Override
-    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
-        Task task = taskList.get(position);
+    TaskRowInflater getRowInflater() {
+        return rowInflater;
+    }
 
-        // Set task text
-        holder.taskTextView.setText(task.getTaskText());
+    /**
+     * Stop the background diffing and label rendering, dropping results still
+     * in flight. Lists submitted afterwards are ignored.
+     */
+    public void shutdown() {
+        listGeneration++;
+        diffExecutor.shutdown();
+    }
 
-        // Format and set the timestamp(s)
-        String createdDateStr = dateFormat.format(new Date(task.getCreatedAt()));
+    /**
+     * Show a different list without diffing, e.g. the fully loaded index in place
+     * of the loading preview. Cancels any diff still in flight.
+     */
+    public void setTasks(List<Task> taskList) {
+        listGeneration++;
+        prefetchedUntil = 0;
+        this.taskList = taskList;
+        notifyDataSetChanged();
+    }
 
-        String timestampText;
-        if (task.isCompleted() && task.getCompletedAt() > 0) {
-            String completedDateStr = dateFormat.format(new Date(task.getCompletedAt()));
-            timestampText = "Created: " + createdDateStr + "\nCompleted: " + completedDateStr;
-        } else {
-            timestampText = "Created: " + createdDateStr;
+    /**
+     * Show {@code newList}, the result of applying the batch to {@code oldList},
+     * with one notification per run of adjacent rows. Falls back to diffing if
+     * {@code oldList} is not the list on screen, e.g. while a diff is in flight.
+     */
+    public void applyBatch(List<Task> oldList, List<Task> newList, TaskBatch batch) {
+        if (taskList != oldList) {
+            submitList(newList);
+            return;
         }
+        listGeneration++;
+        prefetchedUntil = 0;
+        taskList = newList;
+        batch.dispatch(new TaskBatch.RangeCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position, count);
+            }
 
-        // Set the timestamp text if the view exists
-        if (holder.taskDescriptionView != null) {
-            holder.taskDescriptionView.setText(timestampText);
-            holder.taskDescriptionView.setVisibility(View.VISIBLE);
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position, count);
+            }
+        });
+    }
+
+    /**
+     * Allow starting a selection by long-pressing a row
+     */
+    public void setSelectionEnabled(boolean enabled) {
+        selectionEnabled = enabled;
+        if (!enabled) {
+            clearSelection();
         }
+    }
+
+    public boolean isSelecting() {
+        return selecting;
+    }
+
+    public int getSelectedCount() {
+        return selectedIds.size();
+    }
+
+    public long[] getSelectedIds() {
+        final long[] ids = new long[selectedIds.size()];
+        selectedIds.forEach(new LongObjectMap.Visitor<Boolean>() {
+            private int next;
 
-        // Set checkbox without triggering listener
-        holder.taskCheckBox.setOnCheckedChangeListener(null);
-        holder.taskCheckBox.setChecked(task.isCompleted());
-        holder.taskCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
             @Override
-            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                int adapterPosition = holder.getAdapterPosition();
-                if (adapterPosition != RecyclerView.NO_POSITION) {
-                    listener.onTaskCheckChanged(adapterPosition, isChecked);
-                }
+            public void visit(long id, Boolean selected) {
+                ids[next++] = id;
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Select every row shown, or only the completed ones
+     */
+    public void selectAll(boolean completedOnly) {
+        selecting = true;
+        for (Task task : taskList) {
+            if (task != null && (!completedOnly || task.isCompleted())) {
+                selectedIds.put(task.getId(), Boolean.TRUE);
+            }
+        }
+        notifyItemRangeChanged(0, taskList.size(), PAYLOAD_SELECTION);
+        listener.onSelectionChanged(selectedIds.size());
+    }
+
+    /**
+     * Leave selection mode
+     */
+    public void clearSelection() {
+        if (!selecting) {
+            return;
+        }
+        selecting = false;
+        selectedIds.clear();
+        notifyItemRangeChanged(0, taskList.size(), PAYLOAD_SELECTION);
+        listener.onSelectionChanged(0);
+    }
+
+    private void toggleSelection(int position) {
+        Task task = taskList.get(position);
+        if (task == null) {
+            return;
+        }
+        if (selectedIds.remove(task.getId()) == null) {
+            selectedIds.put(task.getId(), Boolean.TRUE);
+        }
+        notifyItemChanged(position, PAYLOAD_SELECTION);
+        listener.onSelectionChanged(selectedIds.size());
+    }
+
+    /**
+     * Show a new immutable snapshot of the list, animating only what changed.
+     * The snapshot must not be modified afterwards.
+     */
+    public void submitList(final List<Task> newList) {
+        if (diffExecutor.isShutdown()) {
+            return;
+        }
+        final int generation = ++listGeneration;
+        final List<Task> oldList = taskList;
+
+        // Nothing to diff when one side is empty
+        if (oldList.isEmpty() || newList.isEmpty()) {
+            taskList = newList;
+            prefetchedUntil = 0;
+            if (!oldList.isEmpty()) {
+                notifyItemRangeRemoved(0, oldList.size());
+            } else if (!newList.isEmpty()) {
+                notifyItemRangeInserted(0, newList.size());
             }
+            return;
+        }
+
+        diffExecutor.execute(() -> {
+            // Copy into arrays first, positional access on the snapshots is O(log n)
+            long started = PerfMetrics.DIFF_LIST.start();
+            final List<Task> oldItems = new ArrayList<>(oldList);
+            final List<Task> newItems = new ArrayList<>(newList);
+            final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldItems.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newItems.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return DIFF_CALLBACK.areItemsTheSame(oldItems.get(oldPosition), newItems.get(newPosition));
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    Task newTask = newItems.get(newPosition);
+                    if (DIFF_CALLBACK.areContentsTheSame(oldItems.get(oldPosition), newTask)) {
+                        return true;
+                    }
+                    // About to be rebound, render its new label while we are off the UI thread
+                    labelCache.get(newTask);
+                    return false;
+                }
+
+                @Override
+                public Object getChangePayload(int oldPosition, int newPosition) {
+                    return DIFF_CALLBACK.getChangePayload(oldItems.get(oldPosition), newItems.get(newPosition));
+                }
+            });
+            PerfMetrics.DIFF_LIST.stop(started);
+
+            mainHandler.post(() -> {
+                if (generation != listGeneration) {
+                    return;
+                }
+                taskList = newList;
+                prefetchedUntil = 0;
+                result.dispatchUpdatesTo(TaskAdapter.this);
+            });
         });
+    }
 
-        // Set delete button listener
+    @NonNull
+    @Override
+    public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = rowInflater.obtain(parent);
+        resolveResources(parent.getContext());
+        final TaskViewHolder holder = new TaskViewHolder(view);
+
+        // Attached once here instead of on every bind
+        holder.taskItemCard.setOnLongClickListener(v -> {
+            int adapterPosition = holder.getAdapterPosition();
+            if (!selectionEnabled || adapterPosition == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            selecting = true;
+            toggleSelection(adapterPosition);
+            return true;
+        });
+        holder.taskItemCard.setOnClickListener(v -> {
+            int adapterPosition = holder.getAdapterPosition();
+            if (selecting && adapterPosition != RecyclerView.NO_POSITION) {
+                toggleSelection(adapterPosition);
+            }
+        });
         holder.deleteButton.setOnClickListener(v -> {
             int adapterPosition = holder.getAdapterPosition();
-            if (adapterPosition != RecyclerView.NO_POSITION) {
-                listener.onDeleteTask(adapterPosition);
+            Task task = adapterPosition != RecyclerView.NO_POSITION ? taskList.get(adapterPosition) : null;
+            if (task != null) {
+                listener.onDeleteTask(task);
+            }
+        });
+        holder.taskCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            int adapterPosition = holder.getAdapterPosition();
+            Task task = !holder.binding && adapterPosition != RecyclerView.NO_POSITION
+                    ? taskList.get(adapterPosition) : null;
+            if (task != null) {
+                listener.onTaskCheckChanged(task, isChecked);
             }
         });
+        return holder;
+    }
+
+    private void resolveResources(Context context) {
+        if (resourcesResolved) {
+            return;
+        }
+        completedChipColor = context.getColorStateList(R.color.colorCompleted);
+        pendingChipColor = context.getColorStateList(R.color.colorPending);
+        completedCardColor = context.getColor(R.color.green_gradient);
+        pendingCardColor = context.getColor(android.R.color.white);
+        resourcesResolved = true;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        Task task = taskList.get(position);
+        if (task == null) {
+            return;
+        }
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_SELECTION) {
+                bindSelection(holder, task);
+            } else {
+                bindCompletion(holder, task);
+            }
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
+        long started = PerfMetrics.BIND_ROW.start();
+        Task task = taskList.get(position);
+        if (task == null) {
+            bindPlaceholder(holder);
+        } else {
+            // Set task text
+            holder.taskTextView.setText(task.getTaskText());
+
+            bindCompletion(holder, task);
+            bindSelection(holder, task);
+            prefetchLabels(position);
+        }
+        PerfMetrics.BIND_ROW.stop(started);
+    }
+
+    /**
+     * Bind everything that depends on the completion status
+     */
+    private void bindCompletion(@NonNull TaskViewHolder holder, Task task) {
+        // Set the cached timestamp label if the view exists
+        if (holder.taskDescriptionView != null) {
+            holder.taskDescriptionView.setText(labelCache.get(task));
+            holder.taskDescriptionView.setVisibility(View.VISIBLE);
+        }
+
+        // Set checkbox without triggering listener
+        holder.binding = true;
+        holder.taskCheckBox.setChecked(task.isCompleted());
+        holder.binding = false;
 
         // Update UI based on completion status
         if (task.isCompleted()) {
             holder.taskTextView.setPaintFlags(holder.taskTextView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
             holder.taskStatusChip.setText("Completed");
-            holder.taskStatusChip.setChipBackgroundColorResource(R.color.colorCompleted);
-            holder.taskItemCard.setRippleColorResource(R.color.colorCompleted);
-            holder.taskItemCard.setCardBackgroundColor(holder.itemView.getContext().getResources().getColor(R.color.green_gradient, null));
+            holder.taskStatusChip.setChipBackgroundColor(completedChipColor);
+            holder.taskItemCard.setRippleColor(completedChipColor);
+            holder.taskItemCard.setCardBackgroundColor(completedCardColor);
         } else {
             holder.taskTextView.setPaintFlags(holder.taskTextView.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
             holder.taskStatusChip.setText("Pending");
-            holder.taskStatusChip.setChipBackgroundColorResource(R.color.colorPending);
-            holder.taskItemCard.setRippleColorResource(R.color.colorPending);
-            holder.taskItemCard.setCardBackgroundColor(holder.itemView.getContext().getResources().getColor(android.R.color.white, null)); // or your default
+            holder.taskStatusChip.setChipBackgroundColor(pendingChipColor);
+            holder.taskItemCard.setRippleColor(pendingChipColor);
+            holder.taskItemCard.setCardBackgroundColor(pendingCardColor);
+        }
+    }
+
+    /**
+     * An empty row for a position of a {@link PagedTaskList} whose page is
+     * still loading. It is rebound when the page arrives.
+     */
+    private void bindPlaceholder(@NonNull TaskViewHolder holder) {
+        holder.taskTextView.setText("");
+        if (holder.taskDescriptionView != null) {
+            holder.taskDescriptionView.setText("");
+        }
+        holder.binding = true;
+        holder.taskCheckBox.setChecked(false);
+        holder.binding = false;
+        holder.taskTextView.setPaintFlags(holder.taskTextView.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
+        holder.taskStatusChip.setText("");
+        holder.taskStatusChip.setChipBackgroundColor(pendingChipColor);
+        holder.taskItemCard.setCardBackgroundColor(pendingCardColor);
+        holder.taskItemCard.setChecked(false);
+    }
+
+    private void bindSelection(@NonNull TaskViewHolder holder, Task task) {
+        holder.taskItemCard.setChecked(selecting && selectedIds.containsKey(task.getId()));
+    }
+
+    /**
+     * Render labels ahead of the bound position on the background thread, one
+     * window at a time. Only snapshots are safe to read off the UI thread.
+     */
+    private void prefetchLabels(int position) {
+        if (position + PREFETCH_WINDOW / 2 < prefetchedUntil || !(taskList instanceof TaskIndex)
+                || !((TaskIndex) taskList).isReadOnly()) {
+            return;
+        }
+        final List<Task> tasks = taskList;
+        final int from = Math.max(position, prefetchedUntil);
+        final int to = Math.min(position + PREFETCH_WINDOW, tasks.size());
+        if (from >= to || diffExecutor.isShutdown()) {
+            return;
+        }
+        prefetchedUntil = to;
+        diffExecutor.execute(() -> labelCache.prefetch(tasks, from, to));
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Task task = taskList.get(position);
+        long id;
+        if (task != null) {
+            id = task.getId();
+        } else {
+            // A row still loading keeps the id it will have once its page arrives
+            id = taskList instanceof PagedTaskList ? ((PagedTaskList) taskList).getId(position) : 0;
         }
+        // A preview row of a list stored before ids existed has id 0. Task ids
+        // are random, so one counted down from the top of the range will not
+        // clash with them.
+        return id != 0 ? id : Long.MAX_VALUE - position;
     }
 
     @Override
@@ -118,6 +530,8 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
         Chip taskStatusChip;
         MaterialCardView taskItemCard;
         MaterialButton deleteButton;
+        // Set while the checkbox is updated from the model, so the listener ignores it
+        boolean binding;
 
         public TaskViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -131,4 +545,4 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
             taskDescriptionView = itemView.findViewById(R.id.taskDescriptionView);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,308 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for old completed tasks, kept out of the task store so that
+ * loading and saving only pay for the tasks in use.
+ *
+ * Each archiving run writes one directory of GZIP-compressed JSON segments
+ * of at most {@link #SEGMENT_SIZE} tasks, newest completed first. Runs are
+ * written to a temporary directory and renamed into place, so a run is
+ * either complete or ignored. Segments are never changed afterwards.
+ *
+ * A run also records the ids it archived until {@link #confirmPending()} is
+ * called, i.e. until their removal from the task store has been written.
+ * After a crash in between, {@link #pendingIds()} tells which tasks to drop
+ * from the store without archiving them twice.
+ *
+ * Writes are expected on one background thread. Opening the archive from
+ * another thread meanwhile is safe, it only sees committed runs.
+ */
+public class TaskArchive {
+    public static final int SEGMENT_SIZE = 1000;
+
+    private static final String RUN_PREFIX = "run-";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".json.gz";
+    private static final String PENDING_FILE = "pending.ids";
+
+    private final File dir;
+
+    public TaskArchive(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * The completed tasks of a display-ordered list completed before the
+     * cutoff. They are at the end of the list, so this costs O(k log n) for
+     * k expired tasks. Recurring tasks are kept, they are not done for good.
+     */
+    public static List<Task> expired(List<Task> displayOrder, long cutoffMillis) {
+        List<Task> expired = new ArrayList<>();
+        for (int i = displayOrder.size() - 1; i >= 0; i--) {
+            Task task = displayOrder.get(i);
+            if (!task.isCompleted() || task.getCompletedAt() >= cutoffMillis) {
+                break;
+            }
+            if (!task.isRecurring()) {
+                expired.add(task);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Archive the given completed tasks as a new run
+     */
+    public void write(List<Task> tasks) throws IOException {
+        List<Task> sorted = new ArrayList<>(tasks);
+        Collections.sort(sorted, TaskOrder.DISPLAY);
+
+        List<Long> runs = runs();
+        long run = runs.isEmpty() ? 1 : runs.get(runs.size() - 1) + 1;
+        deleteAbandonedRuns();
+        File tmp = new File(dir, runName(run) + TMP_SUFFIX);
+        if (!tmp.mkdirs()) {
+            throw new IOException("Cannot create " + tmp);
+        }
+
+        for (int from = 0, part = 0; from < sorted.size(); from += SEGMENT_SIZE, part++) {
+            List<Task> segment = sorted.subList(from, Math.min(from + SEGMENT_SIZE, sorted.size()));
+            writeSegment(new File(tmp, String.format(Locale.ROOT, "%s%05d-%d%s", SEGMENT_PREFIX, part,
+                    segment.size(), SEGMENT_SUFFIX)), segment);
+        }
+        try (FileOutputStream file = new FileOutputStream(new File(tmp, PENDING_FILE))) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            for (Task task : sorted) {
+                out.writeLong(task.getId());
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        // The commit point: a run without its final name is dropped on the next write
+        if (!tmp.renameTo(new File(dir, runName(run)))) {
+            throw new IOException("Failed to install task archive run " + run);
+        }
+    }
+
+    /**
+     * Ids archived by runs whose removal from the task store is not confirmed yet
+     */
+    public long[] pendingIds() throws IOException {
+        long[] ids = new long[0];
+        int count = 0;
+        for (long run : runs()) {
+            File pending = new File(new File(dir, runName(run)), PENDING_FILE);
+            if (!pending.exists()) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pending)))) {
+                int length = (int) (pending.length() / 8);
+                ids = Arrays.copyOf(ids, count + length);
+                for (int i = 0; i < length; i++) {
+                    ids[count++] = in.readLong();
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Record that every archived task has been removed from the task store
+     */
+    public void confirmPending() throws IOException {
+        for (long run : runs()) {
+            File pending = new File(new File(dir, runName(run)), PENDING_FILE);
+            if (pending.exists() && !pending.delete()) {
+                throw new IOException("Cannot delete " + pending);
+            }
+        }
+    }
+
+    /**
+     * The archived tasks as they are now, newest run first
+     */
+    public Segments open() {
+        List<File> files = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        List<Long> runs = runs();
+        for (int r = runs.size() - 1; r >= 0; r--) {
+            String[] names = new File(dir, runName(runs.get(r))).list();
+            if (names == null) {
+                continue;
+            }
+            // Zero-padded part numbers sort by name
+            Arrays.sort(names);
+            for (String name : names) {
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                String parts = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    sizes.add(Integer.parseInt(parts.substring(parts.indexOf('-') + 1)));
+                    files.add(new File(new File(dir, runName(runs.get(r))), name));
+                } catch (NumberFormatException ignored) {
+                    // Not one of ours
+                }
+            }
+        }
+        return new Segments(files, sizes);
+    }
+
+    /**
+     * An immutable list of archive segments, readable a page at a time.
+     * Decoding a page decodes its whole segment; the last one is kept.
+     */
+    public static final class Segments implements TaskPageSource {
+        private final File[] files;
+        // starts[i] is the position of segment i's first task, starts[length] the total
+        private final int[] starts;
+        private int cachedSegment = -1;
+        private List<Task> cachedTasks;
+
+        Segments(List<File> files, List<Integer> sizes) {
+            this.files = files.toArray(new File[0]);
+            this.starts = new int[files.size() + 1];
+            for (int i = 0; i < sizes.size(); i++) {
+                starts[i + 1] = starts[i] + sizes.get(i);
+            }
+        }
+
+        @Override
+        public int size() {
+            return starts[files.length];
+        }
+
+        /**
+         * Unknown until the segment is decoded
+         */
+        @Override
+        public long getId(int position) {
+            return 0;
+        }
+
+        public int getSegmentCount() {
+            return files.length;
+        }
+
+        @Override
+        public synchronized List<Task> load(int from, int to) throws IOException {
+            List<Task> tasks = new ArrayList<>(to - from);
+            // Segments are never empty, so starts are strictly increasing
+            int segment = Arrays.binarySearch(starts, 0, files.length, from);
+            segment = segment >= 0 ? segment : -segment - 2;
+            for (int position = from; position < to; segment++) {
+                List<Task> decoded = decode(segment);
+                int end = Math.min(to, starts[segment + 1]);
+                tasks.addAll(decoded.subList(position - starts[segment], end - starts[segment]));
+                position = end;
+            }
+            return tasks;
+        }
+
+        private List<Task> decode(int segment) throws IOException {
+            if (segment != cachedSegment) {
+                List<Task> tasks;
+                try (JsonReader reader = new JsonReader(new InputStreamReader(
+                        new GZIPInputStream(new FileInputStream(files[segment])), StandardCharsets.UTF_8))) {
+                    tasks = TaskCodec.readArray(reader);
+                } catch (EOFException | IllegalStateException | NumberFormatException e) {
+                    throw new IOException("Corrupt archive segment " + files[segment], e);
+                }
+                if (tasks.size() != starts[segment + 1] - starts[segment]) {
+                    throw new IOException("Archive segment " + files[segment] + " has " + tasks.size() + " tasks");
+                }
+                cachedSegment = segment;
+                cachedTasks = tasks;
+            }
+            return cachedTasks;
+        }
+    }
+
+    private static void writeSegment(File file, List<Task> tasks) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8)));
+            TaskCodec.writeArray(writer, tasks);
+            writer.flush();
+            gzip.finish();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Committed run numbers in ascending order
+     */
+    private List<Long> runs() {
+        List<Long> runs = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return runs;
+        }
+        for (String name : names) {
+            if (!name.startsWith(RUN_PREFIX) || name.endsWith(TMP_SUFFIX)) {
+                continue;
+            }
+            try {
+                runs.add(Long.parseLong(name.substring(RUN_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+                // Not one of ours
+            }
+        }
+        Collections.sort(runs);
+        return runs;
+    }
+
+    /**
+     * Remove runs left behind by a write that did not finish
+     */
+    private void deleteAbandonedRuns() {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.startsWith(RUN_PREFIX) && name.endsWith(TMP_SUFFIX)) {
+                deleteRecursively(new File(dir, name));
+            }
+        }
+    }
+
+    private static String runName(long run) {
+        return String.format(Locale.ROOT, "%s%08d", RUN_PREFIX, run);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
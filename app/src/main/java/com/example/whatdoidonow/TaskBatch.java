@@ -0,0 +1,289 @@
+package com.example.whatdoidonow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One change applied to a {@link TaskIndex}: adding a task, completing,
+ * reopening or deleting a selection, clearing the list, or going back to
+ * another version of it.
+ *
+ * Remembers where the affected rows were before the change and where their
+ * new versions are after it, so the list on screen can be updated with one
+ * range notification per run of adjacent rows instead of a diff of the
+ * whole list. Each task costs O(log n) whatever the size of the list.
+ */
+public final class TaskBatch {
+
+    public interface RangeCallback {
+        void onRemoved(int position, int count);
+
+        void onInserted(int position, int count);
+    }
+
+    // Versions taken out of the index, and the versions put in for them
+    private final List<Task> removed;
+    private final List<Task> added;
+    // Null if the whole list is reported as replaced
+    private final int[] removedPositions;
+    private final int[] addedPositions;
+    private final int oldSize;
+    private final int newSize;
+
+    private TaskBatch(List<Task> removed, List<Task> added, int[] removedPositions, int[] addedPositions,
+                      int oldSize, int newSize) {
+        this.removed = removed;
+        this.added = added;
+        this.removedPositions = removedPositions;
+        this.addedPositions = addedPositions;
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+    }
+
+    /**
+     * Add a new task at its ordered position
+     */
+    public static TaskBatch insert(TaskIndex tasks, Task task) {
+        int oldSize = tasks.size();
+        int position = tasks.insert(task);
+        List<Task> added = new ArrayList<>(1);
+        added.add(task);
+        return new TaskBatch(new ArrayList<Task>(), added, new int[0], new int[]{position}, oldSize, tasks.size());
+    }
+
+    /**
+     * Add new tasks at their ordered positions. When they outnumber the tasks
+     * already there, the whole list is reported as replaced.
+     */
+    public static TaskBatch insertAll(TaskIndex tasks, List<Task> inserted) {
+        int oldSize = tasks.size();
+        List<Task> added = new ArrayList<>(inserted);
+        for (Task task : added) {
+            tasks.insert(task);
+        }
+        boolean wholeList = added.size() > oldSize;
+        return new TaskBatch(new ArrayList<Task>(), added, wholeList ? null : new int[0],
+                wholeList ? null : positionsOf(tasks, added), oldSize, tasks.size());
+    }
+
+    /**
+     * Mark the tasks with the given ids completed or pending. Ids that are
+     * missing, repeated or already in that state are skipped.
+     */
+    public static TaskBatch setCompleted(TaskIndex tasks, long[] ids, boolean completed) {
+        List<Task> removed = new ArrayList<>();
+        for (Task task : distinctTasks(tasks, ids)) {
+            if (task.isCompleted() != completed) {
+                removed.add(task);
+            }
+        }
+        int[] removedPositions = positionsOf(tasks, removed);
+
+        int oldSize = tasks.size();
+        List<Task> added = new ArrayList<>(removed.size());
+        for (Task task : removed) {
+            // A copy, snapshots on screen keep the old version
+            Task updated = new Task(task);
+            updated.setCompleted(completed);
+            tasks.replace(task, updated);
+            added.add(updated);
+        }
+        return new TaskBatch(removed, added, removedPositions, positionsOf(tasks, added), oldSize, tasks.size());
+    }
+
+    /**
+     * Bring back the completed recurring tasks with the given ids whose next
+     * occurrence has started by {@code now}, see {@link Task#nextOccurrence}.
+     * Other ids are skipped.
+     */
+    public static TaskBatch recur(TaskIndex tasks, long[] ids, long now) {
+        List<Task> removed = new ArrayList<>();
+        List<Task> added = new ArrayList<>();
+        for (Task task : distinctTasks(tasks, ids)) {
+            Task occurrence = task.nextOccurrence(now);
+            if (occurrence != null) {
+                removed.add(task);
+                added.add(occurrence);
+            }
+        }
+        int[] removedPositions = positionsOf(tasks, removed);
+
+        int oldSize = tasks.size();
+        for (int i = 0; i < removed.size(); i++) {
+            tasks.replace(removed.get(i), added.get(i));
+        }
+        return new TaskBatch(removed, added, removedPositions, positionsOf(tasks, added), oldSize, tasks.size());
+    }
+
+    /**
+     * Remove the tasks with the given ids, skipping missing and repeated ones
+     */
+    public static TaskBatch delete(TaskIndex tasks, long[] ids) {
+        List<Task> removed = distinctTasks(tasks, ids);
+        int oldSize = tasks.size();
+        int[] removedPositions = positionsOf(tasks, removed);
+        for (Task task : removed) {
+            tasks.removeTask(task);
+        }
+        return new TaskBatch(removed, new ArrayList<Task>(), removedPositions, new int[0], oldSize, tasks.size());
+    }
+
+    /**
+     * Remove every task, reported as replacing the whole list
+     */
+    public static TaskBatch clear(TaskIndex tasks) {
+        List<Task> removed = new ArrayList<>(tasks);
+        int oldSize = tasks.size();
+        tasks.clear();
+        return new TaskBatch(removed, new ArrayList<Task>(), null, null, oldSize, 0);
+    }
+
+    /**
+     * Switch the index to an earlier or later version of itself, see
+     * {@link TaskIndex#restore}. Costs O(k log n) for k differing tasks; when
+     * most of the list differs, the whole list is reported as replaced.
+     */
+    public static TaskBatch restore(TaskIndex tasks, TaskIndex version) {
+        final List<Task> removed = new ArrayList<>();
+        final List<Task> added = new ArrayList<>();
+        tasks.diff(version, (id, oldTask, newTask) -> {
+            if (oldTask != null) {
+                removed.add(oldTask);
+            }
+            if (newTask != null) {
+                added.add(newTask);
+            }
+        });
+        int oldSize = tasks.size();
+        boolean wholeList = removed.size() + added.size() > (oldSize + version.size()) / 2;
+        int[] removedPositions = wholeList ? null : positionsOf(tasks, removed);
+        tasks.restore(version);
+        int[] addedPositions = wholeList ? null : positionsOf(tasks, added);
+        return new TaskBatch(removed, added, removedPositions, addedPositions, oldSize, tasks.size());
+    }
+
+    /**
+     * Put in new versions of tasks, replacing the task with the same id or
+     * adding it where there is none, and remove the tasks with the given ids,
+     * such as when merging changes made on another device. Each id appears
+     * once; missing ids are skipped. When most of the list changes, the whole
+     * list is reported as replaced.
+     */
+    public static TaskBatch merge(TaskIndex tasks, List<Task> updated, long[] removedIds) {
+        List<Task> removed = new ArrayList<>();
+        List<Task> replaced = new ArrayList<>(updated.size());
+        for (Task task : updated) {
+            Task old = tasks.getById(task.getId());
+            replaced.add(old);
+            if (old != null) {
+                removed.add(old);
+            }
+        }
+        List<Task> deleted = distinctTasks(tasks, removedIds);
+        int oldSize = tasks.size();
+        int newSize = oldSize + updated.size() - removed.size() - deleted.size();
+        removed.addAll(deleted);
+        boolean wholeList = removed.size() + updated.size() > (oldSize + newSize) / 2;
+        int[] removedPositions = wholeList ? null : positionsOf(tasks, removed);
+
+        for (Task task : deleted) {
+            tasks.removeTask(task);
+        }
+        List<Task> added = new ArrayList<>(updated);
+        for (int i = 0; i < added.size(); i++) {
+            if (replaced.get(i) != null) {
+                tasks.replace(replaced.get(i), added.get(i));
+            } else {
+                tasks.insert(added.get(i));
+            }
+        }
+        return new TaskBatch(removed, added, removedPositions, wholeList ? null : positionsOf(tasks, added),
+                oldSize, tasks.size());
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty();
+    }
+
+    /**
+     * Whether most of the list changed, so it is reported as replaced as a whole
+     */
+    public boolean replacesWholeList() {
+        return removedPositions == null;
+    }
+
+    /**
+     * The tasks as they were before the batch
+     */
+    public List<Task> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * The new versions of the tasks, and for a restore tasks that were not there before
+     */
+    public List<Task> getAdded() {
+        return added;
+    }
+
+    /**
+     * Report the change as ranges: removals from the end of the old list
+     * backwards, so each position is still valid when it is reported, then
+     * insertions from the start of the new list forwards.
+     */
+    public void dispatch(RangeCallback callback) {
+        if (removedPositions == null) {
+            if (oldSize > 0) {
+                callback.onRemoved(0, oldSize);
+            }
+            if (newSize > 0) {
+                callback.onInserted(0, newSize);
+            }
+            return;
+        }
+        int end = removedPositions.length;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && removedPositions[start - 1] == removedPositions[start] - 1) {
+                start--;
+            }
+            callback.onRemoved(removedPositions[start], end - start);
+            end = start;
+        }
+        int start = 0;
+        while (start < addedPositions.length) {
+            int next = start + 1;
+            while (next < addedPositions.length && addedPositions[next] == addedPositions[next - 1] + 1) {
+                next++;
+            }
+            callback.onInserted(addedPositions[start], next - start);
+            start = next;
+        }
+    }
+
+    /**
+     * The tasks with the given ids, each once, skipping missing ids
+     */
+    private static List<Task> distinctTasks(TaskIndex tasks, long[] ids) {
+        List<Task> found = new ArrayList<>(ids.length);
+        LongObjectMap<Task> seen = new LongObjectMap<>(ids.length);
+        for (long id : ids) {
+            Task task = tasks.getById(id);
+            if (task != null && !seen.containsKey(id)) {
+                seen.put(id, task);
+                found.add(task);
+            }
+        }
+        return found;
+    }
+
+    private static int[] positionsOf(TaskIndex tasks, List<Task> batch) {
+        int[] positions = new int[batch.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = tasks.positionOf(batch.get(i).getId());
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+}
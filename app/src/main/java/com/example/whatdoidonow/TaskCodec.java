@@ -0,0 +1,132 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written streaming JSON codec for {@link Task}.
+ *
+ * Produces and accepts the same objects Gson wrote for the legacy "tasks"
+ * preference, but works token by token on a stream and never goes through
+ * reflection.
+ */
+public final class TaskCodec {
+    static final String FIELD_ID = "id";
+    static final String FIELD_TEXT = "taskText";
+    static final String FIELD_COMPLETED = "completed";
+    static final String FIELD_CREATED_AT = "createdAt";
+    static final String FIELD_COMPLETED_AT = "completedAt";
+    static final String FIELD_DUE_AT = "dueAt";
+    static final String FIELD_REPEAT = "repeatMillis";
+
+    public interface TaskConsumer {
+        void accept(Task task) throws IOException;
+    }
+
+    private TaskCodec() {
+    }
+
+    public static void write(JsonWriter writer, Task task) throws IOException {
+        writer.beginObject();
+        if (task.getId() != 0) {
+            writer.name(FIELD_ID).value(task.getId());
+        }
+        if (task.getTaskText() != null) {
+            writer.name(FIELD_TEXT).value(task.getTaskText());
+        }
+        writer.name(FIELD_COMPLETED).value(task.isCompleted());
+        writer.name(FIELD_CREATED_AT).value(task.getCreatedAt());
+        writer.name(FIELD_COMPLETED_AT).value(task.getCompletedAt());
+        // Most tasks have no schedule; readers take a missing field as 0
+        if (task.getDueAt() != 0) {
+            writer.name(FIELD_DUE_AT).value(task.getDueAt());
+        }
+        if (task.getRepeatMillis() != 0) {
+            writer.name(FIELD_REPEAT).value(task.getRepeatMillis());
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Tasks written before ids existed are read with id 0
+     */
+    public static Task read(JsonReader reader) throws IOException {
+        long id = 0;
+        String taskText = null;
+        boolean completed = false;
+        long createdAt = 0;
+        long completedAt = 0;
+        long dueAt = 0;
+        long repeatMillis = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case FIELD_ID:
+                    id = reader.nextLong();
+                    break;
+                case FIELD_TEXT:
+                    taskText = reader.nextString();
+                    break;
+                case FIELD_COMPLETED:
+                    completed = reader.nextBoolean();
+                    break;
+                case FIELD_CREATED_AT:
+                    createdAt = reader.nextLong();
+                    break;
+                case FIELD_COMPLETED_AT:
+                    completedAt = reader.nextLong();
+                    break;
+                case FIELD_DUE_AT:
+                    dueAt = reader.nextLong();
+                    break;
+                case FIELD_REPEAT:
+                    repeatMillis = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        Task task = new Task(id, taskText, completed, createdAt, completedAt);
+        task.setDueAt(dueAt);
+        task.setRepeatMillis(repeatMillis);
+        return task;
+    }
+
+    public static void writeArray(JsonWriter writer, Iterable<Task> tasks) throws IOException {
+        writer.beginArray();
+        for (Task task : tasks) {
+            write(writer, task);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Decode an array of tasks one element at a time
+     */
+    public static void readArray(JsonReader reader, TaskConsumer consumer) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            consumer.accept(read(reader));
+        }
+        reader.endArray();
+    }
+
+    public static List<Task> readArray(JsonReader reader) throws IOException {
+        final List<Task> tasks = new ArrayList<>();
+        readArray(reader, tasks::add);
+        return tasks;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Writes tasks to a text, CSV or JSON file that {@link TaskImporter} reads
+ * back. Tasks are encoded one at a time straight into the stream, so nothing
+ * the size of the file is built in memory. Export a read-only
+ * {@link TaskIndex#snapshot()} so the list can keep changing meanwhile.
+ *
+ * Blocks on I/O, run it on a background thread.
+ */
+public class TaskExporter {
+    static final String[] CSV_COLUMNS = {"text", "completed", "createdAt", "completedAt", "dueAt", "repeatMillis"};
+
+    public interface ProgressListener {
+        /**
+         * Called every {@link TaskImporter#CHUNK_SIZE} tasks, and once at the end
+         */
+        void onProgress(int exported);
+    }
+
+    private ProgressListener progressListener;
+    private volatile boolean cancelled;
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Stop at the next chunk, leaving the file cut short
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Write the tasks in the given format. Does not close the stream.
+     *
+     * @return the number of tasks written
+     * @throws InterruptedIOException if cancelled
+     */
+    public int export(Iterable<Task> tasks, TaskFileFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        int exported = 0;
+        JsonWriter json = null;
+        if (format == TaskFileFormat.JSON) {
+            json = new JsonWriter(writer);
+            json.setIndent("  ");
+            json.beginArray();
+        } else if (format == TaskFileFormat.CSV) {
+            writeCsvRow(writer, CSV_COLUMNS);
+        }
+        for (Task task : tasks) {
+            switch (format) {
+                case CSV:
+                    writeCsvRow(writer, new String[]{task.getTaskText(), String.valueOf(task.isCompleted()),
+                            formatTime(task.getCreatedAt()), formatTime(task.getCompletedAt()),
+                            formatTime(task.getDueAt()),
+                            task.getRepeatMillis() == 0 ? "" : String.valueOf(task.getRepeatMillis())});
+                    break;
+                case JSON:
+                    TaskCodec.write(json, task);
+                    break;
+                default:
+                    if (task.isCompleted()) {
+                        writer.write("[x] ");
+                    }
+                    // One task per line
+                    String text = task.getTaskText() == null ? "" : task.getTaskText();
+                    writer.write(text.replaceAll("\\s*[\\r\\n]+\\s*", " "));
+                    writer.write('\n');
+                    break;
+            }
+            if (++exported % TaskImporter.CHUNK_SIZE == 0) {
+                if (cancelled) {
+                    throw new InterruptedIOException("Export cancelled");
+                }
+                if (progressListener != null) {
+                    progressListener.onProgress(exported);
+                }
+            }
+        }
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        }
+        writer.flush();
+        if (progressListener != null) {
+            progressListener.onProgress(exported);
+        }
+        return exported;
+    }
+
+    private static String formatTime(long millis) {
+        return millis == 0 ? "" : Instant.ofEpochMilli(millis).toString();
+    }
+
+    private static void writeCsvRow(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.whatdoidonow;
+
+import java.util.Locale;
+
+/**
+ * File formats tasks are imported from and exported to, see {@link TaskImporter}
+ * and {@link TaskExporter}.
+ */
+public enum TaskFileFormat {
+    /**
+     * One task per line. Completed tasks start with "[x] ", optionally after "- ".
+     */
+    TEXT("text/plain", ".txt"),
+    /**
+     * A header row naming the columns, then one task per row. Times are ISO-8601 instants.
+     */
+    CSV("text/csv", ".csv"),
+    /**
+     * An array of task objects, as stored by {@link TaskCodec}
+     */
+    JSON("application/json", ".json");
+
+    private final String mimeType;
+    private final String extension;
+
+    TaskFileFormat(String mimeType, String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * The format of a file from its MIME type, or else its name; plain text if neither tells
+     *
+     * @param name     the file name, or null
+     * @param mimeType the MIME type, or null
+     */
+    public static TaskFileFormat detect(String name, String mimeType) {
+        if (mimeType != null) {
+            String type = mimeType.toLowerCase(Locale.ROOT);
+            if (type.equals("text/csv") || type.equals("text/comma-separated-values")) {
+                return CSV;
+            }
+            if (type.equals("application/json")) {
+                return JSON;
+            }
+        }
+        if (name != null) {
+            String lower = name.toLowerCase(Locale.ROOT);
+            for (TaskFileFormat format : values()) {
+                if (lower.endsWith(format.extension)) {
+                    return format;
+                }
+            }
+        }
+        return TEXT;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.whatdoidonow;
+
+import java.util.ArrayDeque;
+
+/**
+ * Undo and redo for a {@link TaskIndex}.
+ *
+ * Each level is a snapshot of the index, taken in O(1) just before a change.
+ * Versions share every node the change did not touch, so a hundred levels
+ * of history over a long list cost memory in proportion to what changed,
+ * not a hundred copies of the list.
+ *
+ * Not thread-safe.
+ */
+public class TaskHistory {
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final int limit;
+    // Most recent first
+    private final ArrayDeque<TaskIndex> undo = new ArrayDeque<>();
+    private final ArrayDeque<TaskIndex> redo = new ArrayDeque<>();
+
+    public TaskHistory() {
+        this(DEFAULT_LIMIT);
+    }
+
+    public TaskHistory(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Remember the current version of the index before changing it. Forgets
+     * whatever could be redone, and the oldest level beyond the limit.
+     */
+    public void record(TaskIndex tasks) {
+        undo.push(tasks.snapshot());
+        if (undo.size() > limit) {
+            undo.removeLast();
+        }
+        redo.clear();
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * Take the index back to the version before the last change
+     *
+     * @return what changed, or null if there is nothing to undo
+     */
+    public TaskBatch undo(TaskIndex tasks) {
+        if (undo.isEmpty()) {
+            return null;
+        }
+        redo.push(tasks.snapshot());
+        return TaskBatch.restore(tasks, undo.pop());
+    }
+
+    /**
+     * Reapply the last undone change
+     *
+     * @return what changed, or null if there is nothing to redo
+     */
+    public TaskBatch redo(TaskIndex tasks) {
+        if (redo.isEmpty()) {
+            return null;
+        }
+        undo.push(tasks.snapshot());
+        return TaskBatch.restore(tasks, redo.pop());
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+    }
+}
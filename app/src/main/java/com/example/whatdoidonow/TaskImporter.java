@@ -0,0 +1,448 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads tasks from a text, CSV or JSON file and hands them on in chunks.
+ *
+ * The file is streamed: only the chunk being filled is held, and the sink
+ * stores each chunk, as one write, before the next is read. Memory therefore
+ * stays the same however long the file is, apart from the set used to skip
+ * duplicates, which holds a 64-bit fingerprint per task text rather than the
+ * text.
+ *
+ * Tasks whose text, ignoring case and spacing, is already in the list or
+ * earlier in the file are skipped. Imported tasks get new ids. Tasks without
+ * a creation time are dated a millisecond apart in file order, so the list
+ * shows them in the order of the file.
+ *
+ * Blocks on I/O and on the sink, run it on a background thread. Not thread-safe,
+ * except for {@link #cancel()}.
+ */
+public class TaskImporter {
+    static final int CHUNK_SIZE = 1000;
+    private static final Object SEEN = Boolean.TRUE;
+
+    public interface ChunkSink {
+        /**
+         * Store the tasks, returning once they are stored
+         */
+        void accept(List<Task> chunk) throws IOException;
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called after each chunk is stored, and once at the end
+         *
+         * @param bytesRead how much of the file has been read
+         */
+        void onProgress(long bytesRead, int imported, int skipped);
+    }
+
+    /**
+     * What an import did
+     */
+    public static final class Result {
+        private final int imported;
+        private final int duplicates;
+        private final int invalid;
+
+        Result(int imported, int duplicates, int invalid) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.invalid = invalid;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * Tasks skipped because their text was already there
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * Rows skipped because they had no text or unreadable values
+         */
+        public int getInvalid() {
+            return invalid;
+        }
+    }
+
+    private final ChunkSink sink;
+    private final long now;
+    // Fingerprints of every text in the list or imported so far
+    private final LongObjectMap<Object> seen;
+    private ProgressListener progressListener;
+    private List<Task> chunk = new ArrayList<>(CHUNK_SIZE);
+    private CountingInputStream counted;
+    private int order;
+    private int imported;
+    private int duplicates;
+    private int invalid;
+    private volatile boolean cancelled;
+
+    /**
+     * @param existing the tasks already in the list, whose texts are not imported again
+     * @param now      the time tasks without a creation time are dated from
+     */
+    public TaskImporter(Iterable<Task> existing, long now, ChunkSink sink) {
+        this.sink = sink;
+        this.now = now;
+        this.seen = new LongObjectMap<>();
+        for (Task task : existing) {
+            seen.put(fingerprint(task.getTaskText()), SEEN);
+        }
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Stop before the next chunk is stored; chunks already stored stay
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Read the whole stream, storing its tasks a chunk at a time. Does not close the stream.
+     *
+     * @throws InterruptedIOException if cancelled
+     */
+    public Result importFrom(InputStream in, TaskFileFormat format) throws IOException {
+        counted = new CountingInputStream(in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8));
+        switch (format) {
+            case CSV:
+                readCsv(reader);
+                break;
+            case JSON:
+                readJson(reader);
+                break;
+            default:
+                readText(reader);
+                break;
+        }
+        flushChunk();
+        return new Result(imported, duplicates, invalid);
+    }
+
+    private void readText(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String text = line.trim();
+            boolean completed = false;
+            if (text.startsWith("- ")) {
+                text = text.substring(2).trim();
+            }
+            if (text.length() >= 3 && text.charAt(0) == '[' && text.charAt(2) == ']') {
+                completed = Character.toLowerCase(text.charAt(1)) == 'x';
+                text = text.substring(3).trim();
+            }
+            if (text.isEmpty()) {
+                continue;
+            }
+            add(text, completed, 0, 0, 0, 0);
+        }
+    }
+
+    private void readCsv(Reader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> row = csv.readRow();
+        if (row == null) {
+            return;
+        }
+        // Columns by header name; without a header the first column is the text
+        int text = 0;
+        int completed = -1;
+        int createdAt = -1;
+        int completedAt = -1;
+        int dueAt = -1;
+        int repeat = -1;
+        boolean header = false;
+        for (int i = 0; i < row.size(); i++) {
+            switch (row.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "text":
+                case "task":
+                    text = i;
+                    header = true;
+                    break;
+                case "completed":
+                    completed = i;
+                    break;
+                case "createdat":
+                    createdAt = i;
+                    break;
+                case "completedat":
+                    completedAt = i;
+                    break;
+                case "dueat":
+                    dueAt = i;
+                    break;
+                case "repeatmillis":
+                    repeat = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (header) {
+            row = csv.readRow();
+        } else {
+            completed = createdAt = completedAt = dueAt = repeat = -1;
+        }
+        for (; row != null; row = csv.readRow()) {
+            String taskText = column(row, text).trim();
+            if (taskText.isEmpty()) {
+                if (row.size() > 1 || !row.get(0).isEmpty()) {
+                    invalid++;
+                }
+                continue;
+            }
+            long[] times;
+            try {
+                times = new long[]{parseTime(column(row, createdAt)), parseTime(column(row, completedAt)),
+                        parseTime(column(row, dueAt)), parseLong(column(row, repeat))};
+            } catch (NumberFormatException | DateTimeParseException e) {
+                invalid++;
+                continue;
+            }
+            add(taskText, parseBoolean(column(row, completed)), times[0], times[1], times[2], times[3]);
+        }
+    }
+
+    private void readJson(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        try {
+            TaskCodec.readArray(json, task -> {
+                String text = task.getTaskText() == null ? "" : task.getTaskText().trim();
+                if (text.isEmpty()) {
+                    invalid++;
+                    return;
+                }
+                add(text, task.isCompleted(), task.getCreatedAt(), task.getCompletedAt(), task.getDueAt(),
+                        task.getRepeatMillis());
+            });
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Not a JSON array of tasks", e);
+        }
+    }
+
+    private void add(String text, boolean completed, long createdAt, long completedAt, long dueAt,
+                     long repeatMillis) throws IOException {
+        // In file order, one millisecond apart, when the file has no times
+        long position = order++;
+        if (seen.put(fingerprint(text), SEEN) != null) {
+            duplicates++;
+            return;
+        }
+        if (createdAt == 0) {
+            createdAt = now - position;
+        }
+        if (completed && completedAt == 0) {
+            completedAt = createdAt;
+        }
+        Task task = new Task(Task.newId(), text, completed, createdAt, completed ? completedAt : 0);
+        task.setDueAt(dueAt);
+        task.setRepeatMillis(repeatMillis);
+        chunk.add(task);
+        if (chunk.size() >= CHUNK_SIZE) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Import cancelled");
+        }
+        if (!chunk.isEmpty()) {
+            sink.accept(chunk);
+            imported += chunk.size();
+            chunk = new ArrayList<>(CHUNK_SIZE);
+        }
+        if (progressListener != null) {
+            progressListener.onProgress(counted.count, imported, duplicates + invalid);
+        }
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the text, ignoring case and runs of whitespace
+     */
+    static long fingerprint(String text) {
+        long hash = 0xcbf29ce484222325L;
+        boolean space = false;
+        boolean started = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = started;
+                continue;
+            }
+            if (space) {
+                hash = (hash ^ ' ') * 0x100000001b3L;
+                space = false;
+            }
+            started = true;
+            c = Character.toLowerCase(Character.toUpperCase(c));
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String column(List<String> row, int index) {
+        return index >= 0 && index < row.size() ? row.get(index) : "";
+    }
+
+    private static boolean parseBoolean(String value) {
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        return lower.equals("true") || lower.equals("yes") || lower.equals("x") || lower.equals("1");
+    }
+
+    /**
+     * An ISO-8601 instant or epoch milliseconds, 0 if empty
+     */
+    private static long parseTime(String value) {
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return 0;
+        }
+        if (Character.isDigit(trimmed.charAt(0)) && trimmed.indexOf('-') < 0) {
+            return Long.parseLong(trimmed);
+        }
+        return Instant.parse(trimmed).toEpochMilli();
+    }
+
+    private static long parseLong(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? 0 : Long.parseLong(trimmed);
+    }
+
+    /**
+     * RFC 4180 rows: quoted fields may hold commas, doubled quotes and line breaks
+     */
+    static final class CsvReader {
+        private final Reader reader;
+        private final StringBuilder field = new StringBuilder();
+        private int next = -2;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * The next row's fields, or null at the end
+         */
+        List<String> readRow() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            List<String> row = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("Unterminated quoted field");
+                    }
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    row.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == '\r' || c < 0) {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    row.add(field.toString());
+                    return row;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (next != -2) {
+                int c = next;
+                next = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        private int peek() throws IOException {
+            if (next == -2) {
+                next = reader.read();
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, for progress
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
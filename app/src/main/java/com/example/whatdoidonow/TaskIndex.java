@@ -0,0 +1,428 @@
+package com.example.whatdoidonow;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * The task list in display order, kept as two ordered partitions: pending
+ * tasks (newest created first) followed by completed tasks (newest completed
+ * first), see {@link TaskOrder#DISPLAY}.
+ *
+ * Each partition is a treap augmented with subtree sizes, so inserting,
+ * removing, moving a task between partitions and positional access are all
+ * O(log n) and the list never has to be sorted as a whole.
+ *
+ * Nodes are immutable and updates copy the path they touch, which leaves the
+ * rest of the tree shared with earlier versions. That makes {@link #snapshot()}
+ * O(1): it captures the current roots in a read-only index.
+ *
+ * Every task needs a unique id. Tasks are also kept in a persistent map by
+ * id, shared between versions the same way, so a task is found by id in a
+ * few steps and its position follows in O(log n). Because every part of a
+ * version is immutable, the live index can be switched back to any earlier
+ * snapshot in O(1) with {@link #restore}, and two versions can be compared
+ * in time proportional to their differences with {@link #diff}.
+ */
+public class TaskIndex extends AbstractList<Task> {
+
+    static final Comparator<Task> PENDING_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task task1, Task task2) {
+            int byCreation = Long.compare(task2.getCreatedAt(), task1.getCreatedAt());
+            return byCreation != 0 ? byCreation : Long.compare(task1.getId(), task2.getId());
+        }
+    };
+
+    static final Comparator<Task> COMPLETED_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task task1, Task task2) {
+            int byCompletion = Long.compare(task2.getCompletedAt(), task1.getCompletedAt());
+            if (byCompletion != 0) {
+                return byCompletion;
+            }
+            int byCreation = Long.compare(task2.getCreatedAt(), task1.getCreatedAt());
+            return byCreation != 0 ? byCreation : Long.compare(task1.getId(), task2.getId());
+        }
+    };
+
+    private final Random random;
+    private final boolean readOnly;
+    private PersistentLongMap<Task> byId;
+    private Node pending;
+    private Node completed;
+
+    public TaskIndex() {
+        random = new Random();
+        readOnly = false;
+        byId = PersistentLongMap.empty();
+    }
+
+    private TaskIndex(Node pending, Node completed, PersistentLongMap<Task> byId) {
+        this.random = null;
+        this.readOnly = true;
+        this.byId = byId;
+        this.pending = pending;
+        this.completed = completed;
+    }
+
+    public TaskIndex(Collection<Task> tasks) {
+        this();
+        // Built in place, then inserted without paying for a copied map path per task
+        PersistentLongMap.Builder<Task> ids = new PersistentLongMap.Builder<>();
+        for (Task task : tasks) {
+            checkId(task);
+            ids.put(task.getId(), task);
+        }
+        byId = ids.build();
+        if (byId.size() != tasks.size()) {
+            throw new IllegalArgumentException("Duplicate task ids");
+        }
+        for (Task task : tasks) {
+            insertNode(task);
+        }
+    }
+
+    /**
+     * Add a task at its ordered position and return that position
+     *
+     * @throws IllegalArgumentException if the task has no id or its id is already present
+     */
+    public int insert(Task task) {
+        checkWritable();
+        checkId(task);
+        if (byId.containsKey(task.getId())) {
+            throw new IllegalArgumentException("Duplicate task id " + task.getId());
+        }
+        byId = byId.put(task.getId(), task);
+        return insertNode(task);
+    }
+
+    private static void checkId(Task task) {
+        if (task.getId() == 0) {
+            throw new IllegalArgumentException("Task has no id");
+        }
+    }
+
+    private int insertNode(Task task) {
+        modCount++;
+        Node node = new Node(task, random.nextInt(), null, null);
+        if (task.isCompleted()) {
+            int rank = countBefore(completed, task, COMPLETED_ORDER);
+            completed = insertAt(completed, rank, node);
+            return size(pending) + rank;
+        }
+        int rank = countBefore(pending, task, PENDING_ORDER);
+        pending = insertAt(pending, rank, node);
+        return rank;
+    }
+
+    /**
+     * Remove the given task instance and return the position it had, or -1 if absent
+     */
+    public int removeTask(Task task) {
+        int position = indexOf(task);
+        if (position >= 0) {
+            remove(position);
+        }
+        return position;
+    }
+
+    /**
+     * Swap a task for an updated copy of it, moving it to the copy's position.
+     * Tasks inside the index are never mutated, so snapshots keep their contents.
+     *
+     * @return the new position, or -1 if the old task is not in the index
+     */
+    public int replace(Task oldTask, Task newTask) {
+        if (removeTask(oldTask) < 0) {
+            return -1;
+        }
+        return insert(newTask);
+    }
+
+    /**
+     * The task with the given id, or null
+     */
+    public Task getById(long id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Position of the task with the given id in O(log n), or -1
+     */
+    public int positionOf(long id) {
+        Task task = getById(id);
+        return task == null ? -1 : indexOf(task);
+    }
+
+    /**
+     * An immutable view of the current contents that later updates do not affect
+     */
+    public TaskIndex snapshot() {
+        return readOnly ? this : new TaskIndex(pending, completed, byId);
+    }
+
+    /**
+     * Make the contents those of the given snapshot, in O(1)
+     */
+    public void restore(TaskIndex snapshot) {
+        checkWritable();
+        modCount++;
+        pending = snapshot.pending;
+        completed = snapshot.completed;
+        byId = snapshot.byId;
+    }
+
+    /**
+     * Report every task that differs between this index and {@code other}, by
+     * id; cheap when one is a recent version of the other
+     */
+    public void diff(TaskIndex other, PersistentLongMap.DiffVisitor<? super Task> visitor) {
+        byId.diff(other.byId, visitor);
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public int pendingCount() {
+        return size(pending);
+    }
+
+    public int completedCount() {
+        return size(completed);
+    }
+
+    @Override
+    public Task get(int position) {
+        int pendingSize = size(pending);
+        if (position < 0 || position >= pendingSize + size(completed)) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+        }
+        return position < pendingSize ? get(pending, position) : get(completed, position - pendingSize);
+    }
+
+    @Override
+    public Task remove(int position) {
+        checkWritable();
+        Task task = get(position);
+        byId = byId.remove(task.getId());
+        modCount++;
+        int pendingSize = size(pending);
+        if (position < pendingSize) {
+            pending = removeAt(pending, position);
+        } else {
+            completed = removeAt(completed, position - pendingSize);
+        }
+        return task;
+    }
+
+    @Override
+    public int size() {
+        return size(pending) + size(completed);
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        modCount++;
+        byId = PersistentLongMap.empty();
+        pending = null;
+        completed = null;
+    }
+
+    /**
+     * Position of this exact task instance in O(log n), or -1
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Task)) {
+            return -1;
+        }
+        Task task = (Task) o;
+        if (task.isCompleted()) {
+            int rank = rankOf(completed, task, COMPLETED_ORDER);
+            return rank < 0 ? -1 : size(pending) + rank;
+        }
+        return rankOf(pending, task, PENDING_ORDER);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return new InOrderIterator();
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Task index snapshots are read-only");
+        }
+    }
+
+    // ---- treap operations, all of them leave their inputs untouched ----
+
+    private static final class Node {
+        final Task task;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(Task task, int priority, Node left, Node right) {
+            this.task = task;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + TaskIndex.size(left) + TaskIndex.size(right);
+        }
+
+        Node with(Node newLeft, Node newRight) {
+            return new Node(task, priority, newLeft, newRight);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Task get(Node node, int rank) {
+        while (true) {
+            int leftSize = size(node.left);
+            if (rank < leftSize) {
+                node = node.left;
+            } else if (rank == leftSize) {
+                return node.task;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Number of tasks ordered at or before the given one, i.e. where it would be inserted
+     */
+    private static int countBefore(Node node, Task task, Comparator<Task> order) {
+        int count = 0;
+        while (node != null) {
+            if (order.compare(task, node.task) < 0) {
+                node = node.left;
+            } else {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    private static int rankOf(Node node, Task task, Comparator<Task> order) {
+        // Ids make the order total, so there is at most one node with an equal key
+        int rank = 0;
+        while (node != null) {
+            int comparison = order.compare(task, node.task);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return node.task == task ? rank + size(node.left) : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static Node insertAt(Node root, int rank, Node node) {
+        Node[] parts = split(root, rank);
+        return merge(merge(parts[0], node), parts[1]);
+    }
+
+    private static Node removeAt(Node root, int rank) {
+        Node[] parts = split(root, rank);
+        Node[] rest = split(parts[1], 1);
+        return merge(parts[0], rest[1]);
+    }
+
+    /**
+     * Split into the first {@code rank} tasks and the rest
+     */
+    private static Node[] split(Node node, int rank) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        int leftSize = size(node.left);
+        if (rank <= leftSize) {
+            Node[] parts = split(node.left, rank);
+            return new Node[]{parts[0], node.with(parts[1], node.right)};
+        }
+        Node[] parts = split(node.right, rank - leftSize - 1);
+        return new Node[]{node.with(node.left, parts[0]), parts[1]};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority >= right.priority) {
+            return left.with(left.left, merge(left.right, right));
+        }
+        return right.with(merge(left, right.left), right.right);
+    }
+
+    private final class InOrderIterator implements Iterator<Task> {
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+        private Node nextPartition;
+
+        InOrderIterator() {
+            pushLeft(pending);
+            nextPartition = completed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (stack.isEmpty() && nextPartition != null) {
+                pushLeft(nextPartition);
+                nextPartition = null;
+            }
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Task next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            pushLeft(node.right);
+            return node.task;
+        }
+
+        private void pushLeft(Node node) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+        }
+    }
+}
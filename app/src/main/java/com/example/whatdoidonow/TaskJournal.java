@@ -0,0 +1,612 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * File-backed task store made of a snapshot plus an append-only journal.
+ *
+ * Every mutation appends one small record to the current journal file, so the
+ * cost of a write does not depend on how many tasks exist. Once the journal
+ * holds more than {@code compactionThreshold} records it is folded into a new
+ * snapshot on the store's I/O thread.
+ *
+ * Snapshots and journals carry a generation number. A snapshot of generation G
+ * already contains every journal below G, so a crash at any point of a
+ * compaction leaves a state that replays to the same list.
+ */
+public class TaskJournal {
+    public enum Op { ADD, COMPLETE, UNCOMPLETE, DELETE }
+
+    /**
+     * On-disk encoding of snapshots. The journal itself is always line-delimited JSON.
+     */
+    public enum SnapshotFormat {
+        JSON("tasks.snapshot.json"),
+        COLUMNAR("tasks.snapshot.col");
+
+        final String fileName;
+
+        SnapshotFormat(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+
+    public interface DecodeListener {
+        void onTaskDecoded(Task task);
+    }
+
+    /**
+     * One journal record: an operation and the task state it leaves behind
+     */
+    public static final class Mutation {
+        public final Op op;
+        public final Task task;
+
+        public Mutation(Op op, Task task) {
+            this.op = op;
+            this.task = task;
+        }
+    }
+
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 512;
+
+    private static final String SNAPSHOT_TMP_FILE = "tasks.snapshot.tmp";
+    private static final String JOURNAL_PREFIX = "tasks.journal.";
+
+    private final File dir;
+    private final SnapshotFormat format;
+    private final int compactionThreshold;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TaskJournal-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched on the io thread
+    private long generation;
+    private int journalRecords;
+    private Writer journalWriter;
+    private boolean opened;
+    // Set when the snapshot is in the other format or tasks were assigned ids while loading
+    private boolean needsRewrite;
+    // An append nobody waited for that failed, reported by the next call that waits
+    private IOException appendFailure;
+
+    public TaskJournal(File dir) {
+        this(dir, SnapshotFormat.JSON, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public TaskJournal(File dir, int compactionThreshold) {
+        this(dir, SnapshotFormat.JSON, compactionThreshold);
+    }
+
+    /**
+     * A store holding a snapshot in another format is converted the next time it is loaded.
+     */
+    public TaskJournal(File dir, SnapshotFormat format, int compactionThreshold) {
+        this.dir = dir;
+        this.format = format;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * True if neither a snapshot nor a journal has ever been written.
+     */
+    public boolean isEmpty() {
+        return await(io.submit(() -> {
+            for (SnapshotFormat snapshotFormat : SnapshotFormat.values()) {
+                if (snapshotFile(snapshotFormat).exists()) {
+                    return false;
+                }
+            }
+            return journalGenerations().isEmpty();
+        }));
+    }
+
+    /**
+     * Rebuild the task list by replaying the latest snapshot plus its journal tail.
+     * Blocks until every previously queued write has reached the journal.
+     */
+    public List<Task> load() {
+        return load(null);
+    }
+
+    /**
+     * Same as {@link #load()}, additionally reporting each snapshot task on the
+     * io thread as soon as it is decoded. Snapshots are written in display order,
+     * so the first tasks reported are the first ones on screen.
+     *
+     * Tasks stored before ids existed are reported with id 0. The returned list
+     * always has ids, assigned once and persisted before this returns.
+     */
+    public List<Task> load(DecodeListener listener) {
+        return await(io.submit(() -> {
+            closeWriter();
+            List<Task> tasks = recover(listener);
+            if (needsRewrite) {
+                writeSnapshot(new ArrayList<>(tasks), generation + 1);
+            } else {
+                openWriter();
+            }
+            return tasks;
+        }));
+    }
+
+    /**
+     * Queue one record without waiting for it. A failure to write it is
+     * thrown by the next {@link #appendAll}, {@link #flush} or {@link #close}.
+     */
+    public void append(Op op, Task task) {
+        // Serialize on the caller's thread, the task may be mutated after we return
+        final String line = encodeRecord(op, task);
+        io.execute(() -> {
+            try {
+                ensureOpen();
+                journalWriter.write(line);
+                journalWriter.write('\n');
+                journalWriter.flush();
+                journalRecords++;
+                if (journalRecords >= compactionThreshold) {
+                    compact();
+                }
+            } catch (IOException e) {
+                if (appendFailure == null) {
+                    appendFailure = e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Group commit: write all records with a single flush and wait until they
+     * have reached the journal.
+     */
+    public void appendAll(List<Mutation> mutations) {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        final StringBuilder lines = new StringBuilder(mutations.size() * 128);
+        for (Mutation mutation : mutations) {
+            lines.append(encodeRecord(mutation.op, mutation.task)).append('\n');
+        }
+        final int count = mutations.size();
+        await(io.submit(() -> {
+            throwAppendFailure();
+            ensureOpen();
+            journalWriter.append(lines);
+            journalWriter.flush();
+            journalRecords += count;
+            if (journalRecords >= compactionThreshold) {
+                compact();
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Replace the whole store with the given list, discarding the journal.
+     * Tasks without an id are stored with a new one.
+     */
+    public void replaceAll(List<Task> tasks) {
+        final List<Task> copy = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            Task stored = new Task(task);
+            if (stored.getId() == 0) {
+                stored.setId(Task.newId());
+            }
+            copy.add(stored);
+        }
+        await(io.submit(() -> {
+            ensureOpen();
+            writeSnapshot(copy, generation + 1);
+            return null;
+        }));
+    }
+
+    /**
+     * Map the current snapshot for reading rows in place, or null if the store
+     * has no columnar snapshot. Rows are in display order; records still in
+     * the journal are not included.
+     */
+    public ColumnarTaskFile openSnapshot() {
+        return await(io.submit(() -> {
+            File snapshotFile = snapshotFile(SnapshotFormat.COLUMNAR);
+            // A columnar file next to a JSON store is left over from an interrupted conversion
+            return format == SnapshotFormat.COLUMNAR && snapshotFile.exists()
+                    ? ColumnarTaskFile.open(snapshotFile) : null;
+        }));
+    }
+
+    /**
+     * Fold the journal into a fresh snapshot now instead of waiting for the threshold.
+     */
+    public void compactNow() {
+        await(io.submit(() -> {
+            ensureOpen();
+            compact();
+            return null;
+        }));
+    }
+
+    /**
+     * Wait until every queued write has reached the journal.
+     */
+    public void flush() {
+        await(io.submit(() -> {
+            throwAppendFailure();
+            return null;
+        }));
+    }
+
+    /**
+     * Wait for queued writes, then release the journal file and stop the io
+     * thread. The journal cannot be used afterwards.
+     */
+    public void close() {
+        try {
+            await(io.submit(() -> {
+                closeWriter();
+                opened = false;
+                throwAppendFailure();
+                return null;
+            }));
+        } finally {
+            io.shutdown();
+        }
+    }
+
+    int getJournalRecordCount() {
+        return await(io.submit(() -> journalRecords));
+    }
+
+    // ---- io thread only below ----
+
+    private void throwAppendFailure() throws IOException {
+        IOException failure = appendFailure;
+        if (failure != null) {
+            appendFailure = null;
+            throw failure;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!opened) {
+            recover();
+            openWriter();
+        }
+    }
+
+    private List<Task> recover() throws IOException {
+        return recover(null);
+    }
+
+    private List<Task> recover(DecodeListener listener) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        LinkedHashMap<String, Task> tasks = new LinkedHashMap<>();
+        generation = readSnapshot(tasks, listener);
+
+        journalRecords = 0;
+        for (long journalGeneration : journalGenerations()) {
+            File journal = journalFile(journalGeneration);
+            if (journalGeneration < generation) {
+                // Already folded into the snapshot by a compaction that was interrupted
+                Files.deleteIfExists(journal.toPath());
+                continue;
+            }
+            generation = journalGeneration;
+            journalRecords = replay(journal, tasks);
+        }
+        opened = true;
+
+        List<Task> result = new ArrayList<>(tasks.size());
+        for (Task task : tasks.values()) {
+            if (task.getId() == 0) {
+                // Stored before tasks had ids. Assign one on a copy, the decoded
+                // instance may already have been handed to the listener.
+                task = new Task(task);
+                task.setId(Task.newId());
+                needsRewrite = true;
+            }
+            result.add(task);
+        }
+        return result;
+    }
+
+    private long readSnapshot(Map<String, Task> into, DecodeListener listener) throws IOException {
+        needsRewrite = false;
+        File preferred = snapshotFile(format);
+        for (SnapshotFormat snapshotFormat : SnapshotFormat.values()) {
+            File snapshotFile = snapshotFile(snapshotFormat);
+            if (snapshotFormat == format || !snapshotFile.exists()) {
+                continue;
+            }
+            if (preferred.exists()) {
+                // Left behind by a conversion that was interrupted before cleaning up
+                Files.deleteIfExists(snapshotFile.toPath());
+            } else {
+                needsRewrite = true;
+                return readSnapshot(snapshotFormat, snapshotFile, into, listener);
+            }
+        }
+        if (!preferred.exists()) {
+            return 0;
+        }
+        return readSnapshot(format, preferred, into, listener);
+    }
+
+    private long readSnapshot(SnapshotFormat snapshotFormat, File snapshotFile,
+                              final Map<String, Task> into, final DecodeListener listener) throws IOException {
+        if (snapshotFormat == SnapshotFormat.COLUMNAR) {
+            ColumnarTaskFile columnar = ColumnarTaskFile.open(snapshotFile);
+            columnar.forEach(task -> {
+                into.put(keyOf(task), task);
+                if (listener != null) {
+                    listener.onTaskDecoded(task);
+                }
+            });
+            return columnar.getGeneration();
+        }
+
+        long snapshotGeneration = 0;
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("generation")) {
+                    snapshotGeneration = reader.nextLong();
+                } else if (name.equals("tasks")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Task task = TaskCodec.read(reader);
+                        into.put(keyOf(task), task);
+                        if (listener != null) {
+                            listener.onTaskDecoded(task);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Corrupt task snapshot", e);
+        }
+        return snapshotGeneration;
+    }
+
+    /**
+     * Apply every complete record in the journal. A torn trailing record left by
+     * a crash mid-write is cut off so that the next append starts on a clean line.
+     */
+    private int replay(File journal, Map<String, Task> tasks) throws IOException {
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        int applied = 0;
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+            if (line.isEmpty()) {
+                continue;
+            }
+            Record record;
+            try {
+                record = decodeRecord(line);
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                record = null;
+            }
+            if (record == null || record.op == null || record.task == null) {
+                continue;
+            }
+            apply(record, tasks);
+            applied++;
+        }
+        if (lineStart < bytes.length) {
+            try (FileChannel channel = new FileOutputStream(journal, true).getChannel()) {
+                channel.truncate(lineStart);
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(Record record, Map<String, Task> tasks) {
+        String key = keyOf(record.task);
+        switch (record.op) {
+            case ADD:
+                tasks.put(key, record.task);
+                break;
+            case COMPLETE:
+            case UNCOMPLETE:
+                // Replace rather than mutate, decoded tasks may already be handed out
+                if (tasks.containsKey(key)) {
+                    tasks.put(key, record.task);
+                }
+                break;
+            case DELETE:
+                tasks.remove(key);
+                break;
+        }
+    }
+
+    private void compact() throws IOException {
+        closeWriter();
+        List<Task> tasks = recover();
+        writeSnapshot(tasks, generation + 1);
+    }
+
+    /**
+     * Atomically install a snapshot of the given generation, then start its
+     * (empty) journal and drop the ones it supersedes.
+     */
+    private void writeSnapshot(List<Task> tasks, long newGeneration) throws IOException {
+        closeWriter();
+        // Keep the snapshot in display order so loading can paint its head early
+        Collections.sort(tasks, TaskOrder.DISPLAY);
+        File tmp = new File(dir, SNAPSHOT_TMP_FILE);
+        if (format == SnapshotFormat.COLUMNAR) {
+            ColumnarTaskFile.write(tmp, tasks, newGeneration);
+        } else {
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+                writer.beginObject();
+                writer.name("generation").value(newGeneration);
+                writer.name("tasks");
+                TaskCodec.writeArray(writer, tasks);
+                writer.endObject();
+                writer.flush();
+                out.getFD().sync();
+            }
+        }
+        if (!tmp.renameTo(snapshotFile(format))) {
+            throw new IOException("Failed to install task snapshot");
+        }
+        for (SnapshotFormat snapshotFormat : SnapshotFormat.values()) {
+            if (snapshotFormat != format) {
+                Files.deleteIfExists(snapshotFile(snapshotFormat).toPath());
+            }
+        }
+        needsRewrite = false;
+
+        for (long journalGeneration : journalGenerations()) {
+            if (journalGeneration < newGeneration) {
+                Files.deleteIfExists(journalFile(journalGeneration).toPath());
+            }
+        }
+        generation = newGeneration;
+        journalRecords = 0;
+        openWriter();
+    }
+
+    private void openWriter() throws IOException {
+        journalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile(generation), true), StandardCharsets.UTF_8));
+    }
+
+    private void closeWriter() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+
+    private List<Long> journalGenerations() {
+        List<Long> generations = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return generations;
+        }
+        for (String name : names) {
+            if (!name.startsWith(JOURNAL_PREFIX)) {
+                continue;
+            }
+            try {
+                generations.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length())));
+            } catch (NumberFormatException ignored) {
+                // Not one of ours
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private File snapshotFile(SnapshotFormat snapshotFormat) {
+        return new File(dir, snapshotFormat.fileName);
+    }
+
+    private File journalFile(long journalGeneration) {
+        return new File(dir, JOURNAL_PREFIX + journalGeneration);
+    }
+
+    // Records written before tasks had ids fall back to creation time plus text,
+    // which is unique in practice. Such tasks are given an id on the next load.
+    private static String keyOf(Task task) {
+        return task.getId() != 0 ? "#" + task.getId() : task.getCreatedAt() + ":" + task.getTaskText();
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for task journal", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Task journal operation failed", e.getCause());
+        }
+    }
+
+    private static String encodeRecord(Op op, Task task) {
+        StringWriter out = new StringWriter(128);
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writer.beginObject();
+            writer.name("op").value(op.name());
+            writer.name("task");
+            TaskCodec.write(writer, task);
+            writer.endObject();
+            writer.close();
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    private static Record decodeRecord(String line) throws IOException {
+        Record record = new Record();
+        JsonReader reader = new JsonReader(new StringReader(line));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("op")) {
+                try {
+                    record.op = Op.valueOf(reader.nextString());
+                } catch (IllegalArgumentException e) {
+                    record.op = null;
+                }
+            } else if (name.equals("task")) {
+                record.task = TaskCodec.read(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return record;
+    }
+
+    private static class Record {
+        Op op;
+        Task task;
+    }
+}
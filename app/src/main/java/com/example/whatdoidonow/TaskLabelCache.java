@@ -0,0 +1,166 @@
+package com.example.whatdoidonow;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timestamp labels for task rows ("Created: ...\nCompleted: ..."), plus the
+ * due time and repeat interval of scheduled tasks, rendered once and then
+ * served from memory.
+ *
+ * Labels are cached per task id together with the minute buckets they were
+ * rendered for, the format has minute precision. A hit costs two map probes
+ * and allocates nothing. Formatted dates are shared per minute bucket, so
+ * tasks created in the same minute format the date once.
+ *
+ * Thread-safe: labels can be rendered ahead on a background thread while the
+ * UI thread reads them.
+ */
+public class TaskLabelCache {
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final long NOT_SHOWN = Long.MIN_VALUE;
+    private static final String PATTERN = "MMM d, yyyy 'at' h:mm a";
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // DateTimeFormatter is immutable and safe to share between threads
+    private final DateTimeFormatter formatter;
+    private final int capacity;
+    private final LongObjectMap<Label> labels;
+    private final LongObjectMap<String> dates;
+
+    private static final class Label {
+        final long createdMinute;
+        final long completedMinute;
+        final long dueMinute;
+        final long repeatMillis;
+        final String text;
+
+        Label(long createdMinute, long completedMinute, long dueMinute, long repeatMillis, String text) {
+            this.createdMinute = createdMinute;
+            this.completedMinute = completedMinute;
+            this.dueMinute = dueMinute;
+            this.repeatMillis = repeatMillis;
+            this.text = text;
+        }
+
+        boolean matches(Task task) {
+            return createdMinute == createdMinute(task) && completedMinute == completedMinute(task)
+                    && dueMinute == dueMinute(task) && repeatMillis == task.getRepeatMillis();
+        }
+    }
+
+    public TaskLabelCache() {
+        this(Locale.getDefault(), ZoneId.systemDefault(), DEFAULT_CAPACITY);
+    }
+
+    public TaskLabelCache(Locale locale, ZoneId zone, int capacity) {
+        this.formatter = DateTimeFormatter.ofPattern(PATTERN, locale).withZone(zone);
+        this.capacity = capacity;
+        this.labels = new LongObjectMap<>(capacity);
+        this.dates = new LongObjectMap<>(capacity);
+    }
+
+    /**
+     * The label for the task's current timestamps, rendered on a miss
+     */
+    public synchronized String get(Task task) {
+        Label label = task.getId() != 0 ? labels.get(task.getId()) : null;
+        if (label != null && label.matches(task)) {
+            return label.text;
+        }
+        long createdMinute = createdMinute(task);
+        long completedMinute = completedMinute(task);
+        long dueMinute = dueMinute(task);
+        String text = render(createdMinute, completedMinute, dueMinute, task.getRepeatMillis());
+        if (task.getId() != 0) {
+            if (labels.size() >= capacity) {
+                // Cheaper than tracking recency; a full cache is refilled from what is on screen
+                labels.clear();
+            }
+            labels.put(task.getId(), new Label(createdMinute, completedMinute, dueMinute, task.getRepeatMillis(), text));
+        }
+        return text;
+    }
+
+    public synchronized boolean isCached(Task task) {
+        Label label = labels.get(task.getId());
+        return label != null && label.matches(task);
+    }
+
+    /**
+     * Render the labels of {@code tasks[from, to)} ahead of time. Call it off the UI thread.
+     */
+    public void prefetch(List<Task> tasks, int from, int to) {
+        int end = Math.min(to, tasks.size());
+        for (int i = Math.max(from, 0); i < end; i++) {
+            get(tasks.get(i));
+        }
+    }
+
+    private String render(long createdMinute, long completedMinute, long dueMinute, long repeatMillis) {
+        String text = "Created: " + formatMinute(createdMinute);
+        if (completedMinute != NOT_SHOWN) {
+            text += "\nCompleted: " + formatMinute(completedMinute);
+        }
+        if (dueMinute != NOT_SHOWN) {
+            text += "\nDue: " + formatMinute(dueMinute);
+        }
+        if (repeatMillis > 0) {
+            text += "\nRepeats " + describeRepeat(repeatMillis);
+        }
+        return text;
+    }
+
+    /**
+     * "every day", "every 4 hours" and so on
+     */
+    static String describeRepeat(long repeatMillis) {
+        if (repeatMillis % (7 * DAY_MILLIS) == 0) {
+            return every(repeatMillis / (7 * DAY_MILLIS), "week");
+        }
+        if (repeatMillis % DAY_MILLIS == 0) {
+            return every(repeatMillis / DAY_MILLIS, "day");
+        }
+        if (repeatMillis % HOUR_MILLIS == 0) {
+            return every(repeatMillis / HOUR_MILLIS, "hour");
+        }
+        return every(Math.max(repeatMillis / MINUTE_MILLIS, 1), "minute");
+    }
+
+    private static String every(long count, String unit) {
+        return count == 1 ? "every " + unit : "every " + count + " " + unit + "s";
+    }
+
+    private String formatMinute(long minute) {
+        String date = dates.get(minute);
+        if (date == null) {
+            if (dates.size() >= capacity) {
+                dates.clear();
+            }
+            date = formatter.format(Instant.ofEpochMilli(minute * MINUTE_MILLIS));
+            dates.put(minute, date);
+        }
+        return date;
+    }
+
+    private static long createdMinute(Task task) {
+        return Math.floorDiv(task.getCreatedAt(), MINUTE_MILLIS);
+    }
+
+    private static long dueMinute(Task task) {
+        // Only pending tasks are waiting for their due time
+        return !task.isCompleted() && task.getDueAt() > 0
+                ? Math.floorDiv(task.getDueAt(), MINUTE_MILLIS) : NOT_SHOWN;
+    }
+
+    private static long completedMinute(Task task) {
+        return task.isCompleted() && task.getCompletedAt() > 0
+                ? Math.floorDiv(task.getCompletedAt(), MINUTE_MILLIS) : NOT_SHOWN;
+    }
+}
@@ -0,0 +1,416 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The user's named task lists, and a small manifest that describes them.
+ *
+ * Every list keeps its journal, archive and statistics in a directory of its
+ * own, so opening one list reads nothing of the others. The manifest holds
+ * what choosing a list needs: names, task counts and when each list last
+ * changed, so listing them does not decode any. The first list lives in the
+ * files directory itself, where the single list was kept before there were
+ * several, and cannot be deleted.
+ *
+ * Changes are kept in memory until {@link #save()}, which replaces the
+ * manifest by rename, so a crash leaves the old or the new version.
+ * Thread-safe.
+ */
+public class TaskLists {
+    public static final String DEFAULT_ID = "default";
+    static final String DEFAULT_NAME = "My tasks";
+    static final String MANIFEST_FILE = "task_lists.json";
+    static final String LISTS_DIR = "task_lists";
+    private static final int VERSION = 1;
+
+    /**
+     * What the manifest knows about one list. Never changes, updates replace it.
+     */
+    public static final class Entry {
+        private final String id;
+        private final String name;
+        private final int taskCount;
+        private final int completedCount;
+        private final long modifiedAt;
+        private final long remindedUntil;
+
+        Entry(String id, String name, int taskCount, int completedCount, long modifiedAt, long remindedUntil) {
+            this.id = id;
+            this.name = name;
+            this.taskCount = taskCount;
+            this.completedCount = completedCount;
+            this.modifiedAt = modifiedAt;
+            this.remindedUntil = remindedUntil;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Tasks in the list when it was last open, or -1 if it has not been
+         * opened since the manifest was created
+         */
+        public int getTaskCount() {
+            return taskCount;
+        }
+
+        public int getCompletedCount() {
+            return completedCount;
+        }
+
+        public int getPendingCount() {
+            return taskCount < 0 ? -1 : taskCount - completedCount;
+        }
+
+        /**
+         * When a task in the list last changed, or 0 if never
+         */
+        public long getModifiedAt() {
+            return modifiedAt;
+        }
+
+        /**
+         * Reminders due up to this time have been shown, see {@link TaskScheduler}
+         */
+        public long getRemindedUntil() {
+            return remindedUntil;
+        }
+    }
+
+    private final File root;
+    private final File manifestFile;
+    // Guarded by this, in the order the lists were created
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String activeId = DEFAULT_ID;
+    private long nextId = 1;
+    private boolean dirty;
+
+    /**
+     * @param root the directory holding the manifest and the first list, usually the files directory
+     */
+    public TaskLists(File root) {
+        this.root = root;
+        this.manifestFile = new File(root, MANIFEST_FILE);
+        entries.put(DEFAULT_ID, new Entry(DEFAULT_ID, DEFAULT_NAME, -1, 0, 0, 0));
+    }
+
+    /**
+     * Read the manifest. Without one there is just the first list. An
+     * unreadable manifest is rebuilt from the list directories, losing names
+     * and counts. Blocks on disk I/O.
+     *
+     * @return false if the manifest could not be read
+     */
+    public synchronized boolean load() {
+        if (!manifestFile.exists()) {
+            return true;
+        }
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            readJson(reader);
+            return true;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            rebuild();
+            return false;
+        }
+    }
+
+    public synchronized List<Entry> getLists() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * The list's entry, or null if there is no such list
+     */
+    public synchronized Entry get(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * The list shown at startup, the one last made active
+     */
+    public synchronized String getActiveId() {
+        return activeId;
+    }
+
+    public synchronized void setActive(String id) {
+        requireList(id);
+        if (!id.equals(activeId)) {
+            activeId = id;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Add an empty list. Its directory is created when something is first written to it.
+     */
+    public synchronized Entry create(String name) {
+        String id = String.valueOf(nextId++);
+        Entry entry = new Entry(id, name, 0, 0, System.currentTimeMillis(), 0);
+        entries.put(id, entry);
+        dirty = true;
+        return entry;
+    }
+
+    public synchronized void rename(String id, String name) {
+        Entry entry = requireList(id);
+        replace(new Entry(id, name, entry.taskCount, entry.completedCount, entry.modifiedAt, entry.remindedUntil));
+    }
+
+    /**
+     * Remove a list and everything stored for it. The list must be closed
+     * first. If it was active, the first list becomes active. Blocks on disk I/O.
+     */
+    public synchronized void delete(String id) throws IOException {
+        requireList(id);
+        if (DEFAULT_ID.equals(id)) {
+            throw new IllegalArgumentException("The first list cannot be deleted");
+        }
+        entries.remove(id);
+        if (id.equals(activeId)) {
+            activeId = DEFAULT_ID;
+        }
+        dirty = true;
+        // Dropped from the manifest first, so a crash part way leaves only an orphaned directory
+        save();
+        deleteRecursively(dirOf(id));
+    }
+
+    /**
+     * Where the list keeps its store, archive and statistics. Needs no manifest.
+     */
+    public File dirOf(String id) {
+        return DEFAULT_ID.equals(id) ? root : new File(new File(root, LISTS_DIR), id);
+    }
+
+    /**
+     * Record the list's counts, and that it changed at {@code modifiedAt} unless that is 0
+     */
+    public synchronized void updateCounts(String id, int taskCount, int completedCount, long modifiedAt) {
+        Entry entry = entries.get(id);
+        // A list deleted while its last changes were being published
+        if (entry == null) {
+            return;
+        }
+        if (entry.taskCount == taskCount && entry.completedCount == completedCount && modifiedAt == 0) {
+            return;
+        }
+        replace(new Entry(id, entry.name, taskCount, completedCount,
+                modifiedAt == 0 ? entry.modifiedAt : modifiedAt, entry.remindedUntil));
+    }
+
+    public synchronized void setRemindedUntil(String id, long remindedUntil) {
+        Entry entry = entries.get(id);
+        if (entry == null || entry.remindedUntil == remindedUntil) {
+            return;
+        }
+        replace(new Entry(id, entry.name, entry.taskCount, entry.completedCount, entry.modifiedAt, remindedUntil));
+    }
+
+    /**
+     * A listener that keeps the list's counts in step with a repository. Cheap
+     * enough for the writer thread: counting is O(1) and nothing is written
+     * until {@link #save()}.
+     */
+    public TaskRepository.Listener countsOf(final String id) {
+        return snapshot -> {
+            TaskIndex tasks = snapshot.getTasks();
+            // Loading the list is not a change to it
+            updateCounts(id, tasks.size(), tasks.completedCount(),
+                    snapshot.getChange() == null ? 0 : System.currentTimeMillis());
+        };
+    }
+
+    /**
+     * Write the manifest if anything changed since it was last written. Blocks on disk I/O.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(manifestFile.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writeJson(new JsonWriter(out));
+        }
+        if (!tmp.renameTo(manifestFile)) {
+            throw new IOException("Failed to replace " + manifestFile);
+        }
+        dirty = false;
+    }
+
+    private Entry requireList(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException("No task list " + id);
+        }
+        return entry;
+    }
+
+    private void replace(Entry entry) {
+        entries.put(entry.id, entry);
+        dirty = true;
+    }
+
+    private void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("version").value(VERSION);
+        writer.name("active").value(activeId);
+        writer.name("nextId").value(nextId);
+        writer.name("lists");
+        writer.beginArray();
+        for (Entry entry : entries.values()) {
+            writer.beginObject();
+            writer.name("id").value(entry.id);
+            writer.name("name").value(entry.name);
+            writer.name("tasks").value(entry.taskCount);
+            writer.name("completed").value(entry.completedCount);
+            writer.name("modifiedAt").value(entry.modifiedAt);
+            writer.name("remindedUntil").value(entry.remindedUntil);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private void readJson(JsonReader reader) throws IOException {
+        Map<String, Entry> read = new LinkedHashMap<>();
+        String readActive = DEFAULT_ID;
+        long readNextId = 1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "version":
+                    int version = reader.nextInt();
+                    if (version > VERSION) {
+                        throw new IOException("Unsupported task list manifest version " + version);
+                    }
+                    break;
+                case "active":
+                    readActive = reader.nextString();
+                    break;
+                case "nextId":
+                    readNextId = reader.nextLong();
+                    break;
+                case "lists":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Entry entry = readEntry(reader);
+                        read.put(entry.id, entry);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!read.containsKey(DEFAULT_ID)) {
+            read.put(DEFAULT_ID, entries.get(DEFAULT_ID));
+        }
+        entries.clear();
+        entries.putAll(read);
+        activeId = entries.containsKey(readActive) ? readActive : DEFAULT_ID;
+        nextId = readNextId;
+        dirty = false;
+    }
+
+    private static Entry readEntry(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        int taskCount = -1;
+        int completedCount = 0;
+        long modifiedAt = 0;
+        long remindedUntil = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "tasks":
+                    taskCount = reader.nextInt();
+                    break;
+                case "completed":
+                    completedCount = reader.nextInt();
+                    break;
+                case "modifiedAt":
+                    modifiedAt = reader.nextLong();
+                    break;
+                case "remindedUntil":
+                    remindedUntil = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id == null || name == null) {
+            throw new IOException("Task list without id or name");
+        }
+        return new Entry(id, name, taskCount, completedCount, modifiedAt, remindedUntil);
+    }
+
+    /**
+     * Make an entry for every list directory, keeping the ids so new lists don't reuse them
+     */
+    private void rebuild() {
+        entries.clear();
+        entries.put(DEFAULT_ID, new Entry(DEFAULT_ID, DEFAULT_NAME, -1, 0, 0, 0));
+        activeId = DEFAULT_ID;
+        nextId = 1;
+        File[] dirs = new File(root, LISTS_DIR).listFiles(File::isDirectory);
+        if (dirs != null) {
+            List<Long> ids = new ArrayList<>();
+            for (File dir : dirs) {
+                try {
+                    ids.add(Long.parseLong(dir.getName()));
+                } catch (NumberFormatException e) {
+                    // Not a list
+                }
+            }
+            Collections.sort(ids);
+            for (long id : ids) {
+                entries.put(String.valueOf(id), new Entry(String.valueOf(id), "List " + id, -1, 0,
+                        new File(new File(root, LISTS_DIR), String.valueOf(id)).lastModified(), 0));
+                nextId = id + 1;
+            }
+        }
+        dirty = true;
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
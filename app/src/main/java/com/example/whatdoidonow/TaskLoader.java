@@ -0,0 +1,191 @@
+package com.example.whatdoidonow;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the stored tasks on a background thread and hands them to the UI in
+ * pieces: the first screenful as soon as it is decoded, then larger batches,
+ * then the complete, indexed list once the journal tail has been replayed.
+ *
+ * A columnar snapshot is handed over before anything is decoded instead, to
+ * be read a page at a time wherever the user scrolls.
+ */
+public class TaskLoader {
+    private static final String TAG = "TaskLoader";
+
+    // Roughly what fits on screen, published before anything else is decoded
+    static final int FIRST_SCREEN_SIZE = 20;
+    static final int BATCH_SIZE = 500;
+    // Timestamp labels of the first tasks are rendered while decoding, off the UI thread
+    static final int PREFETCH_LABELS = 1000;
+
+    public interface Listener {
+        /**
+         * Tasks decoded so far, in display order. Called on the main thread.
+         */
+        void onTasksDecoded(List<Task> tasks);
+
+        /**
+         * The stored snapshot, readable page by page until the complete list
+         * arrives. Only called for columnar stores, whose tasks are then not
+         * passed to {@link #onTasksDecoded}. Called on the main thread.
+         */
+        void onSnapshotOpened(TaskPageSource snapshot);
+
+        /**
+         * The complete task list, indexed in display order, plus a picker over its
+         * pending tasks. Replaces everything previously passed to
+         * {@link #onTasksDecoded}. Called on the main thread.
+         */
+        void onTasksLoaded(TaskIndex tasks, TaskPicker picker);
+
+        /**
+         * The stored tasks could not be read. Nothing more is delivered for
+         * this load. Called on the main thread.
+         */
+        void onLoadFailed(Exception error);
+    }
+
+    private final TaskManager taskManager;
+    private final TaskLabelCache labelCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean cancelled;
+    private volatile long timeToFirstTaskMillis = -1;
+
+    public TaskLoader(TaskManager taskManager, TaskLabelCache labelCache) {
+        this.taskManager = taskManager;
+        this.labelCache = labelCache;
+    }
+
+    public void load(final Listener listener) {
+        final long startedAt = SystemClock.elapsedRealtime();
+        executor.execute(() -> {
+            try {
+                final TaskPageSource snapshot = openSnapshot();
+                if (snapshot != null) {
+                    mainHandler.post(() -> {
+                        if (cancelled) {
+                            return;
+                        }
+                        // Every stored task is reachable from here on, pages follow within milliseconds
+                        recordFirstPaint(startedAt);
+                        listener.onSnapshotOpened(snapshot);
+                    });
+                }
+
+                TaskJournal.DecodeListener decodeListener = new TaskJournal.DecodeListener() {
+                    private List<Task> batch = new ArrayList<>(FIRST_SCREEN_SIZE);
+                    private boolean firstPublished;
+                    private int decoded;
+
+                    @Override
+                    public void onTaskDecoded(Task task) {
+                        if (decoded++ < PREFETCH_LABELS) {
+                            labelCache.get(task);
+                        }
+                        if (snapshot != null) {
+                            return;
+                        }
+                        batch.add(task);
+                        if (batch.size() >= (firstPublished ? BATCH_SIZE : FIRST_SCREEN_SIZE)) {
+                            publish(batch, !firstPublished);
+                            firstPublished = true;
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+
+                    private void publish(final List<Task> tasks, final boolean isFirstBatch) {
+                        mainHandler.post(() -> {
+                            if (cancelled) {
+                                return;
+                            }
+                            if (isFirstBatch) {
+                                recordFirstPaint(startedAt);
+                            }
+                            listener.onTasksDecoded(tasks);
+                        });
+                    }
+                };
+
+                List<Task> loaded = taskManager.loadTasks(decodeListener);
+                long indexing = PerfMetrics.BUILD_INDEX.start();
+                final TaskIndex tasks = new TaskIndex(loaded);
+                PerfMetrics.BUILD_INDEX.stop(indexing);
+                final TaskPicker picker = new TaskPicker(tasks);
+
+                mainHandler.post(() -> {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (timeToFirstTaskMillis < 0) {
+                        recordFirstPaint(startedAt);
+                    }
+                    listener.onTasksLoaded(tasks, picker);
+                    Log.d(TAG, "Loaded " + tasks.size() + " tasks in "
+                            + (SystemClock.elapsedRealtime() - startedAt) + " ms");
+                });
+            } catch (final RuntimeException e) {
+                mainHandler.post(() -> {
+                    if (cancelled) {
+                        return;
+                    }
+                    listener.onLoadFailed(e);
+                });
+            }
+        });
+    }
+
+    /**
+     * Drop any results that have not been delivered yet
+     */
+    public void cancel() {
+        cancelled = true;
+        executor.shutdown();
+    }
+
+    /**
+     * After {@link #cancel}, wait until a load already under way has stopped
+     * reading the store, so the store can be closed
+     */
+    public void awaitStopped() {
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the task loader", e);
+        }
+    }
+
+    private TaskPageSource openSnapshot() {
+        try {
+            ColumnarTaskFile snapshot = taskManager.openSnapshot();
+            return snapshot != null && snapshot.size() > 0 ? snapshot : null;
+        } catch (IllegalStateException e) {
+            // Loading below reads the same file and reports the problem properly
+            Log.w(TAG, "Cannot map the task snapshot, showing decoded tasks instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * Milliseconds from {@link #load} until the first tasks reached the UI, or -1 if none yet
+     */
+    public long getTimeToFirstTaskMillis() {
+        return timeToFirstTaskMillis;
+    }
+
+    private void recordFirstPaint(long startedAt) {
+        timeToFirstTaskMillis = SystemClock.elapsedRealtime() - startedAt;
+        Log.d(TAG, "First tasks delivered after " + timeToFirstTaskMillis + " ms");
+    }
+}
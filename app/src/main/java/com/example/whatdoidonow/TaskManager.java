@@ -4,57 +4,490 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
-import java.lang.reflect.Type;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-public class TaskManager {
+public class TaskManager implements TaskStore {
     private static final String PREF_NAME = "TaskGeneratorPrefs";
     private static final String KEY_TASKS = "tasks";
+    private static final String KEY_WEIGHTED_PICKS = "weightedPicks";
+    private static final String KEY_ARCHIVE_AFTER_DAYS = "archiveAfterDays";
+    private static final String KEY_SYNC_DEVICE = "syncDevice";
+    private static final String STORE_DIR = "task_store";
+    private static final String ARCHIVE_DIR = "task_archive";
+    private static final String STATS_FILE = "task_stats.json";
+    private static final String SYNC_FILE = "task_sync.json";
+    public static final int DEFAULT_ARCHIVE_AFTER_DAYS = 30;
 
     private final SharedPreferences sharedPreferences;
-    private final Gson gson;
+    private final TaskJournal journal;
+    private final TaskWriteScheduler writeScheduler;
+    private final TaskArchive archive;
+    private final File statsFile;
+    private final TaskStats stats = new TaskStats(ZoneId.systemDefault());
+    private final File syncFile;
+    private final TaskSyncState syncState;
+    // Only the first list can have tasks in the legacy preference
+    private final boolean migratesLegacyTasks;
+    // Guarded by statsFile
+    private boolean statsLoaded;
+    private long savedStatsChange;
+    // Guarded by syncFile
+    private boolean syncLoaded;
+    private long savedSyncChange;
+
+    private interface JsonContent {
+        void writeTo(JsonWriter writer) throws IOException;
+    }
 
     public TaskManager(Context context) {
+        this(context, TaskJournal.SnapshotFormat.JSON);
+    }
+
+    /**
+     * @param snapshotFormat encoding of the store's snapshot file. Data written in the
+     *                       other format, or in the legacy preference, is converted on load.
+     */
+    public TaskManager(Context context, TaskJournal.SnapshotFormat snapshotFormat) {
+        this(context, context.getFilesDir(), snapshotFormat);
+    }
+
+    /**
+     * The tasks of one list, kept in the given directory, see {@link TaskLists#dirOf}.
+     * Preferences are shared by every list.
+     */
+    public TaskManager(Context context, File dir, TaskJournal.SnapshotFormat snapshotFormat) {
         sharedPreferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        journal = new TaskJournal(new File(dir, STORE_DIR), snapshotFormat,
+                TaskJournal.DEFAULT_COMPACTION_THRESHOLD);
+        writeScheduler = new TaskWriteScheduler(journal);
+        archive = new TaskArchive(new File(dir, ARCHIVE_DIR));
+        statsFile = new File(dir, STATS_FILE);
+        syncFile = new File(dir, SYNC_FILE);
+        syncState = new TaskSyncState(syncDevice(), Clock.systemUTC());
+        migratesLegacyTasks = dir.equals(context.getFilesDir());
     }
 
     /**
-     * Save tasks to SharedPreferences
+     * Replace every stored task with the given list
      */
     public void saveTasks(List<Task> tasks) {
-        String tasksJson = gson.toJson(tasks);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(KEY_TASKS, tasksJson);
-        editor.apply();
+        long started = PerfMetrics.SAVE_TASKS.start();
+        writeScheduler.replaceAll(tasks);
+        PerfMetrics.SAVE_TASKS.stop(started);
         Log.d("TaskManager", "Saved " + tasks.size() + " tasks");
     }
 
     /**
-     * Load tasks from SharedPreferences
+     * Load tasks from the journal, migrating the legacy SharedPreferences blob on first run
      */
     public List<Task> loadTasks() {
-        String tasksJson = sharedPreferences.getString(KEY_TASKS, null);
-        if (tasksJson != null) {
-            Type type = new TypeToken<ArrayList<Task>>() {}.getType();
-            List<Task> tasks = gson.fromJson(tasksJson, type);
-            Log.d("TaskManager", "Loaded " + tasks.size() + " tasks");
-            return tasks;
+        return loadTasks(null);
+    }
+
+    /**
+     * Load tasks, reporting each snapshot task to the listener as soon as it is decoded.
+     * Blocks on disk I/O, call it from a background thread.
+     */
+    public List<Task> loadTasks(TaskJournal.DecodeListener listener) {
+        long started = PerfMetrics.LOAD_TASKS.start();
+        migrateLegacyTasks();
+        writeScheduler.flush();
+        List<Task> tasks = journal.load(listener);
+        loadStats(tasks);
+        loadSyncState();
+        PerfMetrics.LOAD_TASKS.stop(started);
+        Log.d("TaskManager", "Loaded " + tasks.size() + " tasks");
+        return tasks;
+    }
+
+    /**
+     * The stored snapshot mapped for paging, or null if the store keeps JSON
+     * snapshots or has none yet. See {@link TaskJournal#openSnapshot()}.
+     */
+    public ColumnarTaskFile openSnapshot() {
+        return journal.openSnapshot();
+    }
+
+    /**
+     * Record a newly created task. Mutations are batched, see {@link TaskWriteScheduler}.
+     */
+    @Override
+    public void addTask(Task task) {
+        writeScheduler.record(TaskJournal.Op.ADD, task);
+    }
+
+    /**
+     * Record several new tasks as one transaction, stored in a single write
+     */
+    @Override
+    public void addTasks(List<Task> tasks) {
+        List<TaskJournal.Mutation> mutations = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            mutations.add(new TaskJournal.Mutation(TaskJournal.Op.ADD, task));
+        }
+        writeScheduler.recordAll(mutations);
+    }
+
+    /**
+     * Record a completion status change of an existing task
+     */
+    @Override
+    public void updateTask(Task task) {
+        writeScheduler.record(task.isCompleted() ? TaskJournal.Op.COMPLETE : TaskJournal.Op.UNCOMPLETE, task);
+    }
+
+    /**
+     * Record the removal of a task
+     */
+    @Override
+    public void deleteTask(Task task) {
+        writeScheduler.record(TaskJournal.Op.DELETE, task);
+    }
+
+    /**
+     * Record status changes of several tasks as one transaction, stored in a single write
+     */
+    @Override
+    public void updateTasks(List<Task> tasks) {
+        List<TaskJournal.Mutation> mutations = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            mutations.add(new TaskJournal.Mutation(
+                    task.isCompleted() ? TaskJournal.Op.COMPLETE : TaskJournal.Op.UNCOMPLETE, task));
+        }
+        writeScheduler.recordAll(mutations);
+    }
+
+    /**
+     * Record the removal of several tasks as one transaction, stored in a single write
+     */
+    @Override
+    public void deleteTasks(List<Task> tasks) {
+        List<TaskJournal.Mutation> mutations = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            mutations.add(new TaskJournal.Mutation(TaskJournal.Op.DELETE, task));
         }
-        return new ArrayList<>();
+        writeScheduler.recordAll(mutations);
     }
 
     /**
-     * Clear all tasks from SharedPreferences
+     * Record the result of undoing, redoing or a sync as one transaction, stored in a single write
      */
+    @Override
+    public void restoreTasks(TaskBatch batch) {
+        LongObjectMap<Task> added = new LongObjectMap<>(batch.getAdded().size());
+        for (Task task : batch.getAdded()) {
+            added.put(task.getId(), task);
+        }
+        List<Task> deleted = new ArrayList<>();
+        for (Task task : batch.getRemoved()) {
+            if (!added.containsKey(task.getId())) {
+                deleted.add(task);
+            }
+        }
+        // Adding a task with a known id replaces the stored version
+        writeScheduler.recordRestore(batch.getAdded(), deleted);
+    }
+
+    /**
+     * Clear all tasks from storage
+     */
+    @Override
     public void clearTasks() {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.remove(KEY_TASKS);
-        editor.apply();
+        writeScheduler.replaceAll(new ArrayList<Task>());
         Log.d("TaskManager", "Cleared all tasks");
     }
-}
\ No newline at end of file
+
+    /**
+     * Start writing batched mutations now, without waiting for them
+     */
+    @Override
+    public void requestFlush() {
+        writeScheduler.requestFlush();
+        saveStats();
+        saveSyncState();
+    }
+
+    /**
+     * Write batched mutations and wait until they are stored
+     */
+    @Override
+    public void flush() {
+        long started = PerfMetrics.FLUSH_WRITES.start();
+        writeScheduler.flush();
+        saveStats();
+        saveSyncState();
+        PerfMetrics.FLUSH_WRITES.stop(started);
+        Log.d("TaskManager", "Flushed " + writeScheduler.getMutationCount() + " mutations in "
+                + writeScheduler.getWriteCount() + " writes (" + writeScheduler.getRecordCount() + " records)");
+    }
+
+    /**
+     * Store everything changed so far, then stop the threads writing it.
+     * The store cannot be used afterwards.
+     */
+    public void close() {
+        flush();
+        writeScheduler.close();
+        journal.close();
+    }
+
+    public TaskWriteScheduler getWriteScheduler() {
+        return writeScheduler;
+    }
+
+    /**
+     * Completion statistics, read with the tasks and saved whenever they are
+     * flushed. Keep them current by listening to the {@link TaskRepository}.
+     */
+    public TaskStats getStats() {
+        return stats;
+    }
+
+    /**
+     * What the list sends at its next sync, read with the tasks and saved
+     * whenever they are flushed. Keep it current by listening to the
+     * {@link TaskRepository} on its writer thread.
+     */
+    public TaskSyncState getSyncState() {
+        return syncState;
+    }
+
+    /**
+     * Whether random picks favour older tasks
+     */
+    public boolean isWeightedPicking() {
+        return sharedPreferences.getBoolean(KEY_WEIGHTED_PICKS, false);
+    }
+
+    public void setWeightedPicking(boolean weighted) {
+        sharedPreferences.edit().putBoolean(KEY_WEIGHTED_PICKS, weighted).apply();
+    }
+
+    /**
+     * Completed tasks older than this many days are moved to the archive, 0
+     * for never. One setting for every list, readable without opening one.
+     */
+    public static int getArchiveAfterDays(Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .getInt(KEY_ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS);
+    }
+
+    public static void setArchiveAfterDays(Context context, int days) {
+        context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .edit().putInt(KEY_ARCHIVE_AFTER_DAYS, days).apply();
+    }
+
+    /**
+     * Write the expired completed tasks of a display-ordered snapshot to the
+     * archive. Returns them, plus tasks archived earlier whose removal was
+     * never stored, for the caller to remove with {@link #deleteTasks} and
+     * then {@link #confirmArchived}. Blocks on disk I/O.
+     */
+    public List<Task> archiveExpiredTasks(TaskIndex tasks, long now) throws IOException {
+        List<Task> archived = new ArrayList<>();
+        long[] pendingIds = archive.pendingIds();
+        LongObjectMap<Task> pending = new LongObjectMap<>(pendingIds.length);
+        for (long id : pendingIds) {
+            Task task = tasks.getById(id);
+            if (task != null) {
+                pending.put(id, task);
+                archived.add(task);
+            }
+        }
+
+        int days = sharedPreferences.getInt(KEY_ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS);
+        if (days > 0) {
+            List<Task> expired = new ArrayList<>();
+            for (Task task : TaskArchive.expired(tasks, now - TimeUnit.DAYS.toMillis(days))) {
+                if (!pending.containsKey(task.getId())) {
+                    expired.add(task);
+                }
+            }
+            if (!expired.isEmpty()) {
+                archive.write(expired);
+                archived.addAll(expired);
+                Log.d("TaskManager", "Archived " + expired.size() + " tasks");
+            }
+        }
+        // Archived here, not deleted everywhere
+        syncState.willArchive(archived);
+        return archived;
+    }
+
+    /**
+     * Store the removal of archived tasks and mark the archive runs done. Blocks on disk I/O.
+     */
+    public void confirmArchived() throws IOException {
+        flush();
+        archive.confirmPending();
+    }
+
+    /**
+     * The archived tasks of the list stored in {@code dir} as they are now,
+     * newest completed first. Needs no open store, so it starts no threads.
+     */
+    public static TaskArchive.Segments openArchive(File dir) {
+        return new TaskArchive(new File(dir, ARCHIVE_DIR)).open();
+    }
+
+    /**
+     * Read the saved statistics. Stores from before statistics existed, or
+     * whose statistics cannot be read, count the completed tasks in the list
+     * and the archive once instead.
+     */
+    private void loadStats(List<Task> tasks) {
+        synchronized (statsFile) {
+            if (statsLoaded) {
+                return;
+            }
+            statsLoaded = true;
+            if (statsFile.exists()) {
+                try (JsonReader reader = new JsonReader(new InputStreamReader(
+                        new FileInputStream(statsFile), StandardCharsets.UTF_8))) {
+                    stats.readJson(reader);
+                    savedStatsChange = stats.getChangeCount();
+                    return;
+                } catch (IOException | IllegalStateException | NumberFormatException e) {
+                    Log.e("TaskManager", "Recounting unreadable statistics", e);
+                }
+            }
+            stats.addCompleted(tasks);
+            TaskArchive.Segments archived = archive.open();
+            try {
+                for (int from = 0; from < archived.size(); from += TaskArchive.SEGMENT_SIZE) {
+                    stats.addCompleted(archived.load(from, Math.min(from + TaskArchive.SEGMENT_SIZE, archived.size())));
+                }
+            } catch (IOException e) {
+                Log.e("TaskManager", "Statistics leave out unreadable archived tasks", e);
+            }
+            Log.d("TaskManager", "Counted " + stats.getCompletions() + " completions");
+        }
+    }
+
+    /**
+     * Write the statistics if they changed since they were last written
+     */
+    private void saveStats() {
+        synchronized (statsFile) {
+            long change = stats.getChangeCount();
+            if (change != savedStatsChange && replaceFile(statsFile, stats::writeJson)) {
+                savedStatsChange = change;
+            }
+        }
+    }
+
+    /**
+     * Read the saved sync state. One that cannot be read is dropped, and the
+     * next sync sends the whole list again.
+     */
+    private void loadSyncState() {
+        synchronized (syncFile) {
+            if (syncLoaded) {
+                return;
+            }
+            syncLoaded = true;
+            if (!syncFile.exists()) {
+                return;
+            }
+            try (JsonReader reader = new JsonReader(new InputStreamReader(
+                    new FileInputStream(syncFile), StandardCharsets.UTF_8))) {
+                syncState.readJson(reader);
+                savedSyncChange = syncState.getChangeCount();
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                Log.e("TaskManager", "Dropping unreadable sync state", e);
+            }
+        }
+    }
+
+    private void saveSyncState() {
+        synchronized (syncFile) {
+            long change = syncState.getChangeCount();
+            if (change != savedSyncChange && replaceFile(syncFile, syncState::writeJson)) {
+                savedSyncChange = change;
+            }
+        }
+    }
+
+    /**
+     * Write a JSON file in place of the old one. Replaced by rename, so a
+     * crash leaves the old or the new version.
+     *
+     * @return whether the file was written
+     */
+    private static boolean replaceFile(File file, JsonContent content) {
+        File dir = file.getParentFile();
+        // A new list has no directory until something is written to it
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e("TaskManager", "Cannot create " + dir);
+            return false;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            content.writeTo(new JsonWriter(out));
+        } catch (IOException e) {
+            Log.e("TaskManager", "Failed to save " + file.getName(), e);
+            return false;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e("TaskManager", "Failed to replace " + file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This install's id in sync stamps, made on first use and shared by every list
+     */
+    private long syncDevice() {
+        long device = sharedPreferences.getLong(KEY_SYNC_DEVICE, 0);
+        if (device == 0) {
+            device = Task.newId();
+            sharedPreferences.edit().putLong(KEY_SYNC_DEVICE, device).apply();
+        }
+        return device;
+    }
+
+    /**
+     * Versions before the journal kept the whole list as one JSON string preference.
+     * Move it into the journal once and drop the preference. A preference that
+     * cannot be read is left where it is, along with the journal.
+     */
+    private void migrateLegacyTasks() {
+        if (!migratesLegacyTasks) {
+            return;
+        }
+        String tasksJson = sharedPreferences.getString(KEY_TASKS, null);
+        if (tasksJson == null) {
+            return;
+        }
+        List<Task> tasks;
+        try {
+            tasks = TaskCodec.readArray(new JsonReader(new StringReader(tasksJson)));
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // Kept rather than replaced by an empty list, so the tasks are not lost
+            Log.e("TaskManager", "Not migrating unreadable legacy tasks", e);
+            return;
+        }
+        if (journal.isEmpty()) {
+            journal.replaceAll(tasks);
+            Log.d("TaskManager", "Migrated " + tasks.size() + " legacy tasks");
+        }
+        sharedPreferences.edit().remove(KEY_TASKS).apply();
+    }
+}
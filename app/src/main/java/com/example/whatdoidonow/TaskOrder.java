@@ -0,0 +1,36 @@
+package com.example.whatdoidonow;
+
+import java.util.Comparator;
+
+/**
+ * Display order of the task list:
+ * 1. Incomplete tasks at the top (sorted by creation date, newest first)
+ * 2. Completed tasks at the bottom (sorted by completion date, newest first)
+ * Remaining ties are broken by creation date, then id, so the order is total.
+ */
+public final class TaskOrder {
+
+    public static final Comparator<Task> DISPLAY = new Comparator<Task>() {
+        @Override
+        public int compare(Task task1, Task task2) {
+            // First, separate completed and incomplete tasks
+            if (task1.isCompleted() && !task2.isCompleted()) {
+                return 1; // task1 (completed) goes after task2 (not completed)
+            } else if (!task1.isCompleted() && task2.isCompleted()) {
+                return -1; // task1 (not completed) goes before task2 (completed)
+            }
+
+            // For tasks with the same completion status
+            if (task1.isCompleted() && task2.isCompleted()) {
+                // Sort completed tasks by completion date (most recently completed first)
+                return TaskIndex.COMPLETED_ORDER.compare(task1, task2);
+            } else {
+                // Sort incomplete tasks by creation date (newest first)
+                return TaskIndex.PENDING_ORDER.compare(task1, task2);
+            }
+        }
+    };
+
+    private TaskOrder() {
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.whatdoidonow;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Random access to an immutable sequence of tasks, a page at a time.
+ * See {@link PagedTaskList}.
+ */
+public interface TaskPageSource {
+    int size();
+
+    /**
+     * The id of the task at the position, read without loading its page, or
+     * 0 if the source cannot tell. Called on the main thread.
+     */
+    long getId(int position);
+
+    /**
+     * The tasks at positions {@code [from, to)}. Called on a background thread.
+     */
+    List<Task> load(int from, int to) throws IOException;
+}
@@ -0,0 +1,196 @@
+package com.example.whatdoidonow;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks a random pending task without scanning or copying the task list.
+ *
+ * Pending tasks live in a dense array. Removal moves the last task into the
+ * freed slot, so adding, removing and a uniform pick are all O(1).
+ *
+ * For weighted picks a Fenwick tree over the same slots holds each task's
+ * creation time. A task's weight is its age, {@code A - createdAt} with
+ * {@code A} just past the newest creation time and the current time, so
+ * older tasks are proportionally more likely. Prefix sums of ages follow from
+ * prefix sums of creation times, which keeps a weighted pick O(log n) while
+ * every task keeps ageing.
+ */
+public class TaskPicker {
+    private static final int MIN_CAPACITY = 16;
+
+    private final Random random;
+    private final LongObjectMap<Slot> slotsById = new LongObjectMap<>();
+    private Slot[] slots = new Slot[MIN_CAPACITY];
+    // 1-based Fenwick tree of createdAt over slots
+    private long[] tree = new long[MIN_CAPACITY + 1];
+    private int size;
+    private long createdAtSum;
+    // Never decreases, so A - createdAt stays positive for every task
+    private long newestCreatedAt = Long.MIN_VALUE;
+
+    private static final class Slot {
+        Task task;
+        int index;
+
+        Slot(Task task, int index) {
+            this.task = task;
+            this.index = index;
+        }
+    }
+
+    public TaskPicker() {
+        this(new Random());
+    }
+
+    public TaskPicker(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * A picker over the pending tasks among the given ones
+     */
+    public TaskPicker(Iterable<Task> tasks) {
+        this();
+        for (Task task : tasks) {
+            update(task);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Track the current version of a task: pending tasks are added or replaced,
+     * completed ones are dropped.
+     */
+    public void update(Task task) {
+        if (task.isCompleted()) {
+            remove(task.getId());
+            return;
+        }
+        Slot slot = slotsById.get(task.getId());
+        if (slot != null) {
+            add(slot.index, task.getCreatedAt() - slot.task.getCreatedAt());
+            createdAtSum += task.getCreatedAt() - slot.task.getCreatedAt();
+            slot.task = task;
+        } else {
+            if (size == slots.length) {
+                grow();
+            }
+            slot = new Slot(task, size);
+            slots[size] = slot;
+            slotsById.put(task.getId(), slot);
+            add(size, task.getCreatedAt());
+            createdAtSum += task.getCreatedAt();
+            size++;
+        }
+        newestCreatedAt = Math.max(newestCreatedAt, task.getCreatedAt());
+    }
+
+    public void remove(long id) {
+        Slot slot = slotsById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        int last = size - 1;
+        Slot moved = slots[last];
+        long removedCreatedAt = slot.task.getCreatedAt();
+        if (moved != slot) {
+            // Fill the gap with the last task
+            add(slot.index, moved.task.getCreatedAt() - removedCreatedAt);
+            add(last, -moved.task.getCreatedAt());
+            moved.index = slot.index;
+            slots[slot.index] = moved;
+        } else {
+            add(last, -removedCreatedAt);
+        }
+        slots[last] = null;
+        createdAtSum -= removedCreatedAt;
+        size--;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0, size, null);
+        Arrays.fill(tree, 0);
+        slotsById.clear();
+        size = 0;
+        createdAtSum = 0;
+    }
+
+    /**
+     * Any pending task with equal probability, or null if there are none
+     */
+    public Task pickUniform() {
+        return size == 0 ? null : slots[random.nextInt(size)].task;
+    }
+
+    /**
+     * A pending task with probability proportional to its age at {@code now},
+     * or null if there are none
+     */
+    public Task pickWeighted(long now) {
+        if (size == 0) {
+            return null;
+        }
+        long base = Math.max(now, newestCreatedAt) + 1;
+        long total = size * base - createdAtSum;
+        long target = nextLong(total);
+
+        // Descend the tree to the slot whose cumulative age first exceeds target
+        int position = 0;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= size) {
+                // tree[next] covers exactly the step slots after position
+                long weight = step * base - tree[next];
+                if (weight <= target) {
+                    target -= weight;
+                    position = next;
+                }
+            }
+        }
+        return slots[position].task;
+    }
+
+    private void add(int index, long delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private void grow() {
+        slots = Arrays.copyOf(slots, slots.length * 2);
+        // Rebuild in O(n) rather than re-adding every slot
+        tree = new long[slots.length + 1];
+        for (int i = 0; i < size; i++) {
+            tree[i + 1] += slots[i].task.getCreatedAt();
+            int parent = i + 1 + ((i + 1) & -(i + 1));
+            if (parent < tree.length) {
+                tree[parent] += tree[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Uniform in [0, bound), bound > 0
+     */
+    private long nextLong(long bound) {
+        long mask = bound - 1;
+        if ((bound & mask) == 0) {
+            return random.nextLong() & mask;
+        }
+        long bits;
+        long value;
+        do {
+            bits = random.nextLong() >>> 1;
+            value = bits % bound;
+        } while (bits - value + mask < 0);
+        return value;
+    }
+}
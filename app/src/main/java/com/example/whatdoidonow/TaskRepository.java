@@ -0,0 +1,393 @@
+package com.example.whatdoidonow;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The task list, shared between the UI and background work.
+ *
+ * Every change is queued on one writer thread. The writer owns the live
+ * {@link TaskIndex}, its undo {@link TaskHistory} and the calls into the
+ * {@link TaskStore}, so changes are applied and saved in the order they
+ * were made, and none of that state needs a lock.
+ *
+ * After each change the writer publishes an immutable {@link Snapshot}
+ * through an atomic reference. Any thread can read the latest one with
+ * {@link #snapshot()} without locking or copying. Listeners are handed every
+ * snapshot in order, each with the {@link TaskBatch} that led to it, which is
+ * enough to keep derived state such as the picker or the list on screen in
+ * step without comparing whole lists.
+ */
+public class TaskRepository {
+
+    public interface Listener {
+        /**
+         * Called once per published version, in order, on the listener's executor
+         */
+        void onTasksChanged(Snapshot snapshot);
+    }
+
+    /**
+     * One published version of the task list. Never changes.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final TaskIndex tasks;
+        private final TaskBatch change;
+        private final boolean canUndo;
+        private final boolean canRedo;
+
+        Snapshot(long version, TaskIndex tasks, TaskBatch change, boolean canUndo, boolean canRedo) {
+            this.version = version;
+            this.tasks = tasks;
+            this.change = change;
+            this.canUndo = canUndo;
+            this.canRedo = canRedo;
+        }
+
+        /**
+         * Increases by one with each published version
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * The tasks in display order, a read-only {@link TaskIndex#snapshot()}
+         */
+        public TaskIndex getTasks() {
+            return tasks;
+        }
+
+        /**
+         * What changed since the previous version, or null if the list was
+         * replaced by {@link #load}
+         */
+        public TaskBatch getChange() {
+            return change;
+        }
+
+        public boolean canUndo() {
+            return canUndo;
+        }
+
+        public boolean canRedo() {
+            return canRedo;
+        }
+    }
+
+    /**
+     * Works out a change from the list as it is when the change runs
+     */
+    public interface RemoteChange {
+        /**
+         * Called on the writer thread with the live list, which may only be
+         * changed through a {@link TaskBatch} factory
+         *
+         * @return what changed, or null if nothing did
+         */
+        TaskBatch apply(TaskIndex tasks);
+    }
+
+    private static final class Registration {
+        final Listener listener;
+        final Executor executor;
+
+        Registration(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private final TaskStore store;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TaskRepository");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<Snapshot> current;
+    // Changed on the writer thread only, so no version is announced twice or missed
+    private final List<Registration> listeners = new CopyOnWriteArrayList<>();
+
+    // Writer thread only
+    private TaskIndex tasks = new TaskIndex();
+    private final TaskHistory history;
+
+    public TaskRepository(TaskStore store) {
+        this(store, TaskHistory.DEFAULT_LIMIT);
+    }
+
+    public TaskRepository(TaskStore store, int historyLimit) {
+        this.store = store;
+        this.history = new TaskHistory(historyLimit);
+        current = new AtomicReference<>(new Snapshot(0, tasks.snapshot(), null, false, false));
+    }
+
+    /**
+     * The latest published version. Safe to call from any thread.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Hand the listener every version published after the returned one
+     *
+     * @return the version the listener starts from
+     */
+    public Future<Snapshot> addListener(final Listener listener, final Executor executor) {
+        return writer.submit(() -> {
+            listeners.add(new Registration(listener, executor));
+            return current.get();
+        });
+    }
+
+    /**
+     * Hand the listener the latest version as if the list had just been
+     * loaded, with a null change, then every version after it. For listeners
+     * that rebuild on a load, such as a screen showing a list again.
+     */
+    public void attach(final Listener listener, final Executor executor) {
+        writer.execute(() -> {
+            listeners.add(new Registration(listener, executor));
+            Snapshot latest = current.get();
+            final Snapshot reloaded = new Snapshot(latest.version, latest.tasks, null,
+                    latest.canUndo, latest.canRedo);
+            executor.execute(() -> listener.onTasksChanged(reloaded));
+        });
+    }
+
+    public void removeListener(final Listener listener) {
+        writer.execute(() -> {
+            for (Registration registration : listeners) {
+                if (registration.listener == listener) {
+                    listeners.remove(registration);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replace the list with freshly loaded tasks, which the repository owns
+     * from now on. Published with a null change; forgets the undo history.
+     */
+    public Future<TaskBatch> load(final TaskIndex loaded) {
+        return writer.submit(() -> {
+            tasks = loaded;
+            history.clear();
+            publish(null);
+            return null;
+        });
+    }
+
+    public Future<TaskBatch> add(final Task task) {
+        return change(true, () -> {
+            TaskBatch batch = TaskBatch.insert(tasks, task);
+            store.addTask(task);
+            return batch;
+        });
+    }
+
+    /**
+     * Add many new tasks, saved as one write, such as a chunk of an import.
+     * Not undoable, and forgets the undo history, which would take them away
+     * along with whatever it undid.
+     */
+    public Future<TaskBatch> addAll(final List<Task> added) {
+        return change(false, () -> {
+            TaskBatch batch = TaskBatch.insertAll(tasks, added);
+            if (!batch.isEmpty()) {
+                history.clear();
+                store.addTasks(batch.getAdded());
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Apply changes made elsewhere, such as on another device, worked out on
+     * the writer so no local change can come in between. Saved as one write.
+     * Not undoable, and forgets the undo history, which would take them back.
+     */
+    public Future<TaskBatch> applyRemote(final RemoteChange remote) {
+        return change(false, () -> {
+            TaskBatch batch = remote.apply(tasks);
+            if (batch != null && !batch.isEmpty()) {
+                history.clear();
+                // Adds replace stored versions, removals not added back are deletes
+                store.restoreTasks(batch);
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Complete or reopen the tasks with the given ids, saved as one write.
+     * Ids that are missing or already in that state are skipped.
+     */
+    public Future<TaskBatch> setCompleted(final long[] ids, final boolean completed) {
+        return change(true, () -> {
+            TaskBatch batch = TaskBatch.setCompleted(tasks, ids, completed);
+            if (batch.getAdded().size() == 1) {
+                store.updateTask(batch.getAdded().get(0));
+            } else if (!batch.isEmpty()) {
+                store.updateTasks(batch.getAdded());
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Start the next occurrence of the given completed recurring tasks, see
+     * {@link TaskBatch#recur}. Not undoable: undoing past it would only bring
+     * the occurrence back again.
+     */
+    public Future<TaskBatch> recur(final long[] ids, final long now) {
+        return change(false, () -> {
+            TaskBatch batch = TaskBatch.recur(tasks, ids, now);
+            if (batch.getAdded().size() == 1) {
+                store.updateTask(batch.getAdded().get(0));
+            } else if (!batch.isEmpty()) {
+                store.updateTasks(batch.getAdded());
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Delete the tasks with the given ids, saved as one write. Missing ids are skipped.
+     */
+    public Future<TaskBatch> delete(final long[] ids) {
+        return change(true, () -> {
+            TaskBatch batch = TaskBatch.delete(tasks, ids);
+            if (batch.getRemoved().size() == 1) {
+                store.deleteTask(batch.getRemoved().get(0));
+            } else if (!batch.isEmpty()) {
+                store.deleteTasks(batch.getRemoved());
+            }
+            return batch;
+        });
+    }
+
+    public Future<TaskBatch> clear() {
+        return change(true, () -> {
+            TaskBatch batch = TaskBatch.clear(tasks);
+            if (!batch.isEmpty()) {
+                store.clearTasks();
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Go back to the version before the last change
+     *
+     * @return a future of what changed, null if there was nothing to undo
+     */
+    public Future<TaskBatch> undo() {
+        return change(false, () -> restored(history.undo(tasks)));
+    }
+
+    /**
+     * Reapply the last undone change
+     *
+     * @return a future of what changed, null if there was nothing to redo
+     */
+    public Future<TaskBatch> redo() {
+        return change(false, () -> restored(history.redo(tasks)));
+    }
+
+    private TaskBatch restored(TaskBatch batch) {
+        if (batch != null) {
+            // Only what differs between the two versions is written
+            store.restoreTasks(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Drop tasks that were moved to the archive, unless they changed since
+     * they were archived. Forgets the undo history, which would bring them back.
+     */
+    public Future<TaskBatch> removeArchived(final List<Task> archived) {
+        return change(false, () -> {
+            long[] ids = new long[archived.size()];
+            int count = 0;
+            for (Task task : archived) {
+                if (tasks.getById(task.getId()) == task) {
+                    ids[count++] = task.getId();
+                }
+            }
+            TaskBatch batch = TaskBatch.delete(tasks, Arrays.copyOf(ids, count));
+            if (!batch.isEmpty()) {
+                history.clear();
+                store.deleteTasks(batch.getRemoved());
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Ask the store to start writing, after the changes queued so far
+     */
+    public void requestFlush() {
+        writer.execute(store::requestFlush);
+    }
+
+    /**
+     * Apply the changes queued so far and wait until the store has written them
+     */
+    public void flush() {
+        try {
+            writer.submit(store::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for task changes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Saving task changes failed", e.getCause());
+        }
+    }
+
+    /**
+     * Stop accepting changes; those already queued are still applied
+     */
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    /**
+     * Run a mutation on the writer and publish the result if anything changed
+     *
+     * @param undoable whether the version before it is kept for undo
+     */
+    private Future<TaskBatch> change(final boolean undoable, final Callable<TaskBatch> mutation) {
+        return writer.submit(() -> {
+            TaskIndex before = tasks.snapshot();
+            TaskBatch batch = mutation.call();
+            if (batch != null && !batch.isEmpty()) {
+                if (undoable) {
+                    history.record(before);
+                }
+                publish(batch);
+            }
+            return batch;
+        });
+    }
+
+    private void publish(TaskBatch change) {
+        final Snapshot snapshot = new Snapshot(current.get().version + 1, tasks.snapshot(), change,
+                history.canUndo(), history.canRedo());
+        current.set(snapshot);
+        for (final Registration registration : listeners) {
+            registration.executor.execute(() -> registration.listener.onTasksChanged(snapshot));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.whatdoidonow;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Task rows inflated ahead of time on a background thread, so the first
+ * screen and the first fling take them ready-made instead of inflating a
+ * card, chip, checkbox and button on the UI thread for each.
+ *
+ * A view may be built off the UI thread as long as nothing else touches it
+ * until it is handed over, which the queue takes care of. The background
+ * inflation uses its own clone of the inflater, whose constructor arguments
+ * are not shared with the UI thread's. A row asked for before one is ready,
+ * or after inflating ahead failed, is inflated on the spot as before.
+ */
+class TaskRowInflater {
+    private final Queue<View> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inflatedAhead = new AtomicInteger();
+    // UI thread only
+    private int inflatedOnDemand;
+
+    /**
+     * Inflate {@code count} rows for {@code parent} on the executor. The
+     * parent only lends its layout params, the rows are not added to it.
+     */
+    void inflateAhead(final ViewGroup parent, final int count, Executor executor) {
+        final LayoutInflater inflater = LayoutInflater.from(parent.getContext())
+                .cloneInContext(parent.getContext());
+        executor.execute(() -> {
+            for (int i = 0; i < count; i++) {
+                View view;
+                try {
+                    view = inflater.inflate(R.layout.task_item, parent, false);
+                } catch (RuntimeException e) {
+                    // E.g. a view that insists on a Looper; the rest are inflated on demand
+                    return;
+                }
+                ready.add(view);
+                inflatedAhead.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * A row inflated ahead if one is ready, otherwise one inflated now. UI thread only.
+     */
+    View obtain(ViewGroup parent) {
+        View view = ready.poll();
+        if (view != null) {
+            return view;
+        }
+        long started = PerfMetrics.INFLATE_ROW.start();
+        view = LayoutInflater.from(parent.getContext()).inflate(R.layout.task_item, parent, false);
+        PerfMetrics.INFLATE_ROW.stop(started);
+        inflatedOnDemand++;
+        return view;
+    }
+
+    /**
+     * Rows inflated in the background so far, including those not yet handed out
+     */
+    int getInflatedAhead() {
+        return inflatedAhead.get();
+    }
+
+    /**
+     * Rows inflated on the UI thread because none was ready
+     */
+    int getInflatedOnDemand() {
+        return inflatedOnDemand;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.whatdoidonow;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks when recurring tasks come back and when reminders are due, and
+ * tells its owner the one time it next needs to run.
+ *
+ * Every task has at most one deadline in a {@link TimingWheel}: a completed
+ * recurring task its next occurrence, a pending task with a due time its
+ * reminder. Deadlines follow the repository's changes, so the cost of a
+ * change is O(k) for k changed tasks however many schedules there are. The
+ * owner arranges a single wake-up for {@link Callback#onWakeTimeChanged} and
+ * calls {@link #advance()} then; there is no polling and no timer per task.
+ *
+ * Reminders due at or before {@code remindedUntil} when the list is loaded
+ * were shown in an earlier session and are not shown again.
+ *
+ * Confined to one thread: register it as a listener with an executor for
+ * the thread that calls {@link #advance()}. Time comes from the given
+ * {@link Clock}, so tests can move it by hand.
+ */
+public class TaskScheduler implements TaskRepository.Listener {
+    static final long TICK_MILLIS = 1000;
+
+    public interface Callback {
+        /**
+         * Completed recurring tasks whose next occurrence has started, to be
+         * brought back with {@link TaskRepository#recur}
+         */
+        void onOccurrencesDue(long[] ids, long now);
+
+        /**
+         * Pending tasks whose due time has come
+         */
+        void onRemindersDue(List<Task> tasks);
+
+        /**
+         * Call {@link #advance()} at this time, replacing the previous wake-up.
+         * {@link Long#MAX_VALUE} if nothing is scheduled.
+         */
+        void onWakeTimeChanged(long wakeAt);
+    }
+
+    private final Clock clock;
+    private final Callback callback;
+    private final TimingWheel wheel;
+    private TaskIndex tasks = new TaskIndex().snapshot();
+    private long remindedUntil;
+    private long wakeAt = Long.MAX_VALUE;
+    // Nothing is due before the list is loaded
+    private boolean loaded;
+
+    public TaskScheduler(Clock clock, long remindedUntil, Callback callback) {
+        this.clock = clock;
+        this.remindedUntil = remindedUntil;
+        this.callback = callback;
+        this.wheel = new TimingWheel(TICK_MILLIS, clock.millis());
+    }
+
+    /**
+     * Reminders up to this time have been shown, to be kept for the next session
+     */
+    public long getRemindedUntil() {
+        return remindedUntil;
+    }
+
+    public int scheduledCount() {
+        return wheel.size();
+    }
+
+    @Override
+    public void onTasksChanged(TaskRepository.Snapshot snapshot) {
+        tasks = snapshot.getTasks();
+        TaskBatch change = snapshot.getChange();
+        if (change == null) {
+            loaded = true;
+            wheel.clear();
+            for (Task task : tasks) {
+                long deadline = deadlineOf(task);
+                // Reminders from before the last session ended were already shown
+                if (deadline != 0 && (task.isCompleted() || deadline > remindedUntil)) {
+                    wheel.schedule(task.getId(), deadline);
+                }
+            }
+        } else {
+            for (Task task : change.getRemoved()) {
+                wheel.cancel(task.getId());
+            }
+            for (Task task : change.getAdded()) {
+                long deadline = deadlineOf(task);
+                if (deadline != 0) {
+                    wheel.schedule(task.getId(), deadline);
+                }
+            }
+        }
+        updateWakeTime();
+    }
+
+    /**
+     * Hand everything due by now to the callback, then ask for the next wake-up
+     */
+    public void advance() {
+        if (!loaded) {
+            return;
+        }
+        final long now = clock.millis();
+        final List<Task> due = new ArrayList<>();
+        wheel.advance(now, (id, deadline) -> {
+            Task task = tasks.getById(id);
+            if (task != null) {
+                due.add(task);
+            }
+        });
+        long[] occurrences = new long[due.size()];
+        int occurrenceCount = 0;
+        List<Task> reminders = new ArrayList<>();
+        for (Task task : due) {
+            if (task.isCompleted()) {
+                occurrences[occurrenceCount++] = task.getId();
+            } else {
+                reminders.add(task);
+            }
+        }
+        remindedUntil = Math.max(remindedUntil, now);
+        if (occurrenceCount > 0) {
+            callback.onOccurrencesDue(Arrays.copyOf(occurrences, occurrenceCount), now);
+        }
+        if (!reminders.isEmpty()) {
+            callback.onRemindersDue(reminders);
+        }
+        updateWakeTime();
+    }
+
+    /**
+     * When the task next needs attention, or 0 if it has nothing scheduled
+     */
+    static long deadlineOf(Task task) {
+        return task.isCompleted() ? task.getNextOccurrence() : task.getDueAt();
+    }
+
+    private void updateWakeTime() {
+        long next = wheel.nextDeadline();
+        if (next != wakeAt) {
+            wakeAt = next;
+            callback.onWakeTimeChanged(next);
+        }
+    }
+}
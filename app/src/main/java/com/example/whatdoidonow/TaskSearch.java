@@ -0,0 +1,97 @@
+package com.example.whatdoidonow;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a {@link TaskSearchIndex} on a background thread for the UI.
+ *
+ * Index updates and queries are queued on one thread, so a query sees every
+ * update made before it without any locking. Results reach the listener on
+ * the main thread, and only for the latest query: typing a word queues a
+ * query per keystroke, and results that were overtaken are dropped.
+ */
+public class TaskSearch {
+
+    public interface Listener {
+        /**
+         * Tasks matching the query, in display order. Called on the main thread.
+         */
+        void onSearchResults(String query, List<Task> results);
+    }
+
+    private final TaskSearchIndex index = new TaskSearchIndex();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Main thread only
+    private int generation;
+
+    public void update(final Task task) {
+        executor.execute(() -> index.update(task));
+    }
+
+    public void remove(final long id) {
+        executor.execute(() -> index.remove(id));
+    }
+
+    public void updateAll(final List<Task> tasks) {
+        executor.execute(() -> index.addAll(tasks));
+    }
+
+    public void removeAll(final List<Task> tasks) {
+        executor.execute(() -> {
+            for (Task task : tasks) {
+                index.remove(task.getId());
+            }
+        });
+    }
+
+    /**
+     * Index exactly the given tasks. The list must not change afterwards,
+     * pass a {@link TaskIndex#snapshot()}.
+     */
+    public void reset(final List<Task> tasks) {
+        executor.execute(() -> {
+            index.clear();
+            index.addAll(tasks);
+        });
+    }
+
+    public void clear() {
+        executor.execute(index::clear);
+    }
+
+    /**
+     * Look up the query in the background. Supersedes earlier queries.
+     * {@code tasks} is a snapshot of the indexed tasks in display order.
+     */
+    public void search(final String query, final List<Task> tasks, final Listener listener) {
+        final int current = ++generation;
+        executor.execute(() -> {
+            long started = PerfMetrics.SEARCH.start();
+            final List<Task> results = index.search(query, tasks);
+            PerfMetrics.SEARCH.stop(started);
+            mainHandler.post(() -> {
+                if (current == generation) {
+                    listener.onSearchResults(query, results);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drop the results of queries still in flight
+     */
+    public void cancel() {
+        generation++;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+}
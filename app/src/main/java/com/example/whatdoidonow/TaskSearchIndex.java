@@ -0,0 +1,235 @@
+package com.example.whatdoidonow;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over task texts for search-as-you-type.
+ *
+ * Texts are split into words and folded to lower case without accents, so
+ * "Café" is found by "cafe". Every query word matches as a prefix of some
+ * word of the task, and a task has to match all query words.
+ *
+ * Terms are kept sorted, which turns a prefix into one contiguous range of
+ * the dictionary. A query starts from the query word with the fewest
+ * postings and checks the remaining words against each candidate's own
+ * words, so its cost follows the number of candidates rather than the
+ * number of tasks.
+ *
+ * Not thread-safe. Updates are cheap, a task's words are stored with it, so
+ * a change of status touches one entry and removal needs no re-tokenizing.
+ */
+public class TaskSearchIndex {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final String[] NO_TERMS = new String[0];
+    // Walk the whole list once candidates exceed this fraction of it
+    private static final int SCAN_RATIO = 8;
+
+    // Term -> documents containing it
+    private final TreeMap<String, LongObjectMap<Document>> postings = new TreeMap<>();
+    private final LongObjectMap<Document> documents = new LongObjectMap<>();
+
+    private static final class Document {
+        Task task;
+        // Distinct terms, sharing the dictionary's strings
+        final String[] terms;
+
+        Document(Task task, String[] terms) {
+            this.task = task;
+            this.terms = terms;
+        }
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Track the current version of a task, adding it if it is new
+     */
+    public void update(Task task) {
+        Document document = documents.get(task.getId());
+        if (document != null) {
+            String oldText = document.task.getTaskText();
+            if (oldText == null ? task.getTaskText() == null : oldText.equals(task.getTaskText())) {
+                document.task = task;
+                return;
+            }
+            remove(task.getId());
+        }
+        String[] words = tokenize(task.getTaskText());
+        String[] terms = new String[words.length];
+        document = new Document(task, terms);
+        for (int i = 0; i < words.length; i++) {
+            Map.Entry<String, LongObjectMap<Document>> entry = postings.ceilingEntry(words[i]);
+            LongObjectMap<Document> list;
+            if (entry != null && entry.getKey().equals(words[i])) {
+                terms[i] = entry.getKey();
+                list = entry.getValue();
+            } else {
+                terms[i] = words[i];
+                list = new LongObjectMap<>();
+                postings.put(words[i], list);
+            }
+            list.put(task.getId(), document);
+        }
+        documents.put(task.getId(), document);
+    }
+
+    public void addAll(Iterable<Task> tasks) {
+        for (Task task : tasks) {
+            update(task);
+        }
+    }
+
+    public void remove(long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms) {
+            LongObjectMap<Document> list = postings.get(term);
+            list.remove(id);
+            if (list.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        documents.clear();
+    }
+
+    /**
+     * Tasks matching every word of the query, in {@link TaskOrder#DISPLAY}
+     * order. A query without words matches nothing.
+     */
+    public List<Task> search(String query) {
+        return search(query, null);
+    }
+
+    /**
+     * As {@link #search(String)}, given the indexed tasks in display order.
+     * Short prefixes match a large part of the list; those results are
+     * collected by walking the list rather than by sorting them.
+     */
+    public List<Task> search(String query, List<Task> displayOrder) {
+        String[] words = tokenize(query);
+        if (words.length == 0) {
+            return Collections.emptyList();
+        }
+
+        // Drive the query from the most selective word
+        List<NavigableMap<String, LongObjectMap<Document>>> ranges = new ArrayList<>(words.length);
+        int driver = 0;
+        long driverCount = Long.MAX_VALUE;
+        for (int i = 0; i < words.length; i++) {
+            NavigableMap<String, LongObjectMap<Document>> range = prefixRange(words[i]);
+            long count = 0;
+            for (LongObjectMap<Document> list : range.values()) {
+                count += list.size();
+            }
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            if (count < driverCount) {
+                driver = i;
+                driverCount = count;
+            }
+            ranges.add(range);
+        }
+
+        final String[] others = new String[words.length - 1];
+        for (int i = 0, j = 0; i < words.length; i++) {
+            if (i != driver) {
+                others[j++] = words[i];
+            }
+        }
+        // Keyed by id: a task with several words under the prefix is in several of these lists
+        final LongObjectMap<Document> candidates = new LongObjectMap<>((int) driverCount);
+        for (LongObjectMap<Document> list : ranges.get(driver).values()) {
+            list.forEach((id, document) -> {
+                if (matchesAll(document.terms, others)) {
+                    candidates.put(id, document);
+                }
+            });
+        }
+        List<Task> results = new ArrayList<>(candidates.size());
+        if (displayOrder != null && candidates.size() * SCAN_RATIO > documents.size()) {
+            for (Task task : displayOrder) {
+                if (candidates.containsKey(task.getId())) {
+                    results.add(task);
+                }
+            }
+            return results;
+        }
+        candidates.forEach((id, document) -> results.add(document.task));
+        Collections.sort(results, TaskOrder.DISPLAY);
+        return results;
+    }
+
+    /**
+     * The folded words of a text, without duplicates, in order of appearance
+     */
+    static String[] tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return NO_TERMS;
+        }
+        String folded = fold(text);
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            words.add(folded.substring(start));
+        }
+        return words.toArray(NO_TERMS);
+    }
+
+    /**
+     * Lower case with accents and other combining marks removed
+     */
+    static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private NavigableMap<String, LongObjectMap<Document>> prefixRange(String prefix) {
+        // Every string starting with prefix sorts before prefix followed by U+FFFF
+        return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static boolean matchesAll(String[] terms, String[] prefixes) {
+        for (String prefix : prefixes) {
+            boolean found = false;
+            for (String term : terms) {
+                if (term.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
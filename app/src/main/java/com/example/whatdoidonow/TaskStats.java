@@ -0,0 +1,321 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Completion statistics kept up to date one transition at a time, so
+ * reading them never scans the task history.
+ *
+ * Completions are counted in per-day buckets, in the given time zone, with
+ * per-week rollups (weeks start on Monday) updated alongside. Time from
+ * creation to completion goes into a sketch of {@link LogBuckets}, which
+ * answers quantiles to within about 6% and, unlike sampling sketches, can
+ * take a completion back exactly when a task is reopened.
+ *
+ * Only transitions between pending and completed count. Deleting, clearing
+ * or archiving a completed task leaves its completion in the statistics, and
+ * so does a recurring task coming back as its next occurrence.
+ *
+ * Updated from {@link TaskRepository}'s writer thread and read from the UI;
+ * every method takes an uncontended lock.
+ */
+public class TaskStats implements TaskRepository.Listener {
+    // Epoch day 0, 1970-01-01, was a Thursday
+    private static final int MONDAY_OFFSET = 3;
+
+    private final ZoneId zone;
+
+    // Guarded by this
+    private final DayCounts days = new DayCounts();
+    private final DayCounts weeks = new DayCounts();
+    private final long[] timeToComplete = new long[LogBuckets.COUNT];
+    private long completions;
+    // Bumped on every change, so the owner can tell whether it needs saving
+    private long changeCount;
+
+    public TaskStats(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Day number of a timestamp in this time zone, days since 1970-01-01
+     */
+    public long dayOf(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Week number of a day, counting Monday-based weeks since 1970
+     */
+    public static long weekOf(long day) {
+        return Math.floorDiv(day + MONDAY_OFFSET, 7);
+    }
+
+    /**
+     * The first day of a week
+     */
+    public static long firstDayOf(long week) {
+        return week * 7 - MONDAY_OFFSET;
+    }
+
+    @Override
+    public void onTasksChanged(TaskRepository.Snapshot snapshot) {
+        // A load replaces the list, it does not complete anything
+        if (snapshot.getChange() != null) {
+            apply(snapshot.getChange());
+        }
+    }
+
+    /**
+     * Count the completions and reopenings in a change. O(k) for k changed tasks.
+     */
+    public synchronized void apply(TaskBatch change) {
+        List<Task> removed = change.getRemoved();
+        if (removed.isEmpty()) {
+            return;
+        }
+        LongObjectMap<Task> before = new LongObjectMap<>(removed.size());
+        for (Task task : removed) {
+            before.put(task.getId(), task);
+        }
+        for (Task task : change.getAdded()) {
+            Task old = before.get(task.getId());
+            if (old == null || old.isCompleted() == task.isCompleted()) {
+                continue;
+            }
+            if (old.getCreatedAt() != task.getCreatedAt()) {
+                // Another occurrence of a recurring task, not a completion or a reopen
+                continue;
+            }
+            if (task.isCompleted()) {
+                count(task, 1);
+            } else {
+                // Take back exactly what the completion added
+                count(old, -1);
+            }
+        }
+    }
+
+    /**
+     * Count every completed task of the given ones, for stores that had no statistics yet
+     */
+    public synchronized void addCompleted(Iterable<Task> tasks) {
+        for (Task task : tasks) {
+            if (task.isCompleted()) {
+                count(task, 1);
+            }
+        }
+    }
+
+    private void count(Task task, int delta) {
+        long day = dayOf(task.getCompletedAt());
+        days.add(day, delta);
+        weeks.add(weekOf(day), delta);
+        timeToComplete[LogBuckets.bucketOf(Math.max(task.getCompletedAt() - task.getCreatedAt(), 0))] += delta;
+        completions += delta;
+        changeCount++;
+    }
+
+    public synchronized long getCompletions() {
+        return completions;
+    }
+
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Completions on each of {@code count} days starting with {@code firstDay}
+     */
+    public synchronized int[] completionsPerDay(long firstDay, int count) {
+        return days.range(firstDay, count);
+    }
+
+    /**
+     * Completions in each of {@code count} weeks starting with {@code firstWeek}
+     */
+    public synchronized int[] completionsPerWeek(long firstWeek, int count) {
+        return weeks.range(firstWeek, count);
+    }
+
+    /**
+     * Consecutive days with a completion, up to today. A streak is not
+     * broken until a whole day passes without one, so today may still be open.
+     */
+    public synchronized int currentStreak(long today) {
+        long day = days.get(today) > 0 ? today : today - 1;
+        int streak = 0;
+        while (days.get(day) > 0) {
+            streak++;
+            day--;
+        }
+        return streak;
+    }
+
+    /**
+     * Time from creation to completion below which the given fraction of
+     * completions fall, in milliseconds, or -1 if nothing was completed
+     */
+    public synchronized long timeToCompleteQuantile(double fraction) {
+        if (completions <= 0) {
+            return -1;
+        }
+        long rank = Math.max((long) Math.ceil(fraction * completions), 1);
+        long seen = 0;
+        for (int i = 0; i < timeToComplete.length; i++) {
+            seen += timeToComplete[i];
+            if (seen >= rank) {
+                // The middle of the bucket is within half its width of any value in it
+                long upper = i + 1 < timeToComplete.length ? LogBuckets.lowerBound(i + 1) : Long.MAX_VALUE;
+                long lower = LogBuckets.lowerBound(i);
+                return lower + (upper - lower) / 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the counters as one JSON object
+     */
+    public synchronized void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("completions").value(completions);
+        writer.name("firstDay").value(days.first);
+        writer.name("days");
+        writer.beginArray();
+        for (int i = 0; i < days.length; i++) {
+            writer.value(days.counts[i]);
+        }
+        writer.endArray();
+        // Only buckets in use, as [bucket, count] pairs
+        writer.name("timeToComplete");
+        writer.beginArray();
+        for (int i = 0; i < timeToComplete.length; i++) {
+            if (timeToComplete[i] != 0) {
+                writer.beginArray().value(i).value(timeToComplete[i]).endArray();
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * Replace the counters with those written by {@link #writeJson}. Weekly
+     * rollups are rebuilt from the days.
+     */
+    public synchronized void readJson(JsonReader reader) throws IOException {
+        long readCompletions = 0;
+        long firstDay = 0;
+        int[] dayCounts = new int[0];
+        long[] buckets = new long[LogBuckets.COUNT];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "completions":
+                    readCompletions = reader.nextLong();
+                    break;
+                case "firstDay":
+                    firstDay = reader.nextLong();
+                    break;
+                case "days":
+                    int length = 0;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (length == dayCounts.length) {
+                            dayCounts = Arrays.copyOf(dayCounts, Math.max(16, length * 2));
+                        }
+                        dayCounts[length++] = reader.nextInt();
+                    }
+                    reader.endArray();
+                    dayCounts = Arrays.copyOf(dayCounts, length);
+                    break;
+                case "timeToComplete":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginArray();
+                        int bucket = reader.nextInt();
+                        long count = reader.nextLong();
+                        reader.endArray();
+                        if (bucket < 0 || bucket >= buckets.length) {
+                            throw new IOException("Bad time to complete bucket " + bucket);
+                        }
+                        buckets[bucket] = count;
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        days.clear();
+        weeks.clear();
+        for (int i = 0; i < dayCounts.length; i++) {
+            days.add(firstDay + i, dayCounts[i]);
+            weeks.add(weekOf(firstDay + i), dayCounts[i]);
+        }
+        System.arraycopy(buckets, 0, timeToComplete, 0, buckets.length);
+        completions = readCompletions;
+        changeCount++;
+    }
+
+    /**
+     * Counts for a contiguous run of days (or weeks), grown at either end as needed
+     */
+    private static final class DayCounts {
+        long first;
+        int[] counts = new int[0];
+        int length;
+
+        int get(long day) {
+            long index = day - first;
+            return index >= 0 && index < length ? counts[(int) index] : 0;
+        }
+
+        void add(long day, int delta) {
+            if (delta == 0) {
+                return;
+            }
+            if (length == 0) {
+                first = day;
+            }
+            if (day < first) {
+                // Room for as many earlier days again, so filling in history backwards stays linear
+                int shift = (int) (first - day) + Math.max(length, 16);
+                int[] grown = new int[length + shift];
+                System.arraycopy(counts, 0, grown, shift, length);
+                counts = grown;
+                length += shift;
+                first -= shift;
+            }
+            int index = (int) (day - first);
+            if (index >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+            }
+            length = Math.max(length, index + 1);
+            counts[index] += delta;
+        }
+
+        int[] range(long from, int count) {
+            int[] range = new int[count];
+            for (int i = 0; i < count; i++) {
+                range[i] = get(from + i);
+            }
+            return range;
+        }
+
+        void clear() {
+            first = 0;
+            counts = new int[0];
+            length = 0;
+        }
+    }
+}
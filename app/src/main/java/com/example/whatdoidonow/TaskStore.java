@@ -0,0 +1,37 @@
+package com.example.whatdoidonow;
+
+import java.util.List;
+
+/**
+ * Where the changes made to the task list are saved, see {@link TaskManager}.
+ * Calls return without waiting for the disk unless they say otherwise.
+ */
+public interface TaskStore {
+    void addTask(Task task);
+
+    void addTasks(List<Task> tasks);
+
+    void updateTask(Task task);
+
+    void deleteTask(Task task);
+
+    void updateTasks(List<Task> tasks);
+
+    void deleteTasks(List<Task> tasks);
+
+    /**
+     * Store the tasks the batch added, replacing any stored versions, and
+     * delete those it removed without adding back, such as after an undo or
+     * a sync. A later delete of one of them must still be stored.
+     */
+    void restoreTasks(TaskBatch batch);
+
+    void clearTasks();
+
+    void requestFlush();
+
+    /**
+     * Wait until every change made so far is stored
+     */
+    void flush();
+}
@@ -0,0 +1,252 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Syncs one list with a server, sending only the tasks changed since the
+ * last sync and receiving only those changed elsewhere since then, see
+ * {@link TaskSyncState}.
+ *
+ * Each request POSTs a gzip-compressed JSON object with the cursor from the
+ * last response and up to {@link #BATCH_SIZE} changed records, oldest first:
+ * {@code {"cursor": 41, "changes": [record, ...]}}. The server merges the
+ * records into its own and answers, also compressed, with the records
+ * changed after the cursor, leaving out those that merged to what was sent,
+ * the new cursor, and whether more are waiting:
+ * {@code {"cursor": 57, "more": false, "changes": [record, ...]}}.
+ * Requests repeat until neither side has more. Merging is idempotent, so a
+ * sync that fails part way can simply be tried again.
+ *
+ * Blocks on the network, run it on a background thread, one sync of a list at a time.
+ */
+public class TaskSync {
+    static final int BATCH_SIZE = 500;
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * What a sync did
+     */
+    public static final class Result {
+        private final int sent;
+        private final int received;
+        private final int requests;
+        private final long bytesSent;
+        private final long bytesReceived;
+
+        Result(int sent, int received, int requests, long bytesSent, long bytesReceived) {
+            this.sent = sent;
+            this.received = received;
+            this.requests = requests;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+        }
+
+        /**
+         * Changed tasks sent, including deletes
+         */
+        public int getSent() {
+            return sent;
+        }
+
+        /**
+         * Tasks received that changed elsewhere
+         */
+        public int getReceived() {
+            return received;
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        /**
+         * Compressed request bodies, as they went over the wire
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Response bodies, as they came over the wire
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+    }
+
+    private static final class Response {
+        long cursor;
+        boolean more;
+        // Of the body as it came, compressed
+        long bytes;
+        final List<TaskSyncState.Record> changes = new ArrayList<>();
+    }
+
+    private final TaskRepository repository;
+    private final TaskSyncState state;
+
+    public TaskSync(TaskRepository repository, TaskSyncState state) {
+        this.repository = repository;
+        this.state = state;
+    }
+
+    /**
+     * Exchange changes with the server until both sides have them all
+     *
+     * @throws IOException if no server is set, or it cannot be reached or understood
+     */
+    public Result sync() throws IOException {
+        long started = PerfMetrics.SYNC.start();
+        String server = state.getServer();
+        if (server == null) {
+            throw new IOException("No sync server set");
+        }
+        URL url = new URL(server);
+        if (!state.isStarted()) {
+            await(repository.applyRemote(tasks -> {
+                state.start(tasks);
+                return null;
+            }));
+        }
+        int sent = 0;
+        int received = 0;
+        int requests = 0;
+        long bytesSent = 0;
+        long bytesReceived = 0;
+        boolean more;
+        do {
+            List<TaskSyncState.Record> changes = state.pending(BATCH_SIZE);
+            final long sentUpTo = changes.isEmpty() ? 0 : changes.get(changes.size() - 1).seq;
+            byte[] request = encode(state.getCursor(), changes);
+            bytesSent += request.length;
+            final Response response = post(url, request);
+            bytesReceived += response.bytes;
+            requests++;
+            sent += changes.size();
+            received += response.changes.size();
+            await(repository.applyRemote(
+                    tasks -> state.merge(tasks, response.changes, sentUpTo, response.cursor)));
+            // A full batch may have left more to send
+            more = response.more || changes.size() == BATCH_SIZE;
+        } while (more);
+        repository.requestFlush();
+        PerfMetrics.SYNC.stop(started);
+        return new Result(sent, received, requests, bytesSent, bytesReceived);
+    }
+
+    private static byte[] encode(long cursor, List<TaskSyncState.Record> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(bytes),
+                StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name("cursor").value(cursor);
+            writer.name("changes");
+            writer.beginArray();
+            for (TaskSyncState.Record record : changes) {
+                TaskSyncState.writeRecord(writer, record);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Response post(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            // Asked for explicitly, so the body is not unpacked on the way and is counted as it came
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server answered " + code);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, read);
+                }
+            }
+            InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+            Response response = decode(in);
+            response.bytes = bytes.size();
+            return response;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static Response decode(InputStream in) throws IOException {
+        Response response = new Response();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "cursor":
+                        response.cursor = reader.nextLong();
+                        break;
+                    case "more":
+                        response.more = reader.nextBoolean();
+                        break;
+                    case "changes":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            response.changes.add(TaskSyncState.readRecord(reader));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Unreadable sync response", e);
+        }
+        return response;
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while merging tasks");
+        } catch (ExecutionException e) {
+            throw new IOException("Merging tasks failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What one list has to send at its next sync, see {@link TaskSync}.
+ *
+ * A task is synced as three registers, each stamped when it last changed:
+ * its text (with the repeat interval), its state (completion, creation and
+ * due times, which a recurring task changes together) and whether it is
+ * deleted. Merging two versions of a task keeps, register by register, the
+ * one with the later stamp. A completion made on one device and an edit made
+ * on another therefore both survive, and every device ends up with the same
+ * task whatever order the versions arrive in. Stamps come from a hybrid
+ * logical clock, the wall clock but never behind a stamp already made or
+ * received, with the device id breaking ties.
+ *
+ * Only tasks changed since they were last sent are tracked, as records with
+ * stamps for just the registers that changed; a deleted task leaves a
+ * tombstone record. Registers without a stamp give way to the server's
+ * version. Records are dropped once the server has them, so memory and the
+ * saved state grow with the changes waiting to be sent, not with the list.
+ *
+ * Tracking starts with the first sync, which records every task in the list
+ * as new. Listen on the repository's writer thread, with {@code Runnable::run},
+ * so the records follow the list exactly. Every method takes an uncontended lock.
+ */
+public class TaskSyncState implements TaskRepository.Listener {
+    private static final Object ARCHIVING = Boolean.TRUE;
+
+    /**
+     * One version of a task with the stamps of its registers. Never changes.
+     */
+    public static final class Record {
+        // A tombstone keeps the values the task had when it was deleted
+        final Task task;
+        final boolean deleted;
+        // Register stamps: when, and by which device; 0 if not stamped
+        final long textAt;
+        final long textBy;
+        final long stateAt;
+        final long stateBy;
+        final long presenceAt;
+        final long presenceBy;
+        // Order of local changes, so the oldest are sent first; 0 for versions from the server
+        final long seq;
+
+        Record(Task task, boolean deleted, long textAt, long textBy, long stateAt, long stateBy,
+               long presenceAt, long presenceBy, long seq) {
+            this.task = task;
+            this.deleted = deleted;
+            this.textAt = textAt;
+            this.textBy = textBy;
+            this.stateAt = stateAt;
+            this.stateBy = stateBy;
+            this.presenceAt = presenceAt;
+            this.presenceBy = presenceBy;
+            this.seq = seq;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        Record withSeq(long seq) {
+            return new Record(task, deleted, textAt, textBy, stateAt, stateBy, presenceAt, presenceBy, seq);
+        }
+    }
+
+    private final long device;
+    private final Clock clock;
+
+    // Guarded by this
+    private final LongObjectMap<Record> records = new LongObjectMap<>();
+    // Tasks about to leave the list for the archive, which is not a delete
+    private final LongObjectMap<Object> archiving = new LongObjectMap<>();
+    private String server;
+    private boolean started;
+    private long cursor;
+    private long lastStamp;
+    private long seq;
+    // The change made by the last merge, which is not stamped again as a local one
+    private TaskBatch merged;
+    // Bumped on every change, so the owner can tell whether it needs saving
+    private long changeCount;
+
+    /**
+     * @param device this install's id, the same for every list
+     */
+    public TaskSyncState(long device, Clock clock) {
+        this.device = device;
+        this.clock = clock;
+    }
+
+    public long getDevice() {
+        return device;
+    }
+
+    /**
+     * The address the list syncs with, or null if it does not sync
+     */
+    public synchronized String getServer() {
+        return server;
+    }
+
+    /**
+     * Sync with another server, or stop syncing with null. The next sync
+     * starts over, sending the whole list.
+     */
+    public synchronized void setServer(String server) {
+        if (Objects.equals(server, this.server)) {
+            return;
+        }
+        this.server = server;
+        started = false;
+        cursor = 0;
+        records.clear();
+        archiving.clear();
+        changeCount++;
+    }
+
+    /**
+     * Whether changes are being tracked, see {@link #start}
+     */
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Where the server's changes were read up to, as the server counts them
+     */
+    public synchronized long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * How many changed tasks wait to be sent
+     */
+    public synchronized int getPendingCount() {
+        return records.size();
+    }
+
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Start tracking changes, with every task in the list waiting to be sent
+     * as new. Call it on the writer, see {@link TaskRepository#applyRemote}.
+     */
+    public synchronized void start(TaskIndex tasks) {
+        records.clear();
+        for (Task task : tasks) {
+            track(null, task);
+        }
+        started = true;
+        changeCount++;
+    }
+
+    /**
+     * The given tasks are being moved to the archive; their removal from the
+     * list is not sent as a delete
+     */
+    public synchronized void willArchive(List<Task> tasks) {
+        if (!started) {
+            return;
+        }
+        for (Task task : tasks) {
+            archiving.put(task.getId(), ARCHIVING);
+        }
+    }
+
+    @Override
+    public synchronized void onTasksChanged(TaskRepository.Snapshot snapshot) {
+        TaskBatch change = snapshot.getChange();
+        // A load replaces the list, it does not change it
+        if (change == null || !started) {
+            return;
+        }
+        if (change == merged) {
+            merged = null;
+            return;
+        }
+        LongObjectMap<Task> before = new LongObjectMap<>(change.getRemoved().size());
+        for (Task task : change.getRemoved()) {
+            before.put(task.getId(), task);
+        }
+        for (Task task : change.getAdded()) {
+            // Changed since it was archived, so it stays in the list
+            archiving.remove(task.getId());
+            track(before.remove(task.getId()), task);
+        }
+        before.forEach((id, task) -> {
+            if (archiving.remove(id) == null) {
+                track(task, null);
+            }
+        });
+    }
+
+    /**
+     * Up to {@code max} records waiting to be sent, those changed longest ago first
+     */
+    public synchronized List<Record> pending(int max) {
+        final List<Record> all = new ArrayList<>(records.size());
+        records.forEach((id, record) -> all.add(record));
+        Collections.sort(all, (record1, record2) -> Long.compare(record1.seq, record2.seq));
+        return new ArrayList<>(all.subList(0, Math.min(max, all.size())));
+    }
+
+    /**
+     * Drop the records sent, up to the one with sequence number {@code sentUpTo},
+     * which the server now has, then merge the server's versions into the
+     * records and the list. Call it on the writer, see
+     * {@link TaskRepository#applyRemote}.
+     *
+     * @param cursor where the server's changes have now been read up to
+     * @return the change to the list
+     */
+    public synchronized TaskBatch merge(TaskIndex tasks, List<Record> remote, long sentUpTo, long cursor) {
+        final long[] sent = new long[records.size()];
+        final int[] sentCount = {0};
+        records.forEach((id, record) -> {
+            // Changed again while it was being sent, and sent next time
+            if (record.seq <= sentUpTo) {
+                sent[sentCount[0]++] = id;
+            }
+        });
+        for (int i = 0; i < sentCount[0]; i++) {
+            records.remove(sent[i]);
+        }
+
+        List<Task> updated = new ArrayList<>();
+        long[] removedIds = new long[remote.size()];
+        int removedCount = 0;
+        for (Record version : remote) {
+            lastStamp = Math.max(lastStamp, Math.max(version.textAt, Math.max(version.stateAt, version.presenceAt)));
+            long id = version.task.getId();
+            Record local = records.get(id);
+            Record result = version;
+            if (local != null) {
+                result = merge(local, version);
+                if (sameStamps(result, version)) {
+                    records.remove(id);
+                } else {
+                    // Ahead of the server in some register, so it goes back
+                    records.put(id, result.withSeq(++seq));
+                }
+            }
+            Task current = tasks.getById(id);
+            if (result.deleted) {
+                if (current != null) {
+                    removedIds[removedCount++] = id;
+                }
+            } else if (current == null || !sameText(current, result.task) || !sameState(current, result.task)) {
+                updated.add(result.task);
+            }
+        }
+        this.cursor = cursor;
+        changeCount++;
+        TaskBatch batch = TaskBatch.merge(tasks, updated, Arrays.copyOf(removedIds, removedCount));
+        merged = batch.isEmpty() ? null : batch;
+        return batch;
+    }
+
+    /**
+     * Register by register, the version with the later stamp. The same
+     * whichever is given first, and for versions merged in any order.
+     */
+    static Record merge(Record a, Record b) {
+        Record text = wins(a.textAt, a.textBy, b.textAt, b.textBy) ? a : b;
+        Record state = wins(a.stateAt, a.stateBy, b.stateAt, b.stateBy) ? a : b;
+        Record presence = wins(a.presenceAt, a.presenceBy, b.presenceAt, b.presenceBy) ? a : b;
+        if (text == state && state == presence) {
+            return text;
+        }
+        Task task = new Task(a.task.getId(), text.task.getTaskText(), state.task.isCompleted(),
+                state.task.getCreatedAt(), state.task.getCompletedAt());
+        task.setDueAt(state.task.getDueAt());
+        task.setRepeatMillis(text.task.getRepeatMillis());
+        return new Record(task, presence.deleted, text.textAt, text.textBy, state.stateAt, state.stateBy,
+                presence.presenceAt, presence.presenceBy, 0);
+    }
+
+    static boolean sameStamps(Record a, Record b) {
+        return a.deleted == b.deleted
+                && a.textAt == b.textAt && a.textBy == b.textBy
+                && a.stateAt == b.stateAt && a.stateBy == b.stateBy
+                && a.presenceAt == b.presenceAt && a.presenceBy == b.presenceBy;
+    }
+
+    /**
+     * Whether the two versions have the same values, whatever their stamps
+     */
+    static boolean sameValues(Record a, Record b) {
+        return a.deleted == b.deleted && sameText(a.task, b.task) && sameState(a.task, b.task);
+    }
+
+    /**
+     * Write the state as one JSON object
+     */
+    public synchronized void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        if (server != null) {
+            writer.name("server").value(server);
+        }
+        writer.name("started").value(started);
+        writer.name("cursor").value(cursor);
+        writer.name("clock").value(lastStamp);
+        writer.name("records");
+        writer.beginArray();
+        for (Record record : pending(records.size())) {
+            writeRecord(writer, record);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * Replace the state with one written by {@link #writeJson}
+     */
+    public synchronized void readJson(JsonReader reader) throws IOException {
+        String readServer = null;
+        boolean readStarted = false;
+        long readCursor = 0;
+        long readClock = 0;
+        List<Record> readRecords = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "server":
+                    readServer = reader.nextString();
+                    break;
+                case "started":
+                    readStarted = reader.nextBoolean();
+                    break;
+                case "cursor":
+                    readCursor = reader.nextLong();
+                    break;
+                case "clock":
+                    readClock = reader.nextLong();
+                    break;
+                case "records":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readRecords.add(readRecord(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        server = readServer;
+        started = readStarted;
+        cursor = readCursor;
+        lastStamp = Math.max(lastStamp, readClock);
+        records.clear();
+        archiving.clear();
+        // Written oldest first, and numbered again in that order
+        for (Record record : readRecords) {
+            records.put(record.task.getId(), record.withSeq(++seq));
+        }
+        changeCount++;
+    }
+
+    /**
+     * A record as one JSON object, the same in the saved state and on the wire.
+     * Registers without a stamp are left out.
+     */
+    static void writeRecord(JsonWriter writer, Record record) throws IOException {
+        writer.beginObject();
+        writer.name("task");
+        TaskCodec.write(writer, record.task);
+        if (record.deleted) {
+            writer.name("deleted").value(true);
+        }
+        writeStamp(writer, "text", record.textAt, record.textBy);
+        writeStamp(writer, "state", record.stateAt, record.stateBy);
+        writeStamp(writer, "presence", record.presenceAt, record.presenceBy);
+        writer.endObject();
+    }
+
+    static Record readRecord(JsonReader reader) throws IOException {
+        Task task = null;
+        boolean deleted = false;
+        long[] stamps = new long[6];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "task":
+                    task = TaskCodec.read(reader);
+                    break;
+                case "deleted":
+                    deleted = reader.nextBoolean();
+                    break;
+                case "textAt":
+                    stamps[0] = reader.nextLong();
+                    break;
+                case "textBy":
+                    stamps[1] = reader.nextLong();
+                    break;
+                case "stateAt":
+                    stamps[2] = reader.nextLong();
+                    break;
+                case "stateBy":
+                    stamps[3] = reader.nextLong();
+                    break;
+                case "presenceAt":
+                    stamps[4] = reader.nextLong();
+                    break;
+                case "presenceBy":
+                    stamps[5] = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (task == null || task.getId() == 0) {
+            throw new IOException("Sync record without a task id");
+        }
+        return new Record(task, deleted, stamps[0], stamps[1], stamps[2], stamps[3], stamps[4], stamps[5], 0);
+    }
+
+    /**
+     * Record a local change from {@code old} to {@code now}, null for a task
+     * that was not there or is gone, stamping the registers that changed
+     */
+    private void track(Task old, Task now) {
+        boolean text = old == null || now != null && !sameText(old, now);
+        boolean state = old == null || now != null && !sameState(old, now);
+        boolean presence = old == null || now == null;
+        if (!text && !state && !presence) {
+            return;
+        }
+        Task task = now != null ? now : old;
+        // A task in step with the server has no record, and no stamps to keep
+        Record previous = records.get(task.getId());
+        long stamp = Math.max(clock.millis(), lastStamp + 1);
+        lastStamp = stamp;
+        records.put(task.getId(), new Record(task, now == null,
+                text ? stamp : previous != null ? previous.textAt : 0,
+                text ? device : previous != null ? previous.textBy : 0,
+                state ? stamp : previous != null ? previous.stateAt : 0,
+                state ? device : previous != null ? previous.stateBy : 0,
+                presence ? stamp : previous != null ? previous.presenceAt : 0,
+                presence ? device : previous != null ? previous.presenceBy : 0,
+                ++seq));
+        changeCount++;
+    }
+
+    private static boolean wins(long at, long by, long otherAt, long otherBy) {
+        return at > otherAt || at == otherAt && by >= otherBy;
+    }
+
+    private static boolean sameText(Task a, Task b) {
+        return Objects.equals(a.getTaskText(), b.getTaskText()) && a.getRepeatMillis() == b.getRepeatMillis();
+    }
+
+    private static boolean sameState(Task a, Task b) {
+        return a.isCompleted() == b.isCompleted() && a.getCompletedAt() == b.getCompletedAt()
+                && a.getCreatedAt() == b.getCreatedAt() && a.getDueAt() == b.getDueAt();
+    }
+
+    private static void writeStamp(JsonWriter writer, String register, long at, long by) throws IOException {
+        if (at != 0) {
+            writer.name(register + "At").value(at);
+            writer.name(register + "By").value(by);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.whatdoidonow;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only task storage laid out as parallel columns instead of one object
+ * per task: {@code long[]} ids and timestamps, a {@link BitSet} for completion
+ * and an {@code int[]} reference into a pool of distinct texts.
+ *
+ * A row costs about 28 bytes plus its share of the text pool, against 48 for
+ * a Task object and 4 for its list slot before the text is counted. Repeated
+ * texts are stored once: a small direct-mapped table remembers recent texts
+ * by hash, which catches recurring tasks without a map entry per text. {@link Task} objects are only created when a row is
+ * read, see {@link #get(int)}, so a view over the table materializes just the
+ * rows that are on screen.
+ */
+public class TaskTable {
+    private static final int MIN_CAPACITY = 16;
+    private static final int DEDUP_SLOTS = 4096;
+
+    private long[] ids;
+    private long[] createdAt;
+    private long[] completedAt;
+    private int[] textRefs;
+    private final BitSet completed = new BitSet();
+    private final List<String> texts = new ArrayList<>();
+    // Text reference per hash slot, -1 if empty
+    private final int[] dedup = new int[DEDUP_SLOTS];
+    private int size;
+
+    public TaskTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public TaskTable(int expectedSize) {
+        int capacity = Math.max(expectedSize, MIN_CAPACITY);
+        ids = new long[capacity];
+        createdAt = new long[capacity];
+        completedAt = new long[capacity];
+        textRefs = new int[capacity];
+        Arrays.fill(dedup, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Append a row holding the task's current values
+     */
+    public void add(Task task) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            completedAt = Arrays.copyOf(completedAt, capacity);
+            textRefs = Arrays.copyOf(textRefs, capacity);
+        }
+        ids[size] = task.getId();
+        createdAt[size] = task.getCreatedAt();
+        completedAt[size] = task.getCompletedAt();
+        textRefs[size] = textRef(task.getTaskText());
+        completed.set(size, task.isCompleted());
+        size++;
+    }
+
+    public void addAll(Iterable<Task> tasks) {
+        for (Task task : tasks) {
+            add(task);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        completed.clear();
+        texts.clear();
+        Arrays.fill(dedup, -1);
+    }
+
+    public long getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    public String getText(int row) {
+        checkRow(row);
+        int ref = textRefs[row];
+        return ref < 0 ? null : texts.get(ref);
+    }
+
+    public boolean isCompleted(int row) {
+        checkRow(row);
+        return completed.get(row);
+    }
+
+    public long getCreatedAt(int row) {
+        checkRow(row);
+        return createdAt[row];
+    }
+
+    public long getCompletedAt(int row) {
+        checkRow(row);
+        return completedAt[row];
+    }
+
+    /**
+     * A new Task holding the row's values. Rows have no object of their own,
+     * each call returns a fresh copy.
+     */
+    public Task get(int row) {
+        checkRow(row);
+        return new Task(ids[row], getText(row), completed.get(row), createdAt[row], completedAt[row]);
+    }
+
+    /**
+     * Number of texts stored, at most one per row
+     */
+    public int textCount() {
+        return texts.size();
+    }
+
+    /**
+     * A read-only list view that creates tasks as rows are read
+     */
+    public List<Task> asList() {
+        return new RowList();
+    }
+
+    private int textRef(String text) {
+        if (text == null) {
+            return -1;
+        }
+        int slot = (text.hashCode() * 0x9E3779B9 >>> 20) & (DEDUP_SLOTS - 1);
+        int ref = dedup[slot];
+        if (ref >= 0 && texts.get(ref).equals(text)) {
+            return ref;
+        }
+        ref = texts.size();
+        texts.add(text);
+        dedup[slot] = ref;
+        return ref;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    private final class RowList extends AbstractList<Task> implements RandomAccess {
+        @Override
+        public Task get(int index) {
+            return TaskTable.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
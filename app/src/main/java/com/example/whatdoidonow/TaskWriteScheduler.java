@@ -0,0 +1,277 @@
+package com.example.whatdoidonow;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches task mutations in front of a {@link TaskJournal}.
+ *
+ * Mutations are collected for a short window and then written as one group
+ * commit. Within a batch only the net effect per task survives: toggling a
+ * checkbox five times writes one record, adding and deleting a task writes
+ * none. Tasks put back by {@link #recordRestore} may already be stored, so
+ * deleting one of them again is still written. At most one write is in
+ * flight; mutations arriving meanwhile wait for the next batch.
+ *
+ * Ordering is preserved because every write, including whole-list
+ * replacements, runs on the scheduler's single thread.
+ */
+public class TaskWriteScheduler {
+    public static final long DEFAULT_WINDOW_MILLIS = 250;
+
+    /**
+     * The net mutation of one task within the window
+     */
+    private static final class Pending {
+        final TaskJournal.Mutation mutation;
+        // An add of a task the journal has never held, which a delete cancels
+        final boolean inserted;
+
+        Pending(TaskJournal.Op op, Task task, boolean inserted) {
+            this.mutation = new TaskJournal.Mutation(op, task);
+            this.inserted = inserted;
+        }
+    }
+
+    private final TaskJournal journal;
+    private final long windowMillis;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TaskWriteScheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private Map<Long, Pending> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledWrite;
+    private long mutationCount;
+    private long writeCount;
+    private long recordCount;
+
+    public TaskWriteScheduler(TaskJournal journal) {
+        this(journal, DEFAULT_WINDOW_MILLIS);
+    }
+
+    public TaskWriteScheduler(TaskJournal journal, long windowMillis) {
+        this.journal = journal;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Queue a mutation. Returns immediately; the record reaches the journal
+     * within the window, or sooner on {@link #flush()}.
+     */
+    public synchronized void record(TaskJournal.Op op, Task task) {
+        add(op, task, true);
+        scheduleWrite();
+    }
+
+    /**
+     * Queue several mutations as one transaction: they are added under one
+     * lock, so they always reach the journal in the same group commit.
+     */
+    public synchronized void recordAll(List<TaskJournal.Mutation> mutations) {
+        for (TaskJournal.Mutation mutation : mutations) {
+            add(mutation.op, mutation.task, true);
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Queue tasks put back as they were, such as by an undo, and tasks
+     * deleted along with them, as one transaction. The tasks put back are
+     * written as adds replacing whatever version is stored.
+     */
+    public synchronized void recordRestore(List<Task> restored, List<Task> deleted) {
+        for (Task task : restored) {
+            add(TaskJournal.Op.ADD, task, false);
+        }
+        for (Task task : deleted) {
+            add(TaskJournal.Op.DELETE, task, false);
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Start writing whatever is pending now instead of at the end of the window
+     */
+    public synchronized void requestFlush() {
+        if (scheduledWrite != null) {
+            scheduledWrite.cancel(false);
+        }
+        scheduledWrite = executor.schedule(this::writePending, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write whatever is pending and wait until it has reached the journal
+     */
+    public void flush() {
+        await(executor.submit(this::writePending));
+    }
+
+    /**
+     * Write whatever is pending, then stop the scheduler thread. Nothing may
+     * be recorded afterwards; the journal is left open.
+     */
+    public void close() {
+        flush();
+        executor.shutdown();
+    }
+
+    /**
+     * Replace the whole store. Pending mutations are superseded and dropped.
+     * Waits for the replacement to be written.
+     */
+    public void replaceAll(final List<Task> tasks) {
+        final List<Task> copy = new ArrayList<>(tasks);
+        await(executor.submit(() -> {
+            synchronized (this) {
+                pending = new LinkedHashMap<>();
+            }
+            journal.replaceAll(copy);
+            synchronized (this) {
+                writeCount++;
+            }
+        }));
+    }
+
+    /**
+     * Mutations passed to {@link #record} so far
+     */
+    public synchronized long getMutationCount() {
+        return mutationCount;
+    }
+
+    /**
+     * Physical writes performed: group commits plus whole-list replacements
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Journal records written after coalescing
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    // Guarded by this
+    private void add(TaskJournal.Op op, Task task, boolean insert) {
+        mutationCount++;
+        // Tasks are replaced, never mutated, once handed to the model, so keeping the reference is safe
+        Pending merged = merge(pending.get(task.getId()), op, task, insert);
+        if (merged == null) {
+            pending.remove(task.getId());
+        } else {
+            pending.put(task.getId(), merged);
+        }
+    }
+
+    // Guarded by this
+    private void scheduleWrite() {
+        if (scheduledWrite == null) {
+            scheduledWrite = executor.schedule(this::writePending, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Scheduler thread only, so there is never more than one write in flight.
+    // A failed batch is kept for the next write, and the failure reaches flush().
+    private void writePending() {
+        Map<Long, Pending> writing;
+        List<TaskJournal.Mutation> batch;
+        synchronized (this) {
+            scheduledWrite = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            writing = pending;
+            batch = new ArrayList<>(writing.size());
+            for (Pending entry : writing.values()) {
+                batch.add(entry.mutation);
+            }
+            pending = new LinkedHashMap<>();
+        }
+        try {
+            journal.appendAll(batch);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                requeue(writing);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            writeCount++;
+            recordCount += batch.size();
+        }
+    }
+
+    // Guarded by this. Puts a batch that failed to write back in front of
+    // whatever was recorded while it was being written.
+    private void requeue(Map<Long, Pending> failed) {
+        Map<Long, Pending> newer = pending;
+        pending = new LinkedHashMap<>();
+        for (Map.Entry<Long, Pending> entry : failed.entrySet()) {
+            TaskJournal.Mutation mutation = entry.getValue().mutation;
+            // Part of the batch may have reached the journal after all
+            pending.put(entry.getKey(), new Pending(mutation.op, mutation.task, false));
+        }
+        for (Map.Entry<Long, Pending> entry : newer.entrySet()) {
+            Pending later = entry.getValue();
+            Pending merged = merge(pending.get(entry.getKey()), later.mutation.op, later.mutation.task,
+                    later.inserted);
+            if (merged == null) {
+                pending.remove(entry.getKey());
+            } else {
+                pending.put(entry.getKey(), merged);
+            }
+        }
+    }
+
+    /**
+     * The single record with the same effect as {@code previous} followed by
+     * {@code op}, or null if the two cancel out
+     *
+     * @param insert whether an add is of a new task rather than one that may be stored
+     */
+    private static Pending merge(Pending previous, TaskJournal.Op op, Task task, boolean insert) {
+        if (previous == null) {
+            return new Pending(op, task, op == TaskJournal.Op.ADD && insert);
+        }
+        TaskJournal.Op before = previous.mutation.op;
+        if (before == TaskJournal.Op.ADD) {
+            if (op == TaskJournal.Op.DELETE) {
+                // Never written, so nothing is left; a stored version still has to go
+                return previous.inserted ? null : new Pending(op, task, false);
+            }
+            // A status change or a replacement is a different add
+            return new Pending(TaskJournal.Op.ADD, task, previous.inserted);
+        }
+        if (before == TaskJournal.Op.DELETE && op != TaskJournal.Op.ADD) {
+            // Nothing left to change
+            return previous;
+        }
+        // The last status change or the delete wins; an add after a delete
+        // re-creates the task, which the journal may still hold
+        return new Pending(op, task, false);
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for task writes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Task write failed", e.getCause());
+        }
+    }
+}
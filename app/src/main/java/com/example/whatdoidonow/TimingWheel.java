@@ -0,0 +1,249 @@
+package com.example.whatdoidonow;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel of deadlines keyed by id, one deadline per id.
+ *
+ * Time is counted in ticks of {@code tickMillis}. Level 0 has one slot per
+ * tick, each higher level has slots {@value #SLOTS} times as wide. A deadline
+ * sits on the lowest level whose slot tells it apart from the current tick,
+ * so adding or removing one is O(1) however many are scheduled or how far
+ * ahead they are. When time reaches a slot on a higher level its deadlines
+ * are moved down, at most once per level each, until they fire from level 0.
+ *
+ * Every level keeps a bitmask of its occupied slots, and a level only holds
+ * deadlines later than everything below it. Finding the next deadline is
+ * therefore a few mask operations plus, if the nearest one is on a higher
+ * level, a scan of that one slot. Nothing needs to run between deadlines,
+ * so the owner can sleep until {@link #nextDeadline()}.
+ *
+ * Deadlines are rounded up to whole ticks. Time only moves when
+ * {@link #advance} is called, which makes the wheel deterministic under a
+ * fake clock. Not thread-safe.
+ */
+public class TimingWheel {
+    public interface ExpiryListener {
+        void onExpired(long id, long deadline);
+    }
+
+    static final int SLOTS = 64;
+    private static final int SLOT_BITS = 6;
+    // Enough levels to tell any two ticks apart
+    private static final int LEVELS = (64 + SLOT_BITS - 1) / SLOT_BITS;
+
+    private static final class Entry {
+        final long id;
+        long deadline;
+        long tick;
+        int level;
+        int slot;
+        Entry previous;
+        Entry next;
+
+        Entry(long id) {
+            this.id = id;
+        }
+    }
+
+    private final long tickMillis;
+    private final Entry[][] slots = new Entry[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private final LongObjectMap<Entry> entries = new LongObjectMap<>();
+    // Every tick before this one has been processed
+    private long currentTick;
+
+    /**
+     * @param startMillis the time the wheel starts at; earlier deadlines expire on the first advance
+     */
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * The deadline scheduled for the id, or 0 if there is none
+     */
+    public long getDeadline(long id) {
+        Entry entry = entries.get(id);
+        return entry == null ? 0 : entry.deadline;
+    }
+
+    /**
+     * Schedule the id at the given time, replacing any deadline it had
+     */
+    public void schedule(long id, long deadline) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            entry = new Entry(id);
+            entries.put(id, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.deadline = deadline;
+        // A deadline already passed expires on the next advance
+        entry.tick = Math.max(-Math.floorDiv(-deadline, tickMillis), currentTick);
+        link(entry);
+    }
+
+    /**
+     * @return whether the id was scheduled
+     */
+    public boolean cancel(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    public void clear() {
+        for (int level = 0; level < LEVELS; level++) {
+            Arrays.fill(slots[level], null);
+            occupied[level] = 0;
+        }
+        entries.clear();
+    }
+
+    /**
+     * The earliest time {@link #advance} has anything to expire, or
+     * {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    public long nextDeadline() {
+        for (int level = 0; level < LEVELS; level++) {
+            int slot = nextSlot(level);
+            if (slot < 0) {
+                continue;
+            }
+            if (level == 0) {
+                return slotStart(0, slot) * tickMillis;
+            }
+            // Deadlines in a wide slot can be anywhere in it
+            long earliest = Long.MAX_VALUE;
+            for (Entry entry = slots[level][slot]; entry != null; entry = entry.next) {
+                earliest = Math.min(earliest, entry.tick);
+            }
+            return earliest * tickMillis;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Move time forward to {@code nowMillis} and hand every deadline reached
+     * to the listener, earliest tick first. Expired ids are unscheduled before
+     * the listener sees them, so it may schedule them again.
+     *
+     * @return the number of ids expired
+     */
+    public int advance(long nowMillis, ExpiryListener listener) {
+        long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        int expired = 0;
+        while (true) {
+            int level = 0;
+            int slot = -1;
+            for (; level < LEVELS; level++) {
+                slot = nextSlot(level);
+                if (slot >= 0) {
+                    break;
+                }
+            }
+            if (slot < 0 || slotStart(level, slot) > nowTick) {
+                break;
+            }
+            currentTick = slotStart(level, slot);
+            Entry head = slots[level][slot];
+            slots[level][slot] = null;
+            occupied[level] &= ~(1L << slot);
+            while (head != null) {
+                Entry entry = head;
+                head = head.next;
+                entry.previous = null;
+                entry.next = null;
+                if (level == 0) {
+                    entries.remove(entry.id);
+                    expired++;
+                    listener.onExpired(entry.id, entry.deadline);
+                } else {
+                    // Closer now, so it lands on a lower level
+                    link(entry);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+        return expired;
+    }
+
+    /**
+     * The first occupied slot on a level at or after the current tick, or -1
+     */
+    private int nextSlot(int level) {
+        long mask = occupied[level];
+        if (mask == 0) {
+            return -1;
+        }
+        int current = digit(currentTick, level);
+        // Slots behind the current one are empty on every level: their ticks have passed
+        long ahead = mask & (-1L << current);
+        return ahead == 0 ? -1 : Long.numberOfTrailingZeros(ahead);
+    }
+
+    /**
+     * The first tick of a slot, which shares every higher digit with the current tick
+     */
+    private long slotStart(int level, int slot) {
+        int shift = level * SLOT_BITS;
+        long high = shift + SLOT_BITS >= 64 ? 0 : currentTick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+        return high | (long) slot << shift;
+    }
+
+    private static int digit(long tick, int level) {
+        return (int) (tick >>> (level * SLOT_BITS)) & (SLOTS - 1);
+    }
+
+    private void link(Entry entry) {
+        long differing = entry.tick ^ currentTick;
+        int level = differing == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differing)) / SLOT_BITS;
+        int slot = digit(entry.tick, level);
+        entry.level = level;
+        entry.slot = slot;
+        entry.previous = null;
+        entry.next = slots[level][slot];
+        if (entry.next != null) {
+            entry.next.previous = entry;
+        }
+        slots[level][slot] = entry;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            slots[entry.level][entry.slot] = entry.next;
+            if (entry.next == null) {
+                occupied[entry.level] &= ~(1L << entry.slot);
+            }
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.whatdoidonow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarTaskFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsRowsAcrossBlocks() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            boolean completed = i % 7 == 0;
+            // Non-monotonic timestamps exercise negative deltas
+            Task task = new Task(i * 31L - 500, i % 50 == 0 ? null : "Task " + i + " ✓", completed,
+                    1700000000000L + (i % 3 == 0 ? -i : i) * 1000L, completed ? 1700000500000L - i : 0);
+            if (i % 11 == 0) {
+                // A few scheduled tasks among many without
+                TaskCodecTest.scheduled(task, 1700000600000L + i, i % 2 == 0 ? 3_600_000L * i : 0);
+            }
+            tasks.add(task);
+        }
+        File file = folder.newFile();
+        ColumnarTaskFile.write(file, tasks, 42);
+
+        ColumnarTaskFile columnar = ColumnarTaskFile.open(file);
+        assertEquals(42, columnar.getGeneration());
+        assertEquals(tasks.size(), columnar.size());
+        TaskCodecTest.assertTasksEqual(tasks, columnar.readAll());
+        for (int row : new int[]{0, 1, 127, 128, 129, 500, 999}) {
+            TaskCodecTest.assertTasksEqual(tasks.subList(row, row + 1), Arrays.asList(columnar.get(row)));
+        }
+    }
+
+    @Test
+    public void loadsRangesStartingMidBlock() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 700; i++) {
+            tasks.add(new Task(i + 1, i % 9 == 0 ? null : "Task " + i, i % 4 == 0, 1700000000000L - i * 7919L, i));
+        }
+        File file = folder.newFile();
+        ColumnarTaskFile.write(file, tasks, 1);
+
+        ColumnarTaskFile columnar = ColumnarTaskFile.open(file);
+        int[][] ranges = {{0, 0}, {0, 50}, {100, 150}, {127, 129}, {250, 700}, {699, 700}, {700, 700}};
+        for (int[] range : ranges) {
+            TaskCodecTest.assertTasksEqual(tasks.subList(range[0], range[1]), columnar.load(range[0], range[1]));
+        }
+    }
+
+    @Test
+    public void journalOpensOnlyColumnarSnapshots() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal json = new TaskJournal(dir);
+        json.replaceAll(Arrays.asList(new Task(1, "a", false, 1, 0), new Task(2, "b", true, 2, 3)));
+        assertNull(json.openSnapshot());
+        json.close();
+
+        TaskJournal columnar = new TaskJournal(dir, TaskJournal.SnapshotFormat.COLUMNAR, 16);
+        assertNull(columnar.openSnapshot());
+        columnar.load();
+        ColumnarTaskFile snapshot = columnar.openSnapshot();
+        // Pending first, in display order
+        TaskCodecTest.assertTasksEqual(Arrays.asList(new Task(1, "a", false, 1, 0), new Task(2, "b", true, 2, 3)),
+                snapshot.load(0, 2));
+    }
+
+    @Test
+    public void journalConvertsJsonSnapshotToColumnar() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal json = new TaskJournal(dir);
+        json.replaceAll(Arrays.asList(new Task(1, "a", false, 1, 0), new Task(2, "b", true, 2, 3)));
+        json.append(TaskJournal.Op.ADD, new Task(3, "c", false, 4, 0));
+        json.close();
+
+        TaskJournal columnar = new TaskJournal(dir, TaskJournal.SnapshotFormat.COLUMNAR, 16);
+        assertEquals(3, columnar.load().size());
+        assertTrue(new File(dir, "tasks.snapshot.col").exists());
+        assertFalse(new File(dir, "tasks.snapshot.json").exists());
+
+        columnar.append(TaskJournal.Op.DELETE, new Task(1, "a", false, 1, 0));
+        columnar.close();
+        List<Task> tasks = new TaskJournal(dir, TaskJournal.SnapshotFormat.COLUMNAR, 16).load();
+        assertEquals(2, tasks.size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void matchesHashMapThroughRandomOperations() {
+        Random random = new Random(11);
+        LongObjectMap<String> map = new LongObjectMap<>();
+        Map<Long, String> reference = new HashMap<>();
+
+        for (int step = 0; step < 100_000; step++) {
+            // A small key range forces collisions, long probe runs and removals inside them
+            long key = random.nextInt(2_000) * 0x1_0000_0000L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(key), map.remove(key));
+            } else {
+                String value = "v" + step;
+                assertEquals(reference.put(key, value), map.put(key, value));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (Map.Entry<Long, String> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+
+        final int[] visited = {0};
+        map.forEach((key, value) -> {
+            assertEquals(reference.get(key), value);
+            visited[0]++;
+        });
+        assertEquals(reference.size(), visited[0]);
+    }
+
+    @Test
+    public void clearEmptiesTheMap() {
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        map.put(0, "zero");
+        map.put(-1, "minus one");
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+        assertFalse(map.containsKey(-1));
+    }
+}
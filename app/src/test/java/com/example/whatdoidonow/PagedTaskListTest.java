@@ -0,0 +1,150 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class PagedTaskListTest {
+
+    /**
+     * Tasks computed from their position, so no list of them is ever held
+     */
+    private static final class GeneratedSource implements TaskPageSource {
+        final int size;
+        int loadedRows;
+
+        GeneratedSource(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long getId(int position) {
+            return position + 1;
+        }
+
+        @Override
+        public List<Task> load(int from, int to) throws IOException {
+            if (from == 13 * 10) {
+                throw new IOException("Unreadable page");
+            }
+            List<Task> tasks = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                tasks.add(new Task(i + 1, "Task " + i, false, i, 0));
+            }
+            loadedRows += to - from;
+            return tasks;
+        }
+    }
+
+    private static final class QueuedExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void loadsPagesAroundTheReadPosition() {
+        QueuedExecutor loads = new QueuedExecutor();
+        PagedTaskList list = new PagedTaskList(new GeneratedSource(1_000), loads, Runnable::run, 10, 8, 1);
+        final List<Integer> loaded = new ArrayList<>();
+        list.setListener(new PagedTaskList.Listener() {
+            @Override
+            public void onPageLoaded(int from, int count) {
+                loaded.add(from);
+                assertEquals(10, count);
+            }
+
+            @Override
+            public void onPageLoadFailed(IOException error) {
+                fail();
+            }
+        });
+
+        assertEquals(1_000, list.size());
+        assertNull(list.get(55));
+        // Requested once, however often it is read while loading
+        assertNull(list.get(57));
+        loads.runAll();
+
+        assertEquals("[50, 60, 40]", loaded.toString());
+        assertEquals(56, list.get(55).getId());
+        assertTrue(list.isLoaded(41));
+        assertTrue(list.isLoaded(69));
+        assertFalse(list.isLoaded(70));
+    }
+
+    @Test
+    public void holdsBoundedPagesWhileScrollingThroughEverything() {
+        QueuedExecutor loads = new QueuedExecutor();
+        GeneratedSource source = new GeneratedSource(1_000_000);
+        PagedTaskList list = new PagedTaskList(source, loads, Runnable::run, 50, 6, 1);
+
+        // Read every row as the adapter would while scrolling, letting loads keep up
+        for (int i = 0; i < list.size(); i += 10) {
+            list.get(i);
+            loads.runAll();
+            assertEquals(i + 1, list.get(i).getId());
+            assertTrue(list.getResidentPageCount() <= 6);
+        }
+        // Each page read about once despite prefetching
+        assertEquals(1_000_000 / 50, list.getLoadCount());
+
+        // A fling: loads for pages scrolled past before they started are skipped
+        int loadedBefore = source.loadedRows;
+        for (int i = 0; i < 500_000; i += 500) {
+            list.get(i);
+        }
+        loads.runAll();
+        assertTrue(source.loadedRows - loadedBefore <= 6 * 50);
+        assertNotNull(list.get(499_500));
+
+        list.close();
+        assertEquals(0, list.getResidentPageCount());
+        assertNull(list.get(0));
+    }
+
+    @Test
+    public void retriesPagesThatFailedToLoad() {
+        QueuedExecutor loads = new QueuedExecutor();
+        PagedTaskList list = new PagedTaskList(new GeneratedSource(200), loads, Runnable::run, 10, 4, 0);
+        final List<IOException> errors = new ArrayList<>();
+        list.setListener(new PagedTaskList.Listener() {
+            @Override
+            public void onPageLoaded(int from, int count) {
+            }
+
+            @Override
+            public void onPageLoadFailed(IOException error) {
+                errors.add(error);
+            }
+        });
+
+        assertNull(list.get(135));
+        loads.runAll();
+        assertEquals(1, errors.size());
+        assertNull(list.get(135));
+        assertEquals(1, loads.tasks.size());
+    }
+}
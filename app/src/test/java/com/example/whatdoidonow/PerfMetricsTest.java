@@ -0,0 +1,69 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class PerfMetricsTest {
+
+    @After
+    public void resetMetrics() {
+        PerfMetrics.reset();
+    }
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = PerfMetrics.Timer.bucketOf(value);
+            assertTrue(value + " below its bucket", PerfMetrics.Timer.lowerBound(bucket) <= value);
+            if (value < Long.MAX_VALUE / 2) {
+                assertTrue(value + " above its bucket", value < PerfMetrics.Timer.lowerBound(bucket + 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinABucketOfTheTruth() {
+        PerfMetrics.Timer timer = new PerfMetrics.Timer("test");
+        // 1..10000 microseconds, once each
+        for (long micros = 1; micros <= 10_000; micros++) {
+            timer.record(micros * 1_000, micros % 2 == 0 ? 10 : -1);
+        }
+        PerfMetrics.Summary summary = timer.summary();
+        assertEquals(10_000, summary.count);
+        assertEquals(10_000_000, summary.maxNanos);
+        assertEquals(5_000_000, summary.p50Nanos, 5_000_000 / 8.0);
+        assertEquals(9_000_000, summary.p90Nanos, 9_000_000 / 8.0);
+        assertEquals(9_900_000, summary.p99Nanos, 9_900_000 / 8.0);
+        assertTrue(summary.p50Nanos >= 5_000_000);
+        assertEquals(10, summary.allocationsPerCall());
+    }
+
+    @Test
+    public void dumpsEveryTimerAsJson() throws IOException {
+        PerfMetrics.BIND_ROW.record(42_000, -1);
+        StringWriter out = new StringWriter();
+        PerfMetrics.writeJson(out, 1234);
+
+        JsonObject dump = JsonParser.parseString(out.toString()).getAsJsonObject();
+        assertEquals(1234, dump.get("timestamp").getAsLong());
+        JsonArray timers = dump.getAsJsonArray("timers");
+        assertEquals(PerfMetrics.timers().size(), timers.size());
+        for (int i = 0; i < timers.size(); i++) {
+            JsonObject timer = timers.get(i).getAsJsonObject();
+            if (timer.get("name").getAsString().equals("onBindViewHolder")) {
+                assertEquals(1, timer.get("count").getAsLong());
+                assertEquals(42, timer.get("maxMicros").getAsLong());
+                assertFalse(timer.has("allocationsPerCall"));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PersistentLongMapTest {
+
+    @Test
+    public void matchesHashMapAndKeepsOldVersions() {
+        Random random = new Random(5);
+        PersistentLongMap<String> map = PersistentLongMap.empty();
+        Map<Long, String> reference = new HashMap<>();
+        List<PersistentLongMap<String>> versions = new ArrayList<>();
+        List<Map<Long, String>> expected = new ArrayList<>();
+
+        for (int step = 0; step < 50_000; step++) {
+            // Negative and far apart keys as well as a dense range
+            long key = random.nextBoolean() ? random.nextInt(3_000) : random.nextInt(3_000) * -0x1_0000_0001L;
+            if (random.nextInt(3) == 0) {
+                reference.remove(key);
+                map = map.remove(key);
+            } else {
+                String value = "v" + step;
+                reference.put(key, value);
+                map = map.put(key, value);
+            }
+            assertEquals(reference.size(), map.size());
+            if (step % 5_000 == 0) {
+                versions.add(map);
+                expected.add(new HashMap<>(reference));
+            }
+        }
+        assertContents(reference, map);
+        for (int i = 0; i < versions.size(); i++) {
+            assertContents(expected.get(i), versions.get(i));
+        }
+        assertTrue(map.remove(Long.MIN_VALUE) == map);
+    }
+
+    @Test
+    public void diffReportsExactlyTheChangedKeys() {
+        Random random = new Random(9);
+        PersistentLongMap.Builder<String> builder = new PersistentLongMap.Builder<>();
+        for (long key = 1; key <= 10_000; key++) {
+            builder.put(key, "v" + key);
+        }
+        PersistentLongMap<String> from = builder.build();
+        for (int round = 0; round < 50; round++) {
+            PersistentLongMap<String> to = from;
+            int changes = random.nextInt(200);
+            for (int i = 0; i < changes; i++) {
+                long key = 1 + random.nextInt(12_000);
+                to = random.nextInt(3) == 0 ? to.remove(key) : to.put(key, "w" + i);
+            }
+            final Map<Long, String> reported = new HashMap<>();
+            from.diff(to, (key, oldValue, newValue) -> {
+                assertNotSame(oldValue, newValue);
+                assertSame(from.get(key), oldValue);
+                assertNull(reported.put(key, newValue));
+            });
+            int expected = 0;
+            for (long key = 1; key <= 12_000; key++) {
+                if (from.get(key) != to.get(key)) {
+                    expected++;
+                    assertTrue(reported.containsKey(key));
+                    assertSame(to.get(key), reported.get(key));
+                }
+            }
+            assertEquals(expected, reported.size());
+        }
+    }
+
+    @Test
+    public void builderDoesNotChangeBuiltMaps() {
+        PersistentLongMap.Builder<String> builder = new PersistentLongMap.Builder<>();
+        for (long key = 0; key < 1_000; key++) {
+            builder.put(key, "a");
+        }
+        builder.put(5, "b");
+        PersistentLongMap<String> first = builder.build();
+        assertEquals(1_000, first.size());
+        assertEquals("b", first.get(5));
+
+        builder.put(5, "c").put(1_000, "d");
+        PersistentLongMap<String> second = builder.build();
+        assertEquals("b", first.get(5));
+        assertNull(first.get(1_000));
+        assertEquals(1_001, second.size());
+        assertEquals("c", second.get(5));
+
+        PersistentLongMap<String> third = second.toBuilder().put(6, "e").build();
+        assertEquals("a", second.get(6));
+        assertEquals("e", third.get(6));
+    }
+
+    private static void assertContents(Map<Long, String> expected, PersistentLongMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        final int[] visited = {0};
+        map.forEach((key, value) -> {
+            assertEquals(expected.get(key), value);
+            visited[0]++;
+        });
+        assertEquals(expected.size(), visited[0]);
+    }
+}
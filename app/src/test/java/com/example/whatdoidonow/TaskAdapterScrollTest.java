@@ -0,0 +1,141 @@
+package com.example.whatdoidonow;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Flings the real list over real rows, so what is counted is what
+ * RecyclerView asks of the adapter on a device. Text is measured for real,
+ * so rows are as tall as they would be there.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class TaskAdapterScrollTest {
+    private static final long NOW = 1_760_000_000_000L;
+    private static final int TASKS = 10_000;
+
+    private static final class Fling {
+        int created;
+        int inflatedOnDemand;
+        int inflatedAhead;
+        int binds;
+        // Created again after the list was shown anew, which stable ids avoid
+        int createdOnReshow;
+        long millis;
+
+        @Override
+        public String toString() {
+            return created + " rows created, " + inflatedOnDemand + " inflated on the UI thread, "
+                    + inflatedAhead + " ahead, " + binds + " binds, " + createdOnReshow
+                    + " created on reshow, " + millis + " ms";
+        }
+    }
+
+    @Test
+    public void tunedListFlingsThroughTenThousandTasksWithoutInflating() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+        Context context = new ContextThemeWrapper(RuntimeEnvironment.getApplication(), R.style.Theme_WhatDoIDoNow);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < TASKS; i++) {
+            tasks.add(new Task(i + 1, "Task number " + i, i % 3 == 0, NOW - i * 60_000L,
+                    i % 3 == 0 ? NOW - i * 30_000L : 0));
+        }
+        TaskIndex index = new TaskIndex(tasks).snapshot();
+
+        Fling plain = fling(context, index, false);
+        Fling tuned = fling(context, index, true);
+        System.out.println("Plain: " + plain);
+        System.out.println("Tuned: " + tuned);
+
+        assertTrue(plain.inflatedOnDemand > 0);
+        assertEquals(0, tuned.inflatedOnDemand);
+        assertTrue(tuned.created <= tuned.inflatedAhead);
+        // Every row scrolled into view is bound once either way
+        assertTrue(tuned.binds <= plain.binds);
+        assertTrue(tuned.binds >= TASKS);
+        assertEquals(0, tuned.createdOnReshow);
+    }
+
+    private static Fling fling(Context context, TaskIndex tasks, boolean tuned) {
+        final Fling fling = new Fling();
+        TaskAdapter adapter = new TaskAdapter(tasks, new Listener(), new TaskLabelCache()) {
+            @NonNull
+            @Override
+            public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+                fling.created++;
+                return super.onCreateViewHolder(parent, viewType);
+            }
+
+            @Override
+            public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
+                fling.binds++;
+                super.onBindViewHolder(holder, position);
+            }
+        };
+        RecyclerView list = new RecyclerView(context);
+        list.setLayoutManager(new LinearLayoutManager(context));
+        if (tuned) {
+            // Done before the first layout, as the startup work is on a device
+            adapter.attachTo(list, Runnable::run);
+        } else {
+            adapter.setHasStableIds(false);
+            list.setAdapter(adapter);
+        }
+        int width = context.getResources().getDisplayMetrics().widthPixels;
+        int height = context.getResources().getDisplayMetrics().heightPixels;
+        layOut(list, width, height);
+
+        long started = System.nanoTime();
+        // A frame of a fast fling moves about a third of the screen
+        while (list.canScrollVertically(1)) {
+            list.scrollBy(0, height / 3);
+        }
+        fling.millis = (System.nanoTime() - started) / 1_000_000;
+
+        int created = fling.created;
+        adapter.setTasks(tasks);
+        layOut(list, width, height);
+        fling.createdOnReshow = fling.created - created;
+        fling.inflatedOnDemand = adapter.getRowInflater().getInflatedOnDemand();
+        fling.inflatedAhead = adapter.getRowInflater().getInflatedAhead();
+        return fling;
+    }
+
+    private static void layOut(View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+    }
+
+    private static final class Listener implements TaskAdapter.TaskItemClickListener {
+        @Override
+        public void onTaskCheckChanged(Task task, boolean isChecked) {
+        }
+
+        @Override
+        public void onDeleteTask(Task task) {
+        }
+
+        @Override
+        public void onSelectionChanged(int selectedCount) {
+        }
+    }
+}
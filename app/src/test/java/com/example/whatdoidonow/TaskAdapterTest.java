@@ -0,0 +1,109 @@
+package com.example.whatdoidonow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskAdapterTest {
+    private static final long NOW = 1_760_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rebindsOnlyCompletionWhenNothingElseChanged() {
+        Task task = new Task(1, "Buy milk", false, NOW, 0);
+        Task same = new Task(task);
+        assertTrue(TaskAdapter.DIFF_CALLBACK.areItemsTheSame(task, same));
+        assertTrue(TaskAdapter.DIFF_CALLBACK.areContentsTheSame(task, same));
+
+        Task completed = new Task(task);
+        completed.setCompleted(true);
+        completed.setCompletedAt(NOW + 1000);
+        assertFalse(TaskAdapter.DIFF_CALLBACK.areContentsTheSame(task, completed));
+        assertSame(TaskAdapter.PAYLOAD_COMPLETION, TaskAdapter.DIFF_CALLBACK.getChangePayload(task, completed));
+
+        // Edited on another device: the row is bound again in full
+        Task edited = new Task(task);
+        edited.setTaskText("Buy oat milk");
+        assertFalse(TaskAdapter.DIFF_CALLBACK.areContentsTheSame(task, edited));
+        assertNull(TaskAdapter.DIFF_CALLBACK.getChangePayload(task, edited));
+
+        Task repeating = new Task(completed);
+        repeating.setRepeatMillis(60 * 60 * 1000L);
+        assertFalse(TaskAdapter.DIFF_CALLBACK.areContentsTheSame(completed, repeating));
+        assertNull(TaskAdapter.DIFF_CALLBACK.getChangePayload(task, repeating));
+    }
+
+    @Test
+    public void rowsWithoutIdsStillGetDistinctStableIds() {
+        List<Task> preview = new ArrayList<>();
+        // Read from a list stored before ids existed
+        preview.add(new Task(0, "Old one", false, NOW, 0));
+        preview.add(new Task(0, "Old two", false, NOW, 0));
+        preview.add(new Task(7, "New", false, NOW, 0));
+        // Still loading
+        preview.add(null);
+        TaskAdapter adapter = new TaskAdapter(preview, null, new TaskLabelCache());
+
+        assertEquals(7, adapter.getItemId(2));
+        List<Long> ids = new ArrayList<>();
+        for (int position = 0; position < preview.size(); position++) {
+            long id = adapter.getItemId(position);
+            assertNotEquals(0, id);
+            assertFalse(ids.contains(id));
+            ids.add(id);
+        }
+    }
+
+    @Test
+    public void rowsKeepTheirIdsWhenTheirPageArrives() throws IOException {
+        List<Task> stored = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            stored.add(new Task(1000 + i, "Task " + i, false, NOW + i, 0));
+        }
+        File file = new File(folder.getRoot(), "tasks.snapshot");
+        ColumnarTaskFile.write(file, stored, 1);
+        List<Runnable> loads = new ArrayList<>();
+        PagedTaskList preview = new PagedTaskList(ColumnarTaskFile.open(file), loads::add, Runnable::run);
+        TaskAdapter adapter = new TaskAdapter(preview, null, new TaskLabelCache());
+
+        long[] loading = new long[stored.size()];
+        for (int position = 0; position < loading.length; position++) {
+            loading[position] = adapter.getItemId(position);
+        }
+        assertFalse(preview.isLoaded(60));
+        while (!loads.isEmpty()) {
+            loads.remove(0).run();
+        }
+        for (int position = 0; position < loading.length; position++) {
+            assertEquals(stored.get(position).getId(), loading[position]);
+            if (preview.isLoaded(position)) {
+                assertEquals(loading[position], adapter.getItemId(position));
+            }
+        }
+    }
+
+    @Test
+    public void listsSubmittedAfterShutdownAreIgnored() {
+        List<Task> shown = new ArrayList<>();
+        shown.add(new Task(1, "Buy milk", false, NOW, 0));
+        TaskAdapter adapter = new TaskAdapter(shown, null, new TaskLabelCache());
+        adapter.shutdown();
+
+        List<Task> next = new ArrayList<>(shown);
+        next.add(new Task(2, "Buy bread", false, NOW, 0));
+        adapter.submitList(next);
+        assertEquals(1, adapter.getItemCount());
+    }
+}
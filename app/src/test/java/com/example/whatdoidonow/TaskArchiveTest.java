@@ -0,0 +1,113 @@
+package com.example.whatdoidonow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void selectsOnlyCompletedTasksBeforeTheCutoff() {
+        TaskIndex tasks = new TaskIndex();
+        tasks.insert(new Task(1, "pending", false, 1, 0));
+        tasks.insert(new Task(2, "recent", true, 2, 500));
+        tasks.insert(new Task(3, "old", true, 3, 100));
+        tasks.insert(new Task(4, "older", true, 4, 50));
+        // Comes back, so it stays however long ago it was done
+        Task recurring = new Task(5, "weekly", true, 5, 75);
+        recurring.setRepeatMillis(7 * 24 * 60 * 60 * 1000L);
+        tasks.insert(recurring);
+
+        assertEquals(Arrays.asList(tasks.getById(4), tasks.getById(3)), TaskArchive.expired(tasks, 200));
+        assertTrue(TaskArchive.expired(tasks, 50).isEmpty());
+        assertEquals(3, TaskArchive.expired(tasks, 1_000).size());
+    }
+
+    @Test
+    public void pagesAcrossSegmentsAndRunsNewestFirst() throws IOException {
+        TaskArchive archive = new TaskArchive(folder.newFolder());
+        List<Task> older = completedTasks(1, 2_500, 0);
+        List<Task> newer = completedTasks(10_001, 700, 1_000_000);
+        archive.write(older);
+        archive.write(newer);
+
+        List<Task> expected = new ArrayList<>(newer);
+        expected.addAll(older);
+        Collections.sort(expected.subList(0, newer.size()), TaskOrder.DISPLAY);
+        Collections.sort(expected.subList(newer.size(), expected.size()), TaskOrder.DISPLAY);
+
+        TaskArchive.Segments segments = archive.open();
+        assertEquals(3_200, segments.size());
+        assertEquals(4, segments.getSegmentCount());
+        assertIds(expected, segments.load(0, segments.size()));
+        // Pages starting inside a segment and spanning a segment or run boundary
+        assertIds(expected.subList(650, 750), segments.load(650, 750));
+        assertIds(expected.subList(1_690, 1_710), segments.load(1_690, 1_710));
+        assertIds(expected.subList(3_150, 3_200), segments.load(3_150, 3_200));
+
+        // Decoded tasks keep their fields
+        Task first = segments.load(0, 1).get(0);
+        assertTrue(first.isCompleted());
+        assertEquals(expected.get(0).getTaskText(), first.getTaskText());
+        assertEquals(expected.get(0).getCompletedAt(), first.getCompletedAt());
+    }
+
+    @Test
+    public void keepsArchivedIdsPendingUntilConfirmed() throws IOException {
+        File dir = folder.newFolder();
+        TaskArchive archive = new TaskArchive(dir);
+        assertEquals(0, archive.pendingIds().length);
+        archive.write(completedTasks(1, 3, 0));
+        archive.write(completedTasks(7, 2, 0));
+
+        long[] pending = new TaskArchive(dir).pendingIds();
+        Arrays.sort(pending);
+        assertArrayEquals(new long[]{1, 2, 3, 7, 8}, pending);
+
+        archive.confirmPending();
+        assertEquals(0, archive.pendingIds().length);
+        assertEquals(5, archive.open().size());
+    }
+
+    @Test
+    public void ignoresAndRemovesUnfinishedRuns() throws IOException {
+        File dir = folder.newFolder();
+        TaskArchive archive = new TaskArchive(dir);
+        archive.write(completedTasks(1, 10, 0));
+        File abandoned = new File(dir, "run-00000002.tmp");
+        assertTrue(abandoned.mkdirs());
+        assertTrue(new File(abandoned, "segment-00000-5.json.gz").createNewFile());
+
+        assertEquals(10, archive.open().size());
+        archive.write(completedTasks(11, 5, 0));
+        assertFalse(abandoned.exists());
+        assertEquals(15, archive.open().size());
+    }
+
+    private static List<Task> completedTasks(long firstId, int count, long completedBase) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task(firstId + i, "done " + (firstId + i), true, i, completedBase + i));
+        }
+        return tasks;
+    }
+
+    private static void assertIds(List<Task> expected, List<Task> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+}
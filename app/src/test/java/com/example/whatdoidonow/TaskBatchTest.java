@@ -0,0 +1,171 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TaskBatchTest {
+
+    @Test
+    public void rangesTurnTheOldSnapshotIntoTheNewOne() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            TaskIndex tasks = randomTasks(random, 1 + random.nextInt(300));
+            TaskIndex before = tasks.snapshot();
+            long[] ids = randomSelection(random, before);
+            int action = random.nextInt(3);
+            TaskBatch batch = action == 2
+                    ? TaskBatch.delete(tasks, ids)
+                    : TaskBatch.setCompleted(tasks, ids, action == 0);
+
+            assertEquals(new ArrayList<>(tasks.snapshot()), replay(before, batch));
+            for (Task task : batch.getAdded()) {
+                assertEquals(action == 0, task.isCompleted());
+                assertSame(task, tasks.getById(task.getId()));
+            }
+        }
+    }
+
+    @Test
+    public void skipsMissingTasksAndTasksAlreadyInState() {
+        TaskIndex tasks = new TaskIndex();
+        tasks.insert(new Task(1, "pending", false, 10, 0));
+        tasks.insert(new Task(2, "done", true, 20, 30));
+        Task original = tasks.getById(1);
+
+        TaskBatch batch = TaskBatch.setCompleted(tasks, new long[]{1, 2, 99}, true);
+        assertEquals(1, batch.getRemoved().size());
+        assertSame(original, batch.getRemoved().get(0));
+        assertFalse(original.isCompleted());
+        assertEquals(2, tasks.completedCount());
+
+        assertTrue(TaskBatch.setCompleted(tasks, new long[]{1, 2}, true).isEmpty());
+        assertTrue(TaskBatch.delete(tasks, new long[]{99}).isEmpty());
+        assertEquals(2, TaskBatch.delete(tasks, new long[]{1, 2}).getRemoved().size());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void coalescesAdjacentRowsIntoOneRange() {
+        TaskIndex tasks = new TaskIndex();
+        for (int i = 1; i <= 10; i++) {
+            tasks.insert(new Task(i, "task " + i, false, i, 0));
+        }
+        final List<String> ranges = new ArrayList<>();
+        TaskBatch.delete(tasks, new long[]{4, 3, 5, 9}).dispatch(new TaskBatch.RangeCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                ranges.add("-" + position + "x" + count);
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                ranges.add("+" + position + "x" + count);
+            }
+        });
+        // Newest first, ids 10..1 are at positions 0..9; the later range is reported first
+        assertEquals("[-5x3, -1x1]", ranges.toString());
+    }
+
+    @Test
+    public void mergeReplacesAddsAndRemovesByRanges() {
+        Random random = new Random(5);
+        for (int round = 0; round < 50; round++) {
+            TaskIndex tasks = randomTasks(random, 1 + random.nextInt(300));
+            TaskIndex before = tasks.snapshot();
+            long[] selected = randomSelection(random, before);
+            List<Task> updated = new ArrayList<>();
+            long[] removedIds = new long[selected.length];
+            int removedCount = 0;
+            for (long id : selected) {
+                // The selection ends with an id that is not there, which is skipped
+                if (before.getById(id) != null && random.nextBoolean()) {
+                    Task changed = new Task(before.getById(id));
+                    changed.setCompleted(!changed.isCompleted());
+                    updated.add(changed);
+                } else {
+                    removedIds[removedCount++] = id;
+                }
+            }
+            int changed = updated.size();
+            // Tasks from elsewhere
+            int added = random.nextInt(20);
+            for (int i = 0; i < added; i++) {
+                updated.add(new Task(Task.newId(), "new " + i, random.nextBoolean(), random.nextInt(1000), 0));
+            }
+
+            TaskBatch batch = TaskBatch.merge(tasks, updated, Arrays.copyOf(removedIds, removedCount));
+            if (!batch.replacesWholeList()) {
+                assertEquals(new ArrayList<>(tasks.snapshot()), replay(before, batch));
+            }
+            for (Task task : updated) {
+                assertSame(task, tasks.getById(task.getId()));
+            }
+            // Everything selected was changed or removed, except the missing id
+            assertEquals(before.size() - (selected.length - 1 - changed) + added, tasks.size());
+        }
+    }
+
+    private static List<Task> replay(List<Task> before, TaskBatch batch) {
+        final List<Task> rows = new ArrayList<>(before);
+        List<Task> added = batch.getAdded();
+        batch.dispatch(new TaskBatch.RangeCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                rows.subList(position, position + count).clear();
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                // Stand-ins, filled with the new versions below
+                for (int i = 0; i < count; i++) {
+                    rows.add(position + i, null);
+                }
+            }
+        });
+        // The inserted rows are the added tasks in display order
+        List<Task> sortedAdded = new ArrayList<>(added);
+        Collections.sort(sortedAdded, TaskOrder.DISPLAY);
+        int next = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i) == null) {
+                rows.set(i, sortedAdded.get(next++));
+            }
+        }
+        assertEquals(added.size(), next);
+        return rows;
+    }
+
+    private static TaskIndex randomTasks(Random random, int count) {
+        TaskIndex tasks = new TaskIndex();
+        for (int i = 1; i <= count; i++) {
+            boolean completed = random.nextBoolean();
+            tasks.insert(new Task(i, "task " + i, completed, random.nextInt(1_000), completed ? 1_000 + i : 0));
+        }
+        return tasks;
+    }
+
+    private static long[] randomSelection(Random random, List<Task> tasks) {
+        List<Long> ids = new ArrayList<>();
+        // Clustered runs as well as scattered rows
+        int start = random.nextInt(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            if ((i >= start && i < start + 20) || random.nextInt(5) == 0) {
+                ids.add(tasks.get(i).getId());
+            }
+        }
+        long[] selection = new long[ids.size() + 1];
+        for (int i = 0; i < ids.size(); i++) {
+            selection[i] = ids.get(i);
+        }
+        // An id that no longer exists
+        selection[ids.size()] = tasks.size() + 1;
+        return selection;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskCodecTest {
+    private static final List<Task> TASKS = Arrays.asList(
+            new Task(1, "Water the plants", false, 1700000000000L, 0),
+            new Task(-4_611_686_018_427_387_904L, "Quote \" and \\ and\nnewline, ünïcödé", true, 1700000001000L, 1700000002000L),
+            new Task(null, false, 5, 0),
+            scheduled(new Task(2, "Stretch", true, 1700000003000L, 1700000004000L), 1700000000000L, 86_400_000L));
+
+    @Test
+    public void readsLegacyGsonPayload() throws IOException {
+        String legacyJson = new Gson().toJson(TASKS);
+
+        List<Task> decoded = TaskCodec.readArray(new JsonReader(new StringReader(legacyJson)));
+        assertTasksEqual(TASKS, decoded);
+    }
+
+    @Test
+    public void writesPayloadGsonCanRead() throws IOException {
+        StringWriter out = new StringWriter();
+        TaskCodec.writeArray(new JsonWriter(out), TASKS);
+
+        List<Task> decoded = new Gson().fromJson(out.toString(), new TypeToken<ArrayList<Task>>() {}.getType());
+        assertTasksEqual(TASKS, decoded);
+    }
+
+    @Test
+    public void skipsUnknownFields() throws IOException {
+        String json = "[{\"taskText\":\"a\",\"extra\":{\"nested\":[1,2]},\"completed\":true,\"completedAt\":7}]";
+
+        List<Task> decoded = TaskCodec.readArray(new JsonReader(new StringReader(json)));
+        assertEquals(1, decoded.size());
+        assertEquals("a", decoded.get(0).getTaskText());
+        assertTrue(decoded.get(0).isCompleted());
+        assertEquals(7, decoded.get(0).getCompletedAt());
+    }
+
+    static void assertTasksEqual(List<Task> expected, List<Task> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Task e = expected.get(i);
+            Task a = actual.get(i);
+            if (e.getId() != 0) {
+                // Tasks without an id are given one when stored
+                assertEquals(e.getId(), a.getId());
+            }
+            assertEquals(e.getTaskText(), a.getTaskText());
+            assertEquals(e.isCompleted(), a.isCompleted());
+            assertEquals(e.getCreatedAt(), a.getCreatedAt());
+            assertEquals(e.getCompletedAt(), a.getCompletedAt());
+            assertEquals(e.getDueAt(), a.getDueAt());
+            assertEquals(e.getRepeatMillis(), a.getRepeatMillis());
+        }
+    }
+
+    static Task scheduled(Task task, long dueAt, long repeatMillis) {
+        task.setDueAt(dueAt);
+        task.setRepeatMillis(repeatMillis);
+        return task;
+    }
+}
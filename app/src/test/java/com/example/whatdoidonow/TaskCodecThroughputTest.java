@@ -0,0 +1,106 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Load/save throughput of {@link TaskCodec} against the legacy Gson string path.
+ * Slow, only runs with {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+public class TaskCodecThroughputTest {
+    private static final int[] SIZES = {1_000, 100_000, 1_000_000};
+    private static final int ROUNDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenRequested() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    @Test
+    public void compareWithGson() throws IOException {
+        Gson gson = new Gson();
+        Type type = new TypeToken<ArrayList<Task>>() {}.getType();
+        File file = folder.newFile();
+
+        System.out.println(String.format("%10s %14s %14s %14s %14s",
+                "tasks", "gson save/s", "codec save/s", "gson load/s", "codec load/s"));
+        for (int size : SIZES) {
+            List<Task> tasks = generate(size);
+            long gsonSave = Long.MAX_VALUE, codecSave = Long.MAX_VALUE;
+            long gsonLoad = Long.MAX_VALUE, codecLoad = Long.MAX_VALUE;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                // Legacy path: whole list to one String, then one String back to a reflective object graph
+                long start = System.nanoTime();
+                Files.write(file.toPath(), gson.toJson(tasks).getBytes(StandardCharsets.UTF_8));
+                gsonSave = Math.min(gsonSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                List<Task> viaGson = gson.fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), type);
+                gsonLoad = Math.min(gsonLoad, System.nanoTime() - start);
+                assertEquals(size, viaGson.size());
+
+                start = System.nanoTime();
+                try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+                    TaskCodec.writeArray(writer, tasks);
+                }
+                codecSave = Math.min(codecSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                List<Task> viaCodec;
+                try (JsonReader reader = new JsonReader(new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+                    viaCodec = TaskCodec.readArray(reader);
+                }
+                codecLoad = Math.min(codecLoad, System.nanoTime() - start);
+                assertEquals(size, viaCodec.size());
+            }
+
+            System.out.println(String.format("%10d %14.0f %14.0f %14.0f %14.0f", size,
+                    perSecond(size, gsonSave), perSecond(size, codecSave),
+                    perSecond(size, gsonLoad), perSecond(size, codecLoad)));
+        }
+    }
+
+    private static double perSecond(int size, long nanos) {
+        return size * 1e9 / nanos;
+    }
+
+    private static List<Task> generate(int size) {
+        List<Task> tasks = new ArrayList<>(size);
+        long now = 1700000000000L;
+        for (int i = 0; i < size; i++) {
+            boolean completed = i % 3 == 0;
+            tasks.add(new Task("Task number " + i + " with some text", completed, now + i, completed ? now + 2L * i : 0));
+        }
+        return tasks;
+    }
+}
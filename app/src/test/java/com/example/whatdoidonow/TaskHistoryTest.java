@@ -0,0 +1,169 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TaskHistoryTest {
+
+    @Test
+    public void undoAndRedoWalkThroughVersions() {
+        Random random = new Random(4);
+        TaskIndex tasks = new TaskIndex();
+        TaskHistory history = new TaskHistory();
+        List<List<Task>> versions = new ArrayList<>();
+        versions.add(new ArrayList<Task>(tasks));
+        long nextId = 1;
+        for (int step = 0; step < 60; step++) {
+            history.record(tasks);
+            if (step == 40) {
+                tasks.clear();
+            } else if (tasks.isEmpty() || random.nextInt(3) == 0) {
+                tasks.insert(new Task(nextId, "task " + nextId, false, nextId, 0));
+                nextId++;
+            } else {
+                Task task = tasks.get(random.nextInt(tasks.size()));
+                if (random.nextBoolean()) {
+                    tasks.removeTask(task);
+                } else {
+                    Task toggled = new Task(task);
+                    toggled.setCompleted(!task.isCompleted());
+                    tasks.replace(task, toggled);
+                }
+            }
+            versions.add(new ArrayList<Task>(tasks));
+        }
+
+        for (int version = versions.size() - 2; version >= 0; version--) {
+            List<Task> before = new ArrayList<>(tasks);
+            TaskBatch batch = history.undo(tasks);
+            assertEquals(versions.get(version), new ArrayList<>(tasks));
+            assertEquals(versions.get(version), replay(before, batch, tasks));
+        }
+        assertFalse(history.canUndo());
+        assertNull(history.undo(tasks));
+        for (int version = 1; version < versions.size(); version++) {
+            history.redo(tasks);
+            assertEquals(versions.get(version), new ArrayList<>(tasks));
+            // The restored index is fully live again
+            for (Task task : tasks) {
+                assertSame(task, tasks.getById(task.getId()));
+            }
+        }
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void recordingForgetsRedoAndOldestLevels() {
+        TaskIndex tasks = new TaskIndex();
+        TaskHistory history = new TaskHistory(3);
+        for (long id = 1; id <= 5; id++) {
+            history.record(tasks);
+            tasks.insert(new Task(id, "task " + id, false, id, 0));
+        }
+        history.undo(tasks);
+        history.undo(tasks);
+        assertEquals(3, tasks.size());
+        assertTrue(history.canRedo());
+
+        history.record(tasks);
+        tasks.insert(new Task(6, "task 6", false, 6, 0));
+        assertFalse(history.canRedo());
+        history.undo(tasks);
+        history.undo(tasks);
+        assertEquals(2, tasks.size());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void storesOnlyTheChangesOfAnUndo() {
+        TaskIndex tasks = new TaskIndex();
+        for (long id = 1; id <= 1_000; id++) {
+            tasks.insert(new Task(id, "task " + id, false, id, 0));
+        }
+        TaskHistory history = new TaskHistory();
+        history.record(tasks);
+        Task task = tasks.getById(500);
+        Task completed = new Task(task);
+        completed.setCompleted(true);
+        tasks.replace(task, completed);
+
+        TaskBatch batch = history.undo(tasks);
+        assertFalse(batch.replacesWholeList());
+        assertEquals(1, batch.getRemoved().size());
+        assertSame(completed, batch.getRemoved().get(0));
+        assertSame(task, batch.getAdded().get(0));
+        assertSame(task, tasks.getById(500));
+    }
+
+    /**
+     * Retained heap of 100 levels of single-task edits over 200k tasks.
+     * Slow, only runs with {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void historyCostsMemoryPerChange() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+        List<Task> loaded = new ArrayList<>();
+        for (long id = 1; id <= 200_000; id++) {
+            loaded.add(new Task(id, "task " + id, false, id, 0));
+        }
+        long start = usedHeap();
+        TaskIndex tasks = new TaskIndex(loaded);
+        long before = usedHeap();
+        long indexBytes = before - start;
+        TaskHistory history = new TaskHistory();
+        Random random = new Random(2);
+        for (int level = 0; level < TaskHistory.DEFAULT_LIMIT; level++) {
+            history.record(tasks);
+            tasks.removeTask(tasks.get(random.nextInt(tasks.size())));
+        }
+        long historyBytes = usedHeap() - before;
+        System.out.println(String.format("100 levels of history over %d tasks: %d KB (index: %d KB)",
+                tasks.size(), historyBytes / 1024, indexBytes / 1024));
+        assertTrue(history.canUndo());
+    }
+
+    /**
+     * Apply the batch's ranges to the old rows, filling inserted rows from the new list
+     */
+    private static List<Task> replay(List<Task> before, TaskBatch batch, List<Task> after) {
+        final List<Task> rows = new ArrayList<>(before);
+        batch.dispatch(new TaskBatch.RangeCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                rows.subList(position, position + count).clear();
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    rows.add(position + i, null);
+                }
+            }
+        });
+        for (int i = 0; i < rows.size() && i < after.size(); i++) {
+            if (rows.get(i) == null) {
+                rows.set(i, after.get(i));
+            }
+        }
+        return rows;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
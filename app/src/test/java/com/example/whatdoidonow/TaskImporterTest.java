@@ -0,0 +1,233 @@
+package com.example.whatdoidonow;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TaskImporterTest {
+    private static final long NOW = 1_760_000_000_000L;
+
+    private final TaskRepository repository = new TaskRepository(new TaskRepositoryTest.MapStore());
+    private final List<Integer> chunkSizes = new ArrayList<>();
+
+    @After
+    public void shutDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    public void readsTextLinesInFileOrderSkippingDuplicates() throws Exception {
+        repository.add(new Task(1, "Water the plants", false, NOW - 1000, 0)).get();
+        String file = "Buy milk\n\n  - [x] Call mum \r\n[ ] water  the PLANTS\nbuy milk\nRead a book\n";
+
+        TaskImporter.Result result = importInto(repository.snapshot().getTasks(), file, TaskFileFormat.TEXT);
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getDuplicates());
+
+        TaskIndex tasks = repository.snapshot().getTasks();
+        assertEquals(4, tasks.size());
+        // Pending tasks newest first, so the file's first line is on top
+        assertEquals("Buy milk", tasks.get(0).getTaskText());
+        assertEquals("Read a book", tasks.get(1).getTaskText());
+        assertEquals("Water the plants", tasks.get(2).getTaskText());
+        Task called = tasks.get(3);
+        assertEquals("Call mum", called.getTaskText());
+        assertTrue(called.isCompleted());
+        assertEquals(called.getCreatedAt(), called.getCompletedAt());
+        // Imports are not undone one chunk at a time
+        assertFalse(repository.snapshot().canUndo());
+    }
+
+    @Test
+    public void everyFormatRoundTripsThroughTheExporter() throws Exception {
+        List<Task> original = new ArrayList<>();
+        Task quoted = new Task(1, "Say \"hi\", then\nleave", true, NOW - 5000, NOW - 100);
+        original.add(quoted);
+        Task scheduled = new Task(2, "Stretch", false, NOW - 4000, 0);
+        scheduled.setDueAt(NOW + 60_000);
+        scheduled.setRepeatMillis(24 * 60 * 60 * 1000L);
+        original.add(scheduled);
+        original.add(new Task(3, "Plain, with comma", false, NOW - 3000, 0));
+
+        for (TaskFileFormat format : TaskFileFormat.values()) {
+            TaskRepository target = new TaskRepository(new TaskRepositoryTest.MapStore());
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(3, new TaskExporter().export(original, format, out));
+                TaskImporter importer = new TaskImporter(new ArrayList<Task>(), NOW, chunk -> await(target.addAll(chunk)));
+                TaskImporter.Result result = importer.importFrom(new ByteArrayInputStream(out.toByteArray()), format);
+                assertEquals(format.name(), 3, result.getImported());
+                assertEquals(0, result.getInvalid());
+
+                TaskIndex tasks = target.snapshot().getTasks();
+                Task stretch = find(tasks, "Stretch");
+                assertNotEquals(2, stretch.getId());
+                if (format == TaskFileFormat.TEXT) {
+                    // Only the text and whether it is done survive plain text
+                    assertTrue(find(tasks, "Say \"hi\", then leave").isCompleted());
+                    continue;
+                }
+                assertEquals(NOW - 4000, stretch.getCreatedAt());
+                assertEquals(NOW + 60_000, stretch.getDueAt());
+                assertEquals(24 * 60 * 60 * 1000L, stretch.getRepeatMillis());
+                Task said = find(tasks, quoted.getTaskText());
+                assertTrue(said.isCompleted());
+                assertEquals(NOW - 100, said.getCompletedAt());
+                assertNotNull(find(tasks, "Plain, with comma"));
+            } finally {
+                target.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void csvWithoutHeaderOrWithBadRowsKeepsWhatItCan() throws Exception {
+        String file = "text,completed,createdAt,dueAt\n"
+                + "First,no,2025-10-09T10:15:30Z,\n"
+                + "Second,yes,1700000000000,\n"
+                + "Third,no,yesterday,\n"
+                + ",,,\n"
+                + "\"Fourth\"\"s\",0,,\n";
+        TaskImporter.Result result = importInto(new ArrayList<Task>(), file, TaskFileFormat.CSV);
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getInvalid());
+        TaskIndex tasks = repository.snapshot().getTasks();
+        assertEquals(1_760_004_930_000L, find(tasks, "First").getCreatedAt());
+        assertTrue(find(tasks, "Second").isCompleted());
+        assertNotNull(find(tasks, "Fourth\"s"));
+
+        TaskRepository plain = new TaskRepository(new TaskRepositoryTest.MapStore());
+        try {
+            TaskImporter importer = new TaskImporter(new ArrayList<Task>(), NOW, chunk -> await(plain.addAll(chunk)));
+            importer.importFrom(stream("Alpha,ignored\nBeta\n"), TaskFileFormat.CSV);
+            assertEquals(2, plain.snapshot().getTasks().size());
+            assertEquals("Alpha", plain.snapshot().getTasks().get(0).getTaskText());
+        } finally {
+            plain.shutdown();
+        }
+    }
+
+    @Test
+    public void storesOneChunkAtATimeAndStopsWhenCancelled() throws Exception {
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < 2500; i++) {
+            file.append("task ").append(i).append('\n');
+        }
+        final List<Long> progress = new ArrayList<>();
+        TaskImporter importer = new TaskImporter(new ArrayList<Task>(), NOW, chunk -> {
+            chunkSizes.add(chunk.size());
+            await(repository.addAll(chunk));
+        });
+        importer.setProgressListener((bytesRead, imported, skipped) -> progress.add(bytesRead));
+        importer.importFrom(stream(file.toString()), TaskFileFormat.TEXT);
+        assertEquals(listOf(1000, 1000, 500), chunkSizes);
+        // After each chunk, the last at the end
+        assertEquals(3, progress.size());
+        assertEquals(file.length(), (long) progress.get(2));
+        assertEquals(2500, repository.snapshot().getTasks().size());
+
+        final TaskImporter[] cancelling = new TaskImporter[1];
+        cancelling[0] = new TaskImporter(repository.snapshot().getTasks(), NOW, chunk -> {
+            await(repository.addAll(chunk));
+            cancelling[0].cancel();
+        });
+        try {
+            cancelling[0].importFrom(stream(file.toString().replace("task", "other")), TaskFileFormat.TEXT);
+            fail();
+        } catch (InterruptedIOException expected) {
+            // The first chunk was stored, nothing after it
+        }
+        assertEquals(3500, repository.snapshot().getTasks().size());
+    }
+
+    @Test
+    public void importsHalfAMillionLinesInBoundedMemory() throws Exception {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+        final int lines = 500_000;
+        // Generated as it is read, so the file itself takes no memory
+        InputStream file = new InputStream() {
+            private byte[] line = new byte[0];
+            private int position;
+            private int next;
+
+            @Override
+            public int read() {
+                if (position == line.length) {
+                    if (next == lines) {
+                        return -1;
+                    }
+                    line = ("imported task number " + next++ + "\n").getBytes(StandardCharsets.UTF_8);
+                    position = 0;
+                }
+                return line[position++];
+            }
+        };
+        final long[] maxChunk = {0};
+        TaskImporter importer = new TaskImporter(new ArrayList<Task>(), NOW, chunk -> {
+            maxChunk[0] = Math.max(maxChunk[0], chunk.size());
+            // Stored and dropped, so only the importer's own memory is measured
+        });
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        long started = System.nanoTime();
+        TaskImporter.Result result = importer.importFrom(file, TaskFileFormat.TEXT);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        System.gc();
+        long retained = runtime.totalMemory() - runtime.freeMemory() - before;
+        System.out.println("Imported " + result.getImported() + " lines in " + millis + " ms, retaining "
+                + retained / 1024 + " KB");
+        assertEquals(lines, result.getImported());
+        assertEquals(TaskImporter.CHUNK_SIZE, maxChunk[0]);
+        // The fingerprint set, well under what the texts themselves would take
+        assertTrue(retained < 40L * lines);
+    }
+
+    private TaskImporter.Result importInto(Iterable<Task> existing, String file, TaskFileFormat format)
+            throws IOException {
+        TaskImporter importer = new TaskImporter(existing, NOW, chunk -> await(repository.addAll(chunk)));
+        return importer.importFrom(stream(file), format);
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Task find(TaskIndex tasks, String text) {
+        for (Task task : tasks) {
+            if (text.equals(task.getTaskText())) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private static List<Integer> listOf(Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TaskIndexTest {
+
+    @Test
+    public void keepsDisplayOrderThroughRandomMutations() {
+        Random random = new Random(7);
+        TaskIndex index = new TaskIndex();
+        List<Task> reference = new ArrayList<>();
+        long clock = 1_000;
+
+        for (int step = 0; step < 5_000; step++) {
+            int action = random.nextInt(4);
+            if (action <= 1 || reference.isEmpty()) {
+                Task task = new Task(step + 1, "task " + step, false, clock++, 0);
+                int position = index.insert(task);
+                reference.add(task);
+                Collections.sort(reference, TaskOrder.DISPLAY);
+                assertSame(task, index.get(position));
+            } else if (action == 2) {
+                Task task = reference.get(random.nextInt(reference.size()));
+                Task updated = new Task(task);
+                updated.setCompleted(!task.isCompleted());
+                if (updated.isCompleted()) {
+                    // Stamp completion from our own clock so completion times stay unique
+                    updated.setCompletedAt(clock++);
+                }
+                int position = index.replace(task, updated);
+                reference.set(reference.indexOf(task), updated);
+                Collections.sort(reference, TaskOrder.DISPLAY);
+                assertEquals(reference.indexOf(updated), position);
+            } else {
+                Task task = reference.remove(random.nextInt(reference.size()));
+                assertTrue(index.removeTask(task) >= 0);
+            }
+
+            if (step % 250 == 0) {
+                assertEquals(reference, new ArrayList<>(index));
+                for (int i = 0; i < reference.size(); i++) {
+                    assertSame(reference.get(i), index.get(i));
+                    assertEquals(i, index.indexOf(reference.get(i)));
+                    assertSame(reference.get(i), index.getById(reference.get(i).getId()));
+                    assertEquals(i, index.positionOf(reference.get(i).getId()));
+                }
+            }
+        }
+        assertEquals(reference, new ArrayList<>(index));
+    }
+
+    @Test
+    public void countsPartitions() {
+        TaskIndex index = new TaskIndex();
+        Task pending = new Task(1, "pending", false, 1, 0);
+        Task done = new Task(2, "done", true, 2, 3);
+        index.insert(done);
+        index.insert(pending);
+
+        assertEquals(1, index.pendingCount());
+        assertEquals(1, index.completedCount());
+        assertSame(pending, index.get(0));
+        assertSame(done, index.get(1));
+
+        Task reopened = new Task(done);
+        reopened.setCompleted(false);
+        assertEquals(0, index.replace(done, reopened));
+        assertEquals(2, index.pendingCount());
+        assertEquals(-1, index.indexOf(done));
+        assertEquals(-1, index.indexOf(new Task(2, "done", false, 2, 0)));
+        assertSame(reopened, index.getById(2));
+    }
+
+    @Test
+    public void snapshotsAreUnaffectedByLaterUpdates() {
+        TaskIndex index = new TaskIndex();
+        Task first = new Task(1, "first", false, 1, 0);
+        index.insert(first);
+        TaskIndex snapshot = index.snapshot();
+
+        index.insert(new Task(2, "second", false, 2, 0));
+        Task completed = new Task(first);
+        completed.setCompleted(true);
+        index.replace(first, completed);
+
+        assertEquals(1, snapshot.size());
+        assertSame(first, snapshot.get(0));
+        assertFalse(snapshot.get(0).isCompleted());
+        assertEquals(2, index.size());
+        try {
+            snapshot.insert(new Task(3, "nope", false, 3, 0));
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // Snapshots are read-only
+        }
+    }
+
+    @Test
+    public void distinguishesTasksWithEqualTextAndTime() {
+        TaskIndex index = new TaskIndex();
+        Task first = new Task(1, "same", false, 5, 0);
+        Task second = new Task(2, "same", false, 5, 0);
+        index.insert(second);
+        index.insert(first);
+
+        // Ties are broken by id
+        assertEquals(0, index.indexOf(first));
+        assertEquals(1, index.indexOf(second));
+        assertNotEquals(first, second);
+        assertEquals(1, index.removeTask(second));
+        assertEquals(0, index.positionOf(1));
+        assertEquals(-1, index.positionOf(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateIds() {
+        TaskIndex index = new TaskIndex();
+        index.insert(new Task(1, "first", false, 1, 0));
+        index.insert(new Task(1, "copy", false, 2, 0));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.whatdoidonow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysSnapshotPlusJournal() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        Task first = new Task(1, "first", false, 1000, 0);
+        Task second = new Task(2, "second", false, 2000, 0);
+        journal.replaceAll(Arrays.asList(first));
+        journal.append(TaskJournal.Op.ADD, second);
+        first.setCompleted(true);
+        first.setCompletedAt(3000);
+        journal.append(TaskJournal.Op.COMPLETE, first);
+        journal.close();
+
+        List<Task> tasks = new TaskJournal(dir).load();
+        assertEquals(2, tasks.size());
+        assertEquals("first", tasks.get(0).getTaskText());
+        assertTrue(tasks.get(0).isCompleted());
+        assertEquals(3000, tasks.get(0).getCompletedAt());
+        assertEquals("second", tasks.get(1).getTaskText());
+    }
+
+    @Test
+    public void reportsAFailedAppendOnTheNextFlush() throws IOException {
+        // A file where the store's directory should be
+        TaskJournal journal = new TaskJournal(folder.newFile());
+        journal.append(TaskJournal.Op.ADD, new Task(1, "lost", false, 1000, 0));
+        try {
+            journal.flush();
+            fail("The failed append was not reported");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        // Reported once
+        journal.flush();
+    }
+
+    @Test
+    public void compactsOnceThresholdIsReached() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir, 4);
+        for (int i = 0; i < 10; i++) {
+            journal.append(TaskJournal.Op.ADD, new Task(i + 1, "task " + i, false, i, 0));
+        }
+        journal.append(TaskJournal.Op.DELETE, new Task(4, "task 3", false, 3, 0));
+
+        assertTrue(journal.getJournalRecordCount() < 4);
+        List<Task> tasks = journal.load();
+        assertEquals(9, tasks.size());
+        for (Task task : tasks) {
+            assertNotEquals("task 3", task.getTaskText());
+        }
+    }
+
+    @Test
+    public void reportsSnapshotTasksInDisplayOrder() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        journal.replaceAll(Arrays.asList(
+                new Task("old pending", false, 1, 0),
+                new Task("done", true, 2, 5),
+                new Task("new pending", false, 3, 0)));
+
+        final List<String> decoded = new ArrayList<>();
+        new TaskJournal(dir).load(task -> decoded.add(task.getTaskText()));
+        assertEquals(Arrays.asList("new pending", "old pending", "done"), decoded);
+    }
+
+    @Test
+    public void backfillsAndPersistsMissingIds() throws IOException {
+        File dir = folder.newFolder();
+        // Records from before tasks had ids, matched by creation time and text
+        TaskJournal journal = new TaskJournal(dir);
+        journal.append(TaskJournal.Op.ADD, new Task("same", false, 1, 0));
+        journal.append(TaskJournal.Op.ADD, new Task("same", false, 2, 0));
+        journal.append(TaskJournal.Op.COMPLETE, new Task("same", true, 1, 3));
+        journal.close();
+
+        List<Task> first = new TaskJournal(dir).load();
+        assertEquals(2, first.size());
+        assertNotEquals(0, first.get(0).getId());
+        assertNotEquals(0, first.get(1).getId());
+        assertNotEquals(first.get(0).getId(), first.get(1).getId());
+
+        // Assigned once, the next load sees the same ids
+        List<Task> second = new TaskJournal(dir).load();
+        Collections.sort(first, TaskOrder.DISPLAY);
+        Collections.sort(second, TaskOrder.DISPLAY);
+        TaskCodecTest.assertTasksEqual(first, second);
+    }
+
+    @Test
+    public void dropsTornTrailingRecord() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        journal.append(TaskJournal.Op.ADD, new Task("kept", false, 1, 0));
+        journal.close();
+
+        File[] journals = dir.listFiles((d, name) -> name.startsWith("tasks.journal."));
+        assertNotNull(journals);
+        try (FileOutputStream out = new FileOutputStream(journals[0], true)) {
+            out.write("{\"op\":\"ADD\",\"task\":{\"taskT".getBytes(StandardCharsets.UTF_8));
+        }
+
+        journal = new TaskJournal(dir);
+        assertEquals(1, journal.load().size());
+        journal.append(TaskJournal.Op.ADD, new Task("after crash", false, 2, 0));
+        assertEquals(2, journal.load().size());
+    }
+}
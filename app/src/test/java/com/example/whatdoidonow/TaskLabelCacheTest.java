@@ -0,0 +1,50 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class TaskLabelCacheTest {
+    private static final long JAN_2_2024_UTC = 1704153600000L;
+
+    private final TaskLabelCache cache = new TaskLabelCache(Locale.US, ZoneId.of("UTC"), 16);
+
+    @Test
+    public void rendersCreatedAndCompletedTimes() {
+        Task pending = new Task(1, "a", false, JAN_2_2024_UTC + 90_000, 0);
+        assertEquals("Created: Jan 2, 2024 at 12:01 AM", cache.get(pending));
+
+        Task completed = new Task(pending);
+        completed.setCompleted(true);
+        completed.setCompletedAt(JAN_2_2024_UTC + 13 * 3_600_000L);
+        assertEquals("Created: Jan 2, 2024 at 12:01 AM\nCompleted: Jan 2, 2024 at 1:00 PM", cache.get(completed));
+    }
+
+    @Test
+    public void servesSameInstanceWithinTheMinute() {
+        Task task = new Task(1, "a", false, JAN_2_2024_UTC, 0);
+        String label = cache.get(task);
+        assertTrue(cache.isCached(task));
+
+        // Same id and minute bucket: the cached label, no rendering
+        assertSame(label, cache.get(new Task(1, "a", false, JAN_2_2024_UTC + 59_999, 0)));
+        // The task changed: re-rendered
+        assertFalse(cache.isCached(new Task(1, "a", false, JAN_2_2024_UTC + 60_000, 0)));
+    }
+
+    @Test
+    public void staysBoundedAndSkipsTasksWithoutIds() {
+        for (int i = 1; i <= 100; i++) {
+            cache.get(new Task(i, "t", false, JAN_2_2024_UTC + i * 60_000L, 0));
+        }
+        assertTrue(cache.isCached(new Task(100, "t", false, JAN_2_2024_UTC + 100 * 60_000L, 0)));
+        assertFalse(cache.isCached(new Task(1, "t", false, JAN_2_2024_UTC + 60_000L, 0)));
+
+        Task legacy = new Task("t", false, JAN_2_2024_UTC, 0);
+        assertEquals("Created: Jan 2, 2024 at 12:00 AM", cache.get(legacy));
+        assertFalse(cache.isCached(legacy));
+    }
+}
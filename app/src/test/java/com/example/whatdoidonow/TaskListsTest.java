@@ -0,0 +1,155 @@
+package com.example.whatdoidonow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskListsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void manifestDescribesListsWithoutOpeningThem() throws IOException {
+        File root = folder.getRoot();
+        TaskLists lists = new TaskLists(root);
+        assertTrue(lists.load());
+        assertEquals(1, lists.getLists().size());
+        assertEquals(TaskLists.DEFAULT_ID, lists.getActiveId());
+        // The first list is where the single list always was
+        assertEquals(root, lists.dirOf(TaskLists.DEFAULT_ID));
+
+        TaskLists.Entry groceries = lists.create("Groceries");
+        TaskLists.Entry work = lists.create("Work");
+        assertNotEquals(groceries.getId(), work.getId());
+        lists.rename(work.getId(), "Office");
+        lists.setActive(work.getId());
+        lists.updateCounts(work.getId(), 40, 15, 1234);
+        lists.setRemindedUntil(work.getId(), 5678);
+        lists.save();
+        // Nothing is written for a list until it has tasks
+        assertFalse(lists.dirOf(groceries.getId()).exists());
+
+        TaskLists reloaded = new TaskLists(root);
+        assertTrue(reloaded.load());
+        List<String> names = new ArrayList<>();
+        for (TaskLists.Entry entry : reloaded.getLists()) {
+            names.add(entry.getName());
+        }
+        assertEquals(3, names.size());
+        assertEquals("Groceries", names.get(1));
+        assertEquals("Office", names.get(2));
+        assertEquals(work.getId(), reloaded.getActiveId());
+        TaskLists.Entry office = reloaded.get(work.getId());
+        assertEquals(40, office.getTaskCount());
+        assertEquals(25, office.getPendingCount());
+        assertEquals(1234, office.getModifiedAt());
+        assertEquals(5678, office.getRemindedUntil());
+        // Not opened yet, so not counted yet
+        assertEquals(-1, reloaded.get(TaskLists.DEFAULT_ID).getPendingCount());
+
+        // Ids are not reused after a reload
+        assertNotEquals(work.getId(), reloaded.create("Later").getId());
+    }
+
+    @Test
+    public void deletingAListRemovesItsFiles() throws IOException {
+        File root = folder.getRoot();
+        TaskLists lists = new TaskLists(root);
+        TaskLists.Entry trip = lists.create("Trip");
+        lists.setActive(trip.getId());
+        File store = new File(lists.dirOf(trip.getId()), "task_store");
+        assertTrue(store.mkdirs());
+        Files.write(new File(store, "snapshot").toPath(), "tasks".getBytes(StandardCharsets.UTF_8));
+
+        lists.delete(trip.getId());
+        assertFalse(lists.dirOf(trip.getId()).exists());
+        assertNull(lists.get(trip.getId()));
+        assertEquals(TaskLists.DEFAULT_ID, lists.getActiveId());
+
+        TaskLists reloaded = new TaskLists(root);
+        reloaded.load();
+        assertEquals(1, reloaded.getLists().size());
+        try {
+            reloaded.delete(TaskLists.DEFAULT_ID);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // The first list holds the files of the single list from before
+        }
+    }
+
+    @Test
+    public void unreadableManifestIsRebuiltFromListDirectories() throws IOException {
+        File root = folder.getRoot();
+        TaskLists lists = new TaskLists(root);
+        String first = lists.create("First").getId();
+        String second = lists.create("Second").getId();
+        assertTrue(lists.dirOf(first).mkdirs());
+        assertTrue(lists.dirOf(second).mkdirs());
+        lists.save();
+        try (FileOutputStream out = new FileOutputStream(new File(root, TaskLists.MANIFEST_FILE))) {
+            out.write("{\"lists\": [".getBytes(StandardCharsets.UTF_8));
+        }
+
+        TaskLists rebuilt = new TaskLists(root);
+        assertFalse(rebuilt.load());
+        assertEquals(3, rebuilt.getLists().size());
+        assertNotNull(rebuilt.get(first));
+        assertNotNull(rebuilt.get(second));
+        // New lists get ids of their own
+        String third = rebuilt.create("Third").getId();
+        assertNotEquals(first, third);
+        assertNotEquals(second, third);
+    }
+
+    @Test
+    public void countsFollowTheRepositoryAndShowingAgainStartsFromALoad() throws Exception {
+        TaskLists lists = new TaskLists(folder.getRoot());
+        String id = lists.create("Chores").getId();
+        long created = lists.get(id).getModifiedAt();
+        TaskRepository repository = new TaskRepository(new TaskRepositoryTest.MapStore());
+        try {
+            repository.addListener(lists.countsOf(id), Runnable::run).get();
+            TaskIndex loaded = new TaskIndex();
+            for (int i = 1; i <= 10; i++) {
+                loaded.insert(new Task(i, "task " + i, i <= 3, i, i <= 3 ? i + 1 : 0));
+            }
+            repository.load(loaded);
+            repository.flush();
+            // Counted, but loading is not a change
+            assertEquals(10, lists.get(id).getTaskCount());
+            assertEquals(7, lists.get(id).getPendingCount());
+            assertEquals(created, lists.get(id).getModifiedAt());
+
+            repository.setCompleted(new long[]{4, 5}, true);
+            repository.delete(new long[]{1});
+            repository.flush();
+            assertEquals(9, lists.get(id).getTaskCount());
+            assertEquals(5, lists.get(id).getPendingCount());
+            assertTrue(lists.get(id).getModifiedAt() >= created);
+
+            // A screen coming back to the list gets the latest version as a load, then what follows
+            final List<TaskRepository.Snapshot> shown = new ArrayList<>();
+            repository.attach(shown::add, Runnable::run);
+            repository.add(new Task(11, "task 11", false, 11, 0));
+            repository.flush();
+            assertEquals(2, shown.size());
+            assertNull(shown.get(0).getChange());
+            assertEquals(9, shown.get(0).getTasks().size());
+            assertTrue(shown.get(0).canUndo());
+            assertEquals(shown.get(0).getVersion() + 1, shown.get(1).getVersion());
+            assertEquals(10, shown.get(1).getTasks().size());
+        } finally {
+            repository.shutdown();
+        }
+    }
+}
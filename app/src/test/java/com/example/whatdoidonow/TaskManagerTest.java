@@ -0,0 +1,109 @@
+package com.example.whatdoidonow;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskManagerTest {
+    private static final long NOW = 1_760_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Context context = RuntimeEnvironment.getApplication();
+
+    @Test
+    public void deleteRightAfterASyncedChangeIsStored() throws Exception {
+        File dir = folder.newFolder();
+        TaskManager store = new TaskManager(context, dir, TaskJournal.SnapshotFormat.JSON);
+        Task task = new Task(1, "Buy milk", false, NOW, 0);
+        store.saveTasks(Collections.singletonList(task));
+
+        TaskRepository repository = new TaskRepository(store);
+        try {
+            repository.load(new TaskIndex(store.loadTasks())).get();
+            final Task edited = new Task(task);
+            edited.setTaskText("Buy oat milk");
+            repository.applyRemote(tasks -> TaskBatch.merge(tasks, Collections.singletonList(edited),
+                    new long[0])).get();
+            // Within the same write window as the synced change
+            repository.delete(new long[] {task.getId()}).get();
+            repository.flush();
+        } finally {
+            repository.shutdown();
+        }
+        assertTrue(new TaskManager(context, dir, TaskJournal.SnapshotFormat.JSON).loadTasks().isEmpty());
+    }
+
+    @Test
+    public void unreadableLegacyTasksAreLeftInPlace() {
+        SharedPreferences preferences = context.getSharedPreferences("TaskGeneratorPrefs", Context.MODE_PRIVATE);
+        String legacy = "[{\"taskText\": \"Buy milk\", \"completed\": fals";
+        preferences.edit().putString("tasks", legacy).apply();
+
+        TaskManager store = new TaskManager(context);
+        assertTrue(store.loadTasks().isEmpty());
+        assertEquals(legacy, preferences.getString("tasks", null));
+
+        // Still there after tasks were added since, rather than taken as migrated
+        store.addTask(new Task(1, "Added since", false, NOW, 0));
+        store.flush();
+        List<Task> tasks = new TaskManager(context).loadTasks();
+        assertEquals(1, tasks.size());
+        assertEquals(legacy, preferences.getString("tasks", null));
+    }
+
+    @Test
+    public void closingListsReleasesTheirThreads() throws Exception {
+        int before = writerThreads();
+        List<File> dirs = new ArrayList<>();
+        // More lists than are kept open, each closed as it is evicted
+        for (int i = 0; i < 5; i++) {
+            File dir = folder.newFolder();
+            dirs.add(dir);
+            TaskManager store = new TaskManager(context, dir, TaskJournal.SnapshotFormat.COLUMNAR);
+            TaskRepository repository = new TaskRepository(store);
+            repository.load(new TaskIndex(store.loadTasks())).get();
+            repository.add(new Task(i + 1, "Task of list " + i, false, NOW, 0)).get();
+            repository.flush();
+            repository.shutdown();
+            store.close();
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (writerThreads() > before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(writerThreads() <= before);
+        for (File dir : dirs) {
+            TaskManager reopened = new TaskManager(context, dir, TaskJournal.SnapshotFormat.COLUMNAR);
+            assertEquals(1, reopened.loadTasks().size());
+            reopened.close();
+        }
+    }
+
+    private static int writerThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && (thread.getName().equals("TaskJournal-io")
+                    || thread.getName().equals("TaskWriteScheduler"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
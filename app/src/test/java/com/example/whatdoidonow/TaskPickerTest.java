@@ -0,0 +1,94 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TaskPickerTest {
+
+    @Test
+    public void picksOnlyPendingTasksThroughRandomUpdates() {
+        Random random = new Random(3);
+        TaskPicker picker = new TaskPicker(new Random(5));
+        Map<Long, Task> pending = new HashMap<>();
+        long nextId = 1;
+
+        for (int step = 0; step < 20_000; step++) {
+            int action = random.nextInt(4);
+            if (action <= 1 || pending.isEmpty()) {
+                Task task = new Task(nextId++, "task " + step, false, random.nextInt(1_000_000), 0);
+                picker.update(task);
+                pending.put(task.getId(), task);
+            } else {
+                Task task = picker.pickUniform();
+                if (action == 2) {
+                    Task completed = new Task(task);
+                    completed.setCompleted(true);
+                    picker.update(completed);
+                } else {
+                    picker.remove(task.getId());
+                }
+                pending.remove(task.getId());
+            }
+
+            assertEquals(pending.size(), picker.size());
+            if (!pending.isEmpty()) {
+                Task uniform = picker.pickUniform();
+                assertSame(pending.get(uniform.getId()), uniform);
+                Task weighted = picker.pickWeighted(1_000_000);
+                assertSame(pending.get(weighted.getId()), weighted);
+            }
+        }
+    }
+
+    @Test
+    public void weightedPicksFollowTaskAge() {
+        TaskPicker picker = new TaskPicker(new Random(9));
+        // Ages at time 100 are 100, 50 and 10, against a total of 160
+        picker.update(new Task(1, "old", false, 0, 0));
+        picker.update(new Task(2, "middle", false, 50, 0));
+        picker.update(new Task(3, "new", false, 90, 0));
+        picker.update(new Task(4, "done", true, 0, 1));
+
+        int[] counts = new int[4];
+        int picks = 160_000;
+        for (int i = 0; i < picks; i++) {
+            counts[(int) picker.pickWeighted(99).getId()]++;
+        }
+        assertEquals(0, counts[0]);
+        assertEquals(100_000, counts[1], 1_500);
+        assertEquals(50_000, counts[2], 1_500);
+        assertEquals(10_000, counts[3], 1_000);
+    }
+
+    @Test
+    public void keepsWorkingAfterGrowingAndClearing() {
+        TaskPicker picker = new TaskPicker(new Random(1));
+        for (int i = 1; i <= 1_000; i++) {
+            picker.update(new Task(i, "task " + i, false, i, 0));
+        }
+        for (int i = 1; i <= 1_000; i += 2) {
+            picker.remove(i);
+        }
+
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            long id = picker.pickWeighted(2_000).getId();
+            assertEquals(0, id % 2);
+            seen.add(id);
+        }
+        assertEquals(500, seen.size());
+
+        picker.clear();
+        assertNull(picker.pickUniform());
+        assertNull(picker.pickWeighted(0));
+        picker.update(new Task(7, "again", false, 5, 0));
+        assertEquals(7, picker.pickWeighted(5).getId());
+    }
+}
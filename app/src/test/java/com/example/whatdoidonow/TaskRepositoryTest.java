@@ -0,0 +1,271 @@
+package com.example.whatdoidonow;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TaskRepositoryTest {
+
+    /**
+     * Applies what it is told to a map by id, the way the journal replays its records
+     */
+    static final class MapStore implements TaskStore {
+        final Map<Long, Task> tasks = new HashMap<>();
+        int flushes;
+        int sizeAtFlush;
+
+        @Override
+        public void addTask(Task task) {
+            tasks.put(task.getId(), task);
+        }
+
+        @Override
+        public void addTasks(List<Task> added) {
+            for (Task task : added) {
+                addTask(task);
+            }
+        }
+
+        @Override
+        public void updateTask(Task task) {
+            tasks.put(task.getId(), task);
+        }
+
+        @Override
+        public void deleteTask(Task task) {
+            tasks.remove(task.getId());
+        }
+
+        @Override
+        public void updateTasks(List<Task> updated) {
+            for (Task task : updated) {
+                updateTask(task);
+            }
+        }
+
+        @Override
+        public void deleteTasks(List<Task> deleted) {
+            for (Task task : deleted) {
+                deleteTask(task);
+            }
+        }
+
+        @Override
+        public void restoreTasks(TaskBatch batch) {
+            for (Task task : batch.getRemoved()) {
+                tasks.remove(task.getId());
+            }
+            for (Task task : batch.getAdded()) {
+                tasks.put(task.getId(), task);
+            }
+        }
+
+        @Override
+        public void clearTasks() {
+            tasks.clear();
+        }
+
+        @Override
+        public void requestFlush() {
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+            sizeAtFlush = tasks.size();
+        }
+    }
+
+    private final MapStore store = new MapStore();
+    private final TaskRepository repository = new TaskRepository(store, 20);
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @After
+    public void shutDown() {
+        threads.shutdownNow();
+        repository.shutdown();
+    }
+
+    @Test
+    public void concurrentWritersAndReadersSeeConsistentVersions() throws Exception {
+        final List<TaskRepository.Snapshot> published = new ArrayList<>();
+        // Runs on the writer thread, so it sees versions exactly in publishing order
+        repository.addListener(published::add, Runnable::run).get();
+        repository.load(new TaskIndex()).get();
+
+        final int writers = 4;
+        final int opsPerWriter = 1_500;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicLong nextId = new AtomicLong(1);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final Random random = new Random(w);
+            writes.add(threads.submit(() -> {
+                start.await();
+                for (int op = 0; op < opsPerWriter; op++) {
+                    // Decide from whatever is published right now; the writer skips stale ids
+                    TaskIndex tasks = repository.snapshot().getTasks();
+                    int choice = random.nextInt(20);
+                    if (tasks.isEmpty() || choice < 8) {
+                        long id = nextId.getAndIncrement();
+                        repository.add(new Task(id, "task " + id, false, random.nextInt(1_000), 0));
+                    } else if (choice < 14) {
+                        Task task = tasks.get(random.nextInt(tasks.size()));
+                        repository.setCompleted(new long[]{task.getId()}, !task.isCompleted());
+                    } else if (choice < 16) {
+                        long[] ids = new long[Math.min(tasks.size(), 5)];
+                        for (int i = 0; i < ids.length; i++) {
+                            ids[i] = tasks.get(random.nextInt(tasks.size())).getId();
+                        }
+                        repository.delete(ids);
+                    } else if (choice < 18) {
+                        repository.undo();
+                    } else {
+                        repository.redo();
+                    }
+                }
+                return null;
+            }));
+        }
+        List<Future<Integer>> reads = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            reads.add(threads.submit(() -> {
+                start.await();
+                long lastVersion = -1;
+                int checked = 0;
+                while (writing.get()) {
+                    TaskRepository.Snapshot snapshot = repository.snapshot();
+                    assertTrue(snapshot.getVersion() >= lastVersion);
+                    lastVersion = snapshot.getVersion();
+                    assertConsistent(snapshot.getTasks());
+                    checked++;
+                }
+                return checked;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> write : writes) {
+            write.get(60, TimeUnit.SECONDS);
+        }
+        repository.flush();
+        writing.set(false);
+        for (Future<Integer> read : reads) {
+            assertTrue(read.get(60, TimeUnit.SECONDS) > 0);
+        }
+
+        // Every version was announced once and in order, and its change turns the previous version into it
+        TaskRepository.Snapshot last = repository.snapshot();
+        assertEquals(last.getVersion(), published.get(published.size() - 1).getVersion());
+        List<Task> rows = new ArrayList<>();
+        for (int i = 0; i < published.size(); i++) {
+            TaskRepository.Snapshot snapshot = published.get(i);
+            assertEquals(published.get(0).getVersion() + i, snapshot.getVersion());
+            if (snapshot.getChange() != null) {
+                rows = replay(rows, snapshot.getChange(), snapshot.getTasks());
+            }
+            assertEquals(snapshot.getTasks(), rows);
+        }
+
+        // The store was told about every change in the order it was applied
+        assertEquals(last.getTasks().size(), store.tasks.size());
+        for (Task task : last.getTasks()) {
+            assertSame(task, store.tasks.get(task.getId()));
+        }
+    }
+
+    @Test
+    public void listenersStartRightAfterTheVersionTheyAreGiven() throws Exception {
+        for (int i = 1; i <= 50; i++) {
+            repository.add(new Task(i, "task " + i, false, i, 0));
+        }
+        final List<Long> versions = new ArrayList<>();
+        TaskRepository.Snapshot base = repository.addListener(
+                snapshot -> versions.add(snapshot.getVersion()), Runnable::run).get();
+        for (int i = 51; i <= 100; i++) {
+            repository.add(new Task(i, "task " + i, false, i, 0));
+        }
+        repository.flush();
+
+        assertEquals(100, repository.snapshot().getVersion());
+        assertEquals(100 - base.getVersion(), versions.size());
+        assertEquals(base.getVersion() + 1, (long) versions.get(0));
+        assertEquals(100, (long) versions.get(versions.size() - 1));
+    }
+
+    @Test
+    public void flushWaitsForQueuedChanges() throws Exception {
+        long[] ids = new long[1_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+            repository.add(new Task(ids[i], "task " + ids[i], false, i, 0));
+        }
+        repository.flush();
+        assertEquals(1, store.flushes);
+        assertEquals(1_000, store.sizeAtFlush);
+
+        // Nothing to change is not a version, and cannot be undone
+        long version = repository.snapshot().getVersion();
+        TaskBatch batch = repository.delete(new long[]{-1}).get();
+        assertTrue(batch.isEmpty());
+        assertEquals(version, repository.snapshot().getVersion());
+
+        assertEquals(1_000, repository.setCompleted(ids, true).get().getAdded().size());
+        assertEquals(1_000, repository.snapshot().getTasks().completedCount());
+        assertTrue(repository.snapshot().canUndo());
+        repository.undo().get();
+        assertEquals(0, repository.snapshot().getTasks().completedCount());
+        assertTrue(repository.snapshot().canRedo());
+    }
+
+    /**
+     * Check everything a reader relies on: order, size and lookup by id agree
+     */
+    private static void assertConsistent(TaskIndex tasks) {
+        Task previous = null;
+        int count = 0;
+        for (Task task : tasks) {
+            if (previous != null) {
+                assertTrue(TaskOrder.DISPLAY.compare(previous, task) < 0);
+            }
+            assertSame(task, tasks.getById(task.getId()));
+            previous = task;
+            count++;
+        }
+        assertEquals(tasks.size(), count);
+        assertEquals(tasks.size(), tasks.pendingCount() + tasks.completedCount());
+    }
+
+    private static List<Task> replay(List<Task> before, TaskBatch batch, List<Task> after) {
+        final List<Task> rows = new ArrayList<>(before);
+        batch.dispatch(new TaskBatch.RangeCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                rows.subList(position, position + count).clear();
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    rows.add(position + i, after.get(position + i));
+                }
+            }
+        });
+        return rows;
+    }
+}
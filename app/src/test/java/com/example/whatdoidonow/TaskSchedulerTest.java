@@ -0,0 +1,260 @@
+package com.example.whatdoidonow;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class TaskSchedulerTest {
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // Monday 10:00 UTC
+    private static final long NOW = LocalDate.of(2026, 10, 12).toEpochDay() * DAY + 10 * HOUR;
+
+    /**
+     * Stands still until told to move
+     */
+    private static final class FakeClock extends Clock {
+        long millis = NOW;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+    private final FakeClock clock = new FakeClock();
+    private final TaskRepository repository = new TaskRepository(new TaskRepositoryTest.MapStore());
+    // Listener calls wait here until the test runs them, like posts to a UI thread
+    private final Queue<Runnable> uiThread = new ConcurrentLinkedQueue<>();
+    private final List<Long> recurred = new ArrayList<>();
+    private final List<Task> reminded = new ArrayList<>();
+    private final List<Long> wakeTimes = new ArrayList<>();
+
+    private final TaskScheduler scheduler = new TaskScheduler(clock, NOW - HOUR, new TaskScheduler.Callback() {
+        @Override
+        public void onOccurrencesDue(long[] ids, long now) {
+            for (long id : ids) {
+                recurred.add(id);
+            }
+            repository.recur(ids, now);
+        }
+
+        @Override
+        public void onRemindersDue(List<Task> tasks) {
+            reminded.addAll(tasks);
+        }
+
+        @Override
+        public void onWakeTimeChanged(long wakeAt) {
+            wakeTimes.add(wakeAt);
+        }
+    });
+
+    @After
+    public void shutDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    public void nextOccurrenceCountsFromTheDueTime() {
+        Task daily = new Task(1, "stretch", true, NOW - DAY, NOW - 30 * MINUTE);
+        daily.setRepeatMillis(DAY);
+        daily.setDueAt(NOW - 22 * HOUR);
+        // Due at noon yesterday and done this morning: next is noon today
+        assertEquals(NOW + 2 * HOUR, daily.getNextOccurrence());
+        assertNull(daily.nextOccurrence(NOW + 2 * HOUR - 1));
+
+        // Done early, before noon yesterday: the noon it was done for is covered
+        daily.setCompletedAt(NOW - 23 * HOUR);
+        assertEquals(NOW + 2 * HOUR, daily.getNextOccurrence());
+
+        // Three days late: the missed occurrences collapse into the latest one
+        Task late = daily.nextOccurrence(NOW + 3 * DAY + 3 * HOUR);
+        assertFalse(late.isCompleted());
+        assertEquals(NOW + 3 * DAY + 2 * HOUR, late.getCreatedAt());
+        assertEquals(NOW + 3 * DAY + 2 * HOUR, late.getDueAt());
+        assertEquals(DAY, late.getRepeatMillis());
+
+        // Without a due time the interval runs from the completion
+        Task hourly = new Task(2, "water", true, NOW - DAY, NOW - 30 * MINUTE);
+        hourly.setRepeatMillis(8 * HOUR);
+        assertEquals(NOW + 7 * HOUR + 30 * MINUTE, hourly.getNextOccurrence());
+        assertEquals(0, hourly.nextOccurrence(NOW + 8 * HOUR).getDueAt());
+        assertEquals(0, new Task(3, "once", true, NOW, NOW).getNextOccurrence());
+    }
+
+    @Test
+    public void recursAndRemindsAsTheClockMoves() throws Exception {
+        TaskStats stats = new TaskStats(ZoneOffset.UTC);
+        repository.addListener(stats, Runnable::run).get();
+        repository.addListener(scheduler, uiThread::add).get();
+
+        TaskIndex tasks = new TaskIndex();
+        // Daily at 9:00, done yesterday evening: due again already
+        Task daily = task(1, true, NOW - 2 * DAY, NOW - 14 * HOUR, NOW - DAY - HOUR, DAY);
+        // Every 8 hours from when it was last done
+        Task shifts = task(2, true, NOW - DAY, NOW - HOUR, 0, 8 * HOUR);
+        // One-shot reminders: in half an hour, already shown before, and missed while closed
+        Task soon = task(3, false, NOW - DAY, 0, NOW + 30 * MINUTE, 0);
+        Task shown = task(4, false, NOW - DAY, 0, NOW - 2 * HOUR, 0);
+        Task missed = task(5, false, NOW - DAY, 0, NOW - 30 * MINUTE, 0);
+        for (Task task : new Task[]{daily, shifts, soon, shown, missed}) {
+            tasks.insert(task);
+        }
+        repository.load(tasks);
+        drain();
+        assertEquals(4, scheduler.scheduledCount());
+        assertTrue(lastWakeTime() <= NOW);
+
+        scheduler.advance();
+        assertEquals(listOf(1L), recurred);
+        assertEquals(listOf(5L), idsOf(reminded));
+        drain();
+
+        // Back in the pending list as this morning's occurrence, and due, so reminded too
+        Task occurrence = repository.snapshot().getTasks().getById(1);
+        assertFalse(occurrence.isCompleted());
+        assertEquals(NOW - HOUR, occurrence.getCreatedAt());
+        assertEquals(NOW - HOUR, occurrence.getDueAt());
+        scheduler.advance();
+        assertEquals(listOf(5L, 1L), idsOf(reminded));
+        assertEquals(NOW + 30 * MINUTE, lastWakeTime());
+
+        clock.millis = NOW + 30 * MINUTE;
+        scheduler.advance();
+        assertEquals(listOf(5L, 1L, 3L), idsOf(reminded));
+        assertEquals(NOW + 7 * HOUR, lastWakeTime());
+
+        // Nothing happens before the wake time
+        clock.millis = NOW + 7 * HOUR - 1;
+        scheduler.advance();
+        assertEquals(listOf(1L), recurred);
+        clock.millis = NOW + 7 * HOUR;
+        scheduler.advance();
+        assertEquals(listOf(1L, 2L), recurred);
+        drain();
+        assertFalse(repository.snapshot().getTasks().getById(2).isCompleted());
+        assertEquals(Long.MAX_VALUE, lastWakeTime());
+        assertEquals(NOW + 7 * HOUR, scheduler.getRemindedUntil());
+
+        // New occurrences are not completions, and do not take any back
+        assertEquals(0, stats.getCompletions());
+        assertEquals(0, stats.getChangeCount());
+    }
+
+    @Test
+    public void thousandsOfSchedulesWakeOnlyWhenSomethingIsDue() throws Exception {
+        repository.addListener(scheduler, uiThread::add).get();
+        Random random = new Random(21);
+        TaskIndex tasks = new TaskIndex();
+        for (int i = 1; i <= 5_000; i++) {
+            long[] intervals = {HOUR, 4 * HOUR, 8 * HOUR, DAY, 7 * DAY};
+            long completedAt = NOW - random.nextInt((int) (DAY / MINUTE)) * MINUTE;
+            tasks.insert(task(i, true, completedAt - DAY, completedAt, 0, intervals[random.nextInt(intervals.length)]));
+        }
+        // Occurrences missed while closed all come back on the first wake
+        Set<Long> occurrences = new HashSet<>();
+        for (Task task : tasks) {
+            occurrences.add(Math.max(task.getNextOccurrence(), NOW));
+        }
+        repository.load(tasks);
+        drain();
+        assertEquals(5_000, scheduler.scheduledCount());
+
+        int wakes = 0;
+        while (lastWakeTime() != Long.MAX_VALUE) {
+            long wakeAt = lastWakeTime();
+            // Exactly the tasks coming back by then, and no earlier wake would have found any
+            List<Long> expected = new ArrayList<>();
+            long earliest = Long.MAX_VALUE;
+            for (Task task : repository.snapshot().getTasks()) {
+                long next = task.getNextOccurrence();
+                if (next != 0) {
+                    earliest = Math.min(earliest, next);
+                    if (next <= wakeAt) {
+                        expected.add(task.getId());
+                    }
+                }
+            }
+            assertEquals(Math.max(earliest, clock.millis), wakeAt);
+
+            recurred.clear();
+            clock.millis = wakeAt;
+            scheduler.advance();
+            drain();
+            assertEquals(expected.size(), recurred.size());
+            assertTrue(recurred.containsAll(expected));
+            wakes++;
+        }
+        // Every task came back, with one wake per distinct occurrence and none in between
+        assertEquals(0, repository.snapshot().getTasks().completedCount());
+        assertEquals(occurrences.size(), wakes);
+        assertTrue(reminded.isEmpty());
+    }
+
+    private void drain() {
+        repository.flush();
+        Runnable runnable;
+        while ((runnable = uiThread.poll()) != null) {
+            runnable.run();
+        }
+    }
+
+    private long lastWakeTime() {
+        return wakeTimes.get(wakeTimes.size() - 1);
+    }
+
+    private static Task task(long id, boolean completed, long createdAt, long completedAt, long dueAt,
+                             long repeatMillis) {
+        Task task = new Task(id, "task " + id, completed, createdAt, completedAt);
+        task.setDueAt(dueAt);
+        task.setRepeatMillis(repeatMillis);
+        return task;
+    }
+
+    private static List<Long> idsOf(List<Task> tasks) {
+        List<Long> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> listOf(Long... ids) {
+        List<Long> list = new ArrayList<>();
+        for (Long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TaskSearchIndexTest {
+
+    @Test
+    public void matchesFoldedPrefixesOfEveryQueryWord() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        index.update(new Task(1, "Buy CAFÉ beans", false, 10, 0));
+        index.update(new Task(2, "Call the café", false, 20, 0));
+        index.update(new Task(3, "Naïve plan: buy bread", false, 30, 0));
+        index.update(new Task(4, "Beans, beans, beans", true, 5, 40));
+
+        assertEquals(Arrays.asList("cafe", "beans"), Arrays.asList(TaskSearchIndex.tokenize("Café, BEANS café!")));
+        assertIds(index.search("cafe"), 2, 1);
+        assertIds(index.search("  bu  "), 3, 1);
+        assertIds(index.search("be bu"), 1);
+        assertIds(index.search("NAIVE"), 3);
+        assertIds(index.search("bean"), 1, 4);
+        assertIds(index.search("beans plan"));
+        assertIds(index.search("..."));
+        assertIds(index.search("xyz"));
+    }
+
+    @Test
+    public void followsUpdatesAndRemovals() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        Task task = new Task(1, "Water the plants", false, 10, 0);
+        index.update(task);
+        index.update(new Task(2, "Plan the week", false, 20, 0));
+        assertIds(index.search("pla"), 2, 1);
+
+        // A status change moves the task to the completed end of the results
+        Task completed = new Task(task);
+        completed.setCompleted(true);
+        index.update(completed);
+        List<Task> results = index.search("pla");
+        assertIds(results, 2, 1);
+        assertSame(completed, results.get(1));
+
+        index.remove(2);
+        assertIds(index.search("pla"), 1);
+        assertIds(index.search("week"));
+        assertEquals(1, index.size());
+
+        index.clear();
+        assertIds(index.search("water"));
+        index.update(new Task(3, "Water again", false, 30, 0));
+        assertIds(index.search("water"), 3);
+    }
+
+    @Test
+    public void agreesWithLinearScanOnRandomTasks() {
+        Random random = new Random(7);
+        String[] words = {"alpha", "alps", "beta", "bet", "gamma", "Gämma", "delta", "del"};
+        TaskSearchIndex index = new TaskSearchIndex();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 2_000; i++) {
+            Task task = new Task(i, words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)],
+                    random.nextBoolean(), random.nextInt(1_000), 0);
+            tasks.add(task);
+            index.update(task);
+        }
+        List<Task> remaining = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i % 3 == 0) {
+                index.remove(tasks.get(i).getId());
+            } else {
+                remaining.add(tasks.get(i));
+            }
+        }
+        Collections.sort(remaining, TaskOrder.DISPLAY);
+        String[] queries = {"al", "alp", "gam", "b", "del d", "gamma al", "be ga", "z"};
+        for (String query : queries) {
+            List<Task> expected = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                if (i % 3 != 0 && scanMatches(tasks.get(i), query)) {
+                    expected.add(tasks.get(i));
+                }
+            }
+            Collections.sort(expected, TaskOrder.DISPLAY);
+            assertEquals(query, expected, index.search(query));
+            assertEquals(query, expected, index.search(query, remaining));
+        }
+    }
+
+    /**
+     * Per-keystroke latency at 100k tasks. Slow, only runs with
+     * {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void keystrokeLatencyAt100kTasks() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+        Random random = new Random(1);
+        TaskSearchIndex index = new TaskSearchIndex();
+        TaskIndex tasks = new TaskIndex();
+        for (int i = 1; i <= 100_000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 5; w++) {
+                text.append(Integer.toString(random.nextInt(50_000), 36)).append(' ');
+            }
+            Task task = new Task(i, text.toString(), random.nextBoolean(), i, 0);
+            index.update(task);
+            tasks.insert(task);
+        }
+        TaskIndex snapshot = tasks.snapshot();
+        String typed = "1a2 b";
+        for (int round = 0; round < 20; round++) {
+            for (int length = 1; length <= typed.length(); length++) {
+                long started = System.nanoTime();
+                int hits = index.search(typed.substring(0, length), snapshot).size();
+                if (round == 19) {
+                    System.out.println(String.format("%-6s %7d hits %8.3f ms", typed.substring(0, length), hits,
+                            (System.nanoTime() - started) / 1e6));
+                }
+            }
+        }
+    }
+
+    private static boolean scanMatches(Task task, String query) {
+        for (String prefix : TaskSearchIndex.tokenize(query)) {
+            boolean found = false;
+            for (String word : TaskSearchIndex.tokenize(task.getTaskText())) {
+                found |= word.startsWith(prefix);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return TaskSearchIndex.tokenize(query).length > 0;
+    }
+
+    private static void assertIds(List<Task> results, long... ids) {
+        long[] actual = new long[results.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = results.get(i).getId();
+        }
+        assertArrayEquals(ids, actual);
+    }
+}
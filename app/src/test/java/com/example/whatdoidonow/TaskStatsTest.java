@@ -0,0 +1,135 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TaskStatsTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+    // A Monday
+    private static final long MONDAY = LocalDate.of(2026, 10, 12).toEpochDay();
+
+    @Test
+    public void countsTransitionsPerDayAndWeek() {
+        TaskStats stats = new TaskStats(ZoneOffset.UTC);
+        TaskIndex tasks = new TaskIndex();
+        for (int i = 1; i <= 6; i++) {
+            tasks.insert(new Task(i, "task " + i, false, (MONDAY - 10) * DAY, 0));
+        }
+
+        // Completed on Monday, Tuesday and twice on Wednesday, then one more the next Monday
+        complete(stats, tasks, 1, MONDAY);
+        complete(stats, tasks, 2, MONDAY + 1);
+        complete(stats, tasks, 3, MONDAY + 2);
+        complete(stats, tasks, 4, MONDAY + 2);
+        complete(stats, tasks, 5, MONDAY + 7);
+        assertEquals(5, stats.getCompletions());
+        assertArrayEquals(new int[]{1, 1, 2, 0, 0, 0, 0, 1}, stats.completionsPerDay(MONDAY, 8));
+        long week = TaskStats.weekOf(MONDAY);
+        assertEquals(MONDAY, TaskStats.firstDayOf(week));
+        assertEquals(week, TaskStats.weekOf(MONDAY + 6));
+        assertArrayEquals(new int[]{0, 4, 1}, stats.completionsPerWeek(week - 1, 3));
+
+        // Reopening takes the completion back; deleting a completed task does not
+        TaskIndex before = tasks.snapshot();
+        Task reopened = new Task(tasks.getById(4));
+        reopened.setCompleted(false);
+        tasks.replace(tasks.getById(4), reopened);
+        tasks.removeTask(tasks.getById(3));
+        stats.apply(TaskBatch.restore(copyOf(before), tasks.snapshot()));
+        assertArrayEquals(new int[]{1, 1, 1}, stats.completionsPerDay(MONDAY, 3));
+        assertEquals(4, stats.getCompletions());
+
+        // Undoing both completes task 4 again, and brings back task 3 without counting it twice
+        stats.apply(TaskBatch.restore(copyOf(tasks), before));
+        assertEquals(5, stats.getCompletions());
+        assertArrayEquals(new int[]{1, 1, 2}, stats.completionsPerDay(MONDAY, 3));
+    }
+
+    @Test
+    public void streakRunsUpToTodayOrYesterday() {
+        TaskStats stats = new TaskStats(ZoneOffset.UTC);
+        List<Task> completed = new ArrayList<>();
+        long[] days = {MONDAY - 5, MONDAY - 3, MONDAY - 2, MONDAY - 1};
+        for (int i = 0; i < days.length; i++) {
+            completed.add(new Task(i + 1, "done", true, 0, days[i] * DAY + 20 * HOUR));
+        }
+        stats.addCompleted(completed);
+
+        assertEquals(3, stats.currentStreak(MONDAY));
+        assertEquals(3, stats.currentStreak(MONDAY - 1));
+        assertEquals(0, stats.currentStreak(MONDAY + 1));
+        assertEquals(1, stats.currentStreak(MONDAY - 4));
+    }
+
+    @Test
+    public void daysFollowTheTimeZone() {
+        long lateEvening = MONDAY * DAY + 23 * HOUR;
+        assertEquals(MONDAY, new TaskStats(ZoneOffset.UTC).dayOf(lateEvening));
+        assertEquals(MONDAY + 1, new TaskStats(ZoneOffset.ofHours(2)).dayOf(lateEvening));
+        assertEquals(MONDAY - 1, new TaskStats(ZoneOffset.UTC).dayOf(MONDAY * DAY - 1));
+    }
+
+    @Test
+    public void quantilesAreCloseAndSurviveSaving() throws IOException {
+        Random random = new Random(8);
+        TaskStats stats = new TaskStats(ZoneOffset.UTC);
+        List<Task> completed = new ArrayList<>();
+        long[] durations = new long[10_000];
+        for (int i = 0; i < durations.length; i++) {
+            // From minutes to months, skewed like real task lists
+            durations[i] = (long) (60_000 * Math.exp(random.nextDouble() * 14));
+            long completedAt = (MONDAY - random.nextInt(400)) * DAY;
+            completed.add(new Task(i + 1, "done", true, completedAt - durations[i], completedAt));
+        }
+        stats.addCompleted(completed);
+        Arrays.sort(durations);
+        for (double fraction : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            long exact = durations[(int) Math.ceil(fraction * durations.length) - 1];
+            long estimate = stats.timeToCompleteQuantile(fraction);
+            assertEquals(fraction + " quantile", exact, estimate, exact * 0.07);
+        }
+
+        StringWriter json = new StringWriter();
+        stats.writeJson(new JsonWriter(json));
+        TaskStats read = new TaskStats(ZoneOffset.UTC);
+        read.readJson(new JsonReader(new StringReader(json.toString())));
+        assertEquals(stats.getCompletions(), read.getCompletions());
+        assertEquals(stats.timeToCompleteQuantile(0.5), read.timeToCompleteQuantile(0.5));
+        assertArrayEquals(stats.completionsPerDay(MONDAY - 400, 401), read.completionsPerDay(MONDAY - 400, 401));
+        long week = TaskStats.weekOf(MONDAY);
+        assertArrayEquals(stats.completionsPerWeek(week - 60, 61), read.completionsPerWeek(week - 60, 61));
+        assertEquals(-1, new TaskStats(ZoneOffset.UTC).timeToCompleteQuantile(0.5));
+    }
+
+    private static void complete(TaskStats stats, TaskIndex tasks, long id, long day) {
+        Task task = tasks.getById(id);
+        Task done = new Task(id, task.getTaskText(), true, task.getCreatedAt(), day * DAY + 9 * HOUR);
+        TaskIndex before = tasks.snapshot();
+        tasks.replace(task, done);
+        stats.apply(TaskBatch.restore(copyOf(before), tasks.snapshot()));
+    }
+
+    /**
+     * A live index holding the same version, for TaskBatch.restore to switch
+     */
+    private static TaskIndex copyOf(TaskIndex version) {
+        TaskIndex copy = new TaskIndex();
+        copy.restore(version.snapshot());
+        return copy;
+    }
+}
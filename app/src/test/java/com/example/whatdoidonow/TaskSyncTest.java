@@ -0,0 +1,397 @@
+package com.example.whatdoidonow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TaskSyncTest {
+    private final MockSyncServer server = new MockSyncServer();
+    private final List<Device> devices = new ArrayList<>();
+
+    @After
+    public void shutDown() {
+        server.http.stop(0);
+        for (Device device : devices) {
+            device.repository.shutdown();
+        }
+    }
+
+    @Test
+    public void devicesConvergeOnEachOthersChanges() throws Exception {
+        Device a = device(1, new TestClock(1_000));
+        Device b = device(2, new TestClock(1_000));
+        Task milk = new Task("Buy milk", false);
+        Task bread = new Task("Buy bread", false);
+        a.repository.add(milk).get();
+        a.repository.add(bread).get();
+        a.repository.add(new Task("Call Sam", false)).get();
+
+        TaskSync.Result first = a.sync();
+        assertEquals(3, first.getSent());
+        assertEquals(0, first.getReceived());
+        TaskSync.Result pulled = b.sync();
+        assertEquals(0, pulled.getSent());
+        assertEquals(3, pulled.getReceived());
+        assertEquals(describe(a), describe(b));
+        // Merged changes are not undone
+        assertFalse(b.repository.snapshot().canUndo());
+
+        b.repository.setCompleted(new long[]{milk.getId()}, true).get();
+        b.repository.add(new Task("Walk", false)).get();
+        a.repository.delete(new long[]{bread.getId()}).get();
+        assertEquals(1, a.sync().getSent());
+        TaskSync.Result fromB = b.sync();
+        assertEquals(2, fromB.getSent());
+        // The delete, as a tombstone
+        assertEquals(1, fromB.getReceived());
+        assertEquals(2, a.sync().getReceived());
+
+        assertEquals(describe(a), describe(b));
+        assertEquals("[Call Sam, Walk, [x] Buy milk]", describe(a).toString());
+        assertEquals(0, a.state.getPendingCount());
+        assertEquals(0, b.state.getPendingCount());
+
+        // Nothing to exchange
+        TaskSync.Result idle = a.sync();
+        assertEquals(1, idle.getRequests());
+        assertEquals(0, idle.getSent() + idle.getReceived());
+    }
+
+    @Test
+    public void concurrentChangesResolveTheSameWayEverywhere() throws Exception {
+        TestClock aClock = new TestClock(10_000);
+        TestClock bClock = new TestClock(5_000);
+        Device a = device(1, aClock);
+        Device b = device(2, bClock);
+        Task report = new Task("Write report", false);
+        Task plants = new Task("Water plants", false);
+        a.repository.add(report).get();
+        a.repository.add(plants).get();
+        a.sync();
+        b.sync();
+
+        // Both complete the report, A later; A deletes the plants while B completes them
+        b.repository.setCompleted(new long[]{report.getId(), plants.getId()}, true).get();
+        aClock.millis += 1_000;
+        a.repository.setCompleted(new long[]{report.getId()}, true).get();
+        long completedOnA = a.repository.snapshot().getTasks().getById(report.getId()).getCompletedAt();
+        a.repository.delete(new long[]{plants.getId()}).get();
+        b.sync();
+        a.sync();
+        b.sync();
+
+        assertEquals(describe(a), describe(b));
+        assertEquals(completedOnA, b.repository.snapshot().getTasks().getById(report.getId()).getCompletedAt());
+        // Completing does not bring back a deleted task
+        assertNull(b.repository.snapshot().getTasks().getById(plants.getId()));
+
+        // B's clock is behind, but its change follows what it received, so it wins
+        b.repository.setCompleted(new long[]{report.getId()}, false).get();
+        b.sync();
+        a.sync();
+        assertFalse(a.repository.snapshot().getTasks().getById(report.getId()).isCompleted());
+        assertEquals(describe(a), describe(b));
+    }
+
+    @Test
+    public void registersMergeInAnyOrder() {
+        Task base = new Task(7, "Call Sam", false, 100, 0);
+        Task edited = new Task(base);
+        edited.setTaskText("Call Sam back");
+        Task done = new Task(base);
+        done.setCompleted(true);
+        List<TaskSyncState.Record> versions = new ArrayList<>();
+        versions.add(new TaskSyncState.Record(edited, false, 50, 1, 0, 0, 0, 0, 0));
+        versions.add(new TaskSyncState.Record(done, false, 0, 0, 60, 2, 0, 0, 0));
+        // Same stamp as the edit from another device, which breaks the tie
+        versions.add(new TaskSyncState.Record(base, true, 50, 3, 0, 0, 40, 3, 0));
+
+        TaskSyncState.Record expected = null;
+        int[][] orders = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+        for (int[] order : orders) {
+            TaskSyncState.Record merged = TaskSyncState.merge(
+                    TaskSyncState.merge(versions.get(order[0]), versions.get(order[1])), versions.get(order[2]));
+            if (expected == null) {
+                expected = merged;
+            }
+            assertTrue(TaskSyncState.sameStamps(expected, merged));
+            assertEquals("Call Sam", merged.getTask().getTaskText());
+            assertTrue(merged.getTask().isCompleted());
+            assertTrue(merged.isDeleted());
+        }
+    }
+
+    @Test
+    public void sendsOnlyWhatChangedInCompressedBatches() throws Exception {
+        Device a = device(1, new TestClock(1_000));
+        Device b = device(2, new TestClock(1_000));
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            tasks.add(new Task(Task.newId(), "Task number " + i, i % 3 == 0, 1_000_000 + i, 0));
+        }
+        a.repository.addAll(tasks).get();
+        StringWriter json = new StringWriter();
+        TaskCodec.writeArray(new JsonWriter(json), tasks);
+        int listBytes = json.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        TaskSync.Result full = a.sync();
+        assertEquals(2000, full.getSent());
+        // Four full batches, then one to find nothing is left
+        assertEquals(5, full.getRequests());
+        assertTrue(full.getBytesSent() < listBytes / 2);
+        TaskSync.Result pulled = b.sync();
+        assertEquals(2000, pulled.getReceived());
+        assertEquals(4, pulled.getRequests());
+        assertEquals(2000, b.repository.snapshot().getTasks().size());
+
+        a.repository.setCompleted(new long[]{tasks.get(1).getId()}, true).get();
+        TaskSync.Result delta = a.sync();
+        TaskSync.Result deltaPulled = b.sync();
+        assertEquals(1, delta.getSent());
+        assertEquals(1, deltaPulled.getReceived());
+        assertTrue(delta.getBytesSent() < 300);
+        assertTrue(deltaPulled.getBytesReceived() < 300);
+        assertTrue(b.repository.snapshot().getTasks().getById(tasks.get(1).getId()).isCompleted());
+    }
+
+    @Test
+    public void failedSyncKeepsChangesForTheNextOne() throws Exception {
+        TestClock clock = new TestClock(1_000);
+        Device a = device(1, clock);
+        Device b = device(2, clock);
+        Task first = new Task("First", false);
+        a.repository.add(first).get();
+        a.repository.add(new Task("Second", false)).get();
+        a.sync();
+        b.sync();
+
+        a.repository.delete(new long[]{first.getId()}).get();
+        a.repository.add(new Task("Third", false)).get();
+        server.down = true;
+        try {
+            a.sync();
+            fail();
+        } catch (IOException expected) {
+            assertEquals(2, a.state.getPendingCount());
+        }
+
+        // Restarted from the saved state and the stored list
+        StringWriter saved = new StringWriter();
+        a.state.writeJson(new JsonWriter(saved));
+        TaskSyncState restored = new TaskSyncState(1, clock);
+        restored.readJson(new JsonReader(new StringReader(saved.toString())));
+        assertEquals(a.state.getCursor(), restored.getCursor());
+        assertEquals(2, restored.getPendingCount());
+        Device restarted = new Device(restored);
+        restarted.repository.load(new TaskIndex(new ArrayList<>(a.repository.snapshot().getTasks()))).get();
+
+        server.down = false;
+        assertEquals(2, restarted.sync().getSent());
+        b.sync();
+        assertEquals(describe(restarted), describe(b));
+        assertEquals("[Second, Third]", describe(b).toString());
+    }
+
+    private Device device(long id, Clock clock) throws Exception {
+        TaskSyncState state = new TaskSyncState(id, clock);
+        state.setServer(server.url());
+        return new Device(state);
+    }
+
+    private static List<String> describe(Device device) {
+        List<String> tasks = new ArrayList<>();
+        for (Task task : device.repository.snapshot().getTasks()) {
+            tasks.add((task.isCompleted() ? "[x] " : "") + task.getTaskText());
+        }
+        Collections.sort(tasks);
+        return tasks;
+    }
+
+    private final class Device {
+        final TaskRepository repository = new TaskRepository(new TaskRepositoryTest.MapStore());
+        final TaskSyncState state;
+
+        Device(TaskSyncState state) throws Exception {
+            this.state = state;
+            repository.addListener(state, Runnable::run).get();
+            devices.add(this);
+        }
+
+        TaskSync.Result sync() throws IOException {
+            return new TaskSync(repository, state).sync();
+        }
+    }
+
+    private static final class TestClock extends Clock {
+        long millis;
+
+        TestClock(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    /**
+     * The server side of {@link TaskSync}: keeps the merged version of every
+     * task, tombstones included, numbered in the order they changed
+     */
+    private static final class MockSyncServer implements HttpHandler {
+        final HttpServer http;
+        final Map<Long, TaskSyncState.Record> records = new HashMap<>();
+        final Map<Long, Long> changedAt = new HashMap<>();
+        long seq;
+        volatile boolean down;
+
+        MockSyncServer() {
+            try {
+                http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            http.createContext("/sync", this);
+            http.start();
+        }
+
+        String url() {
+            return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                    + http.getAddress().getPort() + "/sync";
+        }
+
+        @Override
+        public synchronized void handle(HttpExchange exchange) throws IOException {
+            if (down) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            long cursor = 0;
+            List<TaskSyncState.Record> changes = new ArrayList<>();
+            JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("cursor")) {
+                    cursor = reader.nextLong();
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        changes.add(TaskSyncState.readRecord(reader));
+                    }
+                    reader.endArray();
+                }
+            }
+            reader.endObject();
+
+            // The client already has what it sent, unless merging changed it
+            Set<Long> answered = new HashSet<>();
+            List<TaskSyncState.Record> answer = new ArrayList<>();
+            for (TaskSyncState.Record change : changes) {
+                long id = change.getTask().getId();
+                TaskSyncState.Record stored = records.get(id);
+                TaskSyncState.Record merged = stored == null ? change : TaskSyncState.merge(stored, change);
+                if (stored == null || !TaskSyncState.sameStamps(merged, stored)) {
+                    records.put(id, merged);
+                    changedAt.put(id, ++seq);
+                }
+                answered.add(id);
+                if (!TaskSyncState.sameValues(merged, change)) {
+                    answer.add(merged);
+                }
+            }
+            List<Long> later = new ArrayList<>();
+            for (Map.Entry<Long, Long> entry : changedAt.entrySet()) {
+                if (entry.getValue() > cursor) {
+                    later.add(entry.getKey());
+                }
+            }
+            Collections.sort(later, (id1, id2) -> Long.compare(changedAt.get(id1), changedAt.get(id2)));
+            long next = seq;
+            int page = 0;
+            boolean more = false;
+            for (long id : later) {
+                if (answered.contains(id)) {
+                    continue;
+                }
+                if (page == TaskSync.BATCH_SIZE) {
+                    more = true;
+                    next = changedAt.get(id) - 1;
+                    break;
+                }
+                answer.add(records.get(id));
+                page++;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+            OutputStream body = gzip ? new GZIPOutputStream(bytes) : bytes;
+            try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8))) {
+                writer.beginObject();
+                writer.name("cursor").value(next);
+                writer.name("more").value(more);
+                writer.name("changes");
+                writer.beginArray();
+                for (TaskSyncState.Record record : answer) {
+                    TaskSyncState.writeRecord(writer, record);
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, bytes.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                bytes.writeTo(out);
+            }
+        }
+    }
+}
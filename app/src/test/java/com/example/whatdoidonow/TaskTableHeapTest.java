@@ -0,0 +1,83 @@
+package com.example.whatdoidonow;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Retained heap of a {@link TaskTable} against the equivalent {@code List<Task>},
+ * measured from the used heap after forced collections.
+ * Slow, only runs with {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+ */
+public class TaskTableHeapTest {
+    private static final int SIZE = 200_000;
+    // Recurring tasks: many rows share a handful of texts
+    private static final int[] DISTINCT_TEXTS = {SIZE, 1_000};
+
+    @Before
+    public void onlyWhenRequested() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    @Test
+    public void compareWithTaskList() {
+        System.out.println(String.format("%10s %10s %16s %16s %8s",
+                "tasks", "texts", "List<Task> B/row", "TaskTable B/row", "ratio"));
+        for (int distinctTexts : DISTINCT_TEXTS) {
+            long listBytes = retainedBytes(() -> {
+                List<Task> list = new ArrayList<>(SIZE);
+                for (int i = 0; i < SIZE; i++) {
+                    list.add(task(i, distinctTexts));
+                }
+                return list;
+            });
+            long tableBytes = retainedBytes(() -> {
+                TaskTable table = new TaskTable(SIZE);
+                for (int i = 0; i < SIZE; i++) {
+                    table.add(task(i, distinctTexts));
+                }
+                assertEquals(SIZE, table.size());
+                return table;
+            });
+            System.out.println(String.format("%10d %10d %16.1f %16.1f %8.2f", SIZE, distinctTexts,
+                    listBytes / (double) SIZE, tableBytes / (double) SIZE, tableBytes / (double) listBytes));
+        }
+    }
+
+    private static Task task(int i, int distinctTexts) {
+        // A fresh String per task, as decoding produces
+        String text = new StringBuilder("Recurring task number ").append(i % distinctTexts).toString();
+        return new Task(i + 1, text, i % 2 == 0, 1_700_000_000_000L + i, i % 2 == 0 ? 1_700_000_500_000L + i : 0);
+    }
+
+    private interface Allocation {
+        Object allocate();
+    }
+
+    private static long retainedBytes(Allocation allocation) {
+        long before = usedHeap();
+        Object retained = allocation.allocate();
+        long after = usedHeap();
+        // Keep it reachable until measured
+        assertEquals(false, retained == null);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskTableTest {
+
+    @Test
+    public void storesRowsAndSharesEqualTexts() {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            boolean completed = i % 3 == 0;
+            tasks.add(new Task(i + 1, i % 10 == 9 ? null : "Task " + (i % 7), completed, 1_000 + i, completed ? 5_000 + i : 0));
+        }
+        TaskTable table = new TaskTable();
+        table.addAll(tasks);
+
+        assertEquals(100, table.size());
+        assertEquals(7, table.textCount());
+        TaskCodecTest.assertTasksEqual(tasks, table.asList());
+        assertEquals(tasks.get(42), table.get(42));
+        assertNotSame(table.get(42), table.get(42));
+
+        table.clear();
+        assertTrue(table.asList().isEmpty());
+    }
+}
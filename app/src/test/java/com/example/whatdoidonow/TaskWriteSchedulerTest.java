@@ -0,0 +1,180 @@
+package com.example.whatdoidonow;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskWriteSchedulerTest {
+    // Long enough that nothing is written unless the test flushes
+    private static final long WINDOW_MILLIS = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void coalescesRapidTogglesIntoOneRecord() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        Task task = new Task(1, "toggle me", false, 1, 0);
+        journal.replaceAll(Arrays.asList(task));
+
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, WINDOW_MILLIS);
+        for (int i = 0; i < 9; i++) {
+            Task toggled = new Task(task);
+            toggled.setCompleted(i % 2 == 0);
+            scheduler.record(toggled.isCompleted() ? TaskJournal.Op.COMPLETE : TaskJournal.Op.UNCOMPLETE, toggled);
+        }
+        assertEquals(0, journal.getJournalRecordCount());
+        scheduler.flush();
+
+        assertEquals(9, scheduler.getMutationCount());
+        assertEquals(1, scheduler.getWriteCount());
+        assertEquals(1, scheduler.getRecordCount());
+        List<Task> tasks = new TaskJournal(dir).load();
+        assertEquals(1, tasks.size());
+        assertTrue(tasks.get(0).isCompleted());
+    }
+
+    @Test
+    public void writesABatchInOneGroupCommit() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, 0);
+        List<TaskJournal.Mutation> batch = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            batch.add(new TaskJournal.Mutation(TaskJournal.Op.ADD, new Task(i, "task " + i, false, i, 0)));
+        }
+        scheduler.recordAll(batch);
+        scheduler.flush();
+
+        assertEquals(1, scheduler.getWriteCount());
+        assertEquals(500, scheduler.getRecordCount());
+        assertEquals(500, new TaskJournal(dir).load().size());
+    }
+
+    @Test
+    public void dropsTasksAddedAndDeletedWithinTheWindow() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, WINDOW_MILLIS);
+
+        Task kept = new Task(1, "kept", false, 1, 0);
+        Task dropped = new Task(2, "dropped", false, 2, 0);
+        scheduler.record(TaskJournal.Op.ADD, kept);
+        scheduler.record(TaskJournal.Op.ADD, dropped);
+        Task completed = new Task(kept);
+        completed.setCompleted(true);
+        scheduler.record(TaskJournal.Op.COMPLETE, completed);
+        scheduler.record(TaskJournal.Op.DELETE, dropped);
+        scheduler.flush();
+
+        assertEquals(1, scheduler.getRecordCount());
+        List<Task> tasks = new TaskJournal(dir).load();
+        assertEquals(1, tasks.size());
+        assertEquals(1, tasks.get(0).getId());
+        assertTrue(tasks.get(0).isCompleted());
+    }
+
+    @Test
+    public void keepsDeletesOfRestoredTasksWithinTheWindow() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        Task task = new Task(1, "stored", false, 1, 0);
+        Task other = new Task(2, "also stored", false, 2, 0);
+        journal.replaceAll(Arrays.asList(task, other));
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, WINDOW_MILLIS);
+        List<Task> none = new ArrayList<>();
+
+        // Delete, undo, redo
+        scheduler.record(TaskJournal.Op.DELETE, task);
+        scheduler.recordRestore(Arrays.asList(task), none);
+        scheduler.recordRestore(none, Arrays.asList(task));
+        // Undo a delete made before the window, then delete again
+        scheduler.recordRestore(Arrays.asList(other), none);
+        scheduler.record(TaskJournal.Op.DELETE, other);
+        scheduler.flush();
+
+        assertTrue(new TaskJournal(dir).load().isEmpty());
+        assertEquals(2, scheduler.getRecordCount());
+    }
+
+    @Test
+    public void keepsDeletesAndOrdersThemAfterReplacements() throws IOException {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, WINDOW_MILLIS);
+        Task task = new Task(1, "stored", false, 1, 0);
+
+        // Superseded by the replacement that follows
+        scheduler.record(TaskJournal.Op.ADD, new Task(2, "discarded", false, 2, 0));
+        scheduler.replaceAll(Arrays.asList(task));
+        scheduler.record(TaskJournal.Op.DELETE, task);
+        Task late = new Task(task);
+        late.setCompleted(true);
+        scheduler.record(TaskJournal.Op.COMPLETE, late);
+        scheduler.flush();
+
+        assertTrue(new TaskJournal(dir).load().isEmpty());
+        assertEquals(2, scheduler.getWriteCount());
+    }
+
+    @Test
+    public void keepsABatchThatFailedToWrite() throws IOException {
+        File dir = folder.newFolder();
+        final boolean[] failing = {true};
+        TaskJournal journal = new TaskJournal(dir) {
+            @Override
+            public void appendAll(List<Mutation> mutations) {
+                if (failing[0]) {
+                    throw new IllegalStateException("Disk full");
+                }
+                super.appendAll(mutations);
+            }
+        };
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, WINDOW_MILLIS);
+        Task first = new Task(1, "first", false, 1, 0);
+        scheduler.record(TaskJournal.Op.ADD, first);
+        try {
+            scheduler.flush();
+            fail("The failed write was not reported");
+        } catch (IllegalStateException expected) {
+        }
+
+        failing[0] = false;
+        Task done = new Task(first);
+        done.setCompleted(true);
+        scheduler.record(TaskJournal.Op.COMPLETE, done);
+        scheduler.record(TaskJournal.Op.ADD, new Task(2, "second", false, 2, 0));
+        scheduler.flush();
+
+        List<Task> tasks = new TaskJournal(dir).load();
+        assertEquals(2, tasks.size());
+        assertEquals(1, scheduler.getWriteCount());
+        for (Task task : tasks) {
+            assertEquals(task.getId() == 1, task.isCompleted());
+        }
+    }
+
+    @Test
+    public void writesOnItsOwnAfterTheWindow() throws Exception {
+        File dir = folder.newFolder();
+        TaskJournal journal = new TaskJournal(dir);
+        TaskWriteScheduler scheduler = new TaskWriteScheduler(journal, 10);
+        scheduler.record(TaskJournal.Op.ADD, new Task(1, "soon", false, 1, 0));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (scheduler.getWriteCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, scheduler.getWriteCount());
+        assertEquals(1, journal.getJournalRecordCount());
+    }
+}
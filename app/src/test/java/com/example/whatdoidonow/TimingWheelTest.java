@@ -0,0 +1,120 @@
+package com.example.whatdoidonow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+    private static final long TICK = 1000;
+    private static final long START = 1_760_000_000_000L;
+
+    @Test
+    public void matchesBruteForceAcrossLevels() {
+        Random random = new Random(21);
+        TimingWheel wheel = new TimingWheel(TICK, START);
+        Map<Long, Long> expected = new HashMap<>();
+        // The tick each id expires at: deadlines are rounded up, passed ones expire on the next advance
+        Map<Long, Long> ticks = new HashMap<>();
+        long now = START;
+        for (int step = 0; step < 20_000; step++) {
+            int choice = random.nextInt(10);
+            long id = random.nextInt(2_000) + 1;
+            if (choice < 6) {
+                // From already passed to years ahead, so every level is used
+                long deadline = now + (long) (Math.pow(10, random.nextDouble() * 11)) - 1_000;
+                wheel.schedule(id, deadline);
+                expected.put(id, deadline);
+                ticks.put(id, Math.max(-Math.floorDiv(-deadline, TICK), Math.floorDiv(now, TICK)));
+            } else if (choice < 8) {
+                ticks.remove(id);
+                assertEquals(expected.remove(id) != null, wheel.cancel(id));
+            } else {
+                now += (long) Math.pow(10, random.nextDouble() * (choice == 8 ? 5 : 9));
+                final long advancedTo = now;
+                final List<Long> expired = new ArrayList<>();
+                final long[] lastTick = {Long.MIN_VALUE};
+                wheel.advance(now, (expiredId, deadline) -> {
+                    assertTrue(deadline <= advancedTo);
+                    // Earliest tick first
+                    long tick = ticks.get(expiredId);
+                    assertTrue(tick >= lastTick[0]);
+                    lastTick[0] = tick;
+                    assertFalse(wheel.contains(expiredId));
+                    expired.add(expiredId);
+                });
+                for (long expiredId : expired) {
+                    assertNotNull(expected.remove(expiredId));
+                    ticks.remove(expiredId);
+                }
+                // Whatever is left expires on a later tick, at most a tick after its deadline
+                for (long tick : ticks.values()) {
+                    assertTrue(tick > Math.floorDiv(now, TICK));
+                }
+            }
+            assertEquals(expected.size(), wheel.size());
+            assertEquals(earliest(ticks), wheel.nextDeadline());
+        }
+    }
+
+    @Test
+    public void wakesOnlyForTheNextDeadline() {
+        TimingWheel wheel = new TimingWheel(TICK, START);
+        assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+        long day = 24 * 60 * 60 * 1000L;
+        for (int i = 1; i <= 10_000; i++) {
+            // Thousands of schedules a day to a month out
+            wheel.schedule(i, START + day + (i * 7919L % 30) * day + i);
+        }
+        wheel.schedule(20_000, START + 90 * 60 * 1000L + 500);
+
+        // Rounded up to the tick, and nothing to do before then
+        long first = START + 90 * 60 * 1000L + TICK;
+        assertEquals(first, wheel.nextDeadline());
+        assertEquals(0, wheel.advance(first - 1, (id, deadline) -> fail()));
+        assertEquals(first, wheel.nextDeadline());
+
+        final List<Long> expired = new ArrayList<>();
+        assertEquals(1, wheel.advance(first, (id, deadline) -> expired.add(id)));
+        assertEquals(20_000L, (long) expired.get(0));
+        // Multiples of 30 fall on the first day, the earliest 30 ms into it
+        assertEquals(START + day + TICK, wheel.nextDeadline());
+    }
+
+    @Test
+    public void expiredIdsCanBeScheduledAgain() {
+        final TimingWheel wheel = new TimingWheel(TICK, START);
+        wheel.schedule(1, START + 5 * TICK);
+        final int[] expirations = {0};
+        // Reschedule every expiry one hour on, like a recurring task
+        for (int hour = 0; hour < 48; hour++) {
+            wheel.advance(wheel.nextDeadline(), (id, deadline) -> {
+                expirations[0]++;
+                wheel.schedule(id, deadline + 60 * 60 * 1000L);
+            });
+        }
+        assertEquals(48, expirations[0]);
+        assertEquals(START + 5 * TICK + 48 * 60 * 60 * 1000L, wheel.getDeadline(1));
+
+        // A deadline in the past expires on the next advance, whatever the time
+        wheel.schedule(2, START);
+        assertTrue(wheel.nextDeadline() <= START + 48 * 60 * 60 * 1000L);
+        final List<Long> expired = new ArrayList<>();
+        wheel.advance(START + 48 * 60 * 60 * 1000L, (id, deadline) -> expired.add(id));
+        assertEquals(1, expired.size());
+        assertEquals(2L, (long) expired.get(0));
+    }
+
+    private static long earliest(Map<Long, Long> ticks) {
+        long earliest = Long.MAX_VALUE;
+        for (long tick : ticks.values()) {
+            earliest = Math.min(earliest, tick * TICK);
+        }
+        return earliest;
+    }
+}
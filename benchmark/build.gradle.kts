@@ -0,0 +1,59 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Benchmarks run on a plain JVM, so they compile the app's Android-free sources
+// directly instead of depending on the Android module
+val appSources = "../app/src/main/java"
+val jvmOnlyAppClasses = listOf(
+    "ColumnarTaskFile",
+    "LongObjectMap",
+    "PersistentLongMap",
+    "Task",
+    "TaskCodec",
+    "TaskIndex",
+    "TaskJournal",
+    "TaskLabelCache",
+    "TaskOrder",
+    "TaskPageSource",
+    "TaskPicker",
+    "TaskSearchIndex",
+)
+
+sourceSets {
+    main {
+        java {
+            srcDir(appSources)
+            jvmOnlyAppClasses.forEach { include("com/example/whatdoidonow/$it.java") }
+        }
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    implementation(libs.gson)
+    jmh(libs.jmh.core)
+    jmhAnnotationProcessor(libs.jmh.generator.annprocess)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // e.g. -PjmhIncludes=SelectionBenchmark, -PjmhParams=size=100,10000
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+    (project.findProperty("jmhParams") as String?)?.let { spec ->
+        val (name, values) = spec.split("=", limit = 2)
+        benchmarkParameters.put(name, project.objects.listProperty(String::class.java).value(values.split(",")))
+    }
+    // One JSON file per label, e.g. -PbenchmarkLabel=1.0, to compare versions
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file(
+        "results/jmh/${project.findProperty("benchmarkLabel") ?: "latest"}.json"))
+}
@@ -0,0 +1,22 @@
+package com.example.whatdoidonow.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the SharedPreferences file the app used to keep its whole task
+ * list in, as one JSON string. Only the string round trip matters for the
+ * legacy persistence numbers, the XML write Android adds on top is not modelled.
+ */
+final class InMemoryPreferences {
+    private final Map<String, String> strings = new HashMap<>();
+
+    String getString(String key, String defaultValue) {
+        String value = strings.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    void putString(String key, String value) {
+        strings.put(key, value);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.whatdoidonow.benchmark;
+
+import com.example.whatdoidonow.Task;
+import com.example.whatdoidonow.TaskJournal;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What TaskManager.saveTasks/loadTasks cost: the legacy whole-list Gson blob in
+ * preferences against the journal store they delegate to now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistenceBenchmark {
+    private static final String KEY_TASKS = "tasks";
+    private static final Type TASK_LIST_TYPE = new TypeToken<ArrayList<Task>>() {}.getType();
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    @Param({"0.1", "0.9"})
+    public double completedRatio;
+
+    @Param({"24", "200"})
+    public int textLength;
+
+    private List<Task> tasks;
+    private Task extraTask;
+    private final Gson gson = new Gson();
+    private InMemoryPreferences preferences;
+    private File storeDir;
+    private TaskJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tasks = TaskFixtures.tasks(size, completedRatio, textLength);
+        extraTask = TaskFixtures.tasks(1, 0, textLength).get(0);
+
+        preferences = new InMemoryPreferences();
+        preferences.putString(KEY_TASKS, gson.toJson(tasks));
+
+        storeDir = TaskFixtures.newStoreDir();
+        journal = new TaskJournal(storeDir);
+        journal.replaceAll(tasks);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        journal.close();
+        TaskFixtures.deleteRecursively(storeDir);
+    }
+
+    @Benchmark
+    public InMemoryPreferences legacySaveTasks() {
+        preferences.putString(KEY_TASKS, gson.toJson(tasks));
+        return preferences;
+    }
+
+    @Benchmark
+    public List<Task> legacyLoadTasks() {
+        return gson.fromJson(preferences.getString(KEY_TASKS, null), TASK_LIST_TYPE);
+    }
+
+    /**
+     * Legacy addTask: read, append and write back the whole list
+     */
+    @Benchmark
+    public InMemoryPreferences legacyAddTask() {
+        List<Task> stored = gson.fromJson(preferences.getString(KEY_TASKS, null), TASK_LIST_TYPE);
+        stored.add(extraTask);
+        preferences.putString(KEY_TASKS, gson.toJson(stored));
+        return preferences;
+    }
+
+    @Benchmark
+    public TaskJournal journalSaveTasks() {
+        journal.replaceAll(tasks);
+        return journal;
+    }
+
+    @Benchmark
+    public List<Task> journalLoadTasks() {
+        return journal.load();
+    }
+
+    /**
+     * Journal addTask followed by the matching delete, so the store does not
+     * grow between invocations. Includes waiting for both records to be written.
+     */
+    @Benchmark
+    public TaskJournal journalAddTask() {
+        journal.append(TaskJournal.Op.ADD, extraTask);
+        journal.append(TaskJournal.Op.DELETE, extraTask);
+        journal.flush();
+        return journal;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.whatdoidonow.benchmark;
+
+import com.example.whatdoidonow.Task;
+import com.example.whatdoidonow.TaskIndex;
+import com.example.whatdoidonow.TaskSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One keystroke of the search box: rescanning every text against the index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    // Fixture texts are "Task <n> <letters>": everything, a tenth, a hundredth, nothing
+    @Param({"t", "4", "task 42", "zzz"})
+    public String query;
+
+    private TaskIndex tasks;
+    private TaskSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tasks = new TaskIndex();
+        index = new TaskSearchIndex();
+        for (Task task : TaskFixtures.tasks(size, 0.5, 24)) {
+            tasks.insert(task);
+            index.update(task);
+        }
+        tasks = tasks.snapshot();
+    }
+
+    /**
+     * Case-insensitive substring match over every task
+     */
+    @Benchmark
+    public List<Task> scanAll() {
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<Task> results = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task.getTaskText().toLowerCase(Locale.ROOT).contains(needle)) {
+                results.add(task);
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<Task> searchIndex() {
+        return index.search(query, tasks);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.whatdoidonow.benchmark;
+
+import com.example.whatdoidonow.Task;
+import com.example.whatdoidonow.TaskPicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generateRandomTask: the old filter-copy-and-pick against TaskPicker
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SelectionBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double completedRatio;
+
+    private List<Task> tasks;
+    private TaskPicker picker;
+    private Task churned;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tasks = TaskFixtures.tasks(size, completedRatio, 24);
+        picker = new TaskPicker(tasks);
+        churned = new Task(Task.newId(), "churn", false, TaskFixtures.now(), 0);
+    }
+
+    /**
+     * What generateRandomTask used to do on every press
+     */
+    @Benchmark
+    public Task filterAndPick() {
+        List<Task> pendingTasks = new ArrayList<>();
+        for (Task task : tasks) {
+            if (!task.isCompleted()) {
+                pendingTasks.add(task);
+            }
+        }
+        if (pendingTasks.isEmpty()) {
+            return null;
+        }
+        Random random = new Random();
+        return pendingTasks.get(random.nextInt(pendingTasks.size()));
+    }
+
+    @Benchmark
+    public Task pickUniform() {
+        return picker.pickUniform();
+    }
+
+    @Benchmark
+    public Task pickWeighted() {
+        return picker.pickWeighted(TaskFixtures.now());
+    }
+
+    /**
+     * Adding a task and completing it again, as the picker sees it
+     */
+    @Benchmark
+    public int addAndRemove() {
+        picker.update(churned);
+        picker.remove(churned.getId());
+        return picker.size();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.whatdoidonow.benchmark;
+
+import com.example.whatdoidonow.Task;
+import com.example.whatdoidonow.TaskIndex;
+import com.example.whatdoidonow.TaskOrder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the list in display order: MainActivity.sortTasks used to re-sort
+ * the whole list after every change, TaskIndex places one task in O(log n).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double completedRatio;
+
+    private List<Task> shuffled;
+    private TaskIndex index;
+    private Task toggled;
+    private Task toggledBack;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        shuffled = TaskFixtures.tasks(size, completedRatio, 24);
+        Collections.shuffle(shuffled, new Random(1));
+        index = new TaskIndex(shuffled);
+
+        // A pending task in the middle of the list, and its completed copy
+        toggled = index.get(index.pendingCount() / 2);
+        toggledBack = new Task(toggled);
+        toggledBack.setCompleted(true);
+        toggledBack.setCompletedAt(TaskFixtures.now());
+    }
+
+    /**
+     * The old path after any change: copy and sort the whole list
+     */
+    @Benchmark
+    public List<Task> sortWholeList() {
+        List<Task> sorted = new ArrayList<>(shuffled);
+        Collections.sort(sorted, TaskOrder.DISPLAY);
+        return sorted;
+    }
+
+    @Benchmark
+    public TaskIndex buildIndex() {
+        return new TaskIndex(shuffled);
+    }
+
+    /**
+     * Completing a task and reopening it again, i.e. two moves between partitions
+     */
+    @Benchmark
+    public int toggleInIndex() {
+        int completedAt = index.replace(toggled, toggledBack);
+        return completedAt + index.replace(toggledBack, toggled);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.whatdoidonow.benchmark;
+
+import com.example.whatdoidonow.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic task lists shaped by the benchmark parameters
+ */
+final class TaskFixtures {
+    // Around when the tasks were "created", one minute apart going back in time
+    private static final long NOW = 1_700_000_000_000L;
+
+    private TaskFixtures() {
+    }
+
+    static List<Task> tasks(int size, double completedRatio, int textLength) {
+        Random random = new Random(size * 31L + textLength);
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long createdAt = NOW - i * 60_000L;
+            boolean completed = random.nextDouble() < completedRatio;
+            long completedAt = completed ? createdAt + 1 + random.nextInt(86_400_000) : 0;
+            tasks.add(new Task(Task.newId(), text(random, i, textLength), completed, createdAt, completedAt));
+        }
+        return tasks;
+    }
+
+    static long now() {
+        return NOW;
+    }
+
+    static File newStoreDir() throws IOException {
+        return Files.createTempDirectory("task-store").toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String text(Random random, int index, int length) {
+        StringBuilder text = new StringBuilder(length);
+        text.append("Task ").append(index).append(' ');
+        while (text.length() < length) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}